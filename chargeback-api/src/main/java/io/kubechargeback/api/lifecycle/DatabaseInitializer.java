@@ -1,6 +1,7 @@
 package io.kubechargeback.api.lifecycle;
 
 import io.agroal.api.AgroalDataSource;
+import io.kubechargeback.common.db.SchemaMigrator;
 import io.quarkus.runtime.StartupEvent;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.enterprise.event.Observes;
@@ -12,6 +13,7 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.sql.Connection;
 import java.sql.Statement;
+import java.time.Instant;
 import java.util.stream.Collectors;
 
 @ApplicationScoped
@@ -37,6 +39,12 @@ public class DatabaseInitializer {
                     .lines().collect(Collectors.joining("\n"));
 
             try (Statement stmt = conn.createStatement()) {
+                // a new database gets incremental auto-vacuum, which can only be set before the first table
+                try (var rs = stmt.executeQuery("PRAGMA page_count")) {
+                    if (rs.next() && rs.getLong(1) == 0) {
+                        stmt.execute("PRAGMA auto_vacuum = INCREMENTAL");
+                    }
+                }
                 // SQLite allows multiple statements separated by ; in one execute call
                 // but some drivers might prefer splitting them. 
                 // For simplicity, we try to execute the whole block.
@@ -45,22 +53,23 @@ public class DatabaseInitializer {
                         stmt.execute(command);
                     }
                 }
-                LOGGER.info("Database schema initialized successfully.");
+                int migrations = SchemaMigrator.migrate(conn);
+                LOGGER.infof("Database schema initialized successfully (%d migration(s) applied).", migrations);
 
                 // Check if we need to seed dummy data
                 try (var rs = stmt.executeQuery("SELECT * FROM allocation_snapshots LIMIT 5")) {
                     int count = 0;
                     while (rs.next()) {
                         count++;
-                        LOGGER.infof("Snapshot: %s, Start: %s, End: %s", rs.getString("id"), rs.getString("window_start"), rs.getString("window_end"));
+                        LOGGER.infof("Snapshot: %s, Start: %s, End: %s", rs.getString("id"), Instant.ofEpochSecond(rs.getLong("window_start")), Instant.ofEpochSecond(rs.getLong("window_end")));
                     }
                     LOGGER.infof("Found %d snapshots", count);
                     
                     if (count == 0) {
                         LOGGER.info("Seeding dummy data...");
                         stmt.execute("INSERT INTO allocation_snapshots (id, window_start, window_end, group_type, group_key, cpu_mcpu, mem_mib, cpu_cost_units, mem_cost_units, total_cost_units) VALUES " +
-                                "('seed1', datetime('now', '-1 day'), datetime('now'), 'NAMESPACE', 'default', 1000, 1024, 1.5, 0.5, 2.0)," +
-                                "('seed2', datetime('now', '-1 day'), datetime('now'), 'NAMESPACE', 'kube-system', 500, 512, 0.75, 0.25, 1.0)");
+                                "('seed1', unixepoch('now', '-1 day'), unixepoch('now'), 'NAMESPACE', 'default', 1000, 1024, 1.5, 0.5, 2.0)," +
+                                "('seed2', unixepoch('now', '-1 day'), unixepoch('now'), 'NAMESPACE', 'kube-system', 500, 512, 0.75, 0.25, 1.0)");
                         stmt.execute("INSERT INTO workload_inventory (snapshot_id, namespace, kind, name, labels_json, cpu_request_mcpu, mem_request_mib, compliance_status) VALUES " +
                                 "('seed1', 'default', 'Deployment', 'nginx', '{}', 1000, 1024, 'OK')");
                         stmt.execute("INSERT INTO alerts (id, timestamp, severity, budget_name, message, details_json) VALUES " +
@@ -0,0 +1,37 @@
+package io.kubechargeback.api.lifecycle;
+
+import io.agroal.api.AgroalPoolInterceptor;
+import io.quarkus.agroal.DataSource;
+import jakarta.enterprise.context.ApplicationScoped;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import java.sql.Connection;
+
+/**
+ * Tunes the connections of the {@code read} pool, which serves all reports.
+ * Connections are {@code query_only}, so a report can never write, wait for the collector's commits instead of
+ * failing with {@code SQLITE_BUSY}, and read through a memory map and a page cache sized for report scans.
+ */
+@ApplicationScoped
+@DataSource("read")
+public class ReadPoolInterceptor implements AgroalPoolInterceptor {
+
+    @ConfigProperty(name = "sqlite.busy-timeout-ms", defaultValue = "5000")
+    int busyTimeoutMs;
+
+    @ConfigProperty(name = "sqlite.read.mmap-size", defaultValue = "268435456")
+    long mmapSize;
+
+    @ConfigProperty(name = "sqlite.read.cache-size-kib", defaultValue = "65536")
+    long cacheSizeKib;
+
+    @Override
+    public void onConnectionCreate(Connection conn) {
+        SqlitePragmas.apply(conn,
+                "busy_timeout = " + busyTimeoutMs,
+                "mmap_size = " + mmapSize,
+                // a negative cache size is in KiB rather than pages
+                "cache_size = -" + cacheSizeKib,
+                "query_only = ON");
+    }
+}
@@ -0,0 +1,30 @@
+package io.kubechargeback.api.lifecycle;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Applies per-connection SQLite pragmas when a pool opens a connection.
+ */
+final class SqlitePragmas {
+
+    private SqlitePragmas() {
+    }
+
+    /**
+     * Runs {@code PRAGMA} statements on a connection.
+     *
+     * @param conn    the new connection
+     * @param pragmas the pragmas, e.g. {@code busy_timeout = 5000}
+     */
+    static void apply(Connection conn, String... pragmas) {
+        try (Statement stmt = conn.createStatement()) {
+            for (String pragma : pragmas) {
+                stmt.execute("PRAGMA " + pragma);
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to configure SQLite connection", e);
+        }
+    }
+}
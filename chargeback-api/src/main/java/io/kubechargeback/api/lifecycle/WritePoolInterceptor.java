@@ -0,0 +1,26 @@
+package io.kubechargeback.api.lifecycle;
+
+import io.agroal.api.AgroalPoolInterceptor;
+import jakarta.enterprise.context.ApplicationScoped;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import java.sql.Connection;
+
+/**
+ * Tunes the connections of the default pool, which the API uses for budget mutations and schema setup.
+ * Writers wait for the collector's commits instead of failing with {@code SQLITE_BUSY}, and in WAL mode
+ * {@code synchronous=NORMAL} only syncs at checkpoints, which keeps commits short.
+ */
+@ApplicationScoped
+public class WritePoolInterceptor implements AgroalPoolInterceptor {
+
+    @ConfigProperty(name = "sqlite.busy-timeout-ms", defaultValue = "5000")
+    int busyTimeoutMs;
+
+    @Override
+    public void onConnectionCreate(Connection conn) {
+        SqlitePragmas.apply(conn,
+                "busy_timeout = " + busyTimeoutMs,
+                "synchronous = NORMAL");
+    }
+}
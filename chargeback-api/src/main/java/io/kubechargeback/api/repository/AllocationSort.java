@@ -0,0 +1,53 @@
+package io.kubechargeback.api.repository;
+
+import java.util.Arrays;
+
+/**
+ * Sort orders of the allocation report. Metrics sort descending, ties and the key sort ascending by group key,
+ * so every order is total and can be paged with a keyset cursor.
+ */
+public enum AllocationSort {
+
+    TOTAL_COST("totalCost", "total_cost"),
+    CPU("cpu", "cpu"),
+    MEM("mem", "mem"),
+    KEY("key", "group_key");
+
+    private final String param;
+    private final String column;
+
+    AllocationSort(String param, String column) {
+        this.param = param;
+        this.column = column;
+    }
+
+    /**
+     * Gets the sort order for a request parameter.
+     *
+     * @param param the parameter value (totalCost|cpu|mem|key)
+     * @return the sort order
+     * @throws IllegalArgumentException if the value is unknown
+     */
+    public static AllocationSort of(String param) {
+        return Arrays.stream(values()).filter(s -> s.param.equals(param)).findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("Unknown sortBy: " + param));
+    }
+
+    /**
+     * Gets the request parameter value.
+     * @return the parameter value
+     */
+    public String param() { return param; }
+
+    /**
+     * Gets the result column sorted on.
+     * @return the column of the allocations query
+     */
+    String column() { return column; }
+
+    /**
+     * Checks if the order is by a metric, descending, rather than by the group key.
+     * @return true for metric orders
+     */
+    boolean byMetric() { return this != KEY; }
+}
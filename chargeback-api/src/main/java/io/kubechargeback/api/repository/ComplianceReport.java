@@ -0,0 +1,16 @@
+package io.kubechargeback.api.repository;
+
+import io.kubechargeback.common.model.WorkloadInventory;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One page of the compliance report.
+ *
+ * @param summary    the number of workloads per compliance status, over all pages
+ * @param items      the workloads of the page, ordered by namespace, kind, name and status
+ * @param nextCursor the cursor of the next page, or null if this is the last page
+ */
+public record ComplianceReport(Map<String, Integer> summary, List<WorkloadInventory> items, String nextCursor) {
+}
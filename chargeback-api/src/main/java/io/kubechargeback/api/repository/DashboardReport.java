@@ -0,0 +1,17 @@
+package io.kubechargeback.api.repository;
+
+import io.kubechargeback.common.model.AllocationSnapshot;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The panels of the dashboard for one time range.
+ *
+ * @param namespaces        the cost per namespace, most expensive first
+ * @param topApps           the most expensive applications
+ * @param complianceSummary the number of workloads per compliance status
+ */
+public record DashboardReport(List<AllocationSnapshot> namespaces, List<AllocationSnapshot> topApps,
+                              Map<String, Integer> complianceSummary) {
+}
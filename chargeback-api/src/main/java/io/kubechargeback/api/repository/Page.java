@@ -0,0 +1,13 @@
+package io.kubechargeback.api.repository;
+
+import java.util.List;
+
+/**
+ * One page of a report.
+ *
+ * @param items      the rows of the page
+ * @param nextCursor the cursor of the next page, or null if this is the last page
+ * @param <T>        the row type
+ */
+public record Page<T>(List<T> items, String nextCursor) {
+}
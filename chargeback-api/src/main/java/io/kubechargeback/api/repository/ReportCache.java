@@ -0,0 +1,278 @@
+package io.kubechargeback.api.repository;
+
+import io.kubechargeback.common.model.AllocationSnapshot;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
+
+/**
+ * Caches report results in front of {@link ReportRepository}.
+ * Report data only changes when the collector writes a window or retention deletes rows, and both move the
+ * version in {@code report_version}. Every lookup reads that version with a single primary-key query and
+ * drops all cached results once it has moved, so a report is computed at most once per collector run.
+ * Entries are evicted least recently used first when {@code report-cache.max-entries} or the estimated
+ * {@code report-cache.max-bytes} are exceeded. Cached results are shared between requests and must not be modified.
+ */
+@ApplicationScoped
+public class ReportCache {
+
+    /**
+     * Estimated heap use of an entry without its rows: key, map entry and result container.
+     */
+    private static final long ENTRY_BYTES = 256;
+
+    /**
+     * Estimated heap use of one result row: the model object and its strings.
+     */
+    private static final long ROW_BYTES = 256;
+
+    @Inject
+    ReportRepository repository;
+
+    @Inject
+    MeterRegistry registry;
+
+    @ConfigProperty(name = "report-cache.enabled", defaultValue = "true")
+    boolean enabled;
+
+    @ConfigProperty(name = "report-cache.max-entries", defaultValue = "256")
+    int maxEntries;
+
+    @ConfigProperty(name = "report-cache.max-bytes", defaultValue = "16777216")
+    long maxBytes;
+
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private long version = -1;
+    private Instant changedAt = Instant.EPOCH;
+    private long bytes;
+
+    /**
+     * Registers the cache metrics.
+     */
+    @PostConstruct
+    void registerMetrics() {
+        FunctionCounter.builder("report.cache.gets", hits, LongAdder::sum)
+                .tag("result", "hit").description("Report lookups served from the cache").register(registry);
+        FunctionCounter.builder("report.cache.gets", misses, LongAdder::sum)
+                .tag("result", "miss").description("Report lookups computed in the database").register(registry);
+        FunctionCounter.builder("report.cache.evictions", evictions, LongAdder::sum)
+                .description("Report results evicted to stay within the cache bounds").register(registry);
+        Gauge.builder("report.cache.size", this, ReportCache::size)
+                .description("Number of cached report results").register(registry);
+        Gauge.builder("report.cache.bytes", this, ReportCache::estimatedBytes)
+                .description("Estimated heap used by cached report results").baseUnit("bytes").register(registry);
+    }
+
+    /**
+     * Gets the current version of the report data, e.g. to answer conditional requests without computing a report.
+     *
+     * @return the version and the time this cache first saw it
+     */
+    public DataVersion dataVersion() {
+        long current = repository.findReportVersion();
+        synchronized (this) {
+            observe(current);
+            return new DataVersion(current, changedAt);
+        }
+    }
+
+    /**
+     * Finds one page of allocation data within a time range, grouped by a specific dimension.
+     *
+     * @param from     the start time
+     * @param to       the end time
+     * @param groupBy  the dimension to group by
+     * @param sort     the sort order
+     * @param pageSize the maximum number of rows
+     * @param cursor   the cursor returned with the previous page, or null for the first page
+     * @return the page of aggregated allocation snapshots
+     * @see ReportRepository#findAllocations(Instant, Instant, String, AllocationSort, int, String)
+     */
+    public Page<AllocationSnapshot> findAllocations(Instant from, Instant to, String groupBy, AllocationSort sort,
+                                                    int pageSize, String cursor) {
+        String groupType = groupBy.toUpperCase(Locale.ROOT);
+        return get(new Key("allocations", from, to, groupType + "/" + sort.param(), pageSize, cursor),
+                p -> p.items().size(), () -> {
+                    Page<AllocationSnapshot> page = repository.findAllocations(from, to, groupType, sort, pageSize, cursor);
+                    return new Page<>(List.copyOf(page.items()), page.nextCursor());
+                });
+    }
+
+    /**
+     * Finds the top applications by cost within a time range, optionally filtered by team.
+     *
+     * @param from  the start time
+     * @param to    the end time
+     * @param team  optional team filter
+     * @param limit the maximum number of results
+     * @return a list of allocation snapshots for top apps
+     * @see ReportRepository#findTopApps
+     */
+    public List<AllocationSnapshot> findTopApps(Instant from, Instant to, String team, int limit) {
+        String filter = team == null || team.isBlank() ? null : team;
+        return get(new Key("top-apps", from, to, filter, limit, null), List::size,
+                () -> List.copyOf(repository.findTopApps(from, to, filter, limit)));
+    }
+
+    /**
+     * Finds one page of compliance data within a time range.
+     *
+     * @param from     start time (optional)
+     * @param to       end time (optional)
+     * @param pageSize the maximum number of workloads
+     * @param cursor   the cursor returned with the previous page, or null for the first page
+     * @return the summary and the page of workload inventory items
+     * @see ReportRepository#findCompliance
+     */
+    public ComplianceReport findCompliance(Instant from, Instant to, int pageSize, String cursor) {
+        return get(new Key("compliance", from, to, null, pageSize, cursor), r -> r.items().size(), () -> {
+            ComplianceReport report = repository.findCompliance(from, to, pageSize, cursor);
+            return new ComplianceReport(Map.copyOf(report.summary()), List.copyOf(report.items()), report.nextCursor());
+        });
+    }
+
+    /**
+     * Finds the panels of the dashboard for a time range.
+     *
+     * @param from    the start time
+     * @param to      the end time
+     * @param topApps the number of top applications
+     * @return the dashboard
+     * @see ReportRepository#findDashboard
+     */
+    public DashboardReport findDashboard(Instant from, Instant to, int topApps) {
+        return get(new Key("dashboard", from, to, null, topApps, null), d -> d.namespaces().size() + d.topApps().size(),
+                () -> {
+                    DashboardReport dashboard = repository.findDashboard(from, to, topApps);
+                    return new DashboardReport(List.copyOf(dashboard.namespaces()), List.copyOf(dashboard.topApps()),
+                            Map.copyOf(dashboard.complianceSummary()));
+                });
+    }
+
+    /**
+     * Gets a cached result, or computes and caches it.
+     *
+     * @param key    the normalized report parameters
+     * @param rows   the number of rows of a result, used to estimate its size
+     * @param loader computes the result
+     * @param <T>    the result type
+     * @return the result
+     */
+    @SuppressWarnings("unchecked")
+    private <T> T get(Key key, ToIntFunction<T> rows, Supplier<T> loader) {
+        if (!enabled) {
+            return loader.get();
+        }
+        // read before computing, so a result is never cached under a version older than its data
+        long current = repository.findReportVersion();
+        synchronized (this) {
+            observe(current);
+            Entry entry = current == version ? entries.get(key) : null;
+            if (entry != null) {
+                hits.increment();
+                return (T) entry.value();
+            }
+        }
+        misses.increment();
+        T value = loader.get();
+        long size = ENTRY_BYTES + ROW_BYTES * rows.applyAsInt(value);
+        synchronized (this) {
+            // a newer version may have been seen meanwhile; the result is then already outdated
+            if (current == version && size <= maxBytes) {
+                Entry previous = entries.put(key, new Entry(value, size));
+                bytes += size - (previous != null ? previous.bytes() : 0);
+                evict();
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Drops all entries if the report data has moved to a newer version.
+     * The change time is kept in whole seconds, as in HTTP dates, and moves by at least a second per version.
+     *
+     * @param current the version just read
+     */
+    private void observe(long current) {
+        if (current > version) {
+            entries.clear();
+            bytes = 0;
+            version = current;
+            Instant now = Instant.now().truncatedTo(ChronoUnit.SECONDS);
+            changedAt = now.isAfter(changedAt) ? now : changedAt.plusSeconds(1);
+        }
+    }
+
+    /**
+     * Evicts least recently used entries until the cache is within its bounds.
+     */
+    private void evict() {
+        Iterator<Entry> it = entries.values().iterator();
+        while ((entries.size() > maxEntries || bytes > maxBytes) && it.hasNext()) {
+            bytes -= it.next().bytes();
+            it.remove();
+            evictions.increment();
+        }
+    }
+
+    /**
+     * Gets the number of cached results.
+     * @return the number of entries
+     */
+    synchronized int size() { return entries.size(); }
+
+    /**
+     * Gets the estimated heap used by cached results.
+     * @return the estimated bytes
+     */
+    synchronized long estimatedBytes() { return bytes; }
+
+    /**
+     * A version of the report data.
+     *
+     * @param version   the version from {@code report_version}
+     * @param changedAt when the version was first seen, in whole seconds
+     */
+    public record DataVersion(long version, Instant changedAt) {
+    }
+
+    /**
+     * Normalized report parameters.
+     *
+     * @param report the report name
+     * @param from   the start time, or null
+     * @param to     the end time, or null
+     * @param filter the group type and sort order, or the team filter, or null
+     * @param limit  the result limit or page size
+     * @param cursor the page cursor, or null
+     */
+    private record Key(String report, Instant from, Instant to, String filter, int limit, String cursor) {
+    }
+
+    /**
+     * A cached result.
+     *
+     * @param value the result
+     * @param bytes the estimated heap use
+     */
+    private record Entry(Object value, long bytes) {
+    }
+}
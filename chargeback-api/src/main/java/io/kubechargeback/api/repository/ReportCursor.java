@@ -0,0 +1,50 @@
+package io.kubechargeback.api.repository;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * Opaque keyset cursors: the sort values of the last row of a page, encoded as URL-safe Base64.
+ */
+final class ReportCursor {
+
+    private static final String SEPARATOR = "\n";
+
+    private ReportCursor() {
+    }
+
+    /**
+     * Encodes the sort values of a row.
+     *
+     * @param values the values, none containing a line break
+     * @return the cursor
+     */
+    static String encode(String... values) {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(String.join(SEPARATOR, values).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Decodes a cursor.
+     *
+     * @param cursor the cursor
+     * @param size   the expected number of values
+     * @return the values
+     * @throws IllegalArgumentException if the cursor is malformed
+     */
+    static List<String> decode(String cursor, int size) {
+        List<String> values;
+        try {
+            values = Arrays.asList(new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8)
+                    .split(SEPARATOR, -1));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid cursor", e);
+        }
+        if (values.size() != size) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+        return values;
+    }
+}
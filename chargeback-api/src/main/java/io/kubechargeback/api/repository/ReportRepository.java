@@ -1,26 +1,231 @@
 package io.kubechargeback.api.repository;
 
 import io.agroal.api.AgroalDataSource;
+import io.kubechargeback.common.db.PartitionStore;
 import io.kubechargeback.common.model.AllocationSnapshot;
 import io.kubechargeback.common.model.WorkloadInventory;
+import io.quarkus.agroal.DataSource;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.sql.*;
 import java.time.Instant;
+import java.time.YearMonth;
+import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
 
 @ApplicationScoped
 public class ReportRepository {
 
+    private static final String METRICS = "group_key, cpu_mcpu, mem_mib, cpu_cost_units, mem_cost_units, total_cost_units";
+
+    /**
+     * Orders compliance rows by namespace, kind, name and status, as the compliance query does.
+     * Kubernetes names are ASCII, for which this matches the binary collation of SQLite.
+     */
+    private static final Comparator<List<String>> COMPLIANCE_ORDER = (a, b) -> {
+        for (int i = 0; i < a.size(); i++) {
+            int cmp = a.get(i).compareTo(b.get(i));
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return 0;
+    };
+
+    static final String ALERTS_SQL = "SELECT * FROM alerts ORDER BY timestamp DESC LIMIT ?";
+
+    static final String REPORT_VERSION_SQL = "SELECT version FROM report_version WHERE id = 1";
+
     @Inject
+    @DataSource("read")
     AgroalDataSource dataSource;
 
+    @ConfigProperty(name = "storage.partition-dir")
+    Optional<String> partitionDir;
+
+    private PartitionStore partitions;
+
+    /**
+     * Builds the allocations query, which sums snapshots overlapping a range, reading whole months and days from
+     * the rollup tables and only the edges from raw snapshots. Parameters are bound by {@link #bindAllocations}.
+     *
+     * @param schemas the schemas holding raw snapshots
+     * @return the SQL
+     */
+    static String allocationsSql(List<String> schemas) {
+        return "SELECT group_key, SUM(cpu_mcpu) as cpu, SUM(mem_mib) as mem, " +
+                "SUM(cpu_cost_units) as cpu_cost, SUM(mem_cost_units) as mem_cost, " +
+                "SUM(total_cost_units) as total_cost FROM (" +
+                "SELECT " + METRICS + " FROM allocation_rollups_monthly " +
+                "WHERE group_type = ? AND bucket_start >= ? AND bucket_start < ? " +
+                "UNION ALL " +
+                "SELECT " + METRICS + " FROM allocation_rollups_daily " +
+                "WHERE group_type = ? AND bucket_start >= ? AND bucket_start < ? " +
+                "UNION ALL " +
+                "SELECT " + METRICS + " FROM allocation_rollups_daily " +
+                "WHERE group_type = ? AND bucket_start >= ? AND bucket_start < ? " +
+                "UNION ALL " +
+                PartitionStore.unionAll(schemas, "SELECT " + METRICS + " FROM {p}.allocation_snapshots " +
+                        "WHERE group_type = ? AND window_start >= ? AND window_start < ? AND window_start < ? AND window_end > ?") +
+                " UNION ALL " +
+                PartitionStore.unionAll(schemas, "SELECT " + METRICS + " FROM {p}.allocation_snapshots " +
+                        "WHERE group_type = ? AND window_start >= ? AND window_start < ?") +
+                ") GROUP BY group_key";
+    }
+
+    /**
+     * Builds the top-apps query.
+     * The statement takes the end, start and optional team once per schema, followed by the limit.
+     *
+     * @param byTeam  whether the query filters APP snapshots by the team of their inventory
+     * @param schemas the schemas holding snapshots
+     * @return the SQL
+     */
+    static String topAppsSql(boolean byTeam, List<String> schemas) {
+        StringBuilder sql = new StringBuilder();
+        sql.append("SELECT s.group_key, s.cpu_mcpu, s.mem_mib, s.total_cost_units ");
+        sql.append("FROM {p}.allocation_snapshots s ");
+        sql.append("WHERE s.group_type = 'APP' AND s.window_start < ? AND s.window_end > ?");
+        if (byTeam) {
+            sql.append(" AND s.id IN (SELECT snapshot_id FROM {p}.workload_inventory WHERE team = ?)");
+        }
+        return "SELECT group_key, SUM(cpu_mcpu) as cpu, SUM(mem_mib) as mem, SUM(total_cost_units) as total_cost FROM (" +
+                PartitionStore.unionAll(schemas, sql.toString()) +
+                ") GROUP BY group_key ORDER BY total_cost DESC LIMIT ?";
+    }
+
+    /**
+     * Builds a page of the allocations query, ordered by a sort column and the group key.
+     * The statement takes the parameters of {@link #allocationsSql}, then the sort value twice and the group key
+     * of the cursor for a metric order, or only the group key for the key order, followed by the limit.
+     *
+     * @param schemas the schemas holding raw snapshots
+     * @param sort    the sort order
+     * @param after   whether the page starts after a cursor
+     * @return the SQL
+     */
+    static String allocationsPageSql(List<String> schemas, AllocationSort sort, boolean after) {
+        StringBuilder sql = new StringBuilder("SELECT * FROM (").append(allocationsSql(schemas)).append(")");
+        String column = sort.column();
+        if (after) {
+            sql.append(sort.byMetric()
+                    ? " WHERE " + column + " < ? OR (" + column + " = ? AND group_key > ?)"
+                    : " WHERE group_key > ?");
+        }
+        sql.append(" ORDER BY ").append(sort.byMetric() ? column + " DESC, " : "").append("group_key LIMIT ?");
+        return sql.toString();
+    }
+
+    /**
+     * Builds a page of the compliance query, ordered by namespace, kind, name and status.
+     * Every branch takes the end and start if windowed, then the four values of the cursor if paged;
+     * the limit is last.
+     *
+     * @param windowed whether the query is restricted to inventory of snapshots overlapping a time range
+     * @param after    whether the page starts after a cursor
+     * @param schemas  the schemas holding snapshots and inventory
+     * @return the SQL
+     */
+    static String complianceSql(boolean windowed, boolean after, List<String> schemas) {
+        // UNION also removes the duplicates across schemas
+        return schemas.stream().map(p -> complianceBranch(windowed, after).replace("{p}", p))
+                .collect(Collectors.joining(" UNION ")) +
+                " ORDER BY namespace, kind, name, compliance_status LIMIT ?";
+    }
+
+    /**
+     * Builds the compliance summary query, which counts the workloads of all pages per status.
+     * A windowed statement takes the end and start once per schema.
+     *
+     * @param windowed whether the query is restricted to inventory of snapshots overlapping a time range
+     * @param schemas  the schemas holding snapshots and inventory
+     * @return the SQL
+     */
+    static String complianceSummarySql(boolean windowed, List<String> schemas) {
+        return "SELECT compliance_status, COUNT(*) AS workloads FROM (" + complianceKeysSql(windowed, schemas) +
+                ") GROUP BY compliance_status";
+    }
+
+    /**
+     * Builds the query listing the distinct workloads of some schemas with their compliance status.
+     * A windowed statement takes the end and start once per schema.
+     *
+     * @param windowed whether the query is restricted to inventory of snapshots overlapping a time range
+     * @param schemas  the schemas holding snapshots and inventory
+     * @return the SQL
+     */
+    static String complianceKeysSql(boolean windowed, List<String> schemas) {
+        return schemas.stream().map(p -> complianceBranch(windowed, false).replace("{p}", p))
+                .collect(Collectors.joining(" UNION "));
+    }
+
+    /**
+     * Builds the SELECT of distinct workloads of one schema.
+     *
+     * @param windowed whether the query is restricted to inventory of snapshots overlapping a time range
+     * @param after    whether rows are restricted to those after a cursor
+     * @return the SELECT, with {@code {p}} standing for the schema name
+     */
+    private static String complianceBranch(boolean windowed, boolean after) {
+        StringBuilder sql = new StringBuilder();
+        sql.append("SELECT DISTINCT i.namespace, i.kind, i.name, i.compliance_status ");
+        sql.append("FROM {p}.workload_inventory i");
+        if (windowed) {
+            sql.append(" JOIN {p}.allocation_snapshots s ON i.snapshot_id = s.id");
+            sql.append(" WHERE s.window_start < ? AND s.window_end > ?");
+        }
+        if (after) {
+            sql.append(windowed ? " AND " : " WHERE ");
+            sql.append("(i.namespace, i.kind, i.name, i.compliance_status) > (?, ?, ?, ?)");
+        }
+        return sql.toString();
+    }
+
+    /**
+     * Gets the monthly partitions of raw snapshots.
+     * @return the partition store; disabled unless {@code storage.partition-dir} is set
+     */
+    PartitionStore partitions() {
+        if (partitions == null) {
+            partitions = PartitionStore.of(partitionDir);
+        }
+        return partitions;
+    }
+
+    /**
+     * Lists the partitions that may hold snapshots overlapping a range.
+     * Windows are filed under the month they start in, so the range is widened by the longest window.
+     *
+     * @param from the start time
+     * @param to   the end time
+     * @return the months
+     */
+    private List<YearMonth> overlapping(Instant from, Instant to) {
+        return partitions().months(from.minus(RollupRanges.MAX_WINDOW_HOURS, ChronoUnit.HOURS), to);
+    }
+
     /**
      * Finds allocation data within a time range, grouped by a specific dimension.
+     * Every snapshot whose window overlaps the range is included once; whole days and months are read from rollups.
      *
      * @param from    the start time
      * @param to      the end time
@@ -31,20 +236,64 @@ public class ReportRepository {
         // map groupBy param (team|namespace|app) to DB group_type (TEAM|NAMESPACE|APP)
         String groupType = groupBy.toUpperCase();
         List<AllocationSnapshot> results = new ArrayList<>();
-        
-        String sql = "SELECT group_key, SUM(cpu_mcpu) as cpu, SUM(mem_mib) as mem, " +
-                     "SUM(cpu_cost_units) as cpu_cost, SUM(mem_cost_units) as mem_cost, " +
-                     "SUM(total_cost_units) as total_cost " +
-                     "FROM allocation_snapshots " +
-                     "WHERE window_start < ? AND window_end > ? AND group_type = ? " +
-                     "GROUP BY group_key";
+        try {
+            streamAllocations(from, to, groupType, (groupKey, cpu, mem, cpuCost, memCost, totalCost) -> {
+                AllocationSnapshot snap = new AllocationSnapshot();
+                snap.setGroupType(groupType);
+                snap.setGroupKey(groupKey);
+                snap.setCpuMcpu(cpu);
+                snap.setMemMib(mem);
+                snap.setCpuCostUnits(cpuCost);
+                snap.setMemCostUnits(memCost);
+                snap.setTotalCostUnits(totalCost);
+                results.add(snap);
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return results;
+    }
+
+    /**
+     * Finds one page of allocation data within a time range, grouped by a specific dimension.
+     * Rows are included as in {@link #findAllocations}; only the requested page is read from the result set.
+     *
+     * @param from     the start time
+     * @param to       the end time
+     * @param groupBy  the dimension to group by
+     * @param sort     the sort order
+     * @param pageSize the maximum number of rows
+     * @param cursor   the cursor returned with the previous page, or null for the first page
+     * @return the page of aggregated allocation snapshots
+     * @throws IllegalArgumentException if the cursor is malformed or was issued for another sort order
+     */
+    public Page<AllocationSnapshot> findAllocations(Instant from, Instant to, String groupBy, AllocationSort sort,
+                                                    int pageSize, String cursor) {
+        String groupType = groupBy.toUpperCase();
+        List<String> after = cursor == null ? null : ReportCursor.decode(cursor, 3);
+        if (after != null && !after.get(0).equals(sort.param())) {
+            throw new IllegalArgumentException("Cursor was issued for sortBy=" + after.get(0));
+        }
+        RollupRanges r = RollupRanges.of(from, to);
+        TreeSet<YearMonth> months = new TreeSet<>(partitions().months(r.rawFrom(), r.dayStart()));
+        months.addAll(partitions().months(r.dayEnd(), r.to()));
 
+        List<AllocationSnapshot> results = new ArrayList<>();
         try (Connection conn = dataSource.getConnection();
-             PreparedStatement ps = conn.prepareStatement(sql)) {
-            ps.setString(1, to.toString());
-            ps.setString(2, from.toString());
-            ps.setString(3, groupType);
-            
+             PartitionStore.Attachment attachment = partitions().attach(conn, List.copyOf(months), true);
+             PreparedStatement ps = conn.prepareStatement(
+                     allocationsPageSql(attachment.schemas(), sort, after != null))) {
+            int i = bindAllocations(ps, groupType, r, attachment.schemas().size());
+            if (after != null) {
+                if (sort.byMetric()) {
+                    bindSortValue(ps, i++, sort, after.get(1));
+                    bindSortValue(ps, i++, sort, after.get(1));
+                }
+                ps.setString(i++, after.get(2));
+            }
+            // one more row tells whether there is a next page
+            ps.setLong(i, pageSize + 1L);
+
             try (ResultSet rs = ps.executeQuery()) {
                 while (rs.next()) {
                     AllocationSnapshot snap = new AllocationSnapshot();
@@ -61,9 +310,135 @@ public class ReportRepository {
         } catch (SQLException e) {
             throw new RuntimeException(e);
         }
-        return results;
+        if (results.size() <= pageSize) {
+            return new Page<>(results, null);
+        }
+        results.remove(pageSize);
+        AllocationSnapshot last = results.get(pageSize - 1);
+        String value = switch (sort) {
+            case TOTAL_COST -> Double.toString(last.getTotalCostUnits());
+            case CPU -> Long.toString(last.getCpuMcpu());
+            case MEM -> Long.toString(last.getMemMib());
+            case KEY -> "";
+        };
+        return new Page<>(results, ReportCursor.encode(sort.param(), value, last.getGroupKey()));
     }
-    
+
+    /**
+     * Binds the sort value of a cursor with the type of its column.
+     *
+     * @param ps    the prepared statement
+     * @param index the parameter index
+     * @param sort  the sort order
+     * @param value the sort value from the cursor
+     * @throws SQLException if the parameter cannot be bound
+     */
+    private static void bindSortValue(PreparedStatement ps, int index, AllocationSort sort, String value)
+            throws SQLException {
+        try {
+            if (sort == AllocationSort.TOTAL_COST) {
+                ps.setDouble(index, Double.parseDouble(value));
+            } else {
+                ps.setLong(index, Long.parseLong(value));
+            }
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid cursor", e);
+        }
+    }
+
+    /**
+     * Streams allocation data within a time range, grouped by a specific dimension, row by row as it is read
+     * from the result set, without materializing the result. Rows are included as in {@link #findAllocations}.
+     *
+     * @param from    the start time
+     * @param to      the end time
+     * @param groupBy the dimension to group by
+     * @param handler receives every row
+     * @throws IOException if the handler fails to write a row
+     */
+    public void streamAllocations(Instant from, Instant to, String groupBy, AllocationRowHandler handler) throws IOException {
+        String groupType = groupBy.toUpperCase();
+        RollupRanges r = RollupRanges.of(from, to);
+        // only the raw edges are read from partitions, so at most a few months are attached
+        TreeSet<YearMonth> months = new TreeSet<>(partitions().months(r.rawFrom(), r.dayStart()));
+        months.addAll(partitions().months(r.dayEnd(), r.to()));
+
+        try (Connection conn = dataSource.getConnection();
+             PartitionStore.Attachment attachment = partitions().attach(conn, List.copyOf(months), true);
+             PreparedStatement ps = conn.prepareStatement(allocationsSql(attachment.schemas()))) {
+            bindAllocations(ps, groupType, r, attachment.schemas().size());
+
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    handler.row(rs.getString("group_key"), rs.getLong("cpu"), rs.getLong("mem"),
+                            rs.getDouble("cpu_cost"), rs.getDouble("mem_cost"), rs.getDouble("total_cost"));
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Receives the rows of an allocation report one at a time.
+     */
+    @FunctionalInterface
+    public interface AllocationRowHandler {
+
+        /**
+         * Handles one aggregated row.
+         *
+         * @param groupKey  the group key
+         * @param cpu       the CPU requests in millicores
+         * @param mem       the memory requests in MiB
+         * @param cpuCost   the CPU cost units
+         * @param memCost   the memory cost units
+         * @param totalCost the total cost units
+         * @throws IOException if the row cannot be written
+         */
+        void row(String groupKey, long cpu, long mem, double cpuCost, double memCost, double totalCost) throws IOException;
+    }
+
+    /**
+     * Binds the parameters of {@link #allocationsSql}.
+     *
+     * @param ps        the prepared statement
+     * @param groupType the group type
+     * @param r         the split of the requested range
+     * @param schemas   the number of schemas holding raw snapshots
+     * @return the index of the next parameter
+     * @throws SQLException if a parameter cannot be bound
+     */
+    private int bindAllocations(PreparedStatement ps, String groupType, RollupRanges r, int schemas) throws SQLException {
+        int i = 1;
+        // whole months
+        ps.setString(i++, groupType);
+        ps.setLong(i++, r.monthStart().getEpochSecond());
+        ps.setLong(i++, r.monthEnd().getEpochSecond());
+        // whole days before and after the months
+        ps.setString(i++, groupType);
+        ps.setLong(i++, r.dayStart().getEpochSecond());
+        ps.setLong(i++, r.monthStart().getEpochSecond());
+        ps.setString(i++, groupType);
+        ps.setLong(i++, r.monthEnd().getEpochSecond());
+        ps.setLong(i++, r.dayEnd().getEpochSecond());
+        // raw windows starting before the first whole day but overlapping the range
+        for (int s = 0; s < schemas; s++) {
+            ps.setString(i++, groupType);
+            ps.setLong(i++, r.rawFrom().getEpochSecond());
+            ps.setLong(i++, r.dayStart().getEpochSecond());
+            ps.setLong(i++, r.to().getEpochSecond());
+            ps.setLong(i++, r.from().getEpochSecond());
+        }
+        // raw windows starting after the last whole day
+        for (int s = 0; s < schemas; s++) {
+            ps.setString(i++, groupType);
+            ps.setLong(i++, r.dayEnd().getEpochSecond());
+            ps.setLong(i++, r.to().getEpochSecond());
+        }
+        return i;
+    }
+
     /**
      * Finds the top applications by cost within a time range, optionally filtered by team.
      *
@@ -74,101 +449,295 @@ public class ReportRepository {
      * @return a list of allocation snapshots for top apps
      */
     public List<AllocationSnapshot> findTopApps(Instant from, Instant to, String team, int limit) {
-        List<AllocationSnapshot> results = new ArrayList<>();
-        StringBuilder sql = new StringBuilder();
-        sql.append("SELECT s.group_key, SUM(s.cpu_mcpu) as cpu, SUM(s.mem_mib) as mem, ");
-        sql.append("SUM(s.total_cost_units) as total_cost ");
-        sql.append("FROM allocation_snapshots s ");
-        if (team != null && !team.isBlank()) {
-            sql.append("JOIN (SELECT DISTINCT snapshot_id FROM workload_inventory ");
-            sql.append("WHERE json_extract(labels_json, '$.team') = ?) i ON s.id = i.snapshot_id ");
-        }
-        sql.append("WHERE s.window_start < ? AND s.window_end > ? AND s.group_type = 'APP' ");
-        sql.append("GROUP BY s.group_key ");
-        sql.append("ORDER BY total_cost DESC ");
-        sql.append("LIMIT ?");
+        boolean byTeam = team != null && !team.isBlank();
+        List<List<YearMonth>> chunks = PartitionStore.chunks(overlapping(from, to));
+        Map<String, AllocationSnapshot> apps = new LinkedHashMap<>();
+        try (Connection conn = dataSource.getConnection()) {
+            for (int c = 0; c < chunks.size(); c++) {
+                try (PartitionStore.Attachment attachment = partitions().attach(conn, chunks.get(c), true)) {
+                    // the main database is read with the first group of partitions only
+                    List<String> schemas = c == 0 ? attachment.schemas() : attachment.partitions();
+                    try (PreparedStatement ps = conn.prepareStatement(topAppsSql(byTeam, schemas))) {
+                        int paramIdx = 1;
+                        for (int i = 0; i < schemas.size(); i++) {
+                            ps.setLong(paramIdx++, to.getEpochSecond());
+                            ps.setLong(paramIdx++, from.getEpochSecond());
+                            if (byTeam) {
+                                ps.setString(paramIdx++, team);
+                            }
+                        }
+                        // a partial result is only cut after merging all groups
+                        ps.setInt(paramIdx++, chunks.size() == 1 ? limit : -1);
 
-        try (Connection conn = dataSource.getConnection();
-             PreparedStatement ps = conn.prepareStatement(sql.toString())) {
-            int paramIdx = 1;
-            if (team != null && !team.isBlank()) {
-                ps.setString(paramIdx++, team);
+                        try (ResultSet rs = ps.executeQuery()) {
+                            while (rs.next()) {
+                                AllocationSnapshot snap = apps.computeIfAbsent(rs.getString("group_key"), key -> {
+                                    AllocationSnapshot s = new AllocationSnapshot();
+                                    s.setGroupKey(key);
+                                    return s;
+                                });
+                                snap.setCpuMcpu(snap.getCpuMcpu() + rs.getLong("cpu"));
+                                snap.setMemMib(snap.getMemMib() + rs.getLong("mem"));
+                                snap.setTotalCostUnits(snap.getTotalCostUnits() + rs.getDouble("total_cost"));
+                            }
+                        }
+                    }
+                }
             }
-            ps.setString(paramIdx++, to.toString());
-            ps.setString(paramIdx++, from.toString());
-            ps.setInt(paramIdx++, limit);
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+        List<AllocationSnapshot> results = new ArrayList<>(apps.values());
+        if (chunks.size() > 1) {
+            results.sort((a, b) -> Double.compare(b.getTotalCostUnits(), a.getTotalCostUnits()));
+            results = new ArrayList<>(results.subList(0, Math.min(limit, results.size())));
+        }
+        return results;
+    }
 
-            try (ResultSet rs = ps.executeQuery()) {
-                while (rs.next()) {
-                    AllocationSnapshot snap = new AllocationSnapshot();
-                    snap.setGroupKey(rs.getString("group_key"));
-                    snap.setCpuMcpu(rs.getLong("cpu"));
-                    snap.setMemMib(rs.getLong("mem"));
-                    snap.setTotalCostUnits(rs.getDouble("total_cost"));
-                    results.add(snap);
+    /**
+     * Finds one page of compliance data within a time range, summarizing workloads with missing requests or limits.
+     * The summary counts the workloads of all pages.
+     *
+     * @param from     start time (optional)
+     * @param to       end time (optional)
+     * @param pageSize the maximum number of workloads
+     * @param cursor   the cursor returned with the previous page, or null for the first page
+     * @return the summary and the page of workload inventory items
+     * @throws IllegalArgumentException if the cursor is malformed
+     */
+    public ComplianceReport findCompliance(Instant from, Instant to, int pageSize, String cursor) {
+        List<String> after = cursor == null ? null : ReportCursor.decode(cursor, 4);
+        Map<String, Integer> summary = emptyComplianceSummary();
+
+        boolean windowed = from != null && to != null;
+        List<List<YearMonth>> chunks = PartitionStore.chunks(windowed ? overlapping(from, to) : partitions().months());
+        // every group of partitions is read in the page order; merging them also removes duplicates across groups
+        TreeMap<List<String>, WorkloadInventory> rows = new TreeMap<>(COMPLIANCE_ORDER);
+        Set<List<String>> workloads = new HashSet<>();
+
+        try (Connection conn = dataSource.getConnection()) {
+            for (int c = 0; c < chunks.size(); c++) {
+                try (PartitionStore.Attachment attachment = partitions().attach(conn, chunks.get(c), true)) {
+                    List<String> schemas = c == 0 ? attachment.schemas() : attachment.partitions();
+                    try (PreparedStatement ps = conn.prepareStatement(complianceSql(windowed, after != null, schemas))) {
+                        int paramIdx = 1;
+                        for (int i = 0; i < schemas.size(); i++) {
+                            if (windowed) {
+                                ps.setLong(paramIdx++, to.getEpochSecond());
+                                ps.setLong(paramIdx++, from.getEpochSecond());
+                            }
+                            if (after != null) {
+                                for (String value : after) {
+                                    ps.setString(paramIdx++, value);
+                                }
+                            }
+                        }
+                        // one more row tells whether there is a next page
+                        ps.setInt(paramIdx, pageSize + 1);
+                        readCompliance(ps, rows);
+                    }
+                    if (chunks.size() == 1) {
+                        countCompliance(conn, schemas, from, to, summary);
+                    } else {
+                        collectCompliance(conn, schemas, from, to, workloads);
+                    }
                 }
             }
         } catch (SQLException e) {
             throw new RuntimeException(e);
         }
-        return results;
+        workloads.forEach(w -> addCompliance(summary, w.get(3), 1));
+
+        List<WorkloadInventory> items = new ArrayList<>(rows.values());
+        if (items.size() <= pageSize) {
+            return new ComplianceReport(summary, items, null);
+        }
+        items = new ArrayList<>(items.subList(0, pageSize));
+        WorkloadInventory last = items.get(pageSize - 1);
+        return new ComplianceReport(summary, items, ReportCursor.encode(
+                last.getNamespace(), last.getKind(), last.getName(), last.getComplianceStatus()));
+    }
+
+    /**
+     * Reads compliance rows into the rows of the page, keyed by their sort values.
+     *
+     * @param ps   the compliance query with its parameters bound
+     * @param rows the rows read so far
+     * @throws SQLException if a database access error occurs
+     */
+    private void readCompliance(PreparedStatement ps, TreeMap<List<String>, WorkloadInventory> rows) throws SQLException {
+        try (ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                WorkloadInventory w = new WorkloadInventory();
+                w.setNamespace(rs.getString("namespace"));
+                w.setKind(rs.getString("kind"));
+                w.setName(rs.getString("name"));
+                w.setComplianceStatus(rs.getString("compliance_status"));
+                rows.putIfAbsent(List.of(w.getNamespace(), w.getKind(), w.getName(), w.getComplianceStatus()), w);
+            }
+        }
     }
 
     /**
-     * Finds compliance data within a time range, summarizing workloads with missing requests or limits.
+     * Finds the number of workloads per compliance status within a time range, without listing them.
+     * Workloads are counted as in the summary of {@link #findCompliance}.
      *
      * @param from start time (optional)
      * @param to   end time (optional)
-     * @return a map containing a summary and a list of workload inventory items
+     * @return the counts per compliance status
      */
-    public Map<String, Object> findCompliance(Instant from, Instant to) {
-        List<WorkloadInventory> items = new ArrayList<>();
+    public Map<String, Integer> findComplianceSummary(Instant from, Instant to) {
+        Map<String, Integer> summary = emptyComplianceSummary();
+        boolean windowed = from != null && to != null;
+        List<List<YearMonth>> chunks = PartitionStore.chunks(windowed ? overlapping(from, to) : partitions().months());
+        Set<List<String>> workloads = new HashSet<>();
+        try (Connection conn = dataSource.getConnection()) {
+            for (int c = 0; c < chunks.size(); c++) {
+                try (PartitionStore.Attachment attachment = partitions().attach(conn, chunks.get(c), true)) {
+                    List<String> schemas = c == 0 ? attachment.schemas() : attachment.partitions();
+                    if (chunks.size() == 1) {
+                        countCompliance(conn, schemas, from, to, summary);
+                    } else {
+                        collectCompliance(conn, schemas, from, to, workloads);
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+        workloads.forEach(w -> addCompliance(summary, w.get(3), 1));
+        return summary;
+    }
+
+    /**
+     * Creates a compliance summary with every status counted as zero.
+     * @return the counts per compliance status
+     */
+    private static Map<String, Integer> emptyComplianceSummary() {
         Map<String, Integer> summary = new HashMap<>();
         summary.put("ok", 0);
         summary.put("missingRequests", 0);
         summary.put("missingLimits", 0);
         summary.put("bothMissing", 0);
+        return summary;
+    }
 
-        StringBuilder sql = new StringBuilder();
-        sql.append("SELECT DISTINCT i.namespace, i.kind, i.name, i.compliance_status ");
-        sql.append("FROM workload_inventory i ");
-        if (from != null && to != null) {
-            sql.append("JOIN allocation_snapshots s ON i.snapshot_id = s.id ");
-            sql.append("WHERE s.window_start < ? AND s.window_end > ? ");
+    /**
+     * Adds the distinct workloads of some schemas to a set, so that workloads of several groups of partitions
+     * can be counted once. Only used when the partitions cannot be attached at the same time.
+     *
+     * @param conn      the connection the schemas are attached to
+     * @param schemas   the schemas holding snapshots and inventory
+     * @param from      start time (optional)
+     * @param to        end time (optional)
+     * @param workloads the namespace, kind, name and compliance status of the workloads found so far
+     * @throws SQLException if a database access error occurs
+     */
+    private void collectCompliance(Connection conn, List<String> schemas, Instant from, Instant to,
+                                   Set<List<String>> workloads) throws SQLException {
+        boolean windowed = from != null && to != null;
+        try (PreparedStatement ps = conn.prepareStatement(complianceKeysSql(windowed, schemas))) {
+            if (windowed) {
+                int paramIdx = 1;
+                for (int i = 0; i < schemas.size(); i++) {
+                    ps.setLong(paramIdx++, to.getEpochSecond());
+                    ps.setLong(paramIdx++, from.getEpochSecond());
+                }
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    workloads.add(List.of(rs.getString("namespace"), rs.getString("kind"), rs.getString("name"),
+                            rs.getString("compliance_status")));
+                }
+            }
         }
-        sql.append("LIMIT 500");
+    }
 
-        try (Connection conn = dataSource.getConnection();
-             PreparedStatement ps = conn.prepareStatement(sql.toString())) {
-            if (from != null && to != null) {
-                ps.setString(1, to.toString());
-                ps.setString(2, from.toString());
+    /**
+     * Adds the workload counts per compliance status of some schemas to the summary.
+     *
+     * @param conn    the connection the schemas are attached to
+     * @param schemas the schemas holding snapshots and inventory
+     * @param from    start time (optional)
+     * @param to      end time (optional)
+     * @param summary the counts per compliance status
+     * @throws SQLException if a database access error occurs
+     */
+    private void countCompliance(Connection conn, List<String> schemas, Instant from, Instant to,
+                                 Map<String, Integer> summary) throws SQLException {
+        boolean windowed = from != null && to != null;
+        try (PreparedStatement ps = conn.prepareStatement(complianceSummarySql(windowed, schemas))) {
+            if (windowed) {
+                int paramIdx = 1;
+                for (int i = 0; i < schemas.size(); i++) {
+                    ps.setLong(paramIdx++, to.getEpochSecond());
+                    ps.setLong(paramIdx++, from.getEpochSecond());
+                }
             }
-
             try (ResultSet rs = ps.executeQuery()) {
                 while (rs.next()) {
-                    WorkloadInventory w = new WorkloadInventory();
-                    w.setNamespace(rs.getString("namespace"));
-                    w.setKind(rs.getString("kind"));
-                    w.setName(rs.getString("name"));
-                    w.setComplianceStatus(rs.getString("compliance_status"));
-                    items.add(w);
-
-                    String status = w.getComplianceStatus();
-                    if ("OK".equals(status)) summary.merge("ok", 1, Integer::sum);
-                    else if ("MISSING_REQUESTS".equals(status)) summary.merge("missingRequests", 1, Integer::sum);
-                    else if ("MISSING_LIMITS".equals(status)) summary.merge("missingLimits", 1, Integer::sum);
-                    else if ("BOTH_MISSING".equals(status)) summary.merge("bothMissing", 1, Integer::sum);
+                    addCompliance(summary, rs.getString("compliance_status"), rs.getInt("workloads"));
                 }
             }
+        }
+    }
+
+    /**
+     * Adds a number of workloads with a compliance status to the summary.
+     *
+     * @param summary   the counts per compliance status
+     * @param status    the compliance status
+     * @param workloads the number of workloads
+     */
+    private static void addCompliance(Map<String, Integer> summary, String status, int workloads) {
+        if ("OK".equals(status)) summary.merge("ok", workloads, Integer::sum);
+        else if ("MISSING_REQUESTS".equals(status)) summary.merge("missingRequests", workloads, Integer::sum);
+        else if ("MISSING_LIMITS".equals(status)) summary.merge("missingLimits", workloads, Integer::sum);
+        else if ("BOTH_MISSING".equals(status)) summary.merge("bothMissing", workloads, Integer::sum);
+    }
+
+    /**
+     * Computes the panels of the dashboard for a time range: the cost per namespace, the top applications and
+     * the compliance summary. The panels read different tables, so their queries run in parallel, each on its
+     * own connection, and the dashboard takes as long as the slowest of them.
+     *
+     * @param from    the start time
+     * @param to      the end time
+     * @param topApps the number of top applications
+     * @return the dashboard
+     */
+    public DashboardReport findDashboard(Instant from, Instant to, int topApps) {
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            Future<List<AllocationSnapshot>> namespaces = executor.submit(() -> {
+                List<AllocationSnapshot> rows = findAllocations(from, to, "NAMESPACE");
+                rows.sort(Comparator.comparingDouble(AllocationSnapshot::getTotalCostUnits).reversed());
+                return rows;
+            });
+            Future<List<AllocationSnapshot>> apps = executor.submit(() -> findTopApps(from, to, null, topApps));
+            Future<Map<String, Integer>> compliance = executor.submit(() -> findComplianceSummary(from, to));
+            return new DashboardReport(namespaces.get(), apps.get(), compliance.get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while computing the dashboard", e);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof RuntimeException cause ? cause : new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Reads the version of the report data, which changes with every write by the collector.
+     *
+     * @return the version
+     */
+    public long findReportVersion() {
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement ps = conn.prepareStatement(REPORT_VERSION_SQL);
+             ResultSet rs = ps.executeQuery()) {
+            return rs.next() ? rs.getLong(1) : 0;
         } catch (SQLException e) {
             throw new RuntimeException(e);
         }
-
-        Map<String, Object> response = new HashMap<>();
-        response.put("summary", summary);
-        response.put("items", items);
-        return response;
     }
 
     /**
@@ -179,10 +748,8 @@ public class ReportRepository {
      */
     public List<Map<String, Object>> findAlerts(int limit) {
         List<Map<String, Object>> results = new ArrayList<>();
-        String sql = "SELECT * FROM alerts ORDER BY timestamp DESC LIMIT ?";
-
         try (Connection conn = dataSource.getConnection();
-             PreparedStatement ps = conn.prepareStatement(sql)) {
+             PreparedStatement ps = conn.prepareStatement(ALERTS_SQL)) {
             ps.setInt(1, limit);
 
             try (ResultSet rs = ps.executeQuery()) {
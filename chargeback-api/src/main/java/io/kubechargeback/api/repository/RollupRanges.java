@@ -0,0 +1,68 @@
+package io.kubechargeback.api.repository;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+
+/**
+ * Splits a report range into the parts served by monthly rollups, daily rollups and raw snapshots.
+ * Rollup buckets are UTC days and months, and a snapshot belongs to the bucket its window starts in.
+ * A bucket is only used if it lies entirely inside the range, which makes the composed result equal
+ * to summing the raw snapshots: whole months in the middle, whole days around them, raw rows at both edges.
+ *
+ * @param rawFrom    the earliest window start considered at the left edge
+ * @param from       the requested start; raw windows at the left edge must end after it
+ * @param to         the requested end
+ * @param dayStart   the start of the first whole day inside the range
+ * @param monthStart the start of the first whole month inside the whole days
+ * @param monthEnd   the end of the last whole month inside the whole days
+ * @param dayEnd     the end of the last whole day inside the range
+ */
+record RollupRanges(Instant rawFrom, Instant from, Instant to,
+                    Instant dayStart, Instant monthStart, Instant monthEnd, Instant dayEnd) {
+
+    /**
+     * Upper bound for the length of a collector window. Raw windows starting more than this before the
+     * range start are not considered, which keeps the left edge bounded.
+     */
+    static final long MAX_WINDOW_HOURS = 24;
+
+    /**
+     * Computes the ranges for a report.
+     *
+     * @param from the start time
+     * @param to   the end time
+     * @return the ranges
+     */
+    static RollupRanges of(Instant from, Instant to) {
+        Instant rawFrom = from.minus(MAX_WINDOW_HOURS, ChronoUnit.HOURS);
+        Instant dayStart = ceilDay(from);
+        Instant dayEnd = to.truncatedTo(ChronoUnit.DAYS);
+        if (!dayStart.isBefore(dayEnd)) {
+            // No whole day: everything is read from raw snapshots, split at an arbitrary point.
+            return new RollupRanges(rawFrom, from, to, dayStart, dayStart, dayStart, dayStart);
+        }
+        Instant monthStart = ceilMonth(dayStart);
+        Instant monthEnd = floorMonth(dayEnd);
+        if (!monthStart.isBefore(monthEnd)) {
+            monthStart = dayStart;
+            monthEnd = dayStart;
+        }
+        return new RollupRanges(rawFrom, from, to, dayStart, monthStart, monthEnd, dayEnd);
+    }
+
+    private static Instant ceilDay(Instant t) {
+        Instant floor = t.truncatedTo(ChronoUnit.DAYS);
+        return floor.equals(t) ? floor : floor.plus(1, ChronoUnit.DAYS);
+    }
+
+    private static Instant floorMonth(Instant t) {
+        return LocalDate.ofInstant(t, ZoneOffset.UTC).withDayOfMonth(1).atStartOfDay(ZoneOffset.UTC).toInstant();
+    }
+
+    private static Instant ceilMonth(Instant t) {
+        Instant floor = floorMonth(t);
+        return floor.equals(t) ? floor : LocalDate.ofInstant(floor, ZoneOffset.UTC).plusMonths(1).atStartOfDay(ZoneOffset.UTC).toInstant();
+    }
+}
@@ -0,0 +1,146 @@
+package io.kubechargeback.api.resource;
+
+import io.kubechargeback.api.repository.ReportRepository;
+import jakarta.ws.rs.core.StreamingOutput;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes an allocation report as CSV straight from the result set to the response.
+ * Rows are formatted into one reused buffer and never collected, so the memory used by an export
+ * does not depend on the number of rows.
+ */
+class AllocationCsvOutput implements StreamingOutput {
+
+    static final String HEADER = "Group Key,CPU (mCPU),Memory (MiB),CPU Cost,Memory Cost,Total Cost\n";
+
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * Largest magnitude formatted with long arithmetic; 4 decimals of it still fit into a long.
+     */
+    private static final double MAX_FAST = 1e14;
+
+    /**
+     * Relative distance from a half-way point within which the scaled double may round differently
+     * from its shortest decimal form; a few times the combined error of the conversion and the scaling.
+     */
+    private static final double HALF_TOLERANCE = 1e-15;
+
+    private final ReportRepository repository;
+    private final Instant from;
+    private final Instant to;
+    private final String groupBy;
+    private final boolean gzip;
+
+    /**
+     * Creates the export of an allocation report.
+     *
+     * @param repository the repository to read the report from
+     * @param from       the start time
+     * @param to         the end time
+     * @param groupBy    the dimension to group by
+     * @param gzip       whether the CSV is gzip-compressed
+     */
+    AllocationCsvOutput(ReportRepository repository, Instant from, Instant to, String groupBy, boolean gzip) {
+        this.repository = repository;
+        this.from = from;
+        this.to = to;
+        this.groupBy = groupBy;
+        this.gzip = gzip;
+    }
+
+    @Override
+    public void write(OutputStream output) throws IOException {
+        OutputStream out = gzip ? new GZIPOutputStream(output, BUFFER_SIZE) : output;
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_SIZE);
+        writer.write(HEADER);
+        StringBuilder line = new StringBuilder(128);
+        repository.streamAllocations(from, to, groupBy, (groupKey, cpu, mem, cpuCost, memCost, totalCost) -> {
+            line.setLength(0);
+            appendField(line, groupKey);
+            line.append(',').append(cpu).append(',').append(mem).append(',');
+            appendFixed4(line, cpuCost);
+            line.append(',');
+            appendFixed4(line, memCost);
+            line.append(',');
+            appendFixed4(line, totalCost);
+            line.append('\n');
+            writer.append(line);
+        });
+        writer.flush();
+        if (out instanceof GZIPOutputStream compressed) {
+            compressed.finish();
+        }
+    }
+
+    /**
+     * Appends a text field, quoted if it contains a separator, a quote or a line break.
+     *
+     * @param sb    the buffer
+     * @param value the value; null is written as an empty field
+     */
+    static void appendField(StringBuilder sb, String value) {
+        if (value == null) {
+            return;
+        }
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            sb.append(value);
+            return;
+        }
+        sb.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                sb.append('"');
+            }
+            sb.append(c);
+        }
+        sb.append('"');
+    }
+
+    /**
+     * Appends a number with exactly four decimals, like {@code %.4f} in the root locale.
+     * Like {@link java.util.Formatter}, it rounds the shortest decimal form of the double half up, not its binary value.
+     * Long arithmetic is only used where both agree; values close to a half-way point take the {@link BigDecimal} path.
+     *
+     * @param sb    the buffer
+     * @param value the number
+     */
+    static void appendFixed4(StringBuilder sb, double value) {
+        if (!Double.isFinite(value)) {
+            sb.append(value);
+            return;
+        }
+        double scaled = Math.abs(value) * 10_000;
+        double tail = scaled - Math.floor(scaled);
+        if (Math.abs(value) >= MAX_FAST || Math.abs(tail - 0.5) <= scaled * HALF_TOLERANCE) {
+            sb.append(BigDecimal.valueOf(value).setScale(4, RoundingMode.HALF_UP).toPlainString());
+            return;
+        }
+        long rounded = Math.round(scaled);
+        if (value < 0) {
+            sb.append('-');
+        }
+        long fraction = rounded % 10_000;
+        sb.append(rounded / 10_000).append('.');
+        for (long pad = 1000; pad > 1 && fraction < pad; pad /= 10) {
+            sb.append('0');
+        }
+        sb.append(fraction);
+    }
+}
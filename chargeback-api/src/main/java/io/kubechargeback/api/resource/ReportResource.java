@@ -1,34 +1,140 @@
 package io.kubechargeback.api.resource;
 
+import io.kubechargeback.api.repository.AllocationSort;
+import io.kubechargeback.api.repository.ComplianceReport;
+import io.kubechargeback.api.repository.Page;
+import io.kubechargeback.api.repository.ReportCache;
 import io.kubechargeback.api.repository.ReportRepository;
 import io.kubechargeback.common.model.AllocationSnapshot;
 import jakarta.inject.Inject;
 import jakarta.ws.rs.*;
+import jakarta.ws.rs.core.CacheControl;
+import jakarta.ws.rs.core.Context;
+import jakarta.ws.rs.core.EntityTag;
 import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Request;
 import jakarta.ws.rs.core.Response;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
 import java.time.Instant;
+import java.util.Arrays;
+import java.util.Date;
 import java.util.List;
+import java.util.Locale;
+import java.util.function.Supplier;
 
 @Path("/api/v1/reports") 
 @Produces(MediaType.APPLICATION_JSON)
 public class ReportResource {
 
+    /**
+     * The response header carrying the cursor of the next page; absent on the last page.
+     */
+    static final String NEXT_CURSOR = "X-Next-Cursor";
+
+    static final int MAX_PAGE_SIZE = 5000;
+
+    /**
+     * The page size of an allocations request that passes a cursor without a page size.
+     */
+    static final int DEFAULT_PAGE_SIZE = 500;
+
     @Inject
     ReportRepository repository;
 
+    @Inject
+    ReportCache cache;
+
+    @ConfigProperty(name = "report-http.max-age", defaultValue = "0")
+    int maxAge;
+
+    @ConfigProperty(name = "report-export.gzip", defaultValue = "true")
+    boolean exportGzip;
+
+    /**
+     * Checks if a client accepts gzip-compressed responses.
+     *
+     * @param acceptEncoding the Accept-Encoding header, or null
+     * @return true if gzip is listed and not refused with {@code q=0}
+     */
+    static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.split(";");
+            if (parts[0].trim().equalsIgnoreCase("gzip")) {
+                for (int i = 1; i < parts.length; i++) {
+                    String param = parts[i].trim().replace(" ", "");
+                    if (param.matches("q=0(\\.0*)?")) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks a requested page size.
+     *
+     * @param pageSize the page size
+     * @throws IllegalArgumentException if it is not between 1 and {@link #MAX_PAGE_SIZE}
+     */
+    private static void checkPageSize(int pageSize) {
+        if (pageSize < 1 || pageSize > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("pageSize must be between 1 and " + MAX_PAGE_SIZE);
+        }
+    }
+
+    /**
+     * Answers a report request, or a conditional request for it, with validators and cache headers.
+     * The ETag combines the version of the report data with the report parameters, so a matching
+     * {@code If-None-Match} or {@code If-Modified-Since} is answered with 304 before any report query runs.
+     *
+     * @param request the request, carrying the preconditions
+     * @param params  the normalized report name and parameters
+     * @param ok      builds the full response if the client's copy is outdated
+     * @return the response
+     */
+    private Response conditional(Request request, List<Object> params, Supplier<Response.ResponseBuilder> ok) {
+        ReportCache.DataVersion version = cache.dataVersion();
+        EntityTag etag = new EntityTag(Long.toHexString(version.version()) + "-" + Integer.toHexString(params.hashCode()));
+        Date lastModified = Date.from(version.changedAt());
+        Response.ResponseBuilder builder = request.evaluatePreconditions(lastModified, etag);
+        if (builder == null) {
+            builder = ok.get();
+        }
+        CacheControl cacheControl = new CacheControl();
+        cacheControl.setMaxAge(maxAge);
+        cacheControl.setMustRevalidate(true);
+        return builder.tag(etag).lastModified(lastModified).cacheControl(cacheControl).build();
+    }
+
     /**
      * Retrieves allocation data within a time range, grouped by a specific dimension.
+     * Without {@code pageSize} and {@code cursor} all rows are returned, as before paging was added. Otherwise
+     * one page is returned, and the cursor of the next page in the {@code X-Next-Cursor} header.
      *
-     * @param from    the start time (ISO-8601)
-     * @param to      the end time (ISO-8601)
-     * @param groupBy the dimension to group by (e.g., TEAM, NAMESPACE, APP)
+     * @param from     the start time (ISO-8601)
+     * @param to       the end time (ISO-8601)
+     * @param groupBy  the dimension to group by (e.g., TEAM, NAMESPACE, APP)
+     * @param sortBy   the sort order (totalCost|cpu|mem|key); metrics sort descending
+     * @param pageSize the maximum number of rows, or null
+     * @param cursor   the cursor of the page to return, or null for the first page
+     * @param request  the request, carrying the preconditions
      * @return a response containing the allocation data
      */
     @GET
     @Path("/allocations")
     public Response allocations(@QueryParam("from") String from, 
                                 @QueryParam("to") String to,
-                                @QueryParam("groupBy") String groupBy) {
+                                @QueryParam("groupBy") String groupBy,
+                                @QueryParam("sortBy") @DefaultValue("totalCost") String sortBy,
+                                @QueryParam("pageSize") Integer pageSize,
+                                @QueryParam("cursor") String cursor,
+                                @Context Request request) {
         if (from == null || to == null || groupBy == null) {
             return Response.status(Response.Status.BAD_REQUEST).entity("{\"error\":\"Missing params\"}").build();
         }
@@ -38,7 +144,17 @@ public class ReportResource {
             if (fromInst.isAfter(toInst)) {
                 return Response.status(Response.Status.BAD_REQUEST).entity("{\"error\":\"from > to\"}").build();
             }
-            return Response.ok(repository.findAllocations(fromInst, toInst, groupBy)).build();
+            AllocationSort sort = AllocationSort.of(sortBy);
+            if (pageSize != null) {
+                checkPageSize(pageSize);
+            }
+            int limit = pageSize != null ? pageSize : cursor != null ? DEFAULT_PAGE_SIZE : Integer.MAX_VALUE;
+            return conditional(request, Arrays.asList("allocations", fromInst, toInst, groupBy.toUpperCase(Locale.ROOT),
+                    sort, limit, cursor), () -> {
+                Page<AllocationSnapshot> page = cache.findAllocations(fromInst, toInst, groupBy, sort, limit, cursor);
+                Response.ResponseBuilder builder = Response.ok(page.items());
+                return page.nextCursor() != null ? builder.header(NEXT_CURSOR, page.nextCursor()) : builder;
+            });
         } catch (Exception e) {
              return Response.status(Response.Status.BAD_REQUEST).entity("{\"error\":\"" + e.getMessage() + "\"}").build();
         }
@@ -46,10 +162,13 @@ public class ReportResource {
 
     /**
      * Exports allocation data to CSV.
+     * Rows are streamed from the database to the client, gzip-compressed if the client accepts it.
      *
-     * @param from    the start time (ISO-8601)
-     * @param to      the end time (ISO-8601)
-     * @param groupBy the dimension to group by
+     * @param from           the start time (ISO-8601)
+     * @param to             the end time (ISO-8601)
+     * @param groupBy        the dimension to group by
+     * @param acceptEncoding the encodings accepted by the client
+     * @param request        the request, carrying the preconditions
      * @return a CSV file
      */
     @GET
@@ -57,32 +176,23 @@ public class ReportResource {
     @Produces("text/csv")
     public Response exportAllocations(@QueryParam("from") String from,
                                       @QueryParam("to") String to,
-                                      @QueryParam("groupBy") String groupBy) {
+                                      @QueryParam("groupBy") String groupBy,
+                                      @HeaderParam("Accept-Encoding") String acceptEncoding,
+                                      @Context Request request) {
         if (from == null || to == null || groupBy == null) {
             return Response.status(Response.Status.BAD_REQUEST).entity("Missing params").build();
         }
         try {
             Instant fromInst = Instant.parse(from);
             Instant toInst = Instant.parse(to);
-            List<AllocationSnapshot> data = repository.findAllocations(fromInst, toInst, groupBy);
-
-            StringBuilder csv = new StringBuilder();
-            csv.append("Group Key,CPU (mCPU),Memory (MiB),CPU Cost,Memory Cost,Total Cost\n");
-            
-            for (AllocationSnapshot s : data) {
-                csv.append(String.format("%s,%d,%d,%.4f,%.4f,%.4f\n",
-                    s.getGroupKey(),
-                    s.getCpuMcpu(),
-                    s.getMemMib(),
-                    s.getCpuCostUnits(),
-                    s.getMemCostUnits(),
-                    s.getTotalCostUnits()
-                ));
-            }
-
-            return Response.ok(csv.toString())
-                    .header("Content-Disposition", "attachment; filename=\"allocations.csv\"")
-                    .build();
+            boolean gzip = exportGzip && acceptsGzip(acceptEncoding);
+            // the encodings are different representations, so they must not share a validator
+            return conditional(request, Arrays.asList("export", fromInst, toInst, groupBy.toUpperCase(Locale.ROOT), gzip), () -> {
+                Response.ResponseBuilder builder = Response.ok(new AllocationCsvOutput(repository, fromInst, toInst, groupBy, gzip))
+                        .header("Content-Disposition", "attachment; filename=\"allocations.csv\"")
+                        .header("Vary", "Accept-Encoding");
+                return gzip ? builder.header("Content-Encoding", "gzip") : builder;
+            });
         } catch (Exception e) {
              return Response.status(Response.Status.BAD_REQUEST).entity(e.getMessage()).build();
         }
@@ -91,10 +201,11 @@ public class ReportResource {
     /**
      * Retrieves the top applications by cost within a time range.
      *
-     * @param from  the start time (ISO-8601)
-     * @param to    the end time (ISO-8601)
-     * @param team  optional team filter
-     * @param limit the maximum number of applications to return
+     * @param from    the start time (ISO-8601)
+     * @param to      the end time (ISO-8601)
+     * @param team    optional team filter
+     * @param limit   the maximum number of applications to return
+     * @param request the request, carrying the preconditions
      * @return a response containing the top applications
      */
     @GET
@@ -102,39 +213,86 @@ public class ReportResource {
     public Response topApps(@QueryParam("from") String from,
                             @QueryParam("to") String to,
                             @QueryParam("team") String team,
-                            @QueryParam("limit") @DefaultValue("10") int limit) {
+                            @QueryParam("limit") @DefaultValue("10") int limit,
+                            @Context Request request) {
          if (from == null || to == null) {
             return Response.status(Response.Status.BAD_REQUEST).entity("{\"error\":\"Missing params\"}").build();
         }
         try {
             Instant fromInst = Instant.parse(from);
             Instant toInst = Instant.parse(to);
-            return Response.ok(repository.findTopApps(fromInst, toInst, team, limit)).build();
+            String filter = team == null || team.isBlank() ? null : team;
+            return conditional(request, Arrays.asList("top-apps", fromInst, toInst, filter, limit),
+                    () -> Response.ok(cache.findTopApps(fromInst, toInst, team, limit)));
         } catch (Exception e) {
             return Response.status(Response.Status.BAD_REQUEST).entity("{\"error\":\"" + e.getMessage() + "\"}").build();
         }
     }
 
     /**
-     * Retrieves compliance data within a time range.
+     * Retrieves one page of compliance data within a time range, ordered by namespace, kind, name and status.
+     * The cursor of the next page is returned in the body and in the {@code X-Next-Cursor} header.
      *
-     * @param from the start time (ISO-8601)
-     * @param to   the end time (ISO-8601)
+     * @param from     the start time (ISO-8601)
+     * @param to       the end time (ISO-8601)
+     * @param pageSize the maximum number of workloads
+     * @param cursor   the cursor of the page to return, or null for the first page
+     * @param request  the request, carrying the preconditions
      * @return a response containing the compliance data
      */
     @GET
     @Path("/compliance")
-    public Response compliance(@QueryParam("from") String from, @QueryParam("to") String to) {
+    public Response compliance(@QueryParam("from") String from, @QueryParam("to") String to,
+                               @QueryParam("pageSize") @DefaultValue("500") int pageSize,
+                               @QueryParam("cursor") String cursor,
+                               @Context Request request) {
         // Validation could be strict, but for MVP we might just ignore dates if repo ignores them
         try {
             Instant fromInst = from != null ? Instant.parse(from) : null;
             Instant toInst = to != null ? Instant.parse(to) : null;
-            return Response.ok(repository.findCompliance(fromInst, toInst)).build();
+            checkPageSize(pageSize);
+            return conditional(request, Arrays.asList("compliance", fromInst, toInst, pageSize, cursor), () -> {
+                ComplianceReport report = cache.findCompliance(fromInst, toInst, pageSize, cursor);
+                Response.ResponseBuilder builder = Response.ok(report);
+                return report.nextCursor() != null ? builder.header(NEXT_CURSOR, report.nextCursor()) : builder;
+            });
         } catch (Exception e) {
              return Response.status(Response.Status.BAD_REQUEST).entity("{\"error\":\"" + e.getMessage() + "\"}").build();
         }
     }
 
+    /**
+     * Retrieves all panels of the dashboard within a time range in one response: the cost per namespace,
+     * the top applications by cost and the compliance summary.
+     *
+     * @param from    the start time (ISO-8601)
+     * @param to      the end time (ISO-8601)
+     * @param limit   the number of top applications
+     * @param request the request, carrying the preconditions
+     * @return a response containing the dashboard
+     */
+    @GET
+    @Path("/dashboard")
+    public Response dashboard(@QueryParam("from") String from,
+                              @QueryParam("to") String to,
+                              @QueryParam("limit") @DefaultValue("10") int limit,
+                              @Context Request request) {
+        if (from == null || to == null) {
+            return Response.status(Response.Status.BAD_REQUEST).entity("{\"error\":\"Missing params\"}").build();
+        }
+        try {
+            Instant fromInst = Instant.parse(from);
+            Instant toInst = Instant.parse(to);
+            if (fromInst.isAfter(toInst)) {
+                return Response.status(Response.Status.BAD_REQUEST).entity("{\"error\":\"from > to\"}").build();
+            }
+            return conditional(request, Arrays.asList("dashboard", fromInst, toInst, limit),
+                    () -> Response.ok(cache.findDashboard(fromInst, toInst, limit)));
+        } catch (Exception e) {
+            return Response.status(Response.Status.BAD_REQUEST).entity("{\"error\":\"" + e.getMessage() + "\"}").build();
+        }
+    }
+
     /**
      * Retrieves the recent alert history.
      *
@@ -18,7 +18,7 @@ CREATE TABLE IF NOT EXISTS budgets (
 -- 3.2 allocation_snapshots
 CREATE TABLE IF NOT EXISTS allocation_snapshots (
   id TEXT PRIMARY KEY, -- UUID
-  window_start TEXT NOT NULL, -- ISO-8601
+  window_start TEXT NOT NULL, -- ISO-8601 here, INTEGER epoch seconds after migration V4
   window_end TEXT NOT NULL,
   group_type TEXT NOT NULL, -- TEAM|NAMESPACE|APP
   group_key TEXT NOT NULL,
@@ -0,0 +1,326 @@
+package io.kubechargeback.api.repository;
+
+import io.agroal.api.AgroalDataSource;
+import io.kubechargeback.common.db.PartitionStore;
+import io.kubechargeback.common.model.AllocationSnapshot;
+import io.quarkus.test.junit.QuarkusTest;
+import jakarta.inject.Inject;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Compares the reports read from monthly partitions with the reports of the same data kept in the main database.
+ * The data spans more months than can be attached at once, so every report that reads all partitions merges
+ * several groups of them.
+ */
+@QuarkusTest
+public class PartitionedReportTest {
+
+    private static final YearMonth FIRST = YearMonth.of(2025, 1);
+    private static final int MONTHS = PartitionStore.MAX_ATTACHED + 2;
+    private static final String[] STATUSES = { "OK", "MISSING_REQUESTS", "MISSING_LIMITS", "BOTH_MISSING", "OK" };
+
+    private static final List<Instant[]> RANGES = List.of(
+            range("2025-01-01T00:00:00Z", "2025-11-01T00:00:00Z"),
+            range("2025-01-15T11:30:00Z", "2025-10-31T23:30:00Z"),
+            range("2024-12-01T00:00:00Z", "2026-01-01T00:00:00Z"),
+            range("2025-03-01T00:00:00Z", "2025-06-10T00:00:00Z"));
+
+    @Inject
+    AgroalDataSource dataSource;
+
+    private ReportRepository single;
+    private ReportRepository partitioned;
+    private Path tempDir;
+
+    @BeforeEach
+    void setup() throws Exception {
+        clear();
+        tempDir = Files.createTempDirectory("partitions");
+        single = repository(Optional.empty());
+        partitioned = repository(Optional.of(tempDir.toString()));
+        try (Connection conn = dataSource.getConnection()) {
+            for (int m = 0; m < MONTHS; m++) {
+                YearMonth month = FIRST.plusMonths(m);
+                for (Instant start : List.of(at(month, 3, 10), at(month, 15, 12), at(month.atEndOfMonth(), 23))) {
+                    insertWindow(conn, month, m, start);
+                }
+            }
+        }
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        clear();
+        try (Stream<Path> files = Files.walk(tempDir)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    /**
+     * Tests that allocations read with raw edges in partitions sum up as in a single database.
+     */
+    @Test
+    void testFindAllocations_MatchesSingleDatabase() throws SQLException {
+        List<String> expected = allocationReports(single);
+        moveToPartitions();
+
+        assertEquals(expected, allocationReports(partitioned));
+    }
+
+    /**
+     * Tests that the top applications merged across groups of partitions are cut to the limit only after merging.
+     */
+    @Test
+    void testFindTopApps_MatchesSingleDatabase() throws SQLException {
+        List<List<String>> expected = new ArrayList<>();
+        for (Instant[] r : RANGES) {
+            expected.add(describe(single.findTopApps(r[0], r[1], null, 3)));
+            expected.add(describe(single.findTopApps(r[0], r[1], "team-0", 2)));
+        }
+        moveToPartitions();
+
+        List<List<String>> actual = new ArrayList<>();
+        for (Instant[] r : RANGES) {
+            actual.add(describe(partitioned.findTopApps(r[0], r[1], null, 3)));
+            actual.add(describe(partitioned.findTopApps(r[0], r[1], "team-0", 2)));
+        }
+        assertEquals(expected, actual);
+        assertEquals(3, actual.get(0).size());
+        assertTrue(actual.get(0).get(0).startsWith("app-4 "), actual.get(0).toString());
+    }
+
+    /**
+     * Tests that compliance pages merged across groups of partitions hold the same workloads, without duplicates,
+     * and carry the same cursors and summaries as in a single database.
+     */
+    @Test
+    void testFindCompliance_MatchesSingleDatabase() throws SQLException {
+        List<List<String>> expected = new ArrayList<>();
+        List<Map<String, Integer>> expectedSummaries = new ArrayList<>();
+        for (Instant[] r : RANGES) {
+            expected.add(compliancePages(single, r[0], r[1]));
+            expectedSummaries.add(single.findComplianceSummary(r[0], r[1]));
+        }
+        expected.add(compliancePages(single, null, null));
+        expectedSummaries.add(single.findComplianceSummary(null, null));
+        moveToPartitions();
+
+        List<List<String>> actual = new ArrayList<>();
+        List<Map<String, Integer>> actualSummaries = new ArrayList<>();
+        for (Instant[] r : RANGES) {
+            actual.add(compliancePages(partitioned, r[0], r[1]));
+            actualSummaries.add(partitioned.findComplianceSummary(r[0], r[1]));
+        }
+        actual.add(compliancePages(partitioned, null, null));
+        actualSummaries.add(partitioned.findComplianceSummary(null, null));
+        assertEquals(expected, actual);
+        assertEquals(expectedSummaries, actualSummaries);
+        // 5 applications and one job per team and month
+        assertEquals(5 + 2 * MONTHS, expected.get(0).stream().filter(line -> !line.startsWith("cursor")).count());
+        assertEquals(5 + 2 * MONTHS, expectedSummaries.get(0).values().stream().mapToInt(Integer::intValue).sum());
+    }
+
+    /**
+     * Tests that report queries attach partitions read-only.
+     */
+    @Test
+    void testAttach_ReadOnly() throws SQLException {
+        moveToPartitions();
+        List<YearMonth> months = partitioned.partitions().months();
+        assertEquals(MONTHS, months.size());
+
+        try (Connection conn = dataSource.getConnection();
+             PartitionStore.Attachment attachment = partitioned.partitions().attach(conn, months.subList(0, 1), true);
+             Statement stmt = conn.createStatement()) {
+            String schema = attachment.partitions().get(0);
+            SQLException e = assertThrows(SQLException.class,
+                    () -> stmt.executeUpdate("DELETE FROM " + schema + ".allocation_snapshots"));
+            assertTrue(e.getMessage().contains("readonly"), e.getMessage());
+        }
+    }
+
+    private ReportRepository repository(Optional<String> partitionDir) {
+        ReportRepository repository = new ReportRepository();
+        repository.dataSource = dataSource;
+        repository.partitionDir = partitionDir;
+        return repository;
+    }
+
+    /**
+     * Writes the snapshots and inventory of one window to the main database, whose triggers fill the rollups.
+     * Applications 0 to 3 run in every month; application 4 only in the last two months, at a higher cost,
+     * so it only leads the top applications once every group of partitions is merged.
+     */
+    private void insertWindow(Connection conn, YearMonth month, int m, Instant start) throws SQLException {
+        long from = start.getEpochSecond();
+        try (PreparedStatement snapshot = conn.prepareStatement(
+                "INSERT INTO allocation_snapshots (id, window_start, window_end, group_type, group_key, cpu_mcpu, " +
+                        "mem_mib, cpu_cost_units, mem_cost_units, total_cost_units) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)");
+             PreparedStatement inventory = conn.prepareStatement(
+                     "INSERT INTO workload_inventory (snapshot_id, namespace, kind, name, labels_json, " +
+                             "cpu_request_mcpu, mem_request_mib, compliance_status, team, app) " +
+                             "VALUES (?, ?, ?, ?, '{}', 100, 64, ?, ?, ?)")) {
+            for (int a = 0; a < 5; a++) {
+                if (a == 4 && m < MONTHS - 2) {
+                    continue;
+                }
+                String id = "app-" + a + "-" + from;
+                double cost = a == 4 ? 30 : a + 1;
+                bindSnapshot(snapshot, id, from, "APP", "app-" + a, 10L * (a + 1), cost);
+                bindInventory(inventory, id, "ns-" + a % 2, "Deployment", "app-" + a, STATUSES[a], "team-" + a % 2, "app-" + a);
+            }
+            for (int t = 0; t < 2; t++) {
+                String id = "team-" + t + "-" + from;
+                bindSnapshot(snapshot, id, from, "TEAM", "team-" + t, 100L + m, 0.25 * (m + t + 1));
+                bindInventory(inventory, id, "ns-" + t, "Job", "job-" + month, "OK", "team-" + t, null);
+            }
+            snapshot.executeBatch();
+            inventory.executeBatch();
+        }
+    }
+
+    private void bindSnapshot(PreparedStatement ps, String id, long from, String type, String key, long cpu,
+                              double cost) throws SQLException {
+        ps.setString(1, id);
+        ps.setLong(2, from);
+        ps.setLong(3, from + 3600);
+        ps.setString(4, type);
+        ps.setString(5, key);
+        ps.setLong(6, cpu);
+        ps.setLong(7, 2 * cpu);
+        ps.setDouble(8, cost / 2);
+        ps.setDouble(9, cost / 2);
+        ps.setDouble(10, cost);
+        ps.addBatch();
+    }
+
+    private void bindInventory(PreparedStatement ps, String snapshotId, String namespace, String kind, String name,
+                               String status, String team, String app) throws SQLException {
+        ps.setString(1, snapshotId);
+        ps.setString(2, namespace);
+        ps.setString(3, kind);
+        ps.setString(4, name);
+        ps.setString(5, status);
+        ps.setString(6, team);
+        ps.setString(7, app);
+        ps.addBatch();
+    }
+
+    /**
+     * Moves the raw snapshots and inventory of every month into its partition, as the collector writes them.
+     * Raising the retention horizon keeps the rollups of the deleted rows, as retention does.
+     */
+    private void moveToPartitions() throws SQLException {
+        PartitionStore store = new PartitionStore(tempDir);
+        try (Connection conn = dataSource.getConnection()) {
+            for (int m = 0; m < MONTHS; m++) {
+                YearMonth month = FIRST.plusMonths(m);
+                try (PartitionStore.Attachment attachment = store.attach(conn, List.of(month), false);
+                     PreparedStatement snapshots = conn.prepareStatement("INSERT INTO " + attachment.partitions().get(0) +
+                             ".allocation_snapshots SELECT * FROM main.allocation_snapshots " +
+                             "WHERE window_start >= ? AND window_start < ?");
+                     PreparedStatement inventory = conn.prepareStatement("INSERT INTO " + attachment.partitions().get(0) +
+                             ".workload_inventory SELECT i.* FROM main.workload_inventory i " +
+                             "JOIN main.allocation_snapshots s ON i.snapshot_id = s.id " +
+                             "WHERE s.window_start >= ? AND s.window_start < ?")) {
+                    for (PreparedStatement ps : List.of(snapshots, inventory)) {
+                        ps.setLong(1, at(month, 1, 0).getEpochSecond());
+                        ps.setLong(2, at(month.plusMonths(1), 1, 0).getEpochSecond());
+                        assertTrue(ps.executeUpdate() > 0);
+                    }
+                }
+            }
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("UPDATE retention_horizon SET raw_before = " + Long.MAX_VALUE + " WHERE id = 1");
+                stmt.execute("DELETE FROM workload_inventory");
+                stmt.execute("DELETE FROM allocation_snapshots");
+                stmt.execute("UPDATE retention_horizon SET raw_before = 0 WHERE id = 1");
+            }
+        }
+    }
+
+    private void clear() throws SQLException {
+        try (Connection conn = dataSource.getConnection();
+             Statement stmt = conn.createStatement()) {
+            stmt.execute("UPDATE retention_horizon SET raw_before = 0 WHERE id = 1");
+            stmt.execute("DELETE FROM allocation_snapshots");
+            stmt.execute("DELETE FROM workload_inventory");
+            stmt.execute("DELETE FROM allocation_rollups_daily");
+            stmt.execute("DELETE FROM allocation_rollups_monthly");
+            stmt.execute("DELETE FROM budget_usage_ledger");
+        }
+    }
+
+    private List<String> allocationReports(ReportRepository repository) {
+        List<String> lines = new ArrayList<>();
+        for (Instant[] r : RANGES) {
+            for (String groupBy : List.of("team", "app")) {
+                lines.add(r[0] + " - " + r[1] + " by " + groupBy);
+                lines.addAll(describe(repository.findAllocations(r[0], r[1], groupBy)));
+            }
+            String cursor = null;
+            do {
+                Page<AllocationSnapshot> page = repository.findAllocations(r[0], r[1], "app", AllocationSort.TOTAL_COST, 2, cursor);
+                lines.addAll(describe(page.items()));
+                cursor = page.nextCursor();
+                lines.add("cursor " + cursor);
+            } while (cursor != null);
+        }
+        return lines;
+    }
+
+    private List<String> compliancePages(ReportRepository repository, Instant from, Instant to) {
+        List<String> lines = new ArrayList<>();
+        String cursor = null;
+        do {
+            ComplianceReport page = repository.findCompliance(from, to, 3, cursor);
+            page.items().forEach(w -> lines.add(
+                    w.getNamespace() + " " + w.getKind() + " " + w.getName() + " " + w.getComplianceStatus()));
+            cursor = page.nextCursor();
+            lines.add("cursor " + cursor + " " + new TreeMap<>(page.summary()));
+        } while (cursor != null);
+        return lines;
+    }
+
+    private static List<String> describe(List<AllocationSnapshot> snapshots) {
+        return snapshots.stream()
+                .map(s -> s.getGroupKey() + " " + s.getCpuMcpu() + " " + s.getMemMib() + " " + s.getTotalCostUnits())
+                .toList();
+    }
+
+    private static Instant at(YearMonth month, int day, int hour) {
+        return at(month.atDay(day), hour);
+    }
+
+    private static Instant at(LocalDate day, int hour) {
+        return day.atTime(hour, 0).toInstant(ZoneOffset.UTC);
+    }
+
+    private static Instant[] range(String from, String to) {
+        return new Instant[] { Instant.parse(from), Instant.parse(to) };
+    }
+}
@@ -0,0 +1,106 @@
+package io.kubechargeback.api.repository;
+
+import io.agroal.api.AgroalDataSource;
+import io.kubechargeback.common.db.PartitionStore;
+import io.quarkus.test.junit.QuarkusTest;
+import jakarta.inject.Inject;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Verifies that the report queries are served by indexes instead of full table scans.
+ * Listing all budgets is a deliberate full read of a small configuration table and is not covered here.
+ */
+@QuarkusTest
+public class QueryPlanTest {
+
+    private static final List<String> MAIN = List.of(PartitionStore.MAIN);
+
+    @Inject
+    AgroalDataSource dataSource;
+
+    /**
+     * Tests that no report query scans a whole table.
+     */
+    @Test
+    void testReportQueries_NoFullScans() throws SQLException {
+        for (String sql : List.of(
+                ReportRepository.allocationsSql(MAIN),
+                ReportRepository.topAppsSql(false, MAIN),
+                ReportRepository.topAppsSql(true, MAIN),
+                ReportRepository.allocationsPageSql(MAIN, AllocationSort.TOTAL_COST, true),
+                ReportRepository.allocationsPageSql(MAIN, AllocationSort.KEY, false),
+                ReportRepository.complianceSql(true, false, MAIN),
+                ReportRepository.complianceSql(true, true, MAIN),
+                ReportRepository.complianceSql(false, false, MAIN),
+                ReportRepository.complianceSql(false, true, MAIN),
+                ReportRepository.complianceSummarySql(true, MAIN),
+                ReportRepository.complianceSummarySql(false, MAIN),
+                ReportRepository.ALERTS_SQL,
+                ReportRepository.REPORT_VERSION_SQL)) {
+            assertEquals(List.of(), fullScans(sql), sql);
+        }
+    }
+
+    /**
+     * Tests that a compliance page is read in index order, without sorting the matching workloads.
+     */
+    @Test
+    void testCompliancePage_IndexOrdered() throws SQLException {
+        for (boolean windowed : new boolean[]{true, false}) {
+            String sql = ReportRepository.complianceSql(windowed, true, MAIN);
+            assertEquals(List.of(), plan(sql).stream().filter(d -> d.contains("TEMP B-TREE")).toList(), sql);
+        }
+    }
+
+    /**
+     * Tests that looking up a single budget uses its primary key.
+     */
+    @Test
+    void testBudgetLookup_NoFullScans() throws SQLException {
+        assertEquals(List.of(), fullScans("SELECT * FROM budgets WHERE id = ?"));
+    }
+
+    /**
+     * Runs EXPLAIN QUERY PLAN and collects every step that scans a table without an index.
+     * Scans of materialized subqueries read intermediate results, not tables, and are not reported.
+     *
+     * @param sql the query
+     * @return the offending plan steps
+     */
+    private List<String> fullScans(String sql) throws SQLException {
+        return plan(sql).stream()
+                .filter(d -> d.startsWith("SCAN ") && !d.contains(" INDEX ") && !d.startsWith("SCAN (subquery"))
+                .toList();
+    }
+
+    /**
+     * Runs EXPLAIN QUERY PLAN with all parameters bound to null.
+     *
+     * @param sql the query
+     * @return the details of the plan steps
+     */
+    private List<String> plan(String sql) throws SQLException {
+        List<String> steps = new ArrayList<>();
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement ps = conn.prepareStatement("EXPLAIN QUERY PLAN " + sql)) {
+            for (int i = 1; i <= ps.getParameterMetaData().getParameterCount(); i++) {
+                ps.setObject(i, null);
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    steps.add(rs.getString("detail"));
+                }
+            }
+        }
+        return steps;
+    }
+}
@@ -0,0 +1,91 @@
+package io.kubechargeback.api.repository;
+
+import io.agroal.api.AgroalDataSource;
+import io.kubechargeback.common.model.AllocationSnapshot;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.quarkus.test.junit.QuarkusTest;
+import jakarta.inject.Inject;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+@QuarkusTest
+public class ReportCacheTest {
+
+    private static final Instant START = Instant.parse("2026-02-01T10:00:00Z");
+    private static final Instant END = Instant.parse("2026-02-01T11:00:00Z");
+
+    @Inject
+    AgroalDataSource dataSource;
+
+    @Inject
+    MeterRegistry registry;
+
+    @Inject
+    ReportCache cache;
+
+    @BeforeEach
+    void setup() throws Exception {
+        try (Connection conn = dataSource.getConnection();
+             Statement stmt = conn.createStatement()) {
+            stmt.execute("DELETE FROM allocation_snapshots");
+            stmt.execute("DELETE FROM workload_inventory");
+        }
+        insertSnapshot("s1", "team-a", 100);
+    }
+
+    /**
+     * Tests that a repeated report is served from the cache, whatever the case of its group-by parameter.
+     */
+    @Test
+    void testFindAllocations_ServesRepeatsFromCache() {
+        double hits = gets("hit");
+        double misses = gets("miss");
+
+        Page<AllocationSnapshot> first = cache.findAllocations(START, END, "team", AllocationSort.TOTAL_COST, 10, null);
+        Page<AllocationSnapshot> second = cache.findAllocations(START, END, "TEAM", AllocationSort.TOTAL_COST, 10, null);
+
+        assertSame(first, second);
+        assertEquals(hits + 1, gets("hit"));
+        assertEquals(misses + 1, gets("miss"));
+    }
+
+    /**
+     * Tests that a new snapshot invalidates the cached reports.
+     */
+    @Test
+    void testFindAllocations_InvalidatedByNewSnapshot() throws Exception {
+        assertEquals(100, cache.findAllocations(START, END, "team", AllocationSort.TOTAL_COST, 10, null).items().get(0).getCpuMcpu());
+
+        insertSnapshot("s2", "team-b", 50);
+        double misses = gets("miss");
+
+        assertEquals(2, cache.findAllocations(START, END, "team", AllocationSort.TOTAL_COST, 10, null).items().size());
+        assertEquals(misses + 1, gets("miss"));
+    }
+
+    private double gets(String result) {
+        return registry.get("report.cache.gets").tag("result", result).functionCounter().count();
+    }
+
+    private void insertSnapshot(String id, String team, long cpu) throws Exception {
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement ps = conn.prepareStatement(
+                     "INSERT INTO allocation_snapshots (id, window_start, window_end, group_type, group_key, cpu_mcpu, mem_mib, " +
+                             "cpu_cost_units, mem_cost_units, total_cost_units) VALUES (?, ?, ?, 'TEAM', ?, ?, 0, 0, 0, 0)")) {
+            ps.setString(1, id);
+            ps.setLong(2, START.getEpochSecond());
+            ps.setLong(3, END.getEpochSecond());
+            ps.setString(4, team);
+            ps.setLong(5, cpu);
+            ps.executeUpdate();
+        }
+    }
+}
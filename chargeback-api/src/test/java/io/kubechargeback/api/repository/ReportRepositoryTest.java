@@ -0,0 +1,135 @@
+package io.kubechargeback.api.repository;
+
+import io.agroal.api.AgroalDataSource;
+import io.kubechargeback.common.model.AllocationSnapshot;
+import io.quarkus.test.junit.QuarkusTest;
+import jakarta.inject.Inject;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@QuarkusTest
+public class ReportRepositoryTest {
+
+    private static final Instant FIRST = Instant.parse("2025-12-20T00:00:00Z");
+    private static final int HOURS = 24 * 70;
+
+    @Inject
+    AgroalDataSource dataSource;
+
+    @Inject
+    ReportRepository repository;
+
+    @BeforeEach
+    void setup() throws Exception {
+        try (Connection conn = dataSource.getConnection();
+             Statement stmt = conn.createStatement()) {
+            stmt.execute("DELETE FROM allocation_snapshots");
+            stmt.execute("DELETE FROM workload_inventory");
+            try (PreparedStatement ps = conn.prepareStatement(
+                    "INSERT INTO allocation_snapshots (id, window_start, window_end, group_type, group_key, cpu_mcpu, mem_mib, " +
+                            "cpu_cost_units, mem_cost_units, total_cost_units) VALUES (?, ?, ?, 'TEAM', ?, ?, ?, ?, ?, ?)")) {
+                for (int h = 0; h < HOURS; h++) {
+                    Instant start = FIRST.plus(h, ChronoUnit.HOURS);
+                    for (int t = 0; t < 3; t++) {
+                        ps.setString(1, "s-" + h + "-" + t);
+                        ps.setLong(2, start.getEpochSecond());
+                        ps.setLong(3, start.plus(1, ChronoUnit.HOURS).getEpochSecond());
+                        ps.setString(4, "team-" + t);
+                        ps.setLong(5, h + t);
+                        ps.setLong(6, 2L * h);
+                        ps.setDouble(7, 0.5);
+                        ps.setDouble(8, 0.25);
+                        ps.setDouble(9, 0.75);
+                        ps.addBatch();
+                    }
+                }
+                ps.executeBatch();
+            }
+        }
+    }
+
+    /**
+     * Tests that composing rollups and raw edges gives the same sums as reading every raw snapshot,
+     * for ranges with and without whole days and months, aligned and unaligned.
+     */
+    @Test
+    void testFindAllocations_MatchesRawSums() throws Exception {
+        List<Instant[]> ranges = List.of(
+                range("2026-01-10T10:00:00Z", "2026-01-10T13:00:00Z"),
+                range("2025-12-31T22:30:00Z", "2026-01-01T02:00:00Z"),
+                range("2025-12-20T00:00:00Z", "2026-02-28T00:00:00Z"),
+                range("2025-12-25T07:00:00Z", "2026-02-03T17:00:00Z"),
+                range("2026-01-01T00:00:00Z", "2026-02-01T00:00:00Z"),
+                range("2025-12-01T00:00:00Z", "2026-03-01T00:00:00Z"),
+                range("2026-01-15T05:00:00Z", "2026-01-20T00:00:00Z"));
+        for (Instant[] r : ranges) {
+            Map<String, Double> expected = rawTotals(r[0], r[1]);
+            List<AllocationSnapshot> actual = repository.findAllocations(r[0], r[1], "team");
+            assertEquals(expected.size(), actual.size(), r[0] + " - " + r[1]);
+            for (AllocationSnapshot s : actual) {
+                assertEquals(expected.get(s.getGroupKey()), s.getTotalCostUnits(), 1e-6, r[0] + " - " + r[1]);
+                assertEquals(rawCpu(r[0], r[1], s.getGroupKey()), s.getCpuMcpu(), r[0] + " - " + r[1]);
+            }
+        }
+    }
+
+    /**
+     * Tests that replacing snapshots keeps the rollups in line with the raw rows.
+     */
+    @Test
+    void testRollups_FollowDeletes() throws Exception {
+        try (Connection conn = dataSource.getConnection();
+             Statement stmt = conn.createStatement()) {
+            stmt.execute("DELETE FROM allocation_snapshots WHERE group_key = 'team-1'");
+        }
+        List<AllocationSnapshot> result = repository.findAllocations(FIRST, FIRST.plus(HOURS, ChronoUnit.HOURS), "team");
+        assertEquals(2, result.size());
+        assertEquals(0.75 * HOURS, result.get(0).getTotalCostUnits(), 1e-6);
+    }
+
+    private Instant[] range(String from, String to) {
+        return new Instant[] { Instant.parse(from), Instant.parse(to) };
+    }
+
+    private Map<String, Double> rawTotals(Instant from, Instant to) throws Exception {
+        Map<String, Double> totals = new HashMap<>();
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement ps = conn.prepareStatement("SELECT group_key, SUM(total_cost_units) FROM allocation_snapshots " +
+                     "WHERE group_type = 'TEAM' AND window_start < ? AND window_end > ? GROUP BY group_key")) {
+            ps.setLong(1, to.getEpochSecond());
+            ps.setLong(2, from.getEpochSecond());
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    totals.put(rs.getString(1), rs.getDouble(2));
+                }
+            }
+        }
+        return totals;
+    }
+
+    private long rawCpu(Instant from, Instant to, String team) throws Exception {
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement ps = conn.prepareStatement("SELECT SUM(cpu_mcpu) FROM allocation_snapshots " +
+                     "WHERE group_type = 'TEAM' AND group_key = ? AND window_start < ? AND window_end > ?")) {
+            ps.setString(1, team);
+            ps.setLong(2, to.getEpochSecond());
+            ps.setLong(3, from.getEpochSecond());
+            try (ResultSet rs = ps.executeQuery()) {
+                rs.next();
+                return rs.getLong(1);
+            }
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package io.kubechargeback.api.resource;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Locale;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AllocationCsvOutputTest {
+
+    /**
+     * Tests that numbers are formatted like {@code %.4f} in the root locale.
+     */
+    @Test
+    void testAppendFixed4_MatchesFormat() {
+        double[] values = { 0, 1.2, 0.6, 0.00005, 0.00004, 123.45678, 1e-9, -0.25, -0.00001, 987654321.12345, 1e15 + 0.5,
+                0.00015, 0.00025, -0.00015, 1.00005, 2.00015, 0.12345, 1234.56785, 98765432.10005 };
+        for (double v : values) {
+            StringBuilder sb = new StringBuilder();
+            AllocationCsvOutput.appendFixed4(sb, v);
+            assertEquals(String.format(Locale.ROOT, "%.4f", v), sb.toString(), Double.toString(v));
+        }
+    }
+
+    /**
+     * Tests that fields containing separators, quotes or line breaks are quoted.
+     */
+    @Test
+    void testAppendField_QuotesWhenNeeded() {
+        StringBuilder sb = new StringBuilder();
+        AllocationCsvOutput.appendField(sb, "payments");
+        sb.append(',');
+        AllocationCsvOutput.appendField(sb, "a,\"b\"");
+        assertEquals("payments,\"a,\"\"b\"\"\"", sb.toString());
+    }
+
+    /**
+     * Tests the parsing of Accept-Encoding.
+     */
+    @Test
+    void testAcceptsGzip() {
+        assertTrue(ReportResource.acceptsGzip("gzip, deflate"));
+        assertTrue(ReportResource.acceptsGzip("br;q=1.0, GZIP;q=0.5"));
+        assertFalse(ReportResource.acceptsGzip("gzip;q=0"));
+        assertFalse(ReportResource.acceptsGzip("identity"));
+        assertFalse(ReportResource.acceptsGzip(null));
+    }
+}
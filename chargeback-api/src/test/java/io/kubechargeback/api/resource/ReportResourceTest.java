@@ -14,6 +14,9 @@ import java.util.UUID;
 
 import static io.restassured.RestAssured.given;
 import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.containsString;
 
@@ -36,12 +39,12 @@ public class ReportResourceTest {
             // Insert test data: Snapshot for the 'payments' application of 'team-a'
             String appSnapId = START + "_APP_payments";
             insertSnapshot(conn, appSnapId, START, END, "APP", "payments", 1000, 2048, 1.0, 0.2, 1.2);
-            insertInventory(conn, appSnapId, "test-ns", "Deployment", "payments", "{\"team\":\"team-a\",\"app\":\"payments\"}", 1000, 2048, "OK");
+            insertInventory(conn, appSnapId, "test-ns", "Deployment", "payments", "{\"team\":\"team-a\",\"app\":\"payments\"}", "team-a", "payments", 1000, 2048, "OK");
 
             // Insert test data: Snapshot for the 'auth' application of 'team-b'
             String appSnapId2 = START + "_APP_auth";
             insertSnapshot(conn, appSnapId2, START, END, "APP", "auth", 500, 1024, 0.5, 0.1, 0.6);
-            insertInventory(conn, appSnapId2, "test-ns", "Deployment", "auth", "{\"team\":\"team-b\",\"app\":\"auth\"}", 500, 1024, "MISSING_LIMITS");
+            insertInventory(conn, appSnapId2, "test-ns", "Deployment", "auth", "{\"team\":\"team-b\",\"app\":\"auth\"}", "team-b", "auth", 500, 1024, "MISSING_LIMITS");
             
             // TEAM type snapshot
             insertSnapshot(conn, UUID.randomUUID().toString(), START, END, "TEAM", "team-a", 1000, 2048, 1.0, 0.2, 1.2);
@@ -52,8 +55,8 @@ public class ReportResourceTest {
         String sql = "INSERT INTO allocation_snapshots (id, window_start, window_end, group_type, group_key, cpu_mcpu, mem_mib, cpu_cost_units, mem_cost_units, total_cost_units) VALUES (?,?,?,?,?,?,?,?,?,?)";
         try (PreparedStatement ps = conn.prepareStatement(sql)) {
             ps.setString(1, id);
-            ps.setString(2, start);
-            ps.setString(3, end);
+            ps.setLong(2, Instant.parse(start).getEpochSecond());
+            ps.setLong(3, Instant.parse(end).getEpochSecond());
             ps.setString(4, type);
             ps.setString(5, key);
             ps.setLong(6, cpu);
@@ -65,17 +68,19 @@ public class ReportResourceTest {
         }
     }
 
-    private void insertInventory(Connection conn, String snapId, String ns, String kind, String name, String labels, long cpu, long mem, String status) throws Exception {
-        String sql = "INSERT INTO workload_inventory (snapshot_id, namespace, kind, name, labels_json, cpu_request_mcpu, mem_request_mib, compliance_status) VALUES (?,?,?,?,?,?,?,?)";
+    private void insertInventory(Connection conn, String snapId, String ns, String kind, String name, String labels, String team, String app, long cpu, long mem, String status) throws Exception {
+        String sql = "INSERT INTO workload_inventory (snapshot_id, namespace, kind, name, labels_json, team, app, cpu_request_mcpu, mem_request_mib, compliance_status) VALUES (?,?,?,?,?,?,?,?,?,?)";
         try (PreparedStatement ps = conn.prepareStatement(sql)) {
             ps.setString(1, snapId);
             ps.setString(2, ns);
             ps.setString(3, kind);
             ps.setString(4, name);
             ps.setString(5, labels);
-            ps.setLong(6, cpu);
-            ps.setLong(7, mem);
-            ps.setString(8, status);
+            ps.setString(6, team);
+            ps.setString(7, app);
+            ps.setLong(8, cpu);
+            ps.setLong(9, mem);
+            ps.setString(10, status);
             ps.executeUpdate();
         }
     }
@@ -93,6 +98,87 @@ public class ReportResourceTest {
              .body("[0].groupKey", is("team-a"));
     }
 
+    @Test
+    public void testAllocationsReport_UnpagedByDefault() throws Exception {
+        try (Connection conn = dataSource.getConnection()) {
+            for (int i = 0; i < 600; i++) {
+                insertSnapshot(conn, UUID.randomUUID().toString(), START, END, "NAMESPACE", "ns-" + i, 10, 10, 0.01, 0.01, 0.02);
+            }
+        }
+        given()
+          .queryParam("from", START)
+          .queryParam("to", END)
+          .queryParam("groupBy", "namespace")
+          .when().get("/api/v1/reports/allocations")
+          .then()
+             .statusCode(200)
+             .body("size()", is(600))
+             .header("X-Next-Cursor", nullValue());
+    }
+
+    @Test
+    public void testAllocationsReport_Paged() {
+        // payments (1.2) sorts before auth (0.6) by total cost
+        String cursor = given()
+          .queryParam("from", START)
+          .queryParam("to", END)
+          .queryParam("groupBy", "app")
+          .queryParam("pageSize", 1)
+          .when().get("/api/v1/reports/allocations")
+          .then()
+             .statusCode(200)
+             .body("size()", is(1))
+             .body("[0].groupKey", is("payments"))
+             .extract().header("X-Next-Cursor");
+
+        given()
+          .queryParam("from", START)
+          .queryParam("to", END)
+          .queryParam("groupBy", "app")
+          .queryParam("pageSize", 1)
+          .queryParam("cursor", cursor)
+          .when().get("/api/v1/reports/allocations")
+          .then()
+             .statusCode(200)
+             .body("size()", is(1))
+             .body("[0].groupKey", is("auth"))
+             .header("X-Next-Cursor", nullValue());
+    }
+
+    @Test
+    public void testAllocationsReport_SortByKey() {
+        given()
+          .queryParam("from", START)
+          .queryParam("to", END)
+          .queryParam("groupBy", "app")
+          .queryParam("sortBy", "key")
+          .when().get("/api/v1/reports/allocations")
+          .then()
+             .statusCode(200)
+             .body("groupKey", contains("auth", "payments"));
+    }
+
+    @Test
+    public void testAllocationsReport_InvalidPaging() {
+        given()
+          .queryParam("from", START)
+          .queryParam("to", END)
+          .queryParam("groupBy", "app")
+          .queryParam("sortBy", "name")
+          .when().get("/api/v1/reports/allocations")
+          .then()
+             .statusCode(400);
+
+        given()
+          .queryParam("from", START)
+          .queryParam("to", END)
+          .queryParam("groupBy", "app")
+          .queryParam("cursor", "not-a-cursor")
+          .when().get("/api/v1/reports/allocations")
+          .then()
+             .statusCode(400);
+    }
+
     @Test
     public void testAllocationsExport() {
         given()
@@ -107,6 +193,21 @@ public class ReportResourceTest {
              .body(containsString("auth,500,1024,0.5000,0.1000,0.6000"));
     }
 
+    @Test
+    public void testAllocationsExport_Gzip() {
+        given()
+          .header("Accept-Encoding", "gzip")
+          .queryParam("from", START)
+          .queryParam("to", END)
+          .queryParam("groupBy", "app")
+          .when().get("/api/v1/reports/allocations/export")
+          .then()
+             .statusCode(200)
+             .header("Content-Encoding", "gzip")
+             .body(containsString("Group Key,CPU (mCPU)"))
+             .body(containsString("payments,1000,2048,1.0000,0.2000,1.2000"));
+    }
+
     @Test
     public void testTopAppsReport_WithTeamFilter() {
         // Search for top apps for team-a. It should return only 'payments'.
@@ -145,4 +246,95 @@ public class ReportResourceTest {
              .body("summary.missingLimits", is(1))
              .body("items", hasSize(2));
     }
+
+    @Test
+    public void testComplianceReport_Paged() {
+        // auth sorts before payments; the summary covers both pages
+        String cursor = given()
+          .queryParam("pageSize", 1)
+          .when().get("/api/v1/reports/compliance")
+          .then()
+             .statusCode(200)
+             .body("summary.ok", is(1))
+             .body("summary.missingLimits", is(1))
+             .body("items.name", contains("auth"))
+             .body("nextCursor", notNullValue())
+             .extract().header("X-Next-Cursor");
+
+        given()
+          .queryParam("pageSize", 1)
+          .queryParam("cursor", cursor)
+          .when().get("/api/v1/reports/compliance")
+          .then()
+             .statusCode(200)
+             .body("items.name", contains("payments"))
+             .body("nextCursor", nullValue());
+    }
+
+    @Test
+    public void testDashboard() throws Exception {
+        try (Connection conn = dataSource.getConnection()) {
+            insertSnapshot(conn, UUID.randomUUID().toString(), START, END, "NAMESPACE", "test-ns", 1500, 3072, 1.5, 0.3, 1.8);
+        }
+        given()
+          .queryParam("from", START)
+          .queryParam("to", END)
+          .queryParam("limit", 1)
+          .when().get("/api/v1/reports/dashboard")
+          .then()
+             .statusCode(200)
+             .header("ETag", notNullValue())
+             .body("namespaces.groupKey", contains("test-ns"))
+             .body("topApps.groupKey", contains("payments"))
+             .body("complianceSummary.ok", is(1))
+             .body("complianceSummary.missingLimits", is(1));
+    }
+
+    @Test
+    public void testAllocationsReport_ConditionalGet() throws Exception {
+        String etag = given()
+          .queryParam("from", START)
+          .queryParam("to", END)
+          .queryParam("groupBy", "team")
+          .when().get("/api/v1/reports/allocations")
+          .then()
+             .statusCode(200)
+             .header("Cache-Control", containsString("must-revalidate"))
+             .header("Last-Modified", notNullValue())
+             .extract().header("ETag");
+
+        given()
+          .header("If-None-Match", etag)
+          .queryParam("from", START)
+          .queryParam("to", END)
+          .queryParam("groupBy", "team")
+          .when().get("/api/v1/reports/allocations")
+          .then()
+             .statusCode(304)
+             .header("ETag", is(etag));
+
+        // A different report must not match the same validator.
+        given()
+          .header("If-None-Match", etag)
+          .queryParam("from", START)
+          .queryParam("to", END)
+          .queryParam("groupBy", "app")
+          .when().get("/api/v1/reports/allocations")
+          .then()
+             .statusCode(200);
+
+        // New data moves the version, so the old validator no longer matches.
+        try (Connection conn = dataSource.getConnection()) {
+            insertSnapshot(conn, UUID.randomUUID().toString(), START, END, "TEAM", "team-b", 500, 1024, 0.5, 0.1, 0.6);
+        }
+        given()
+          .header("If-None-Match", etag)
+          .queryParam("from", START)
+          .queryParam("to", END)
+          .queryParam("groupBy", "team")
+          .when().get("/api/v1/reports/allocations")
+          .then()
+             .statusCode(200)
+             .body("size()", is(2));
+    }
 }
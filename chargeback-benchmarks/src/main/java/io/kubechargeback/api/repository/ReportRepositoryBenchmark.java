@@ -0,0 +1,77 @@
+package io.kubechargeback.api.repository;
+
+import io.kubechargeback.collector.BenchmarkDatabase;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the report queries over a seeded history of hourly snapshots.
+ * Each query covers the most recent 30 days, or the whole history if it is shorter.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ReportRepositoryBenchmark {
+
+    private static final Instant END = Instant.parse("2026-02-01T00:00:00Z");
+
+    @Param({ "100000", "1000000", "3000000" })
+    int snapshotRows;
+
+    private BenchmarkDatabase db;
+    private ReportRepository repository;
+    private Instant from;
+
+    @Setup
+    public void setup() {
+        db = BenchmarkDatabase.create();
+        Instant oldest = db.seedHistory(snapshotRows, END);
+        Instant monthAgo = END.minus(30, ChronoUnit.DAYS);
+        from = oldest.isAfter(monthAgo) ? oldest : monthAgo;
+        repository = new ReportRepository();
+        repository.dataSource = db.getDataSource();
+    }
+
+    @TearDown
+    public void tearDown() {
+        db.close();
+    }
+
+    @Benchmark
+    public void findAllocationsByTeam(Blackhole bh) {
+        bh.consume(repository.findAllocations(from, END, "team"));
+    }
+
+    @Benchmark
+    public void findAllocationsByApp(Blackhole bh) {
+        bh.consume(repository.findAllocations(from, END, "app"));
+    }
+
+    @Benchmark
+    public void findTopApps(Blackhole bh) {
+        bh.consume(repository.findTopApps(from, END, null, 10));
+    }
+
+    @Benchmark
+    public void findTopAppsForTeam(Blackhole bh) {
+        bh.consume(repository.findTopApps(from, END, "team-7", 10));
+    }
+}
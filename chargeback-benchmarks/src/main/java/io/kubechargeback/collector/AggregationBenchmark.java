@@ -0,0 +1,106 @@
+package io.kubechargeback.collector;
+
+import io.kubechargeback.common.model.AllocationSnapshot;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the per-run aggregation of workloads into TEAM, NAMESPACE and APP snapshots.
+ * {@code hashMapSnapshots} reproduces the previous map-of-snapshots approach, {@code primitiveAggregator}
+ * measures {@link AllocationAggregator}. Run with {@code -prof gc} to compare allocation rates.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AggregationBenchmark {
+
+    private static final Instant WINDOW_END = Instant.parse("2026-02-01T11:00:00Z");
+    private static final Instant WINDOW_START = WINDOW_END.minus(1, ChronoUnit.HOURS);
+    private static final double RATE_CPU = 0.001;
+    private static final double RATE_MEM = 0.0001;
+
+    @Param({ "10000", "100000", "500000" })
+    int workloads;
+
+    private List<WorkloadData> cluster;
+
+    @Setup
+    public void setup() {
+        cluster = SyntheticCluster.workloads(workloads);
+    }
+
+    @Benchmark
+    public void hashMapSnapshots(Blackhole bh) {
+        Map<String, AllocationSnapshot> teams = new HashMap<>();
+        Map<String, AllocationSnapshot> namespaces = new HashMap<>();
+        Map<String, AllocationSnapshot> apps = new HashMap<>();
+        List<String> inventorySnapshotIds = new ArrayList<>();
+        for (WorkloadData w : cluster) {
+            double duration = w.durationHours > 0 ? w.durationHours : 1;
+            double cpuCost = w.cpuReq * RATE_CPU * duration;
+            double memCost = w.memReq * RATE_MEM * duration;
+            double totalCost = cpuCost + memCost;
+            accumulate(teams, "TEAM", w.labels.getOrDefault("team", "unknown"), w, cpuCost, memCost, totalCost, UUID.randomUUID().toString());
+            accumulate(namespaces, "NAMESPACE", w.namespace, w, cpuCost, memCost, totalCost, UUID.randomUUID().toString());
+            String appSnapId = UUID.randomUUID().toString();
+            accumulate(apps, "APP", w.labels.getOrDefault("app", "unknown"), w, cpuCost, memCost, totalCost, appSnapId);
+            inventorySnapshotIds.add(appSnapId);
+        }
+        List<AllocationSnapshot> snapshots = new ArrayList<>(teams.size() + namespaces.size() + apps.size());
+        snapshots.addAll(teams.values());
+        snapshots.addAll(namespaces.values());
+        snapshots.addAll(apps.values());
+        bh.consume(snapshots);
+        bh.consume(inventorySnapshotIds);
+    }
+
+    @Benchmark
+    public void primitiveAggregator(Blackhole bh) {
+        AllocationAggregator aggregator = new AllocationAggregator(WINDOW_START, WINDOW_END, 1, RATE_CPU, RATE_MEM, "team", "app");
+        for (WorkloadData w : cluster) {
+            aggregator.add(w);
+        }
+        bh.consume(aggregator.flush());
+        bh.consume(aggregator.mapWorkloads((w, snapshotId) -> snapshotId));
+    }
+
+    private static void accumulate(Map<String, AllocationSnapshot> map, String type, String key, WorkloadData w,
+                                   double cpuCost, double memCost, double totalCost, String id) {
+        AllocationSnapshot s = map.computeIfAbsent(key, k -> {
+            AllocationSnapshot snap = new AllocationSnapshot();
+            snap.setId(id);
+            snap.setGroupType(type);
+            snap.setGroupKey(key);
+            snap.setWindowStart(WINDOW_START);
+            snap.setWindowEnd(WINDOW_END);
+            return snap;
+        });
+        s.setCpuMcpu(s.getCpuMcpu() + w.cpuReq);
+        s.setMemMib(s.getMemMib() + w.memReq);
+        s.setCpuCostUnits(s.getCpuCostUnits() + cpuCost);
+        s.setMemCostUnits(s.getMemCostUnits() + memCost);
+        s.setTotalCostUnits(s.getTotalCostUnits() + totalCost);
+    }
+}
@@ -0,0 +1,158 @@
+package io.kubechargeback.collector;
+
+import io.agroal.api.AgroalDataSource;
+import io.agroal.api.configuration.supplier.AgroalDataSourceConfigurationSupplier;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+
+/**
+ * Temp-file SQLite databases for the persistence and reporting benchmarks.
+ */
+public final class BenchmarkDatabase implements AutoCloseable {
+
+    private static final int BATCH_SIZE = 500;
+
+    private final Path file;
+    private final AgroalDataSource dataSource;
+
+    private BenchmarkDatabase(Path file, AgroalDataSource dataSource) {
+        this.file = file;
+        this.dataSource = dataSource;
+    }
+
+    /**
+     * Creates an empty database in a temp file and applies the schema.
+     *
+     * @return the database
+     */
+    public static BenchmarkDatabase create() {
+        try {
+            Path file = Files.createTempFile("chargeback-bench", ".db");
+            AgroalDataSource dataSource = AgroalDataSource.from(new AgroalDataSourceConfigurationSupplier()
+                    .connectionPoolConfiguration(pool -> pool
+                            .maxSize(4)
+                            .connectionFactoryConfiguration(cf -> cf.jdbcUrl("jdbc:sqlite:" + file))));
+            BenchmarkDatabase db = new BenchmarkDatabase(file, dataSource);
+            db.collectorRepository().initDb();
+            return db;
+        } catch (SQLException | IOException e) {
+            throw new RuntimeException("Failed to create benchmark database", e);
+        }
+    }
+
+    /**
+     * Gets the connection pool of the database.
+     * @return the data source
+     */
+    public AgroalDataSource getDataSource() { return dataSource; }
+
+    /**
+     * Creates a collector repository bound to this database.
+     *
+     * @return the repository
+     */
+    public CollectorRepository collectorRepository() {
+        CollectorRepository repository = new CollectorRepository();
+        repository.dataSource = dataSource;
+        return repository;
+    }
+
+    /**
+     * Seeds hourly history ending at {@code end}, as the collector would have written it.
+     * Every window holds 50 TEAM, 100 NAMESPACE and 1000 APP snapshots, and one inventory row per APP snapshot.
+     *
+     * @param snapshotRows the approximate number of snapshot rows to write
+     * @param end          the end of the newest window
+     * @return the start of the oldest window
+     */
+    public Instant seedHistory(int snapshotRows, Instant end) {
+        int teams = 50;
+        int namespaces = 100;
+        int apps = 1000;
+        int windows = Math.max(1, snapshotRows / (teams + namespaces + apps));
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement snap = conn.prepareStatement(
+                     "INSERT INTO allocation_snapshots (id, window_start, window_end, group_type, group_key, " +
+                             "cpu_mcpu, mem_mib, cpu_cost_units, mem_cost_units, total_cost_units) " +
+                             "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)");
+             PreparedStatement inv = conn.prepareStatement(
+                     "INSERT INTO workload_inventory (snapshot_id, namespace, kind, name, labels_json, team, app, " +
+                             "cpu_request_mcpu, mem_request_mib, compliance_status) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)")) {
+            conn.setAutoCommit(false);
+            int pending = 0;
+            for (int w = 0; w < windows; w++) {
+                Instant windowEnd = end.minus(w, ChronoUnit.HOURS);
+                Instant windowStart = windowEnd.minus(1, ChronoUnit.HOURS);
+                for (int t = 0; t < teams; t++) {
+                    addSnapshot(snap, "t" + w + "-" + t, windowStart, windowEnd, "TEAM", "team-" + t, 20_000);
+                }
+                for (int n = 0; n < namespaces; n++) {
+                    addSnapshot(snap, "n" + w + "-" + n, windowStart, windowEnd, "NAMESPACE", "ns-" + n, 10_000);
+                }
+                for (int a = 0; a < apps; a++) {
+                    String id = "a" + w + "-" + a;
+                    addSnapshot(snap, id, windowStart, windowEnd, "APP", "app-" + a, 100 + a);
+                    inv.setString(1, id);
+                    inv.setString(2, "ns-" + a % namespaces);
+                    inv.setString(3, "Deployment");
+                    inv.setString(4, "app-" + a);
+                    inv.setString(5, "{\"team\":\"team-" + a % teams + "\",\"app\":\"app-" + a + "\"}");
+                    inv.setString(6, "team-" + a % teams);
+                    inv.setString(7, "app-" + a);
+                    inv.setLong(8, 100 + a);
+                    inv.setLong(9, 256);
+                    inv.setString(10, a % 10 == 0 ? "MISSING_LIMITS" : "OK");
+                    inv.addBatch();
+                    if (++pending >= BATCH_SIZE) {
+                        snap.executeBatch();
+                        inv.executeBatch();
+                        pending = 0;
+                    }
+                }
+            }
+            snap.executeBatch();
+            inv.executeBatch();
+            conn.commit();
+            return end.minus(windows, ChronoUnit.HOURS);
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to seed benchmark database", e);
+        }
+    }
+
+    private static void addSnapshot(PreparedStatement ps, String id, Instant start, Instant end,
+                                    String type, String key, long cpu) throws SQLException {
+        ps.setString(1, id);
+        ps.setLong(2, start.getEpochSecond());
+        ps.setLong(3, end.getEpochSecond());
+        ps.setString(4, type);
+        ps.setString(5, key);
+        ps.setLong(6, cpu);
+        ps.setLong(7, cpu * 2);
+        ps.setDouble(8, cpu * 0.001);
+        ps.setDouble(9, cpu * 0.0002);
+        ps.setDouble(10, cpu * 0.0012);
+        ps.addBatch();
+    }
+
+    /**
+     * Closes the pool and deletes the database files.
+     */
+    @Override
+    public void close() {
+        dataSource.close();
+        try {
+            Files.deleteIfExists(file);
+            Files.deleteIfExists(Path.of(file + "-wal"));
+            Files.deleteIfExists(Path.of(file + "-shm"));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
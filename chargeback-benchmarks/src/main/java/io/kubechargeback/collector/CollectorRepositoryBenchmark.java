@@ -0,0 +1,65 @@
+package io.kubechargeback.collector;
+
+import io.kubechargeback.common.model.AllocationSnapshot;
+import io.kubechargeback.common.model.WorkloadInventory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link CollectorRepository#saveRun} against a temp-file SQLite database.
+ * Every invocation rewrites the same window, so it covers replacing the previous run as well as inserting.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class CollectorRepositoryBenchmark {
+
+    private static final Instant WINDOW_END = Instant.parse("2026-02-01T11:00:00Z");
+    private static final Instant WINDOW_START = WINDOW_END.minus(1, ChronoUnit.HOURS);
+
+    @Param({ "1000", "10000", "100000" })
+    int workloads;
+
+    private BenchmarkDatabase db;
+    private CollectorRepository repository;
+    private List<AllocationSnapshot> snapshots;
+    private List<WorkloadInventory> inventory;
+
+    @Setup
+    public void setup() {
+        db = BenchmarkDatabase.create();
+        repository = db.collectorRepository();
+        AllocationAggregator aggregator = new AllocationAggregator(WINDOW_START, WINDOW_END, 1, 0.001, 0.0001, "team", "app");
+        SyntheticCluster.workloads(workloads).forEach(aggregator::add);
+        snapshots = aggregator.flush();
+        inventory = aggregator.mapWorkloads(new CollectorService()::toInventory);
+    }
+
+    @TearDown
+    public void tearDown() {
+        db.close();
+    }
+
+    @Benchmark
+    public void saveRun() {
+        repository.saveRun(snapshots, inventory);
+    }
+}
@@ -0,0 +1,66 @@
+package io.kubechargeback.collector;
+
+import io.fabric8.kubernetes.api.model.apps.Deployment;
+import io.fabric8.kubernetes.api.model.batch.v1.Job;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link WorkloadParser} over a cluster's worth of Deployment and Job manifests.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParserBenchmark {
+
+    private static final Instant WINDOW_END = Instant.parse("2026-02-01T11:00:00Z");
+    private static final Instant WINDOW_START = WINDOW_END.minus(1, ChronoUnit.HOURS);
+
+    @Param({ "1000", "10000", "50000" })
+    int workloads;
+
+    @Param({ "1", "4", "16" })
+    int containers;
+
+    private final WorkloadParser parser = new WorkloadParser();
+    private List<Deployment> deployments;
+    private List<Job> jobs;
+
+    @Setup
+    public void setup() {
+        deployments = SyntheticCluster.deployments(workloads, containers);
+        jobs = SyntheticCluster.jobs(workloads, containers, WINDOW_END);
+    }
+
+    @Benchmark
+    public void fromDeployment(Blackhole bh) {
+        for (Deployment d : deployments) {
+            bh.consume(parser.fromDeployment(d));
+        }
+    }
+
+    @Benchmark
+    public void fromJob(Blackhole bh) {
+        for (Job j : jobs) {
+            bh.consume(parser.fromJob(j, WINDOW_START, WINDOW_END));
+        }
+    }
+}
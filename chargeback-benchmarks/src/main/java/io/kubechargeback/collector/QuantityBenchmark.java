@@ -0,0 +1,70 @@
+package io.kubechargeback.collector;
+
+import io.fabric8.kubernetes.api.model.Quantity;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares fabric8's BigDecimal-based quantity conversion with {@link QuantityParser}.
+ * Run with {@code -prof gc} to compare allocation rates.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class QuantityBenchmark {
+
+    private static final String[] CPU = { "100m", "250m", "500m", "1", "1500m", "2", "0.5", "4" };
+    private static final String[] MEMORY = { "128Mi", "256Mi", "512Mi", "1Gi", "1536Mi", "2Gi", "1G", "4Gi" };
+
+    @Param({ "1000", "10000" })
+    int containers;
+
+    private Quantity[] cpu;
+    private Quantity[] memory;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        cpu = new Quantity[containers];
+        memory = new Quantity[containers];
+        for (int i = 0; i < containers; i++) {
+            cpu[i] = new Quantity(CPU[random.nextInt(CPU.length)]);
+            memory[i] = new Quantity(MEMORY[random.nextInt(MEMORY.length)]);
+        }
+    }
+
+    @Benchmark
+    public long fabric8() {
+        long total = 0;
+        for (int i = 0; i < containers; i++) {
+            total += (long) (cpu[i].getNumericalAmount().doubleValue() * 1000);
+            total += Quantity.getAmountInBytes(memory[i]).longValue() / (1024 * 1024);
+        }
+        return total;
+    }
+
+    @Benchmark
+    public long fastPath() {
+        long total = 0;
+        for (int i = 0; i < containers; i++) {
+            total += QuantityParser.milliCores(cpu[i].getAmount(), cpu[i].getFormat());
+            total += QuantityParser.mebibytes(memory[i].getAmount(), memory[i].getFormat());
+        }
+        return total;
+    }
+}
@@ -0,0 +1,131 @@
+package io.kubechargeback.collector;
+
+import io.fabric8.kubernetes.api.model.Container;
+import io.fabric8.kubernetes.api.model.ContainerBuilder;
+import io.fabric8.kubernetes.api.model.Quantity;
+import io.fabric8.kubernetes.api.model.apps.Deployment;
+import io.fabric8.kubernetes.api.model.apps.DeploymentBuilder;
+import io.fabric8.kubernetes.api.model.batch.v1.Job;
+import io.fabric8.kubernetes.api.model.batch.v1.JobBuilder;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Deterministic synthetic cluster data shared by the benchmarks.
+ * Workloads are spread over 50 teams, 1 namespace per 100 workloads and 1 app per 4 workloads.
+ */
+public final class SyntheticCluster {
+
+    private static final String[] CPU = { "100m", "250m", "500m", "1", "1500m", "2" };
+    private static final String[] MEMORY = { "128Mi", "256Mi", "512Mi", "1Gi", "1536Mi", "2Gi" };
+
+    private SyntheticCluster() {
+    }
+
+    /**
+     * Generates parsed workloads.
+     *
+     * @param count the number of workloads
+     * @return the workloads
+     */
+    public static List<WorkloadData> workloads(int count) {
+        Random random = new Random(42);
+        int namespaces = Math.max(1, count / 100);
+        int apps = Math.max(1, count / 4);
+        List<WorkloadData> result = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            WorkloadData w = new WorkloadData();
+            w.namespace = "ns-" + random.nextInt(namespaces);
+            w.kind = "Deployment";
+            w.name = "workload-" + i;
+            w.labels = Map.of("team", "team-" + random.nextInt(50), "app", "app-" + random.nextInt(apps));
+            w.cpuReq = 100 + random.nextInt(1900);
+            w.memReq = 128 + random.nextInt(4096);
+            w.complianceStatus = "OK";
+            result.add(w);
+        }
+        return result;
+    }
+
+    /**
+     * Generates Deployment manifests.
+     *
+     * @param count      the number of Deployments
+     * @param containers the number of containers per pod template
+     * @return the Deployments
+     */
+    public static List<Deployment> deployments(int count, int containers) {
+        Random random = new Random(42);
+        List<Deployment> result = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            result.add(new DeploymentBuilder()
+                    .withNewMetadata()
+                    .withName("deployment-" + i)
+                    .withNamespace("ns-" + i / 100)
+                    .withLabels(labels(random, count))
+                    .endMetadata()
+                    .withNewSpec()
+                    .withReplicas(1 + random.nextInt(5))
+                    .withNewTemplate().withNewSpec().withContainers(containers(random, containers)).endSpec().endTemplate()
+                    .endSpec()
+                    .build());
+        }
+        return result;
+    }
+
+    /**
+     * Generates Job manifests that started within the hour before {@code windowEnd}, half of them completed.
+     *
+     * @param count      the number of Jobs
+     * @param containers the number of containers per pod template
+     * @param windowEnd  the end of the collection window
+     * @return the Jobs
+     */
+    public static List<Job> jobs(int count, int containers, Instant windowEnd) {
+        Random random = new Random(42);
+        List<Job> result = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Instant start = windowEnd.minusSeconds(1 + random.nextInt(3600));
+            result.add(new JobBuilder()
+                    .withNewMetadata()
+                    .withName("job-" + i)
+                    .withNamespace("ns-" + i / 100)
+                    .withLabels(labels(random, count))
+                    .endMetadata()
+                    .withNewSpec()
+                    .withParallelism(1 + random.nextInt(3))
+                    .withNewTemplate().withNewSpec().withContainers(containers(random, containers)).endSpec().endTemplate()
+                    .endSpec()
+                    .withNewStatus()
+                    .withStartTime(start.toString())
+                    .withCompletionTime(i % 2 == 0 ? start.plusSeconds(600).toString() : null)
+                    .endStatus()
+                    .build());
+        }
+        return result;
+    }
+
+    private static Map<String, String> labels(Random random, int count) {
+        return Map.of("team", "team-" + random.nextInt(50), "app", "app-" + random.nextInt(Math.max(1, count / 4)));
+    }
+
+    private static List<Container> containers(Random random, int count) {
+        List<Container> containers = new ArrayList<>(count);
+        for (int c = 0; c < count; c++) {
+            containers.add(new ContainerBuilder()
+                    .withName("container-" + c)
+                    .withNewResources()
+                    .addToRequests("cpu", new Quantity(CPU[random.nextInt(CPU.length)]))
+                    .addToRequests("memory", new Quantity(MEMORY[random.nextInt(MEMORY.length)]))
+                    .addToLimits("cpu", new Quantity(CPU[random.nextInt(CPU.length)]))
+                    .addToLimits("memory", new Quantity(MEMORY[random.nextInt(MEMORY.length)]))
+                    .endResources()
+                    .build());
+        }
+        return containers;
+    }
+}
@@ -0,0 +1,184 @@
+package io.kubechargeback.collector;
+
+import io.kubechargeback.common.model.AllocationSnapshot;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiFunction;
+
+/**
+ * Aggregates workloads of a single window into TEAM, NAMESPACE and APP rollups.
+ * Group keys are interned to dense ids and the CPU, memory and cost sums are kept in primitive arrays indexed by
+ * those ids, so adding a workload allocates nothing once its groups are known. Snapshot objects and their IDs are
+ * only created by {@link #flush()}. The added workloads themselves are kept until {@link #mapWorkloads}, since every
+ * inventory row references the ID of its persisted APP snapshot.
+ * This class is not thread-safe; callers must serialize access.
+ */
+public class AllocationAggregator {
+
+    private static final String[] GROUP_TYPES = { "TEAM", "NAMESPACE", "APP" };
+    private static final int TEAM = 0;
+    private static final int NAMESPACE = 1;
+    private static final int APP = 2;
+
+    private final Instant windowStart;
+    private final Instant windowEnd;
+    private final int windowHours;
+    private final double rateCpu;
+    private final double rateMem;
+    private final String labelTeam;
+    private final String labelApp;
+    private final GroupTable[] tables = { new GroupTable(), new GroupTable(), new GroupTable() };
+
+    private WorkloadData[] workloads = new WorkloadData[256];
+    private int[] workloadApp = new int[256];
+    private int workloadCount;
+    private String[] appSnapshotIds;
+
+    /**
+     * Creates an aggregator for one window.
+     *
+     * @param windowStart the window start
+     * @param windowEnd   the window end
+     * @param windowHours the window length used for workloads without an explicit duration
+     * @param rateCpu     the cost per millicore per hour
+     * @param rateMem     the cost per MiB per hour
+     * @param labelTeam   the label used for team identification
+     * @param labelApp    the label used for application identification
+     */
+    public AllocationAggregator(Instant windowStart, Instant windowEnd, int windowHours,
+                                double rateCpu, double rateMem, String labelTeam, String labelApp) {
+        this.windowStart = windowStart;
+        this.windowEnd = windowEnd;
+        this.windowHours = windowHours;
+        this.rateCpu = rateCpu;
+        this.rateMem = rateMem;
+        this.labelTeam = labelTeam;
+        this.labelApp = labelApp;
+    }
+
+    /**
+     * Adds a workload to its TEAM, NAMESPACE and APP groups.
+     *
+     * @param w the workload
+     */
+    public void add(WorkloadData w) {
+        double duration = w.durationHours > 0 ? w.durationHours : windowHours;
+        double cpuCost = w.cpuReq * rateCpu * duration;
+        double memCost = w.memReq * rateMem * duration;
+
+        tables[TEAM].add(w.labels.getOrDefault(labelTeam, "unknown"), w.cpuReq, w.memReq, cpuCost, memCost);
+        tables[NAMESPACE].add(w.namespace, w.cpuReq, w.memReq, cpuCost, memCost);
+        int app = tables[APP].add(w.labels.getOrDefault(labelApp, "unknown"), w.cpuReq, w.memReq, cpuCost, memCost);
+
+        if (workloadCount == workloads.length) {
+            workloads = Arrays.copyOf(workloads, workloadCount * 2);
+            workloadApp = Arrays.copyOf(workloadApp, workloadCount * 2);
+        }
+        workloads[workloadCount] = w;
+        workloadApp[workloadCount] = app;
+        workloadCount++;
+    }
+
+    /**
+     * Gets the number of workloads added so far.
+     * @return the workload count
+     */
+    public int getWorkloadCount() { return workloadCount; }
+
+    /**
+     * Creates one snapshot per group, assigning snapshot IDs.
+     *
+     * @return the snapshots of all TEAM, NAMESPACE and APP groups
+     */
+    public List<AllocationSnapshot> flush() {
+        List<AllocationSnapshot> snapshots = new ArrayList<>(tables[TEAM].size + tables[NAMESPACE].size + tables[APP].size);
+        for (int t = 0; t < GROUP_TYPES.length; t++) {
+            GroupTable table = tables[t];
+            for (int g = 0; g < table.size; g++) {
+                AllocationSnapshot s = new AllocationSnapshot();
+                s.setWindowStart(windowStart);
+                s.setWindowEnd(windowEnd);
+                s.setGroupType(GROUP_TYPES[t]);
+                s.setGroupKey(table.keys[g]);
+                s.setCpuMcpu(table.cpu[g]);
+                s.setMemMib(table.mem[g]);
+                s.setCpuCostUnits(table.cpuCost[g]);
+                s.setMemCostUnits(table.memCost[g]);
+                s.setTotalCostUnits(table.cpuCost[g] + table.memCost[g]);
+                snapshots.add(s);
+            }
+        }
+        appSnapshotIds = new String[tables[APP].size];
+        int offset = tables[TEAM].size + tables[NAMESPACE].size;
+        for (int g = 0; g < appSnapshotIds.length; g++) {
+            appSnapshotIds[g] = snapshots.get(offset + g).getId();
+        }
+        return snapshots;
+    }
+
+    /**
+     * Maps every added workload together with the ID of its APP snapshot. Must be called after {@link #flush()}.
+     *
+     * @param mapper the function receiving a workload and its APP snapshot ID
+     * @param <T>    the result type
+     * @return the mapped workloads, in insertion order
+     */
+    public <T> List<T> mapWorkloads(BiFunction<WorkloadData, String, T> mapper) {
+        if (appSnapshotIds == null) {
+            throw new IllegalStateException("flush() must be called before mapWorkloads()");
+        }
+        List<T> results = new ArrayList<>(workloadCount);
+        for (int i = 0; i < workloadCount; i++) {
+            results.add(mapper.apply(workloads[i], appSnapshotIds[workloadApp[i]]));
+        }
+        return results;
+    }
+
+    /**
+     * Interned groups of one group type with their sums held in parallel primitive arrays.
+     */
+    private static final class GroupTable {
+        final Map<String, Integer> ids = new HashMap<>();
+        String[] keys = new String[16];
+        long[] cpu = new long[16];
+        long[] mem = new long[16];
+        double[] cpuCost = new double[16];
+        double[] memCost = new double[16];
+        int size;
+
+        /**
+         * Adds usage to a group, creating the group on first use.
+         *
+         * @return the group id
+         */
+        int add(String key, long cpuReq, long memReq, double cpuCostUnits, double memCostUnits) {
+            Integer id = ids.get(key);
+            int g;
+            if (id == null) {
+                g = size++;
+                if (g == keys.length) {
+                    int capacity = g * 2;
+                    keys = Arrays.copyOf(keys, capacity);
+                    cpu = Arrays.copyOf(cpu, capacity);
+                    mem = Arrays.copyOf(mem, capacity);
+                    cpuCost = Arrays.copyOf(cpuCost, capacity);
+                    memCost = Arrays.copyOf(memCost, capacity);
+                }
+                keys[g] = key;
+                ids.put(key, g);
+            } else {
+                g = id;
+            }
+            cpu[g] += cpuReq;
+            mem[g] += memReq;
+            cpuCost[g] += cpuCostUnits;
+            memCost[g] += memCostUnits;
+            return g;
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package io.kubechargeback.collector;
+
+import java.time.Instant;
+
+/**
+ * The alert level a budget was last evaluated at.
+ *
+ * @param budgetId    the budget ID
+ * @param state       the alert level (OK|WARN|CRITICAL)
+ * @param periodStart the start of the budget period the level belongs to
+ * @param changedAt   the time the level last changed
+ * @param notifiedAt  the time of the last alert within the period, or null if none was sent
+ */
+public record BudgetAlertState(String budgetId, String state, Instant periodStart, Instant changedAt,
+                               Instant notifiedAt) {
+}
@@ -0,0 +1,213 @@
+package io.kubechargeback.collector;
+
+import io.kubechargeback.common.model.AllocationSnapshot;
+import io.kubechargeback.common.model.Budget;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+import java.time.DayOfWeek;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Evaluates all enabled budgets against the persisted snapshots as sets rather than one by one.
+ * The usage of every budget is a running total kept in the budget usage ledger, so budgets sharing a selector
+ * type and period read their usage with one lookup, whose cost does not grow with the number of windows in the
+ * period. The top offenders of all their violating budgets are found with one ranked query. A check costs at
+ * most two queries per selector type and period, however many budgets exist.
+ * <p>
+ * Each budget moves between the alert levels OK, WARN and CRITICAL, persisted in {@code budget_alert_state}.
+ * A budget is only alerted when it rises to a higher level, when it recovers to OK, or when it stays at WARN
+ * or CRITICAL longer than {@code alert.renotify-warn-hours} or {@code alert.renotify-critical-hours}.
+ * A level is only left once usage falls {@code alert.hysteresis-percent} points below its threshold, so usage
+ * hovering around a threshold does not alert on every check. Levels start from OK in every new period.
+ * The level of an alerted budget is only stored by {@link #markAlerted} once its alert was recorded and queued,
+ * so an alert that could not be sent is raised again by the next check.
+ */
+@ApplicationScoped
+public class BudgetEvaluator {
+
+    /**
+     * Number of top applications reported with a violation.
+     */
+    static final int TOP_OFFENDERS = 5;
+
+    static final String OK = "OK";
+    static final String WARN = "WARN";
+    static final String CRITICAL = "CRITICAL";
+    static final String RECOVERED = "RECOVERED";
+
+    @Inject
+    CollectorRepository repository;
+
+    @Inject
+    CollectorConfig config;
+
+    /**
+     * Evaluates all enabled budgets for the periods containing a point in time, and stores the new alert levels
+     * of the budgets that are not alerted.
+     *
+     * @param now the current time, which is the end of every period
+     * @return the budgets to alert, in the order they were loaded within each selector type and period
+     */
+    public List<Violation> evaluate(Instant now) {
+        Map<List<String>, List<Budget>> groups = new LinkedHashMap<>();
+        for (Budget b : repository.findAllEnabledBudgets()) {
+            if (periodStart(b.getPeriod(), now) != null) {
+                groups.computeIfAbsent(List.of(b.getSelectorType(), b.getPeriod()), k -> new ArrayList<>()).add(b);
+            }
+        }
+        Map<String, BudgetAlertState> states = repository.findAlertStates();
+
+        List<Violation> violations = new ArrayList<>();
+        List<BudgetAlertState> changed = new ArrayList<>();
+        for (Map.Entry<List<String>, List<Budget>> group : groups.entrySet()) {
+            String selectorType = group.getKey().get(0);
+            String period = group.getKey().get(1);
+            Instant start = periodStart(period, now);
+            // selector types match the group types of snapshots, selector values their group keys
+            Map<String, AllocationSnapshot> usage = repository.getLedgerUsage(selectorType, period, start);
+
+            List<Violation> alerted = new ArrayList<>();
+            for (Budget b : group.getValue()) {
+                AllocationSnapshot u = usage.getOrDefault(b.getSelectorValue(), new AllocationSnapshot());
+                BudgetAlertState stored = states.get(b.getId());
+                BudgetAlertState previous = stored != null && stored.periodStart().equals(start) ? stored : null;
+                String from = previous == null ? OK : previous.state();
+                String to = level(b, u, from, config.getAlertHysteresisPercent());
+                String severity = notification(from, to, previous == null ? null : previous.notifiedAt(), now);
+
+                Instant changedAt = previous != null && from.equals(to) ? previous.changedAt() : now;
+                Instant notifiedAt = severity != null ? now : previous == null ? null : previous.notifiedAt();
+                BudgetAlertState next = new BudgetAlertState(b.getId(), to, start, changedAt, notifiedAt);
+                if (severity != null) {
+                    alerted.add(new Violation(b, u, severity, start, now, List.of(), next));
+                } else if (!next.equals(stored) && (stored != null || !OK.equals(to))) {
+                    changed.add(next);
+                }
+            }
+
+            List<String> offending = alerted.stream()
+                    .filter(v -> !RECOVERED.equals(v.severity()))
+                    .map(v -> v.budget().getSelectorValue())
+                    .toList();
+            Map<String, List<AllocationSnapshot>> offenders = offending.isEmpty() ? Map.of()
+                    : repository.getTopOffenders(selectorType, offending, start, now, TOP_OFFENDERS);
+            for (Violation v : alerted) {
+                violations.add(RECOVERED.equals(v.severity()) ? v : new Violation(v.budget(), v.usage(),
+                        v.severity(), start, now, offenders.getOrDefault(v.budget().getSelectorValue(), List.of()),
+                        v.state()));
+            }
+        }
+        repository.saveAlertStates(changed);
+        return violations;
+    }
+
+    /**
+     * Stores the alert levels of budgets whose alerts were recorded and queued.
+     *
+     * @param sent the violations that were alerted
+     */
+    public void markAlerted(List<Violation> sent) {
+        repository.saveAlertStates(sent.stream().map(Violation::state).toList());
+    }
+
+    /**
+     * Decides whether a budget moving between two alert levels is alerted.
+     *
+     * @param from       the previous level
+     * @param to         the new level
+     * @param notifiedAt the time of the last alert in this period, or null
+     * @param now        the current time
+     * @return the severity to alert with (WARN|CRITICAL|RECOVERED), or null to stay silent
+     */
+    String notification(String from, String to, Instant notifiedAt, Instant now) {
+        if (rank(to) > rank(from)) {
+            return to;
+        }
+        if (OK.equals(to)) {
+            return OK.equals(from) ? null : RECOVERED;
+        }
+        if (rank(to) < rank(from)) {
+            // falling from CRITICAL to WARN is not worth an alert of its own
+            return null;
+        }
+        int hours = CRITICAL.equals(to) ? config.getAlertRenotifyCriticalHours() : config.getAlertRenotifyWarnHours();
+        if (hours > 0 && (notifiedAt == null || !now.isBefore(notifiedAt.plus(Duration.ofHours(hours))))) {
+            return to;
+        }
+        return null;
+    }
+
+    /**
+     * Computes the start of the budget period containing a point in time, in UTC.
+     *
+     * @param period the budget period (DAILY|WEEKLY|MONTHLY)
+     * @param now    the point in time
+     * @return the period start, or null if the period is unknown
+     */
+    static Instant periodStart(String period, Instant now) {
+        if ("DAILY".equals(period)) {
+            return now.atZone(ZoneOffset.UTC).truncatedTo(ChronoUnit.DAYS).toInstant();
+        } else if ("WEEKLY".equals(period)) {
+            // ISO week starting Monday
+            return now.atZone(ZoneOffset.UTC).truncatedTo(ChronoUnit.DAYS)
+                    .with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY))
+                    .toInstant();
+        } else if ("MONTHLY".equals(period)) {
+            return now.atZone(ZoneOffset.UTC).truncatedTo(ChronoUnit.DAYS)
+                    .with(TemporalAdjusters.firstDayOfMonth())
+                    .toInstant();
+        }
+        return null;
+    }
+
+    /**
+     * Computes the alert level of a budget. A level is entered when usage reaches its threshold and only left
+     * once usage falls the hysteresis below it.
+     *
+     * @param b          the budget
+     * @param usage      the calculated usage
+     * @param previous   the previous level (OK|WARN|CRITICAL)
+     * @param hysteresis the hysteresis in percentage points
+     * @return CRITICAL at or above the limit, WARN at or above the warning percentage, otherwise OK
+     */
+    static String level(Budget b, AllocationSnapshot usage, String previous, double hysteresis) {
+        double cpuPercent = (double) usage.getCpuMcpu() / b.getCpuMcpuLimit() * 100.0;
+        double memPercent = (double) usage.getMemMib() / b.getMemMibLimit() * 100.0;
+        double percent = Math.max(cpuPercent, memPercent);
+
+        if (percent >= (CRITICAL.equals(previous) ? 100 - hysteresis : 100)) {
+            return CRITICAL;
+        } else if (percent >= (OK.equals(previous) ? b.getWarnPercent() : b.getWarnPercent() - hysteresis)) {
+            return WARN;
+        }
+        return OK;
+    }
+
+    private static int rank(String level) {
+        return CRITICAL.equals(level) ? 2 : WARN.equals(level) ? 1 : 0;
+    }
+
+    /**
+     * A budget to alert, because its usage crossed one of its thresholds or recovered.
+     *
+     * @param budget       the budget
+     * @param usage        the usage within the period
+     * @param severity     the severity level (WARN|CRITICAL|RECOVERED)
+     * @param start        the period start
+     * @param end          the period end
+     * @param topOffenders the applications contributing most to the usage; empty for RECOVERED
+     * @param state        the alert level to store once the alert was sent
+     */
+    public record Violation(Budget budget, AllocationSnapshot usage, String severity, Instant start, Instant end,
+                            List<AllocationSnapshot> topOffenders, BudgetAlertState state) {
+    }
+}
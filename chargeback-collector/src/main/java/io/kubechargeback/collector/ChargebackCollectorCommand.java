@@ -3,19 +3,32 @@ package io.kubechargeback.collector;
 import io.quarkus.picocli.runtime.annotations.TopCommand;
 import jakarta.inject.Inject;
 import picocli.CommandLine.Command;
+import picocli.CommandLine.Option;
 
 @TopCommand
-@Command(name = "chargeback-collector", mixinStandardHelpOptions = true)
+@Command(name = "chargeback-collector", mixinStandardHelpOptions = true,
+        subcommands = { RetentionCommand.class, RebuildLedgerCommand.class })
 public class ChargebackCollectorCommand implements Runnable {
 
     @Inject
     CollectorService collectorService;
 
+    @Inject
+    WatchCollector watchCollector;
+
+    @Option(names = "--watch", description = "Run as a long-lived daemon that tracks workloads through watches "
+            + "and persists a time-weighted snapshot at every window boundary.")
+    boolean watch;
+
     /**
      * Executes the chargeback collector command.
      */
     @Override
     public void run() {
-        collectorService.runCollection();
+        if (watch) {
+            watchCollector.run();
+        } else {
+            collectorService.runCollection();
+        }
     }
 }
@@ -2,7 +2,10 @@ package io.kubechargeback.collector;
 
 import jakarta.enterprise.context.ApplicationScoped;
 import org.eclipse.microprofile.config.inject.ConfigProperty;
+import java.util.Arrays;
 import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 @ApplicationScoped
 public class CollectorConfig {
@@ -31,6 +34,77 @@ public class CollectorConfig {
     @ConfigProperty(name = "dashboard.url", defaultValue = "")
     String dashboardUrl;
 
+    @ConfigProperty(name = "ingest.page-size", defaultValue = "500")
+    int pageSize;
+
+    @ConfigProperty(name = "ingest.concurrency", defaultValue = "4")
+    int ingestConcurrency;
+
+    @ConfigProperty(name = "retention.after-run", defaultValue = "true")
+    boolean retentionAfterRun;
+
+    @ConfigProperty(name = "retention.raw-days", defaultValue = "14")
+    int retentionRawDays;
+
+    @ConfigProperty(name = "retention.daily-months", defaultValue = "13")
+    int retentionDailyMonths;
+
+    @ConfigProperty(name = "retention.monthly-months", defaultValue = "0")
+    int retentionMonthlyMonths;
+
+    @ConfigProperty(name = "retention.alert-days", defaultValue = "90")
+    int retentionAlertDays;
+
+    @ConfigProperty(name = "retention.batch-size", defaultValue = "1000")
+    int retentionBatchSize;
+
+    @ConfigProperty(name = "webhook.queue-capacity", defaultValue = "1000")
+    int webhookQueueCapacity;
+
+    @ConfigProperty(name = "webhook.max-concurrency", defaultValue = "2")
+    int webhookMaxConcurrency;
+
+    @ConfigProperty(name = "webhook.timeout-ms", defaultValue = "5000")
+    long webhookTimeoutMs;
+
+    @ConfigProperty(name = "webhook.max-attempts", defaultValue = "5")
+    int webhookMaxAttempts;
+
+    @ConfigProperty(name = "webhook.backoff-initial-ms", defaultValue = "1000")
+    long webhookBackoffInitialMs;
+
+    @ConfigProperty(name = "webhook.backoff-max-ms", defaultValue = "60000")
+    long webhookBackoffMaxMs;
+
+    @ConfigProperty(name = "webhook.batch-size", defaultValue = "20")
+    int webhookBatchSize;
+
+    @ConfigProperty(name = "webhook.linger-ms", defaultValue = "200")
+    long webhookLingerMs;
+
+    @ConfigProperty(name = "webhook.drain-timeout-ms", defaultValue = "15000")
+    long webhookDrainTimeoutMs;
+
+    @ConfigProperty(name = "webhook.outbox-poll-ms", defaultValue = "60000")
+    long webhookOutboxPollMs;
+
+    @ConfigProperty(name = "webhook.secret-selector")
+    Optional<String> webhookSecretSelector;
+
+    @ConfigProperty(name = "webhook.secret-cache-ttl-seconds", defaultValue = "300")
+    long webhookSecretCacheTtlSeconds;
+
+    @ConfigProperty(name = "alert.hysteresis-percent", defaultValue = "5")
+    double alertHysteresisPercent;
+
+    @ConfigProperty(name = "alert.renotify-warn-hours", defaultValue = "0")
+    int alertRenotifyWarnHours;
+
+    @ConfigProperty(name = "alert.renotify-critical-hours", defaultValue = "24")
+    int alertRenotifyCriticalHours;
+
+    private Set<String> allowedNamespaces;
+
     /**
      * Gets the rate for CPU millicores per hour.
      * @return the CPU rate
@@ -73,9 +147,163 @@ public class CollectorConfig {
      */
     public Optional<String> getAllowlist() { return allowlist; }
 
+    /**
+     * Gets the allowlist parsed into a set of namespace names.
+     * The set is empty when no allowlist is configured and contains "*" when all namespaces are allowed.
+     * @return the allowed namespaces
+     */
+    public Set<String> getAllowedNamespaces() {
+        if (allowedNamespaces == null) {
+            allowedNamespaces = allowlist.map(val -> Arrays.stream(val.split(","))
+                            .map(String::trim)
+                            .filter(ns -> !ns.isEmpty())
+                            .collect(Collectors.toUnmodifiableSet()))
+                    .orElse(Set.of());
+        }
+        return allowedNamespaces;
+    }
+
     /**
      * Gets the dashboard URL for inclusion in alerts.
      * @return the dashboard URL
      */
     public String getDashboardUrl() { return dashboardUrl; }
+
+    /**
+     * Gets the number of objects requested per Kubernetes list page.
+     * @return the page size
+     */
+    public int getPageSize() { return pageSize; }
+
+    /**
+     * Gets the maximum number of Kubernetes list requests running at the same time.
+     * @return the ingest concurrency
+     */
+    public int getIngestConcurrency() { return ingestConcurrency; }
+
+    /**
+     * Checks if retention runs after every persisted window.
+     * @return true if enabled
+     */
+    public boolean isRetentionAfterRun() { return retentionAfterRun; }
+
+    /**
+     * Gets the number of days raw snapshots and their inventory are kept; 0 keeps them forever.
+     * @return the raw retention in days
+     */
+    public int getRetentionRawDays() { return retentionRawDays; }
+
+    /**
+     * Gets the number of months daily rollups are kept; 0 keeps them forever.
+     * @return the daily rollup retention in months
+     */
+    public int getRetentionDailyMonths() { return retentionDailyMonths; }
+
+    /**
+     * Gets the number of months monthly rollups are kept; 0 keeps them forever.
+     * @return the monthly rollup retention in months
+     */
+    public int getRetentionMonthlyMonths() { return retentionMonthlyMonths; }
+
+    /**
+     * Gets the number of days alerts are kept; 0 keeps them forever.
+     * @return the alert retention in days
+     */
+    public int getRetentionAlertDays() { return retentionAlertDays; }
+
+    /**
+     * Gets the maximum number of rows deleted per retention transaction.
+     * @return the retention batch size
+     */
+    public int getRetentionBatchSize() { return retentionBatchSize; }
+
+    /**
+     * Gets the number of webhook deliveries held in memory; further alerts wait in the outbox until it is polled.
+     * @return the queue capacity
+     */
+    public int getWebhookQueueCapacity() { return webhookQueueCapacity; }
+
+    /**
+     * Gets the maximum number of requests sent to one webhook URL at the same time.
+     * @return the per-endpoint concurrency
+     */
+    public int getWebhookMaxConcurrency() { return webhookMaxConcurrency; }
+
+    /**
+     * Gets the timeout for connecting to a webhook and for its response, in milliseconds.
+     * @return the request timeout
+     */
+    public long getWebhookTimeoutMs() { return webhookTimeoutMs; }
+
+    /**
+     * Gets the number of attempts made to deliver an alert before it is dropped.
+     * @return the maximum number of attempts
+     */
+    public int getWebhookMaxAttempts() { return webhookMaxAttempts; }
+
+    /**
+     * Gets the delay before the first retry of a failed delivery, in milliseconds; it doubles with every retry.
+     * @return the initial backoff
+     */
+    public long getWebhookBackoffInitialMs() { return webhookBackoffInitialMs; }
+
+    /**
+     * Gets the longest delay between two attempts of a delivery, in milliseconds.
+     * @return the maximum backoff
+     */
+    public long getWebhookBackoffMaxMs() { return webhookBackoffMaxMs; }
+
+    /**
+     * Gets the maximum number of alerts coalesced into one request to the same webhook.
+     * @return the batch size
+     */
+    public int getWebhookBatchSize() { return webhookBatchSize; }
+
+    /**
+     * Gets how long the dispatcher waits for more alerts to the same webhook before sending, in milliseconds.
+     * @return the linger time
+     */
+    public long getWebhookLingerMs() { return webhookLingerMs; }
+
+    /**
+     * Gets how long shutdown waits for pending webhook deliveries, in milliseconds.
+     * @return the drain timeout
+     */
+    public long getWebhookDrainTimeoutMs() { return webhookDrainTimeoutMs; }
+
+    /**
+     * Gets how often the webhook outbox is read for deferred deliveries while none is pending, in milliseconds; 0 disables the poll.
+     * @return the outbox poll interval
+     */
+    public long getWebhookOutboxPollMs() { return webhookOutboxPollMs; }
+
+    /**
+     * Gets the label selector of the secrets holding webhook URLs, read with one list call.
+     * @return an optional containing the selector; without it every secret is read by name
+     */
+    public Optional<String> getWebhookSecretSelector() { return webhookSecretSelector; }
+
+    /**
+     * Gets how long resolved webhook secrets are cached when they are not watched, in seconds.
+     * @return the cache TTL
+     */
+    public long getWebhookSecretCacheTtlSeconds() { return webhookSecretCacheTtlSeconds; }
+
+    /**
+     * Gets how many percentage points usage must fall below a threshold before an alert level is left.
+     * @return the hysteresis in percentage points
+     */
+    public double getAlertHysteresisPercent() { return alertHysteresisPercent; }
+
+    /**
+     * Gets the interval after which a budget still at WARN is alerted again; 0 alerts only on transitions.
+     * @return the WARN re-notify interval in hours
+     */
+    public int getAlertRenotifyWarnHours() { return alertRenotifyWarnHours; }
+
+    /**
+     * Gets the interval after which a budget still at CRITICAL is alerted again; 0 alerts only on transitions.
+     * @return the CRITICAL re-notify interval in hours
+     */
+    public int getAlertRenotifyCriticalHours() { return alertRenotifyCriticalHours; }
 }
@@ -1,34 +1,225 @@
 package io.kubechargeback.collector;
 
 import io.agroal.api.AgroalDataSource;
+import io.kubechargeback.common.db.PartitionStore;
+import io.kubechargeback.common.db.SchemaMigrator;
 import io.kubechargeback.common.model.AllocationSnapshot;
 import io.kubechargeback.common.model.Budget;
 import io.kubechargeback.common.model.WorkloadInventory;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.logging.Logger;
 
 import java.sql.*;
 import java.time.Instant;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 
 @ApplicationScoped
 public class CollectorRepository {
 
+    private static final Logger LOG = Logger.getLogger(CollectorRepository.class);
+
+    /**
+     * Number of rows sent to SQLite per executeBatch call.
+     */
+    private static final int BATCH_SIZE = 500;
+
+    /**
+     * Maximum number of budget selector values bound to one top-offenders query.
+     */
+    private static final int MAX_SELECTORS = 500;
+
+    static final String DELETE_WINDOW_INVENTORY_SQL =
+            "DELETE FROM {p}.workload_inventory WHERE snapshot_id IN " +
+            "(SELECT id FROM {p}.allocation_snapshots WHERE window_start = ? AND window_end = ?)";
+
+    static final String DELETE_WINDOW_SNAPSHOTS_SQL =
+            "DELETE FROM {p}.allocation_snapshots WHERE window_start = ? AND window_end = ?";
+
+    private static final String BUMP_REPORT_VERSION_SQL =
+            "UPDATE report_version SET version = version + 1, window_end = MAX(COALESCE(window_end, 0), ?) WHERE id = 1";
+
+    private static final String DAY_BUCKET = "window_start - window_start % 86400";
+    private static final String MONTH_BUCKET = "CAST(strftime('%s', window_start, 'unixepoch', 'start of month') AS INTEGER)";
+
+    /**
+     * Budget periods tracked by the usage ledger.
+     */
+    static final List<String> LEDGER_PERIODS = List.of("DAILY", "WEEKLY", "MONTHLY");
+
+    /**
+     * Upsert adding a window to a ledger row, or replacing the row if the window belongs to a later period.
+     */
+    private static final String LEDGER_UPSERT =
+            "ON CONFLICT (group_type, period, group_key) DO UPDATE SET " +
+            "cpu_mcpu = CASE WHEN excluded.period_start > period_start THEN excluded.cpu_mcpu " +
+            "WHEN excluded.period_start = period_start THEN cpu_mcpu + excluded.cpu_mcpu ELSE cpu_mcpu END, " +
+            "mem_mib = CASE WHEN excluded.period_start > period_start THEN excluded.mem_mib " +
+            "WHEN excluded.period_start = period_start THEN mem_mib + excluded.mem_mib ELSE mem_mib END, " +
+            "total_cost_units = CASE WHEN excluded.period_start > period_start THEN excluded.total_cost_units " +
+            "WHEN excluded.period_start = period_start THEN total_cost_units + excluded.total_cost_units " +
+            "ELSE total_cost_units END, " +
+            "period_start = MAX(period_start, excluded.period_start)";
+
+    static final String LEDGER_USAGE_SQL =
+            "SELECT group_key, cpu_mcpu, mem_mib, total_cost_units FROM budget_usage_ledger " +
+            "WHERE group_type = ? AND period = ? AND period_start = ?";
+
+    private static final String LEDGER_REBUILD_SQL =
+            "INSERT INTO budget_usage_ledger (group_type, period, group_key, period_start, cpu_mcpu, mem_mib, " +
+            "total_cost_units) SELECT group_type, ?, group_key, ?, SUM(cpu_mcpu), SUM(mem_mib), SUM(total_cost_units) " +
+            "FROM {t} WHERE group_type IN ('TEAM', 'NAMESPACE') AND bucket_start >= ? GROUP BY group_type, group_key";
+
     @Inject
     AgroalDataSource dataSource;
 
+    @ConfigProperty(name = "storage.partition-dir")
+    Optional<String> partitionDir;
+
+    private PartitionStore partitions;
+
+    /**
+     * Builds the top-offenders query for several budgets of one selector type, ranking the APP snapshots of each
+     * selector value separately. TEAM budgets match APP snapshots by the team resolved for their inventory,
+     * NAMESPACE budgets by the namespace of their inventory; a snapshot is counted once per selector value
+     * however many of its workloads match.
+     * The statement takes the start, end and the selector values once per schema, followed by the limit.
+     *
+     * @param selectorType the budget selector type
+     * @param values       the number of selector values
+     * @param schemas      the schemas holding snapshots
+     * @return the SQL
+     */
+    static String topOffendersSql(String selectorType, int values, List<String> schemas) {
+        String column = selectorColumn(selectorType);
+        String select = "SELECT DISTINCT i." + column + " AS selector, s.id, s.group_key, s.cpu_mcpu, s.mem_mib, " +
+                "s.total_cost_units FROM {p}.allocation_snapshots s JOIN {p}.workload_inventory i ON i.snapshot_id = s.id " +
+                "WHERE s.group_type = 'APP' AND s.window_start >= ? AND s.window_end <= ? AND i." + column + " IN (" +
+                String.join(", ", Collections.nCopies(values, "?")) + ")";
+        return "SELECT selector, group_key, cpu, mem, cost FROM (" +
+                "SELECT selector, group_key, SUM(cpu_mcpu) as cpu, SUM(mem_mib) as mem, SUM(total_cost_units) as cost, " +
+                "ROW_NUMBER() OVER (PARTITION BY selector ORDER BY SUM(total_cost_units) DESC, group_key) as pos FROM (" +
+                PartitionStore.unionAll(schemas, select) +
+                ") GROUP BY selector, group_key) WHERE pos <= ? ORDER BY selector, pos";
+    }
+
+    /**
+     * Gets the inventory column a budget selector type matches.
+     *
+     * @param selectorType the budget selector type (TEAM|NAMESPACE)
+     * @return the column of {@code workload_inventory}
+     */
+    private static String selectorColumn(String selectorType) {
+        if ("TEAM".equals(selectorType)) {
+            return "team";
+        }
+        if ("NAMESPACE".equals(selectorType)) {
+            return "namespace";
+        }
+        throw new IllegalArgumentException("Unsupported selector type: " + selectorType);
+    }
+
+    /**
+     * Builds the statement folding the snapshots of one window in a partition into a rollup table of the main
+     * database. In the main database the rollup triggers do this; partitions have no triggers because a trigger
+     * cannot reach into another database file. The statement takes the window start and end.
+     *
+     * @param schema the partition schema
+     * @param table  the rollup table
+     * @param bucket the expression computing the bucket start from {@code window_start}
+     * @param sign   1 to add the window, -1 to subtract it
+     * @return the SQL
+     */
+    static String rollupAdjustSql(String schema, String table, String bucket, int sign) {
+        return "INSERT INTO main." + table + " (group_type, bucket_start, group_key, cpu_mcpu, mem_mib, " +
+                "cpu_cost_units, mem_cost_units, total_cost_units, snapshots) " +
+                "SELECT group_type, " + bucket + ", group_key, " + sign + " * SUM(cpu_mcpu), " + sign + " * SUM(mem_mib), " +
+                sign + " * SUM(cpu_cost_units), " + sign + " * SUM(mem_cost_units), " + sign + " * SUM(total_cost_units), " +
+                sign + " * COUNT(*) " +
+                "FROM " + schema + ".allocation_snapshots WHERE window_start = ? AND window_end = ? GROUP BY 1, 2, 3 " +
+                "ON CONFLICT (group_type, bucket_start, group_key) DO UPDATE SET " +
+                "cpu_mcpu = cpu_mcpu + excluded.cpu_mcpu, mem_mib = mem_mib + excluded.mem_mib, " +
+                "cpu_cost_units = cpu_cost_units + excluded.cpu_cost_units, " +
+                "mem_cost_units = mem_cost_units + excluded.mem_cost_units, " +
+                "total_cost_units = total_cost_units + excluded.total_cost_units, " +
+                "snapshots = snapshots + excluded.snapshots";
+    }
+
+    /**
+     * Builds the statement adding the TEAM and NAMESPACE snapshots of one window in a partition to the budget
+     * usage ledger for one period. In the main database the ledger triggers do this. The statement takes the
+     * period, the period start, and the window start and end.
+     *
+     * @param schema the partition schema
+     * @return the SQL
+     */
+    static String ledgerAddSql(String schema) {
+        return "INSERT INTO main.budget_usage_ledger (group_type, period, group_key, period_start, cpu_mcpu, mem_mib, " +
+                "total_cost_units) SELECT group_type, ?, group_key, ?, SUM(cpu_mcpu), SUM(mem_mib), SUM(total_cost_units) " +
+                "FROM " + schema + ".allocation_snapshots WHERE window_start = ? AND window_end = ? " +
+                "AND group_type IN ('TEAM', 'NAMESPACE') GROUP BY group_type, group_key " + LEDGER_UPSERT;
+    }
+
+    /**
+     * Builds the statement subtracting the TEAM and NAMESPACE snapshots of one window in a partition from the
+     * budget usage ledger for one period. Rows already reset to a later period are left alone.
+     * The statement takes the window start and end, the period and the period start.
+     *
+     * @param schema the partition schema
+     * @return the SQL
+     */
+    static String ledgerSubtractSql(String schema) {
+        return "UPDATE main.budget_usage_ledger SET cpu_mcpu = cpu_mcpu - w.cpu, mem_mib = mem_mib - w.mem, " +
+                "total_cost_units = total_cost_units - w.cost FROM (" +
+                "SELECT group_type, group_key, SUM(cpu_mcpu) as cpu, SUM(mem_mib) as mem, SUM(total_cost_units) as cost " +
+                "FROM " + schema + ".allocation_snapshots WHERE window_start = ? AND window_end = ? " +
+                "AND group_type IN ('TEAM', 'NAMESPACE') GROUP BY group_type, group_key) w " +
+                "WHERE budget_usage_ledger.group_type = w.group_type AND budget_usage_ledger.period = ? " +
+                "AND budget_usage_ledger.group_key = w.group_key AND budget_usage_ledger.period_start = ?";
+    }
+
+    /**
+     * Gets the monthly partitions of raw snapshots.
+     * @return the partition store; disabled unless {@code storage.partition-dir} is set
+     */
+    PartitionStore partitions() {
+        if (partitions == null) {
+            partitions = PartitionStore.of(partitionDir);
+        }
+        return partitions;
+    }
+
+    /**
+     * Creates the baseline schema if needed and applies pending schema migrations.
+     * A new database is created with incremental auto-vacuum, which can only be set before the first table.
+     */
     public void initDb() {
         try (java.io.InputStream is = getClass().getClassLoader().getResourceAsStream("db/schema.sql")) {
             if (is == null) return;
             String schema = new String(is.readAllBytes(), java.nio.charset.StandardCharsets.UTF_8);
             try (Connection conn = dataSource.getConnection();
                  Statement stmt = conn.createStatement()) {
+                if (pragma(stmt, "page_count") == 0) {
+                    stmt.execute("PRAGMA auto_vacuum = INCREMENTAL");
+                }
                 for (String sql : schema.split(";")) {
                     if (!sql.trim().isEmpty()) {
                         stmt.execute(sql);
                     }
                 }
+                SchemaMigrator.migrate(conn);
             }
         } catch (Exception e) {
             throw new RuntimeException("Failed to init DB", e);
@@ -36,57 +227,242 @@ public class CollectorRepository {
     }
 
     /**
-     * Saves an allocation snapshot to the database.
+     * Persists all snapshots and inventory rows of a collector run in a single transaction.
+     * Any rows previously written for the same window are replaced, so a re-run of a window
+     * is idempotent and a failed run leaves the previous state untouched.
+     * With partitioning enabled the rows go to the partition of the window's month.
      *
-     * @param s the snapshot to save
+     * @param snapshots the aggregated snapshots of the run (all sharing the same window)
+     * @param inventory the workload inventory rows of the run
      */
-    public void saveSnapshot(AllocationSnapshot s) {
-        // Use INSERT OR REPLACE to handle potential duplicate IDs or window overlaps
+    public void saveRun(List<AllocationSnapshot> snapshots, List<WorkloadInventory> inventory) {
+        if (snapshots.isEmpty() && inventory.isEmpty()) {
+            return;
+        }
+        long startNanos = System.nanoTime();
+        PartitionStore store = partitions();
+        List<YearMonth> months = store.isEnabled() && !snapshots.isEmpty()
+                ? List.of(PartitionStore.monthOf(snapshots.get(0).getWindowStart())) : List.of();
         try (Connection conn = dataSource.getConnection();
-             PreparedStatement ps = conn.prepareStatement(
-                     "INSERT OR REPLACE INTO allocation_snapshots (id, window_start, window_end, group_type, group_key, " +
-                             "cpu_mcpu, mem_mib, cpu_cost_units, mem_cost_units, total_cost_units) " +
-                             "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)")) {
-            ps.setString(1, s.getId());
-            ps.setString(2, s.getWindowStart().toString());
-            ps.setString(3, s.getWindowEnd().toString());
-            ps.setString(4, s.getGroupType());
-            ps.setString(5, s.getGroupKey());
-            ps.setLong(6, s.getCpuMcpu());
-            ps.setLong(7, s.getMemMib());
-            ps.setDouble(8, s.getCpuCostUnits());
-            ps.setDouble(9, s.getMemCostUnits());
-            ps.setDouble(10, s.getTotalCostUnits());
-            ps.executeUpdate();
+             PartitionStore.Attachment attachment = store.attach(conn, months, false)) {
+            String schema = attachment.partitions().isEmpty() ? PartitionStore.MAIN : attachment.partitions().get(0);
+            boolean autoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+            try {
+                if (!snapshots.isEmpty()) {
+                    deleteWindow(conn, schema, snapshots.get(0).getWindowStart(), snapshots.get(0).getWindowEnd());
+                }
+                insertSnapshots(conn, schema, snapshots);
+                insertInventory(conn, schema, inventory);
+                if (!PartitionStore.MAIN.equals(schema)) {
+                    adjustRollups(conn, schema, snapshots.get(0).getWindowStart(), snapshots.get(0).getWindowEnd(), 1);
+                    adjustLedger(conn, schema, snapshots.get(0).getWindowStart(), snapshots.get(0).getWindowEnd(), 1);
+                }
+                bumpReportVersion(conn, snapshots.isEmpty() ? 0 : snapshots.get(0).getWindowEnd().getEpochSecond());
+                conn.commit();
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(autoCommit);
+            }
         } catch (SQLException e) {
-            throw new RuntimeException(e);
+            throw new RuntimeException("Failed to persist collector run", e);
         }
+
+        long rows = snapshots.size() + inventory.size();
+        double seconds = Math.max(System.nanoTime() - startNanos, 1) / 1_000_000_000.0;
+        LOG.infof("Persisted %d snapshots and %d inventory rows in %.3f s (%.0f rows/s)",
+                snapshots.size(), inventory.size(), seconds, rows / seconds);
     }
 
     /**
-     * Saves a workload inventory record to the database.
+     * Marks the report data as changed, so the API drops its cached reports.
      *
-     * @param w the workload inventory to save
+     * @param conn      the connection, possibly taking part in a transaction
+     * @param windowEnd the end of the window written, in epoch seconds, or 0 if no window was written
+     * @throws SQLException if a database access error occurs
      */
-    public void saveInventory(WorkloadInventory w) {
-        try (Connection conn = dataSource.getConnection();
-             PreparedStatement ps = conn.prepareStatement(
-                     "INSERT INTO workload_inventory (snapshot_id, namespace, kind, name, labels_json, " +
-                             "cpu_request_mcpu, mem_request_mib, compliance_status) VALUES (?, ?, ?, ?, ?, ?, ?, ?)")) {
-            ps.setString(1, w.getSnapshotId());
-            ps.setString(2, w.getNamespace());
-            ps.setString(3, w.getKind());
-            ps.setString(4, w.getName());
-            ps.setString(5, w.getLabelsJson());
-            ps.setLong(6, w.getCpuRequestMcpu());
-            ps.setLong(7, w.getMemRequestMib());
-            ps.setString(8, w.getComplianceStatus());
+    private void bumpReportVersion(Connection conn, long windowEnd) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(BUMP_REPORT_VERSION_SQL)) {
+            ps.setLong(1, windowEnd);
             ps.executeUpdate();
+        }
+    }
+
+    /**
+     * Marks the report data as changed outside a collector run, e.g. after retention deleted rollups or partitions.
+     */
+    public void markReportsChanged() {
+        try (Connection conn = dataSource.getConnection()) {
+            bumpReportVersion(conn, 0);
         } catch (SQLException e) {
             throw new RuntimeException(e);
         }
     }
 
+    /**
+     * Removes snapshots and their inventory rows previously written for a window.
+     *
+     * @param conn   the connection taking part in the current transaction
+     * @param schema the schema holding the window
+     * @param start  the window start
+     * @param end    the window end
+     * @throws SQLException if a database access error occurs
+     */
+    private void deleteWindow(Connection conn, String schema, Instant start, Instant end) throws SQLException {
+        if (!PartitionStore.MAIN.equals(schema)) {
+            adjustRollups(conn, schema, start, end, -1);
+            adjustLedger(conn, schema, start, end, -1);
+        }
+        try (PreparedStatement inv = conn.prepareStatement(DELETE_WINDOW_INVENTORY_SQL.replace("{p}", schema));
+             PreparedStatement snap = conn.prepareStatement(DELETE_WINDOW_SNAPSHOTS_SQL.replace("{p}", schema))) {
+            inv.setLong(1, start.getEpochSecond());
+            inv.setLong(2, end.getEpochSecond());
+            inv.executeUpdate();
+            snap.setLong(1, start.getEpochSecond());
+            snap.setLong(2, end.getEpochSecond());
+            snap.executeUpdate();
+        }
+    }
+
+    /**
+     * Adds the snapshots of a window in a partition to the daily and monthly rollups, or subtracts them,
+     * and removes rollup rows left without snapshots.
+     *
+     * @param conn   the connection taking part in the current transaction
+     * @param schema the partition schema
+     * @param start  the window start
+     * @param end    the window end
+     * @param sign   1 to add, -1 to subtract
+     * @throws SQLException if a database access error occurs
+     */
+    private void adjustRollups(Connection conn, String schema, Instant start, Instant end, int sign) throws SQLException {
+        ZonedDateTime day = start.atZone(ZoneOffset.UTC).truncatedTo(ChronoUnit.DAYS);
+        adjustRollup(conn, rollupAdjustSql(schema, "allocation_rollups_daily", DAY_BUCKET, sign),
+                "allocation_rollups_daily", day.toInstant(), start, end);
+        adjustRollup(conn, rollupAdjustSql(schema, "allocation_rollups_monthly", MONTH_BUCKET, sign),
+                "allocation_rollups_monthly", day.withDayOfMonth(1).toInstant(), start, end);
+    }
+
+    private void adjustRollup(Connection conn, String sql, String table, Instant bucket, Instant start, Instant end)
+            throws SQLException {
+        try (PreparedStatement adjust = conn.prepareStatement(sql);
+             PreparedStatement cleanup = conn.prepareStatement("DELETE FROM main." + table +
+                     " WHERE group_type IN ('TEAM', 'NAMESPACE', 'APP') AND bucket_start = ? AND snapshots <= 0")) {
+            adjust.setLong(1, start.getEpochSecond());
+            adjust.setLong(2, end.getEpochSecond());
+            adjust.executeUpdate();
+            cleanup.setLong(1, bucket.getEpochSecond());
+            cleanup.executeUpdate();
+        }
+    }
+
+    /**
+     * Adds the snapshots of a window in a partition to the running totals of the budget usage ledger,
+     * or subtracts them.
+     *
+     * @param conn   the connection taking part in the current transaction
+     * @param schema the partition schema
+     * @param start  the window start
+     * @param end    the window end
+     * @param sign   1 to add, -1 to subtract
+     * @throws SQLException if a database access error occurs
+     */
+    private void adjustLedger(Connection conn, String schema, Instant start, Instant end, int sign) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(sign > 0 ? ledgerAddSql(schema) : ledgerSubtractSql(schema))) {
+            for (String period : LEDGER_PERIODS) {
+                long periodStart = BudgetEvaluator.periodStart(period, start).getEpochSecond();
+                if (sign > 0) {
+                    ps.setString(1, period);
+                    ps.setLong(2, periodStart);
+                    ps.setLong(3, start.getEpochSecond());
+                    ps.setLong(4, end.getEpochSecond());
+                } else {
+                    ps.setLong(1, start.getEpochSecond());
+                    ps.setLong(2, end.getEpochSecond());
+                    ps.setString(3, period);
+                    ps.setLong(4, periodStart);
+                }
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+    }
+
+    /**
+     * Batch-inserts allocation snapshots using a single prepared statement.
+     *
+     * @param conn      the connection taking part in the current transaction
+     * @param schema    the schema to insert into
+     * @param snapshots the snapshots to insert
+     * @throws SQLException if a database access error occurs
+     */
+    private void insertSnapshots(Connection conn, String schema, List<AllocationSnapshot> snapshots) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(
+                "INSERT INTO " + schema + ".allocation_snapshots (id, window_start, window_end, group_type, group_key, " +
+                        "cpu_mcpu, mem_mib, cpu_cost_units, mem_cost_units, total_cost_units) " +
+                        "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)")) {
+            int pending = 0;
+            for (AllocationSnapshot s : snapshots) {
+                ps.setString(1, s.getId());
+                ps.setLong(2, s.getWindowStart().getEpochSecond());
+                ps.setLong(3, s.getWindowEnd().getEpochSecond());
+                ps.setString(4, s.getGroupType());
+                ps.setString(5, s.getGroupKey());
+                ps.setLong(6, s.getCpuMcpu());
+                ps.setLong(7, s.getMemMib());
+                ps.setDouble(8, s.getCpuCostUnits());
+                ps.setDouble(9, s.getMemCostUnits());
+                ps.setDouble(10, s.getTotalCostUnits());
+                ps.addBatch();
+                if (++pending == BATCH_SIZE) {
+                    ps.executeBatch();
+                    pending = 0;
+                }
+            }
+            if (pending > 0) {
+                ps.executeBatch();
+            }
+        }
+    }
+
+    /**
+     * Batch-inserts workload inventory rows using a single prepared statement.
+     *
+     * @param conn      the connection taking part in the current transaction
+     * @param schema    the schema to insert into
+     * @param inventory the inventory rows to insert
+     * @throws SQLException if a database access error occurs
+     */
+    private void insertInventory(Connection conn, String schema, List<WorkloadInventory> inventory) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(
+                "INSERT INTO " + schema + ".workload_inventory (snapshot_id, namespace, kind, name, labels_json, team, app, " +
+                        "cpu_request_mcpu, mem_request_mib, compliance_status) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)")) {
+            int pending = 0;
+            for (WorkloadInventory w : inventory) {
+                ps.setString(1, w.getSnapshotId());
+                ps.setString(2, w.getNamespace());
+                ps.setString(3, w.getKind());
+                ps.setString(4, w.getName());
+                ps.setString(5, w.getLabelsJson());
+                ps.setString(6, w.getTeam());
+                ps.setString(7, w.getApp());
+                ps.setLong(8, w.getCpuRequestMcpu());
+                ps.setLong(9, w.getMemRequestMib());
+                ps.setString(10, w.getComplianceStatus());
+                ps.addBatch();
+                if (++pending == BATCH_SIZE) {
+                    ps.executeBatch();
+                    pending = 0;
+                }
+            }
+            if (pending > 0) {
+                ps.executeBatch();
+            }
+        }
+    }
+
     /**
      * Retrieves all enabled budgets from the database.
      *
@@ -108,93 +484,122 @@ public class CollectorRepository {
     }
 
     /**
-     * Calculates the usage for a specific budget within a time range.
+     * Reads the running usage totals of every group key of a group type for a budget period from the ledger.
+     * Budgets select snapshots by group type and key, so this is the usage of all budgets of one selector type.
      *
-     * @param b     the budget
-     * @param start the start time
-     * @param end   the end time
-     * @return an AllocationSnapshot containing the aggregated usage
+     * @param groupType   the group type (TEAM|NAMESPACE)
+     * @param period      the budget period (DAILY|WEEKLY|MONTHLY)
+     * @param periodStart the start of the period
+     * @return the usage per group key; keys without snapshots in the period are absent
      */
-    public AllocationSnapshot getUsageForBudget(Budget b, Instant start, Instant end) {
-        // Sum snapshots for the budget's selector
-        // SelectorType is TEAM or NAMESPACE.
-        // GroupType in snapshots matches SelectorType.
-        // GroupKey matches SelectorValue.
-        
-        String sql = "SELECT SUM(cpu_mcpu) as cpu, SUM(mem_mib) as mem, SUM(total_cost_units) as cost " +
-                     "FROM allocation_snapshots " +
-                     "WHERE group_type = ? AND group_key = ? AND window_start >= ? AND window_end <= ?";
-                     
+    public Map<String, AllocationSnapshot> getLedgerUsage(String groupType, String period, Instant periodStart) {
+        Map<String, AllocationSnapshot> usage = new HashMap<>();
         try (Connection conn = dataSource.getConnection();
-             PreparedStatement ps = conn.prepareStatement(sql)) {
-            ps.setString(1, b.getSelectorType()); // TEAM or NAMESPACE
-            ps.setString(2, b.getSelectorValue());
-            ps.setString(3, start.toString());
-            ps.setString(4, end.toString());
-            
+             PreparedStatement ps = conn.prepareStatement(LEDGER_USAGE_SQL)) {
+            ps.setString(1, groupType);
+            ps.setString(2, period);
+            ps.setLong(3, periodStart.getEpochSecond());
+
             try (ResultSet rs = ps.executeQuery()) {
-                AllocationSnapshot res = new AllocationSnapshot();
-                if (rs.next()) {
-                    res.setCpuMcpu(rs.getLong("cpu"));
-                    res.setMemMib(rs.getLong("mem"));
-                    res.setTotalCostUnits(rs.getDouble("cost"));
+                while (rs.next()) {
+                    AllocationSnapshot res = new AllocationSnapshot();
+                    res.setGroupType(groupType);
+                    res.setGroupKey(rs.getString("group_key"));
+                    res.setCpuMcpu(rs.getLong("cpu_mcpu"));
+                    res.setMemMib(rs.getLong("mem_mib"));
+                    res.setTotalCostUnits(rs.getDouble("total_cost_units"));
+                    usage.put(res.getGroupKey(), res);
                 }
-                return res;
             }
         } catch (SQLException e) {
             throw new RuntimeException(e);
         }
+        return usage;
     }
-    
+
     /**
-     * Finds the applications with the highest cost within a given budget's scope and time range.
+     * Rebuilds the budget usage ledger from the daily and monthly rollups for the periods containing a point
+     * in time, replacing all running totals in one transaction. Used to recover from a ledger that drifted,
+     * e.g. after snapshots were edited by hand.
      *
-     * @param b     the budget to analyze
-     * @param start the start of the period
-     * @param end   the end of the period
-     * @param limit the maximum number of results to return
-     * @return a list of top application snapshots
+     * @param now the current time
+     * @return the number of ledger rows written
      */
-    public List<AllocationSnapshot> getTopOffenders(Budget b, Instant start, Instant end, int limit) {
-        // This is a bit complex as we need to find APP snapshots that belong to this budget's selector (TEAM or NAMESPACE)
-        // For simplicity in MVP, if it's a NAMESPACE budget, we look for APPs in that namespace.
-        // If it's a TEAM budget, we look for APPs with that team label.
-        
-        StringBuilder sql = new StringBuilder();
-        sql.append("SELECT s.group_key, SUM(s.cpu_mcpu) as cpu, SUM(s.mem_mib) as mem, SUM(s.total_cost_units) as cost ");
-        sql.append("FROM allocation_snapshots s ");
-        
-        if ("TEAM".equals(b.getSelectorType())) {
-            sql.append("JOIN (SELECT DISTINCT snapshot_id FROM workload_inventory WHERE json_extract(labels_json, '$.team') = ?) i ON s.id = i.snapshot_id ");
-        }
-        
-        sql.append("WHERE s.group_type = 'APP' AND s.window_start >= ? AND s.window_end <= ? ");
-        
-        if ("NAMESPACE".equals(b.getSelectorType())) {
-            // For NAMESPACE budgets, we need to filter apps by namespace in inventory
-            sql.append("AND s.id IN (SELECT snapshot_id FROM workload_inventory WHERE namespace = ?) ");
+    public int rebuildLedger(Instant now) {
+        try (Connection conn = dataSource.getConnection()) {
+            boolean autoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+            try (Statement clear = conn.createStatement()) {
+                clear.executeUpdate("DELETE FROM budget_usage_ledger");
+                int rows = 0;
+                for (String period : LEDGER_PERIODS) {
+                    // weeks do not align with months, so only the monthly total comes from the monthly rollups
+                    String table = "MONTHLY".equals(period) ? "allocation_rollups_monthly" : "allocation_rollups_daily";
+                    try (PreparedStatement ps = conn.prepareStatement(LEDGER_REBUILD_SQL.replace("{t}", table))) {
+                        long periodStart = BudgetEvaluator.periodStart(period, now).getEpochSecond();
+                        ps.setString(1, period);
+                        ps.setLong(2, periodStart);
+                        ps.setLong(3, periodStart);
+                        rows += ps.executeUpdate();
+                    }
+                }
+                conn.commit();
+                return rows;
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(autoCommit);
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to rebuild budget usage ledger", e);
         }
-        
-        sql.append("GROUP BY s.group_key ORDER BY cost DESC LIMIT ?");
+    }
 
-        List<AllocationSnapshot> results = new ArrayList<>();
+    /**
+     * Finds the applications with the highest cost for several budgets of one selector type within a time range.
+     * Selector values are sent in groups of {@link #MAX_SELECTORS}, one query per group.
+     *
+     * @param selectorType the budget selector type (TEAM|NAMESPACE)
+     * @param values       the selector values of the budgets
+     * @param start        the start of the period
+     * @param end          the end of the period
+     * @param limit        the maximum number of applications per selector value
+     * @return the top application snapshots per selector value, most expensive first; values without any are absent
+     */
+    public Map<String, List<AllocationSnapshot>> getTopOffenders(String selectorType, Collection<String> values,
+                                                                 Instant start, Instant end, int limit) {
+        Map<String, List<AllocationSnapshot>> results = new HashMap<>();
+        List<String> distinct = List.copyOf(new LinkedHashSet<>(values));
+        if (distinct.isEmpty()) {
+            return results;
+        }
         try (Connection conn = dataSource.getConnection();
-             PreparedStatement ps = conn.prepareStatement(sql.toString())) {
-            int idx = 1;
-            if ("TEAM".equals(b.getSelectorType())) ps.setString(idx++, b.getSelectorValue());
-            ps.setString(idx++, start.toString());
-            ps.setString(idx++, end.toString());
-            if ("NAMESPACE".equals(b.getSelectorType())) ps.setString(idx++, b.getSelectorValue());
-            ps.setInt(idx++, limit);
+             PartitionStore.Attachment attachment = partitions().attach(conn, partitions().months(start, end), true)) {
+            for (int from = 0; from < distinct.size(); from += MAX_SELECTORS) {
+                List<String> group = distinct.subList(from, Math.min(distinct.size(), from + MAX_SELECTORS));
+                try (PreparedStatement ps = conn.prepareStatement(
+                        topOffendersSql(selectorType, group.size(), attachment.schemas()))) {
+                    int idx = 1;
+                    for (int i = 0; i < attachment.schemas().size(); i++) {
+                        ps.setLong(idx++, start.getEpochSecond());
+                        ps.setLong(idx++, end.getEpochSecond());
+                        for (String value : group) {
+                            ps.setString(idx++, value);
+                        }
+                    }
+                    ps.setInt(idx, limit);
 
-            try (ResultSet rs = ps.executeQuery()) {
-                while (rs.next()) {
-                    AllocationSnapshot snap = new AllocationSnapshot();
-                    snap.setGroupKey(rs.getString("group_key"));
-                    snap.setCpuMcpu(rs.getLong("cpu"));
-                    snap.setMemMib(rs.getLong("mem"));
-                    snap.setTotalCostUnits(rs.getDouble("cost"));
-                    results.add(snap);
+                    try (ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) {
+                            AllocationSnapshot snap = new AllocationSnapshot();
+                            snap.setGroupKey(rs.getString("group_key"));
+                            snap.setCpuMcpu(rs.getLong("cpu"));
+                            snap.setMemMib(rs.getLong("mem"));
+                            snap.setTotalCostUnits(rs.getDouble("cost"));
+                            results.computeIfAbsent(rs.getString("selector"), k -> new ArrayList<>()).add(snap);
+                        }
+                    }
                 }
             }
         } catch (SQLException e) {
@@ -203,6 +608,73 @@ public class CollectorRepository {
         return results;
     }
 
+    /**
+     * Loads the alert state of every budget that has one.
+     *
+     * @return the alert state per budget ID
+     */
+    public Map<String, BudgetAlertState> findAlertStates() {
+        Map<String, BudgetAlertState> states = new HashMap<>();
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement ps = conn.prepareStatement(
+                     "SELECT budget_id, state, period_start, changed_at, notified_at FROM budget_alert_state");
+             ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                long notifiedAt = rs.getLong("notified_at");
+                Instant notified = rs.wasNull() ? null : Instant.ofEpochSecond(notifiedAt);
+                states.put(rs.getString("budget_id"), new BudgetAlertState(rs.getString("budget_id"),
+                        rs.getString("state"), Instant.ofEpochSecond(rs.getLong("period_start")),
+                        Instant.ofEpochSecond(rs.getLong("changed_at")), notified));
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+        return states;
+    }
+
+    /**
+     * Stores changed budget alert states in one transaction, and removes the states of budgets that were
+     * deleted or disabled, so a budget enabled again starts from OK.
+     *
+     * @param states the changed states
+     */
+    public void saveAlertStates(Collection<BudgetAlertState> states) {
+        try (Connection conn = dataSource.getConnection()) {
+            boolean autoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+            try (PreparedStatement upsert = conn.prepareStatement(
+                    "INSERT INTO budget_alert_state (budget_id, state, period_start, changed_at, notified_at) " +
+                            "VALUES (?, ?, ?, ?, ?) ON CONFLICT (budget_id) DO UPDATE SET state = excluded.state, " +
+                            "period_start = excluded.period_start, changed_at = excluded.changed_at, " +
+                            "notified_at = excluded.notified_at");
+                 PreparedStatement cleanup = conn.prepareStatement(
+                         "DELETE FROM budget_alert_state WHERE budget_id NOT IN (SELECT id FROM budgets WHERE enabled = 1)")) {
+                for (BudgetAlertState state : states) {
+                    upsert.setString(1, state.budgetId());
+                    upsert.setString(2, state.state());
+                    upsert.setLong(3, state.periodStart().getEpochSecond());
+                    upsert.setLong(4, state.changedAt().getEpochSecond());
+                    if (state.notifiedAt() == null) {
+                        upsert.setNull(5, Types.INTEGER);
+                    } else {
+                        upsert.setLong(5, state.notifiedAt().getEpochSecond());
+                    }
+                    upsert.addBatch();
+                }
+                upsert.executeBatch();
+                cleanup.executeUpdate();
+                conn.commit();
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(autoCommit);
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to save budget alert states", e);
+        }
+    }
+
     /**
      * Saves an alert record to the database.
      *
@@ -227,7 +699,281 @@ public class CollectorRepository {
             throw new RuntimeException(e);
         }
     }
-    
+
+    /**
+     * Adds an alert to the webhook outbox, due immediately.
+     *
+     * @param delivery the delivery
+     * @param now      the current time
+     */
+    public void saveWebhook(WebhookDelivery delivery, Instant now) {
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement ps = conn.prepareStatement(
+                     "INSERT INTO webhook_outbox (id, url, payload_json, created_at, attempts, next_attempt_at) " +
+                             "VALUES (?, ?, ?, ?, ?, ?)")) {
+            ps.setString(1, delivery.id());
+            ps.setString(2, delivery.url());
+            ps.setString(3, delivery.payloadJson());
+            ps.setLong(4, now.toEpochMilli());
+            ps.setInt(5, delivery.attempts());
+            ps.setLong(6, delivery.nextAttemptAt().toEpochMilli());
+            ps.executeUpdate();
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Finds the alerts waiting in the webhook outbox, e.g. left behind by a previous run.
+     *
+     * @param limit the maximum number of deliveries
+     * @return the deliveries, earliest next attempt first
+     */
+    public List<WebhookDelivery> findPendingWebhooks(int limit) {
+        List<WebhookDelivery> deliveries = new ArrayList<>();
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement ps = conn.prepareStatement("SELECT id, url, payload_json, attempts, next_attempt_at " +
+                     "FROM webhook_outbox ORDER BY next_attempt_at LIMIT ?")) {
+            ps.setInt(1, limit);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    deliveries.add(new WebhookDelivery(rs.getString("id"), rs.getString("url"),
+                            rs.getString("payload_json"), rs.getInt("attempts"),
+                            Instant.ofEpochMilli(rs.getLong("next_attempt_at"))));
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+        return deliveries;
+    }
+
+    /**
+     * Removes alerts from the webhook outbox once they were delivered or given up.
+     *
+     * @param ids the outbox row IDs
+     */
+    public void deleteWebhooks(Collection<String> ids) {
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement ps = conn.prepareStatement("DELETE FROM webhook_outbox WHERE id = ?")) {
+            for (String id : ids) {
+                ps.setString(1, id);
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Records a failed delivery attempt of an alert in the webhook outbox.
+     *
+     * @param delivery the delivery, with the attempts made so far and the time of the next attempt
+     * @param error    the reason of the failure
+     */
+    public void retryWebhook(WebhookDelivery delivery, String error) {
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement ps = conn.prepareStatement(
+                     "UPDATE webhook_outbox SET attempts = ?, next_attempt_at = ?, last_error = ? WHERE id = ?")) {
+            ps.setInt(1, delivery.attempts());
+            ps.setLong(2, delivery.nextAttemptAt().toEpochMilli());
+            ps.setString(3, error);
+            ps.setString(4, delivery.id());
+            ps.executeUpdate();
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Deletes one batch of raw snapshots, and their inventory rows, whose window starts before a cutoff.
+     * The retention horizon is advanced to the cutoff in the same transaction, so the deleted snapshots
+     * stay counted in the daily and monthly rollups.
+     *
+     * @param before    the cutoff
+     * @param batchSize the maximum number of snapshots to delete
+     * @return the number of snapshots deleted
+     */
+    public int pruneSnapshots(Instant before, int batchSize) {
+        try (Connection conn = dataSource.getConnection()) {
+            boolean autoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+            try (PreparedStatement horizon = conn.prepareStatement(
+                         "UPDATE retention_horizon SET raw_before = MAX(raw_before, ?) WHERE id = 1");
+                 PreparedStatement select = conn.prepareStatement(
+                         "SELECT id FROM allocation_snapshots WHERE window_start < ? LIMIT ?");
+                 PreparedStatement inv = conn.prepareStatement("DELETE FROM workload_inventory WHERE snapshot_id = ?");
+                 PreparedStatement snap = conn.prepareStatement("DELETE FROM allocation_snapshots WHERE id = ?")) {
+                horizon.setLong(1, before.getEpochSecond());
+                horizon.executeUpdate();
+
+                select.setLong(1, before.getEpochSecond());
+                select.setInt(2, batchSize);
+                int deleted = 0;
+                try (ResultSet rs = select.executeQuery()) {
+                    while (rs.next()) {
+                        String id = rs.getString(1);
+                        inv.setString(1, id);
+                        inv.addBatch();
+                        snap.setString(1, id);
+                        snap.addBatch();
+                        deleted++;
+                    }
+                }
+                if (deleted > 0) {
+                    inv.executeBatch();
+                    snap.executeBatch();
+                }
+                conn.commit();
+                return deleted;
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(autoCommit);
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to prune snapshots", e);
+        }
+    }
+
+    /**
+     * Deletes the monthly partitions of all months that ended before a cutoff.
+     * Rows of the month containing the cutoff are kept until the whole month has passed.
+     *
+     * @param before the cutoff
+     * @return the number of partitions deleted
+     */
+    public int dropPartitions(Instant before) {
+        return partitions().dropBefore(PartitionStore.monthOf(before));
+    }
+
+    /**
+     * Deletes one batch of daily rollups whose day starts before a cutoff.
+     *
+     * @param before    the cutoff
+     * @param batchSize the maximum number of rows to delete
+     * @return the number of rows deleted
+     */
+    public int pruneDailyRollups(Instant before, int batchSize) {
+        return pruneBatch("DELETE FROM allocation_rollups_daily WHERE (group_type, bucket_start, group_key) IN " +
+                "(SELECT group_type, bucket_start, group_key FROM allocation_rollups_daily WHERE bucket_start < ? LIMIT ?)",
+                before.getEpochSecond(), batchSize);
+    }
+
+    /**
+     * Deletes one batch of monthly rollups whose month starts before a cutoff.
+     *
+     * @param before    the cutoff
+     * @param batchSize the maximum number of rows to delete
+     * @return the number of rows deleted
+     */
+    public int pruneMonthlyRollups(Instant before, int batchSize) {
+        return pruneBatch("DELETE FROM allocation_rollups_monthly WHERE (group_type, bucket_start, group_key) IN " +
+                "(SELECT group_type, bucket_start, group_key FROM allocation_rollups_monthly WHERE bucket_start < ? LIMIT ?)",
+                before.getEpochSecond(), batchSize);
+    }
+
+    /**
+     * Deletes one batch of alerts raised before a cutoff.
+     * Alert timestamps are compared as Julian days, because the collector stores them as ISO instants
+     * with a varying fraction and the seed data as {@code YYYY-MM-DD HH:MM:SS}, which do not sort together as text.
+     *
+     * @param before    the cutoff
+     * @param batchSize the maximum number of rows to delete
+     * @return the number of rows deleted
+     */
+    public int pruneAlerts(Instant before, int batchSize) {
+        return pruneBatch("DELETE FROM alerts WHERE id IN (SELECT id FROM alerts WHERE julianday(timestamp) < julianday(?) LIMIT ?)",
+                before.toString(), batchSize);
+    }
+
+    /**
+     * Runs a single bounded delete statement in its own transaction.
+     *
+     * @param sql       the delete statement, taking the cutoff and the batch size
+     * @param before    the cutoff
+     * @param batchSize the maximum number of rows to delete
+     * @return the number of rows deleted
+     */
+    private int pruneBatch(String sql, Object before, int batchSize) {
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setObject(1, before);
+            ps.setInt(2, batchSize);
+            return ps.executeUpdate();
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Returns free pages to the file system with {@code PRAGMA incremental_vacuum} in steps of {@code pages}.
+     * Does nothing on a database without incremental auto-vacuum, since converting it needs a full VACUUM
+     * that holds the write lock for the whole rewrite; see {@link #enableIncrementalVacuum()}.
+     *
+     * @param pages the maximum number of pages released per step
+     * @return the number of pages released
+     */
+    public long vacuum(int pages) {
+        try (Connection conn = dataSource.getConnection();
+             Statement stmt = conn.createStatement()) {
+            if (pragma(stmt, "auto_vacuum") != 2) {
+                LOG.debug("Skipping incremental vacuum; run 'retention --enable-auto-vacuum' once to enable it");
+                return 0;
+            }
+            long free = pragma(stmt, "freelist_count");
+            long remaining = free;
+            while (remaining > 0) {
+                stmt.execute("PRAGMA incremental_vacuum(" + pages + ")");
+                long next = pragma(stmt, "freelist_count");
+                if (next >= remaining) {
+                    break;
+                }
+                remaining = next;
+            }
+            return free - remaining;
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to vacuum database", e);
+        }
+    }
+
+    /**
+     * Switches a database created without incremental auto-vacuum to it with a full VACUUM.
+     * The VACUUM rewrites the whole file and blocks all writers until it finishes, so it is only run on request.
+     *
+     * @return true if the database was converted, false if it already used incremental auto-vacuum
+     */
+    public boolean enableIncrementalVacuum() {
+        try (Connection conn = dataSource.getConnection();
+             Statement stmt = conn.createStatement()) {
+            if (pragma(stmt, "auto_vacuum") == 2) {
+                return false;
+            }
+            LOG.info("Switching the database to incremental auto-vacuum (full VACUUM)");
+            stmt.execute("PRAGMA auto_vacuum = INCREMENTAL");
+            stmt.execute("VACUUM");
+            return true;
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to enable incremental auto-vacuum", e);
+        }
+    }
+
+    /**
+     * Reads a numeric pragma.
+     *
+     * @param stmt   the statement to use
+     * @param pragma the pragma name
+     * @return the value
+     * @throws SQLException if a database access error occurs
+     */
+    private long pragma(Statement stmt, String pragma) throws SQLException {
+        try (ResultSet rs = stmt.executeQuery("PRAGMA " + pragma)) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
     /**
      * Maps a database result set row to a Budget object.
      *
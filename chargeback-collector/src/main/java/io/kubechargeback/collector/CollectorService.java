@@ -1,10 +1,8 @@
 package io.kubechargeback.collector;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
-import io.fabric8.kubernetes.api.model.*;
 import io.fabric8.kubernetes.api.model.apps.Deployment;
 import io.fabric8.kubernetes.api.model.apps.StatefulSet;
-import io.fabric8.kubernetes.client.KubernetesClient;
 import io.kubechargeback.common.model.AllocationSnapshot;
 import io.kubechargeback.common.model.Budget;
 import io.kubechargeback.common.model.WorkloadInventory;
@@ -12,12 +10,7 @@ import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
 import org.jboss.logging.Logger;
 
-import java.net.URI;
-import java.net.http.HttpClient;
-import java.net.http.HttpRequest;
-import java.net.http.HttpResponse;
 import java.time.Instant;
-import java.time.ZoneOffset;
 import java.time.temporal.ChronoUnit;
 import java.util.*;
 
@@ -26,9 +19,6 @@ public class CollectorService {
 
     private static final Logger LOG = Logger.getLogger(CollectorService.class);
 
-    @Inject
-    KubernetesClient k8s;
-
     @Inject
     CollectorConfig config;
 
@@ -36,10 +26,21 @@ public class CollectorService {
     CollectorRepository repository;
 
     @Inject
-    WorkloadParser parser;
+    WorkloadFetcher fetcher;
+
+    @Inject
+    RetentionService retentionService;
+
+    @Inject
+    BudgetEvaluator budgetEvaluator;
+
+    @Inject
+    WebhookDispatcher webhookDispatcher;
+
+    @Inject
+    WebhookSecretResolver secretResolver;
 
     private final ObjectMapper mapper = new ObjectMapper();
-    private final HttpClient httpClient = HttpClient.newHttpClient();
 
     /**
      * Executes the collection process.
@@ -47,246 +48,141 @@ public class CollectorService {
     public void runCollection() {
         LOG.info("Starting collector run...");
         repository.initDb();
+        // resume alerts a previous run left in the outbox, even if this run raises none
+        webhookDispatcher.start();
 
         // 1. Define Window
         Instant now = Instant.now();
-        Instant windowEnd;
-        Instant windowStart;
-
+        Instant[] window = currentWindow(now);
+        Instant windowStart = window[0];
+        Instant windowEnd = window[1];
         if (config.isUseCurrentWindow()) {
-            // For E2E/Debug: use current time and go back by window hours (no truncation)
-            windowEnd = now;
-            windowStart = now.minus(config.getWindowHours(), ChronoUnit.HOURS);
             LOG.info("Using DEBUG CURRENT WINDOW (no hourly truncation)");
-        } else {
-            // Standard: Previous full hour
-            windowEnd = now.truncatedTo(ChronoUnit.HOURS);
-            windowStart = windowEnd.minus(config.getWindowHours(), ChronoUnit.HOURS);
         }
-        
-        LOG.infof("Window: %s - %s", windowStart, windowEnd);
-
-        // 2. Fetch Workloads
-        List<WorkloadData> workloads = new ArrayList<>();
-        
-        k8s.apps().deployments().inAnyNamespace().list().getItems().forEach(d -> {
-            if (isAllowed(d.getMetadata().getNamespace())) {
-                workloads.add(parser.fromDeployment(d));
-            }
-        });
-        
-        k8s.apps().statefulSets().inAnyNamespace().list().getItems().forEach(s -> {
-            if (isAllowed(s.getMetadata().getNamespace())) {
-                workloads.add(parser.fromStatefulSet(s));
-            }
-        });
-
-        k8s.apps().daemonSets().inAnyNamespace().list().getItems().forEach(ds -> {
-            if (isAllowed(ds.getMetadata().getNamespace())) {
-                workloads.add(parser.fromDaemonSet(ds));
-            }
-        });
-
-        k8s.batch().v1().jobs().inAnyNamespace().list().getItems().forEach(j -> {
-            if (isAllowed(j.getMetadata().getNamespace())) {
-                workloads.add(parser.fromJob(j, windowStart, windowEnd));
-            }
-        });
-
-        // 3. Aggregate & Create Snapshots
-        Map<String, AllocationSnapshot> teamSnapshots = new HashMap<>();
-        Map<String, AllocationSnapshot> nsSnapshots = new HashMap<>();
-        Map<String, AllocationSnapshot> appSnapshots = new HashMap<>();
-
-        for (WorkloadData w : workloads) {
-            // Aggregation logic
-            double duration = w.durationHours > 0 ? w.durationHours : config.getWindowHours();
-            double cpuCost = w.cpuReq * config.getRateCpu() * duration;
-            double memCost = w.memReq * config.getRateMem() * duration;
-            double totalCost = cpuCost + memCost;
 
-            // TEAM
-            String team = w.labels.getOrDefault(config.getLabelTeam(), "unknown");
-            String teamSnapId = UUID.randomUUID().toString();
-            accumulate(teamSnapshots, "TEAM", team, w.cpuReq, w.memReq, cpuCost, memCost, totalCost, windowStart, windowEnd, teamSnapId);
-
-            // NAMESPACE
-            String nsSnapId = UUID.randomUUID().toString();
-            accumulate(nsSnapshots, "NAMESPACE", w.namespace, w.cpuReq, w.memReq, cpuCost, memCost, totalCost, windowStart, windowEnd, nsSnapId);
+        LOG.infof("Window: %s - %s", windowStart, windowEnd);
 
-            // APP
-            String app = w.labels.getOrDefault(config.getLabelApp(), "unknown");
-            String appSnapId = UUID.randomUUID().toString();
-            accumulate(appSnapshots, "APP", app, w.cpuReq, w.memReq, cpuCost, memCost, totalCost, windowStart, windowEnd, appSnapId);
+        // 2. Stream Workloads page by page, aggregating each one as it arrives
+        AllocationAggregator aggregator = new AllocationAggregator(windowStart, windowEnd, config.getWindowHours(),
+                config.getRateCpu(), config.getRateMem(), config.getLabelTeam(), config.getLabelApp());
+        fetcher.fetch(windowStart, windowEnd, aggregator::add);
 
-            // Inventory
-            WorkloadInventory inv = new WorkloadInventory();
-            inv.setSnapshotId(appSnapId); // Link to APP snapshot for granular reporting
-            inv.setNamespace(w.namespace);
-            inv.setKind(w.kind);
-            inv.setName(w.name);
-            try {
-                inv.setLabelsJson(mapper.writeValueAsString(w.labels));
-            } catch (Exception e) { inv.setLabelsJson("{}"); }
-            inv.setCpuRequestMcpu(w.cpuReq);
-            inv.setMemRequestMib(w.memReq);
-            inv.setComplianceStatus(w.complianceStatus);
-            repository.saveInventory(inv);
-        }
+        // 3. Persist & Check Budgets; inventory is linked to the APP snapshot for granular reporting
+        List<AllocationSnapshot> snapshots = aggregator.flush();
+        List<WorkloadInventory> inventory = aggregator.mapWorkloads(this::toInventory);
+        LOG.infof("Aggregated %d workloads into %d snapshots", aggregator.getWorkloadCount(), snapshots.size());
+        completeWindow(snapshots, inventory, now);
 
-        // 4. Persist Snapshots
-        persist(teamSnapshots);
-        persist(nsSnapshots);
-        persist(appSnapshots);
-
-        // 5. Check Budgets
-        checkBudgets(now);
-        
         LOG.info("Collector run complete.");
     }
 
     /**
-     * Checks if a namespace is allowed based on the allowlist configuration.
+     * Computes the collection window ending at or before the given time.
      *
-     * @param namespace the namespace to check
-     * @return true if allowed, false otherwise
+     * @param now the current time
+     * @return a two-element array holding the window start and end
      */
-    private boolean isAllowed(String namespace) {
-        if (config.getAllowlist().isPresent() && !config.getAllowlist().get().isBlank()) {
-            String val = config.getAllowlist().get();
-            if ("*".equals(val)) return true;
-            String[] allowed = val.split(",");
-            for (String a : allowed) {
-                if (a.trim().equals(namespace)) return true;
-            }
-            return false;
-        }
-        String currentNamespace = k8s.getNamespace();
-        boolean allowed = currentNamespace == null || currentNamespace.equals(namespace);
-        if (!allowed) {
-            LOG.debugf("Namespace '%s' filtered out (current: '%s')", namespace, currentNamespace);
+    Instant[] currentWindow(Instant now) {
+        if (config.isUseCurrentWindow()) {
+            // For E2E/Debug: use current time and go back by window hours (no truncation)
+            return new Instant[] { now.minus(config.getWindowHours(), ChronoUnit.HOURS), now };
         }
-        return allowed;
+        // Standard: Previous full hour
+        Instant windowEnd = now.truncatedTo(ChronoUnit.HOURS);
+        return new Instant[] { windowEnd.minus(config.getWindowHours(), ChronoUnit.HOURS), windowEnd };
     }
 
     /**
-     * Accumulates workload data into a snapshot.
+     * Persists the snapshots and inventory of a finished window, evaluates budgets against them
+     * and applies the retention policy.
+     * Used by both the one-shot collection and the watch mode.
      *
-     * @param map       the map of snapshots
-     * @param type      the group type
-     * @param key       the group key
-     * @param cpu       the CPU request in millicores
-     * @param mem       the memory request in MiB
-     * @param cpuCost   the calculated CPU cost
-     * @param memCost   the calculated memory cost
-     * @param totalCost the total calculated cost
-     * @param start     the window start time
-     * @param end       the window end time
-     * @param id        the snapshot ID
+     * @param snapshots the aggregated snapshots of the window
+     * @param inventory the workload inventory of the window
+     * @param now       the time used to determine budget periods
      */
-    private void accumulate(Map<String, AllocationSnapshot> map, String type, String key, 
-                            long cpu, long mem, double cpuCost, double memCost, double totalCost,
-                            Instant start, Instant end, String id) {
-        AllocationSnapshot s = map.computeIfAbsent(key, k -> {
-            AllocationSnapshot snap = new AllocationSnapshot();
-            snap.setId(id);
-            snap.setGroupType(type);
-            snap.setGroupKey(key);
-            snap.setWindowStart(start);
-            snap.setWindowEnd(end);
-            return snap;
-        });
-        s.setCpuMcpu(s.getCpuMcpu() + cpu);
-        s.setMemMib(s.getMemMib() + mem);
-        s.setCpuCostUnits(s.getCpuCostUnits() + cpuCost);
-        s.setMemCostUnits(s.getMemCostUnits() + memCost);
-        s.setTotalCostUnits(s.getTotalCostUnits() + totalCost);
-    }
+    public void completeWindow(List<AllocationSnapshot> snapshots, List<WorkloadInventory> inventory, Instant now) {
+        // Persist Snapshots & Inventory in one transaction
+        repository.saveRun(snapshots, inventory);
 
-    /**
-     * Persists a map of snapshots to the repository.
-     *
-     * @param map the map of snapshots
-     */
-    private void persist(Map<String, AllocationSnapshot> map) {
-        for (AllocationSnapshot s : map.values()) {
-            repository.saveSnapshot(s);
+        // Check Budgets
+        checkBudgets(now);
+
+        // Prune history; the window is already persisted, so a failure here must not fail the run
+        if (config.isRetentionAfterRun()) {
+            try {
+                retentionService.run(now);
+            } catch (RuntimeException e) {
+                LOG.error("Retention failed", e);
+            }
         }
     }
 
     /**
-     * Checks budgets for a given point in time.
+     * Converts parsed workload data into an inventory row.
      *
-     * @param now the current time
+     * @param w          the workload
+     * @param snapshotId the ID of the APP snapshot the workload belongs to
+     * @return the inventory row
      */
-    private void checkBudgets(Instant now) {
-        List<Budget> budgets = repository.findAllEnabledBudgets();
-        for (Budget b : budgets) {
-            // Determine Period
-            Instant start = null;
-            Instant end = now;
-            
-            if ("DAILY".equals(b.getPeriod())) {
-                start = now.atZone(ZoneOffset.UTC).truncatedTo(ChronoUnit.DAYS).toInstant();
-            } else if ("WEEKLY".equals(b.getPeriod())) {
-                 // ISO week starting Monday
-                 // Simple approximation: go back to last Monday
-                 start = now.atZone(ZoneOffset.UTC).truncatedTo(ChronoUnit.DAYS) 
-                         .with(java.time.temporal.TemporalAdjusters.previousOrSame(java.time.DayOfWeek.MONDAY))
-                         .toInstant();
-            } else if ("MONTHLY".equals(b.getPeriod())) {
-                start = now.atZone(ZoneOffset.UTC).truncatedTo(ChronoUnit.DAYS)
-                        .with(java.time.temporal.TemporalAdjusters.firstDayOfMonth())
-                        .toInstant();
-            }
-
-            if (start != null) {
-                AllocationSnapshot usage = repository.getUsageForBudget(b, start, end);
-                checkThresholds(b, usage, start, end);
-            }
-        }
+    WorkloadInventory toInventory(WorkloadData w, String snapshotId) {
+        WorkloadInventory inv = new WorkloadInventory();
+        inv.setSnapshotId(snapshotId);
+        inv.setNamespace(w.namespace);
+        inv.setKind(w.kind);
+        inv.setName(w.name);
+        inv.setTeam(w.labels.getOrDefault(config.getLabelTeam(), "unknown"));
+        inv.setApp(w.labels.getOrDefault(config.getLabelApp(), "unknown"));
+        try {
+            inv.setLabelsJson(mapper.writeValueAsString(w.labels));
+        } catch (Exception e) { inv.setLabelsJson("{}"); }
+        inv.setCpuRequestMcpu(w.cpuReq);
+        inv.setMemRequestMib(w.memReq);
+        inv.setComplianceStatus(w.complianceStatus);
+        return inv;
     }
 
     /**
-     * Checks if usage exceeds budget thresholds.
+     * Checks budgets for a given point in time and alerts on every budget whose alert level changed.
+     * The webhook secrets of all alerted budgets are resolved together before any alert is sent, and only the
+     * budgets whose alerts were sent move to their new level.
      *
-     * @param b     the budget
-     * @param usage the calculated usage
-     * @param start the period start
-     * @param end   the period end
+     * @param now the current time
      */
-    private void checkThresholds(Budget b, AllocationSnapshot usage, Instant start, Instant end) {
-        double cpuPercent = (double) usage.getCpuMcpu() / b.getCpuMcpuLimit() * 100.0;
-        double memPercent = (double) usage.getMemMib() / b.getMemMibLimit() * 100.0;
-        
-        String severity = null;
-        if (cpuPercent >= 100 || memPercent >= 100) {
-            severity = "CRITICAL";
-        } else if (cpuPercent >= b.getWarnPercent() || memPercent >= b.getWarnPercent()) {
-            severity = "WARN";
+    private void checkBudgets(Instant now) {
+        List<BudgetEvaluator.Violation> violations = budgetEvaluator.evaluate(now);
+        if (violations.isEmpty()) {
+            return;
         }
-
-        if (severity != null) {
-            List<AllocationSnapshot> topOffenders = repository.getTopOffenders(b, start, end, 5);
-            sendAlert(b, usage, severity, start, end, topOffenders);
+        Map<String, String> webhookUrls = secretResolver.resolve(
+                violations.stream().map(v -> v.budget().getWebhookSecretName()).toList(), Instant.now());
+        List<BudgetEvaluator.Violation> sent = new ArrayList<>();
+        for (BudgetEvaluator.Violation v : violations) {
+            if (sendAlert(v.budget(), v.usage(), v.severity(), v.start(), v.end(), v.topOffenders(),
+                    webhookUrls.get(v.budget().getWebhookSecretName()))) {
+                sent.add(v);
+            }
         }
+        budgetEvaluator.markAlerted(sent);
     }
 
     /**
-     * Sends an alert for a budget violation.
+     * Records an alert for a budget violation or recovery and queues it for its webhook.
      *
      * @param b             the budget
      * @param usage         the current usage
-     * @param severity      the severity level
+     * @param severity      the severity level (WARN|CRITICAL|RECOVERED)
      * @param start         the period start
      * @param end           the period end
      * @param topOffenders  the list of top apps contributing to usage
+     * @param webhookUrl    the webhook URL from the budget's secret, or null if it has none
+     * @return true if the alert was recorded and queued
      */
-    private void sendAlert(Budget b, AllocationSnapshot usage, String severity, Instant start, Instant end, List<AllocationSnapshot> topOffenders) {
-        String webhookUrl = getWebhookUrl(b.getWebhookSecretName());
+    private boolean sendAlert(Budget b, AllocationSnapshot usage, String severity, Instant start, Instant end,
+                              List<AllocationSnapshot> topOffenders, String webhookUrl) {
         if (webhookUrl == null) {
-            LOG.warnf("No webhook URL found for budget  (secret: )", b.getName(), b.getWebhookSecretName());
-            return;
+            LOG.warnf("No webhook URL found for budget %s (secret: %s)", b.getName(), b.getWebhookSecretName());
+            return false;
         }
 
         try {
@@ -324,46 +220,17 @@ public class CollectorService {
 
             // Save to local database for Dashboard
             String alertId = UUID.randomUUID().toString();
-            String message = String.format("Budget '%s' exceeded. Severity: %s", b.getName(), severity);
+            String message = BudgetEvaluator.RECOVERED.equals(severity)
+                    ? String.format("Budget '%s' is back within its limits.", b.getName())
+                    : String.format("Budget '%s' exceeded. Severity: %s", b.getName(), severity);
             repository.saveAlert(alertId, severity, b.getName(), message, json);
 
-            HttpRequest request = HttpRequest.newBuilder()
-                    .uri(URI.create(webhookUrl))
-                    .header("Content-Type", "application/json")
-                    .POST(HttpRequest.BodyPublishers.ofString(json))
-                    .build();
-
-            httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofString())
-                    .thenAccept(res -> {
-                        if (res.statusCode() >= 300) {
-                            LOG.errorf("Failed to send alert for budget : ", b.getName(), res.body());
-                        }
-                    })
-                    .exceptionally(e -> {
-                        LOG.errorf("Error sending alert for budget : ", b.getName(), e.getMessage());
-                        return null;
-                    });
-        } catch (Exception e) {
-            LOG.errorf("Error preparing alert for budget : ", b.getName(), e.getMessage());
-        }
-    }
-
-    /**
-     * Retrieves the webhook URL from a Kubernetes Secret.
-     *
-     * @param secretName the name of the secret
-     * @return the webhook URL, or null if not found
-     */
-    private String getWebhookUrl(String secretName) {
-        if (secretName == null || secretName.isBlank()) return null;
-        try {
-            Secret s = k8s.secrets().withName(secretName).get();
-            if (s != null && s.getData() != null && s.getData().containsKey("webhook.url")) {
-                return new String(Base64.getDecoder().decode(s.getData().get("webhook.url")));
-            }
+            // Delivered in the background; the dispatcher drains its queue before the collector exits
+            webhookDispatcher.enqueue(webhookUrl, json);
+            return true;
         } catch (Exception e) {
-            LOG.errorf("Error fetching secret : ", secretName, e.getMessage());
+            LOG.errorf("Error preparing alert for budget %s: %s", b.getName(), e.getMessage());
+            return false;
         }
-        return null;
     }
 }
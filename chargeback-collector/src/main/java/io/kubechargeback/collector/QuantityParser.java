@@ -0,0 +1,137 @@
+package io.kubechargeback.collector;
+
+/**
+ * Allocation-free parser for the Kubernetes quantity forms that make up nearly all resource requests,
+ * such as "250m", "1.5", "512Mi" or "2Gi".
+ * A quantity is accepted if its amount is a plain non-negative decimal (at most 18 digits, 12 of them fractional)
+ * followed by a decimal SI or binary suffix. Anything else, for example exponents, negative values or the
+ * "u"/"n" suffixes, is reported as {@link #UNSUPPORTED} so the caller can fall back to fabric8's BigDecimal path.
+ * Results are truncated towards zero like the BigDecimal path; unlike double arithmetic they are exact.
+ */
+final class QuantityParser {
+
+    /**
+     * Returned when a quantity is not in one of the supported forms.
+     */
+    static final long UNSUPPORTED = -1;
+
+    private static final long MIB = 1024 * 1024;
+    private static final int MAX_DIGITS = 18;
+    private static final int MAX_SCALE = 12;
+    private static final long[] POW10 = {
+            1L, 10L, 100L, 1_000L, 10_000L, 100_000L, 1_000_000L, 10_000_000L, 100_000_000L,
+            1_000_000_000L, 10_000_000_000L, 100_000_000_000L, 1_000_000_000_000L
+    };
+
+    private QuantityParser() {
+    }
+
+    /**
+     * Parses a CPU quantity into millicores.
+     *
+     * @param amount the numeric part of the quantity, possibly followed by its suffix
+     * @param format the suffix, used if {@code amount} has none
+     * @return the millicores, or {@link #UNSUPPORTED}
+     */
+    static long milliCores(String amount, String format) {
+        return parse(amount, format, true);
+    }
+
+    /**
+     * Parses a memory quantity into MiB.
+     *
+     * @param amount the numeric part of the quantity, possibly followed by its suffix
+     * @param format the suffix, used if {@code amount} has none
+     * @return the MiB, or {@link #UNSUPPORTED}
+     */
+    static long mebibytes(String amount, String format) {
+        return parse(amount, format, false);
+    }
+
+    /**
+     * Parses a quantity as {@code mantissa / 10^scale * multiplier(suffix)}, expressed in millicores or MiB.
+     *
+     * @param amount the numeric part of the quantity, possibly followed by its suffix
+     * @param format the suffix, used if {@code amount} has none
+     * @param cpu    true to return millicores, false to return MiB
+     * @return the parsed value, or {@link #UNSUPPORTED}
+     */
+    private static long parse(String amount, String format, boolean cpu) {
+        if (amount == null) {
+            return UNSUPPORTED;
+        }
+        int len = amount.length();
+        long mantissa = 0;
+        int digits = 0;
+        int scale = 0;
+        boolean fraction = false;
+        int i = 0;
+        for (; i < len; i++) {
+            char c = amount.charAt(i);
+            if (c >= '0' && c <= '9') {
+                if (++digits > MAX_DIGITS) {
+                    return UNSUPPORTED;
+                }
+                mantissa = mantissa * 10 + (c - '0');
+                if (fraction) {
+                    scale++;
+                }
+            } else if (c == '.' && !fraction) {
+                fraction = true;
+            } else {
+                break;
+            }
+        }
+        if (digits == 0 || scale > MAX_SCALE) {
+            return UNSUPPORTED;
+        }
+
+        long multiplier;
+        if (i < len) {
+            multiplier = multiplier(amount, i, cpu);
+        } else if (format == null || format.isEmpty()) {
+            multiplier = cpu ? 1000 : 1;
+        } else {
+            multiplier = multiplier(format, 0, cpu);
+        }
+        if (multiplier == UNSUPPORTED || mantissa > Long.MAX_VALUE / multiplier) {
+            return UNSUPPORTED;
+        }
+        long divisor = POW10[scale] * (cpu ? 1 : MIB);
+        return mantissa * multiplier / divisor;
+    }
+
+    /**
+     * Resolves the multiplier of a suffix, in millicores per core-unit for CPU and in bytes per unit for memory.
+     *
+     * @param s    the string holding the suffix
+     * @param from the index at which the suffix starts
+     * @param cpu  true for CPU quantities
+     * @return the multiplier, or {@link #UNSUPPORTED}
+     */
+    private static long multiplier(String s, int from, boolean cpu) {
+        int len = s.length() - from;
+        if (len == 1) {
+            switch (s.charAt(from)) {
+                case 'm': return cpu ? 1 : UNSUPPORTED;
+                case 'k': return cpu ? 1_000_000L : 1_000L;
+                case 'M': return cpu ? 1_000_000_000L : 1_000_000L;
+                case 'G': return cpu ? 1_000_000_000_000L : 1_000_000_000L;
+                case 'T': return cpu ? UNSUPPORTED : 1_000_000_000_000L;
+                case 'P': return cpu ? UNSUPPORTED : 1_000_000_000_000_000L;
+                default: return UNSUPPORTED;
+            }
+        }
+        if (len == 2 && !cpu && s.charAt(from + 1) == 'i') {
+            switch (s.charAt(from)) {
+                case 'K': return 1L << 10;
+                case 'M': return 1L << 20;
+                case 'G': return 1L << 30;
+                case 'T': return 1L << 40;
+                case 'P': return 1L << 50;
+                default: return UNSUPPORTED;
+            }
+        }
+        return UNSUPPORTED;
+    }
+}
@@ -0,0 +1,27 @@
+package io.kubechargeback.collector;
+
+import jakarta.inject.Inject;
+import org.jboss.logging.Logger;
+import picocli.CommandLine.Command;
+
+import java.time.Instant;
+
+@Command(name = "rebuild-ledger", mixinStandardHelpOptions = true,
+        description = "Recomputes the budget usage ledger of the current periods from the rollups.")
+public class RebuildLedgerCommand implements Runnable {
+
+    private static final Logger LOG = Logger.getLogger(RebuildLedgerCommand.class);
+
+    @Inject
+    CollectorRepository repository;
+
+    /**
+     * Executes the rebuild-ledger command.
+     */
+    @Override
+    public void run() {
+        repository.initDb();
+        int rows = repository.rebuildLedger(Instant.now());
+        LOG.infof("Rebuilt budget usage ledger with %d running totals", rows);
+    }
+}
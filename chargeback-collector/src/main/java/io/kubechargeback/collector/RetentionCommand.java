@@ -0,0 +1,37 @@
+package io.kubechargeback.collector;
+
+import jakarta.inject.Inject;
+import org.jboss.logging.Logger;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Option;
+
+import java.time.Instant;
+
+@Command(name = "retention", mixinStandardHelpOptions = true,
+        description = "Applies the retention policy (retention.*) without collecting a window.")
+public class RetentionCommand implements Runnable {
+
+    private static final Logger LOG = Logger.getLogger(RetentionCommand.class);
+
+    @Inject
+    CollectorRepository repository;
+
+    @Inject
+    RetentionService retentionService;
+
+    @Option(names = "--enable-auto-vacuum", description = "Switch a database created by an older version to "
+            + "incremental auto-vacuum with a one-time full VACUUM, which blocks writers while it runs.")
+    boolean enableAutoVacuum;
+
+    /**
+     * Executes the retention command.
+     */
+    @Override
+    public void run() {
+        repository.initDb();
+        retentionService.run(Instant.now());
+        if (enableAutoVacuum && !repository.enableIncrementalVacuum()) {
+            LOG.info("The database already uses incremental auto-vacuum");
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package io.kubechargeback.collector;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.jboss.logging.Logger;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.function.ToIntBiFunction;
+
+/**
+ * Enforces the retention policy on historical data.
+ * Raw snapshots and their inventory are kept for {@code retention.raw-days}, daily rollups for
+ * {@code retention.daily-months} and monthly rollups for {@code retention.monthly-months}; a value of 0 keeps
+ * the data forever. Raw snapshots are already downsampled into the rollups when they are written, so pruning
+ * them only moves the retention horizon and never changes report totals for whole days and months.
+ * Monthly partitions of raw snapshots are dropped as whole files once their month has passed the raw retention.
+ * Every delete runs in its own transaction of at most {@code retention.batch-size} rows, so the collector
+ * and the API are never blocked for long. Freed pages are returned to the file system at the end by an
+ * incremental vacuum; databases created before incremental auto-vacuum are only converted on request.
+ */
+@ApplicationScoped
+public class RetentionService {
+
+    private static final Logger LOG = Logger.getLogger(RetentionService.class);
+
+    /**
+     * Number of pages released per incremental vacuum step.
+     */
+    private static final int VACUUM_PAGES = 1024;
+
+    @Inject
+    CollectorConfig config;
+
+    @Inject
+    CollectorRepository repository;
+
+    /**
+     * Applies the retention policy.
+     *
+     * @param now the current time
+     */
+    public void run(Instant now) {
+        ZonedDateTime today = now.atZone(ZoneOffset.UTC).truncatedTo(ChronoUnit.DAYS);
+        ZonedDateTime month = today.withDayOfMonth(1);
+        long deleted = 0;
+        int dropped = 0;
+
+        if (config.getRetentionRawDays() > 0) {
+            Instant rawBefore = today.minusDays(config.getRetentionRawDays()).toInstant();
+            deleted += prune("raw snapshots", rawBefore, repository::pruneSnapshots);
+            dropped = repository.dropPartitions(rawBefore);
+            if (dropped > 0) {
+                LOG.infof("Retention dropped %d monthly partitions before %s", dropped, rawBefore);
+            }
+        }
+        if (config.getRetentionDailyMonths() > 0) {
+            deleted += prune("daily rollups", month.minusMonths(config.getRetentionDailyMonths()).toInstant(),
+                    repository::pruneDailyRollups);
+        }
+        if (config.getRetentionMonthlyMonths() > 0) {
+            deleted += prune("monthly rollups", month.minusMonths(config.getRetentionMonthlyMonths()).toInstant(),
+                    repository::pruneMonthlyRollups);
+        }
+        if (config.getRetentionAlertDays() > 0) {
+            deleted += prune("alerts", now.minus(config.getRetentionAlertDays(), ChronoUnit.DAYS),
+                    repository::pruneAlerts);
+        }
+
+        if (deleted > 0 || dropped > 0) {
+            repository.markReportsChanged();
+        }
+        if (deleted > 0) {
+            long pages = repository.vacuum(VACUUM_PAGES);
+            LOG.infof("Retention released %d free pages", pages);
+        }
+    }
+
+    /**
+     * Deletes rows older than a cutoff batch by batch until none are left.
+     *
+     * @param what   a description of the rows for logging
+     * @param before the cutoff
+     * @param batch  the delete of one batch, returning the number of rows deleted
+     * @return the total number of rows deleted
+     */
+    private long prune(String what, Instant before, ToIntBiFunction<Instant, Integer> batch) {
+        int batchSize = config.getRetentionBatchSize();
+        long total = 0;
+        int deleted;
+        do {
+            deleted = batch.applyAsInt(before, batchSize);
+            total += deleted;
+        } while (deleted == batchSize);
+        if (total > 0) {
+            LOG.infof("Retention deleted %d %s before %s", total, what, before);
+        }
+        return total;
+    }
+}
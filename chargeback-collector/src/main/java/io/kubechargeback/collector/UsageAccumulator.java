@@ -0,0 +1,161 @@
+package io.kubechargeback.collector;
+
+import io.kubechargeback.common.model.AllocationSnapshot;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Time-weighted per-group usage accumulator used by the watch mode.
+ * Every group keeps the summed requests of its live workloads (its current rate) and the integral of that rate
+ * over time, so a workload that is scaled within a window is charged for exactly as long as each replica count
+ * lasted. Flushing a window only walks the groups, never the workloads.
+ * This class is not thread-safe; callers must serialize access.
+ */
+public class UsageAccumulator {
+
+    private static final double MILLIS_PER_HOUR = 3_600_000.0;
+    private static final String[] GROUP_TYPES = { "TEAM", "NAMESPACE", "APP" };
+
+    private final String labelTeam;
+    private final String labelApp;
+    private final List<Map<String, Group>> groupsByType = List.of(new HashMap<>(), new HashMap<>(), new HashMap<>());
+
+    /**
+     * Creates an empty accumulator.
+     *
+     * @param labelTeam the label used for team identification
+     * @param labelApp  the label used for application identification
+     */
+    public UsageAccumulator(String labelTeam, String labelApp) {
+        this.labelTeam = labelTeam;
+        this.labelApp = labelApp;
+    }
+
+    /**
+     * Applies a change of a single workload at a point in time.
+     * The previous state stops being charged and the current state starts being charged at {@code at}.
+     *
+     * @param previous the previously charged state of the workload, or null if it was not charged
+     * @param current  the state to charge from now on, or null if the workload is gone or idle
+     * @param at       the time of the change
+     */
+    public void update(WorkloadData previous, WorkloadData current, Instant at) {
+        long atMillis = at.toEpochMilli();
+        if (previous != null) {
+            String[] keys = groupKeys(previous);
+            for (int t = 0; t < GROUP_TYPES.length; t++) {
+                Group g = groupsByType.get(t).get(keys[t]);
+                if (g != null) {
+                    g.advance(atMillis);
+                    g.cpuMcpu -= previous.cpuReq;
+                    g.memMib -= previous.memReq;
+                    g.members--;
+                }
+            }
+        }
+        if (current != null) {
+            String[] keys = groupKeys(current);
+            for (int t = 0; t < GROUP_TYPES.length; t++) {
+                Group g = groupsByType.get(t).computeIfAbsent(keys[t], k -> new Group(atMillis));
+                g.advance(atMillis);
+                g.cpuMcpu += current.cpuReq;
+                g.memMib += current.memReq;
+                g.members++;
+            }
+        }
+    }
+
+    /**
+     * Closes a window and returns one snapshot per group that was charged during it.
+     * The snapshot's CPU and memory are the time-weighted average requests over the window,
+     * and its costs are the integral of the requests multiplied by the configured rates.
+     * Integrals are reset afterwards, and groups without live workloads are dropped.
+     *
+     * @param windowStart the window start
+     * @param windowEnd   the window end
+     * @param rateCpu     the cost per millicore per hour
+     * @param rateMem     the cost per MiB per hour
+     * @return the snapshots of the window
+     */
+    public List<AllocationSnapshot> flush(Instant windowStart, Instant windowEnd, double rateCpu, double rateMem) {
+        long endMillis = windowEnd.toEpochMilli();
+        double windowHours = Math.max(endMillis - windowStart.toEpochMilli(), 1) / MILLIS_PER_HOUR;
+        List<AllocationSnapshot> snapshots = new ArrayList<>();
+        for (int t = 0; t < GROUP_TYPES.length; t++) {
+            Iterator<Map.Entry<String, Group>> it = groupsByType.get(t).entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<String, Group> e = it.next();
+                Group g = e.getValue();
+                g.advance(endMillis);
+                if (g.members > 0 || g.cpuMcpuHours > 0 || g.memMibHours > 0) {
+                    AllocationSnapshot s = new AllocationSnapshot();
+                    s.setWindowStart(windowStart);
+                    s.setWindowEnd(windowEnd);
+                    s.setGroupType(GROUP_TYPES[t]);
+                    s.setGroupKey(e.getKey());
+                    s.setCpuMcpu(Math.round(g.cpuMcpuHours / windowHours));
+                    s.setMemMib(Math.round(g.memMibHours / windowHours));
+                    s.setCpuCostUnits(g.cpuMcpuHours * rateCpu);
+                    s.setMemCostUnits(g.memMibHours * rateMem);
+                    s.setTotalCostUnits(s.getCpuCostUnits() + s.getMemCostUnits());
+                    snapshots.add(s);
+                }
+                g.cpuMcpuHours = 0;
+                g.memMibHours = 0;
+                if (g.members <= 0) {
+                    it.remove();
+                }
+            }
+        }
+        return snapshots;
+    }
+
+    /**
+     * Resolves the TEAM, NAMESPACE and APP group keys of a workload.
+     *
+     * @param w the workload
+     * @return the group keys, indexed like {@link #GROUP_TYPES}
+     */
+    private String[] groupKeys(WorkloadData w) {
+        return new String[] {
+                w.labels.getOrDefault(labelTeam, "unknown"),
+                w.namespace,
+                w.labels.getOrDefault(labelApp, "unknown")
+        };
+    }
+
+    /**
+     * Running state of a single group.
+     */
+    private static final class Group {
+        long cpuMcpu;
+        long memMib;
+        int members;
+        double cpuMcpuHours;
+        double memMibHours;
+        long sinceMillis;
+
+        Group(long sinceMillis) {
+            this.sinceMillis = sinceMillis;
+        }
+
+        /**
+         * Integrates the current rate up to the given time.
+         *
+         * @param atMillis the time to integrate to
+         */
+        void advance(long atMillis) {
+            if (atMillis > sinceMillis) {
+                double hours = (atMillis - sinceMillis) / MILLIS_PER_HOUR;
+                cpuMcpuHours += cpuMcpu * hours;
+                memMibHours += memMib * hours;
+                sinceMillis = atMillis;
+            }
+        }
+    }
+}
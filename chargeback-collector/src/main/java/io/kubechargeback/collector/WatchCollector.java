@@ -0,0 +1,357 @@
+package io.kubechargeback.collector;
+
+import io.fabric8.kubernetes.api.model.HasMetadata;
+import io.fabric8.kubernetes.api.model.batch.v1.Job;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.dsl.Informable;
+import io.fabric8.kubernetes.client.informers.ResourceEventHandler;
+import io.fabric8.kubernetes.client.informers.SharedIndexInformer;
+import io.kubechargeback.common.model.AllocationSnapshot;
+import io.kubechargeback.common.model.WorkloadInventory;
+import io.quarkus.runtime.Quarkus;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.jboss.logging.Logger;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Long-running collector mode.
+ * Shared informers keep an in-memory index of all workloads up to date from watch events, every change is fed
+ * into a {@link UsageAccumulator}, and at each window boundary the accumulated groups are flushed and persisted.
+ * A window is closed by whichever comes first after its end: the scheduled flush or the next watch event, so an
+ * event that races the flush is never integrated into the window that is being closed.
+ */
+@ApplicationScoped
+public class WatchCollector {
+
+    private static final Logger LOG = Logger.getLogger(WatchCollector.class);
+
+    @Inject
+    KubernetesClient k8s;
+
+    @Inject
+    CollectorConfig config;
+
+    @Inject
+    CollectorRepository repository;
+
+    @Inject
+    CollectorService collectorService;
+
+    @Inject
+    WorkloadFetcher fetcher;
+
+    @Inject
+    WorkloadParser parser;
+
+    @Inject
+    WebhookSecretResolver secretResolver;
+
+    @Inject
+    WebhookDispatcher webhookDispatcher;
+
+    private final Map<String, WorkloadData> index = new HashMap<>();
+    private final Map<String, WorkloadData> charged = new HashMap<>();
+    private final List<SharedIndexInformer<?>> informers = new ArrayList<>();
+    private UsageAccumulator accumulator;
+    private Instant trackingSince;
+    private Instant pendingStart;
+    private Instant pendingEnd;
+    private final List<ClosedWindow> closed = new ArrayList<>();
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * Starts the informers and the window flush schedule, then blocks until the application is asked to exit.
+     */
+    public void run() {
+        start();
+        Quarkus.waitForExit();
+        stop();
+    }
+
+    /**
+     * Starts the webhook dispatcher, the informers, the webhook secret watch and the window flush schedule
+     * without blocking.
+     */
+    void start() {
+        LOG.info("Starting collector in watch mode...");
+        repository.initDb();
+        webhookDispatcher.start();
+
+        synchronized (this) {
+            accumulator = new UsageAccumulator(config.getLabelTeam(), config.getLabelApp());
+            trackingSince = Instant.now();
+            pendingEnd = nextBoundary(trackingSince);
+            pendingStart = pendingEnd.minus(config.getWindowHours(), ChronoUnit.HOURS);
+            closed.clear();
+        }
+
+        Set<String> namespaces = fetcher.resolveNamespaces();
+        if (namespaces == null) {
+            startInformers(null);
+        } else {
+            namespaces.forEach(this::startInformers);
+        }
+        LOG.infof("Watching workloads in %s with %d informer(s); tracking since %s",
+                namespaces == null ? "all namespaces" : "namespaces " + namespaces, informers.size(), trackingSince);
+        secretResolver.watch();
+
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        scheduleNextFlush(trackingSince);
+    }
+
+    /**
+     * Stops the flush schedule, all informers and the webhook secret watch.
+     */
+    void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+        informers.forEach(SharedIndexInformer::stop);
+        informers.clear();
+        secretResolver.stopWatch();
+        LOG.info("Watch mode stopped.");
+    }
+
+    /**
+     * Starts one informer per workload kind for the given scope.
+     *
+     * @param namespace the namespace to watch, or null for all namespaces
+     */
+    private void startInformers(String namespace) {
+        inform("Deployment", namespace == null ? k8s.apps().deployments().inAnyNamespace() : k8s.apps().deployments().inNamespace(namespace),
+                parser::fromDeployment, d -> true);
+        inform("StatefulSet", namespace == null ? k8s.apps().statefulSets().inAnyNamespace() : k8s.apps().statefulSets().inNamespace(namespace),
+                parser::fromStatefulSet, s -> true);
+        inform("DaemonSet", namespace == null ? k8s.apps().daemonSets().inAnyNamespace() : k8s.apps().daemonSets().inNamespace(namespace),
+                parser::fromDaemonSet, ds -> true);
+        inform("Job", namespace == null ? k8s.batch().v1().jobs().inAnyNamespace() : k8s.batch().v1().jobs().inNamespace(namespace),
+                j -> { Instant now = Instant.now(); return parser.fromJob(j, now, now); }, WatchCollector::isRunning);
+    }
+
+    /**
+     * Starts an informer whose events update the workload index and the accumulator.
+     *
+     * @param kind       the workload kind
+     * @param op         the informable operation
+     * @param parse      the function converting a resource into WorkloadData
+     * @param chargeable tells whether a resource currently consumes its requests
+     * @param <T>        the resource type
+     */
+    private <T extends HasMetadata> void inform(String kind, Informable<T> op, Function<T, WorkloadData> parse, Predicate<T> chargeable) {
+        informers.add(op.inform(new ResourceEventHandler<T>() {
+            @Override
+            public void onAdd(T obj) {
+                onChange(key(kind, obj), parse.apply(obj), chargeable.test(obj));
+            }
+
+            @Override
+            public void onUpdate(T oldObj, T newObj) {
+                onChange(key(kind, newObj), parse.apply(newObj), chargeable.test(newObj));
+            }
+
+            @Override
+            public void onDelete(T obj, boolean deletedFinalStateUnknown) {
+                onChange(key(kind, obj), null, false);
+            }
+        }, 0));
+    }
+
+    /**
+     * Records a change of a workload in the index and the accumulator.
+     *
+     * @param key        the workload key
+     * @param current    the new state, or null if the workload was deleted
+     * @param chargeable whether the new state consumes its requests
+     */
+    synchronized void onChange(String key, WorkloadData current, boolean chargeable) {
+        onChange(key, current, chargeable, Instant.now());
+    }
+
+    /**
+     * Records a change of a workload that happened at the given time.
+     * Windows that ended before the change are closed first, so the change only affects the window it falls in.
+     *
+     * @param key        the workload key
+     * @param current    the new state, or null if the workload was deleted
+     * @param chargeable whether the new state consumes its requests
+     * @param at         the time of the change
+     */
+    synchronized void onChange(String key, WorkloadData current, boolean chargeable, Instant at) {
+        closeWindows(at);
+        if (current == null) {
+            index.remove(key);
+        } else {
+            index.put(key, current);
+        }
+        WorkloadData previous = chargeable ? charged.put(key, current) : charged.remove(key);
+        accumulator.update(previous, chargeable ? current : null, at);
+    }
+
+    /**
+     * Closes every pending window that ended at or before the given time and queues it for persisting.
+     * Must be called while holding the lock.
+     *
+     * @param now the current time
+     */
+    private void closeWindows(Instant now) {
+        while (pendingEnd != null && !now.isBefore(pendingEnd)) {
+            closed.add(close(pendingStart, pendingEnd));
+            pendingStart = pendingEnd;
+            pendingEnd = nextBoundary(pendingEnd);
+        }
+    }
+
+    /**
+     * Schedules the flush of the window ending at the first window boundary after the given time.
+     *
+     * @param after the time after which the next window ends
+     */
+    private void scheduleNextFlush(Instant after) {
+        Instant windowEnd = nextBoundary(after);
+        Instant windowStart = windowEnd.minus(config.getWindowHours(), ChronoUnit.HOURS);
+        long delay = Math.max(0, Duration.between(Instant.now(), windowEnd).toMillis());
+        LOG.infof("Next window %s - %s flushes in %d s", windowStart, windowEnd, delay / 1000);
+        scheduler.schedule(() -> {
+            try {
+                Instant now = Instant.now();
+                flushDue(now.isBefore(windowEnd) ? windowEnd : now);
+            } catch (Exception e) {
+                LOG.error("Failed to flush window " + windowStart + " - " + windowEnd, e);
+            } finally {
+                scheduleNextFlush(windowEnd);
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Computes the first window boundary after the given time.
+     * Windows are aligned so that they do not overlap: a boundary is every full hour whose epoch hour is a
+     * multiple of the configured window length.
+     *
+     * @param after the time to start from
+     * @return the next window end
+     */
+    Instant nextBoundary(Instant after) {
+        long hours = Math.max(1, config.getWindowHours());
+        long epochHour = after.getEpochSecond() / 3600;
+        return Instant.ofEpochSecond((epochHour / hours + 1) * hours * 3600);
+    }
+
+    /**
+     * Closes the windows that ended at or before the given time, unless a watch event already closed them,
+     * and persists all closed windows in order.
+     *
+     * @param now the time up to which windows are due
+     */
+    void flushDue(Instant now) {
+        List<ClosedWindow> due;
+        synchronized (this) {
+            closeWindows(now);
+            due = new ArrayList<>(closed);
+            closed.clear();
+        }
+        due.forEach(this::persist);
+    }
+
+    /**
+     * Flushes the accumulated usage of a window and persists it along with the current inventory.
+     * The first window is skipped if tracking started after it began, since it would be undercharged.
+     *
+     * @param windowStart the window start
+     * @param windowEnd   the window end
+     */
+    void flush(Instant windowStart, Instant windowEnd) {
+        ClosedWindow window;
+        synchronized (this) {
+            window = close(windowStart, windowEnd);
+        }
+        persist(window);
+    }
+
+    /**
+     * Flushes the accumulator for a window and captures the inventory of the workloads charged in it.
+     * Must be called while holding the lock.
+     *
+     * @param windowStart the window start
+     * @param windowEnd   the window end
+     * @return the closed window
+     */
+    private ClosedWindow close(Instant windowStart, Instant windowEnd) {
+        List<AllocationSnapshot> snapshots = accumulator.flush(windowStart, windowEnd, config.getRateCpu(), config.getRateMem());
+        if (trackingSince.isAfter(windowStart)) {
+            return new ClosedWindow(windowStart, windowEnd, snapshots, Collections.emptyList(), true);
+        }
+        Map<String, String> appSnapshotIds = new HashMap<>();
+        for (AllocationSnapshot s : snapshots) {
+            if ("APP".equals(s.getGroupType())) {
+                appSnapshotIds.put(s.getGroupKey(), s.getId());
+            }
+        }
+        List<WorkloadInventory> inventory = new ArrayList<>();
+        for (WorkloadData w : index.values()) {
+            String snapshotId = appSnapshotIds.get(w.labels.getOrDefault(config.getLabelApp(), "unknown"));
+            if (snapshotId != null) {
+                inventory.add(collectorService.toInventory(w, snapshotId));
+            }
+        }
+        return new ClosedWindow(windowStart, windowEnd, snapshots, inventory, false);
+    }
+
+    /**
+     * Persists a closed window, or skips it if it is partial.
+     *
+     * @param window the closed window
+     */
+    private void persist(ClosedWindow window) {
+        if (window.partial()) {
+            LOG.infof("Skipping partial window %s - %s (tracking started at %s)", window.start(), window.end(), trackingSince);
+            return;
+        }
+        LOG.infof("Flushing window %s - %s: %d snapshots, %d workloads",
+                window.start(), window.end(), window.snapshots().size(), window.inventory().size());
+        collectorService.completeWindow(window.snapshots(), window.inventory(), window.end());
+    }
+
+    /**
+     * Builds the index key of a resource.
+     *
+     * @param kind the workload kind
+     * @param obj  the resource
+     * @return the key
+     */
+    private static String key(String kind, HasMetadata obj) {
+        return kind + "/" + obj.getMetadata().getNamespace() + "/" + obj.getMetadata().getName();
+    }
+
+    /**
+     * Checks if a Job is currently running, i.e. has at least one active pod.
+     *
+     * @param j the Job
+     * @return true if running
+     */
+    private static boolean isRunning(Job j) {
+        return j.getStatus() != null && j.getStatus().getActive() != null && j.getStatus().getActive() > 0;
+    }
+
+    /**
+     * A window whose usage has been flushed from the accumulator but not yet persisted.
+     */
+    private record ClosedWindow(Instant start, Instant end, List<AllocationSnapshot> snapshots,
+                                List<WorkloadInventory> inventory, boolean partial) {
+    }
+}
@@ -0,0 +1,15 @@
+package io.kubechargeback.collector;
+
+import java.time.Instant;
+
+/**
+ * An alert waiting in the webhook outbox.
+ *
+ * @param id            the outbox row ID
+ * @param url           the webhook URL
+ * @param payloadJson   the alert payload as JSON
+ * @param attempts      the number of failed delivery attempts so far
+ * @param nextAttemptAt the earliest time of the next attempt
+ */
+public record WebhookDelivery(String id, String url, String payloadJson, int attempts, Instant nextAttemptAt) {
+}
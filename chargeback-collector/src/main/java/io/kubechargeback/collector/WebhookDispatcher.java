@@ -0,0 +1,410 @@
+package io.kubechargeback.collector;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.quarkus.runtime.ShutdownEvent;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+import org.jboss.logging.Logger;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Delivers alert webhooks in the background.
+ * Every alert is written to the {@code webhook_outbox} table before it enters a bounded in-memory queue, and only
+ * removed once the webhook accepted it or {@code webhook.max-attempts} failed, so alerts still pending when a run
+ * ends are sent by the next one. The outbox is read when a run starts and again every
+ * {@code webhook.outbox-poll-ms} while nothing is in flight, so alerts deferred by a full queue are not left until
+ * a restart. Alerts for the same URL that are queued together are coalesced into one request of up to
+ * {@code webhook.batch-size} alerts, posted as {@code {"alerts": [...]}}. Each URL gets at most
+ * {@code webhook.max-concurrency} requests at a time, every request times out after {@code webhook.timeout-ms},
+ * and failed requests are retried with exponential backoff. On shutdown pending deliveries are drained for up to
+ * {@code webhook.drain-timeout-ms}.
+ */
+@ApplicationScoped
+public class WebhookDispatcher {
+
+    private static final Logger LOG = Logger.getLogger(WebhookDispatcher.class);
+
+    /**
+     * Longest part of a failed response body kept as the error of a delivery.
+     */
+    private static final int MAX_ERROR_LENGTH = 500;
+
+    @Inject
+    CollectorConfig config;
+
+    @Inject
+    CollectorRepository repository;
+
+    @Inject
+    MeterRegistry registry;
+
+    private final Map<String, Semaphore> endpoints = new ConcurrentHashMap<>();
+
+    /**
+     * Deliveries queued, being sent or waiting for a retry.
+     */
+    private final AtomicInteger pending = new AtomicInteger();
+    private final Object idle = new Object();
+
+    /**
+     * Guards writing an alert to the outbox and queueing it against reading the outbox.
+     */
+    private final Object outbox = new Object();
+
+    private HttpClient httpClient;
+    private BlockingQueue<WebhookDelivery> queue;
+    private ExecutorService senders;
+    private ScheduledExecutorService retries;
+    private Thread dispatcher;
+    private volatile boolean stopped;
+
+    private Timer succeeded;
+    private Timer failed;
+    private Counter delivered;
+    private Counter dropped;
+    private Counter deferred;
+
+    /**
+     * Queues an alert for delivery to a webhook.
+     *
+     * @param url         the webhook URL
+     * @param payloadJson the alert payload as JSON
+     */
+    public void enqueue(String url, String payloadJson) {
+        start();
+        Instant now = Instant.now();
+        WebhookDelivery delivery = new WebhookDelivery(UUID.randomUUID().toString(), url, payloadJson, 0, now);
+        synchronized (outbox) {
+            repository.saveWebhook(delivery, now);
+            offer(delivery);
+        }
+    }
+
+    /**
+     * Waits until all pending deliveries finished or a timeout elapsed.
+     * Deliveries still pending afterwards stay in the outbox.
+     *
+     * @param timeout the longest time to wait
+     * @return true if nothing is pending anymore
+     */
+    public boolean drain(Duration timeout) {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        synchronized (idle) {
+            while (pending.get() > 0) {
+                long left = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (left <= 0) {
+                    break;
+                }
+                try {
+                    idle.wait(left);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+        return pending.get() == 0;
+    }
+
+    /**
+     * Drains pending deliveries and stops the dispatcher when the application shuts down.
+     *
+     * @param event the shutdown event
+     */
+    void onShutdown(@Observes ShutdownEvent event) {
+        stop();
+    }
+
+    /**
+     * Drains pending deliveries for up to {@code webhook.drain-timeout-ms} and stops the dispatcher.
+     */
+    synchronized void stop() {
+        if (senders == null || stopped) {
+            return;
+        }
+        Duration timeout = Duration.ofMillis(config.getWebhookDrainTimeoutMs());
+        if (!drain(timeout)) {
+            LOG.warnf("%d webhook deliveries still pending after %s; they stay in the outbox for the next run",
+                    pending.get(), timeout);
+        }
+        stopped = true;
+        dispatcher.interrupt();
+        retries.shutdownNow();
+        senders.shutdownNow();
+    }
+
+    /**
+     * Starts the dispatcher unless it is running, queues the deliveries a previous run left in the outbox and
+     * schedules the outbox poll. Called at the start of every run, and on first use.
+     */
+    synchronized void start() {
+        if (senders != null) {
+            return;
+        }
+        succeeded = Timer.builder("webhook.requests").tag("outcome", "success")
+                .description("Latency of webhook requests").register(registry);
+        failed = Timer.builder("webhook.requests").tag("outcome", "failure")
+                .description("Latency of webhook requests").register(registry);
+        delivered = Counter.builder("webhook.alerts").tag("result", "delivered")
+                .description("Alerts accepted by a webhook").register(registry);
+        dropped = Counter.builder("webhook.alerts").tag("result", "dropped")
+                .description("Alerts given up after the last failed attempt").register(registry);
+        deferred = Counter.builder("webhook.alerts").tag("result", "deferred")
+                .description("Alerts left in the outbox because the queue was full").register(registry);
+        Gauge.builder("webhook.pending", pending, AtomicInteger::get)
+                .description("Alerts queued, being sent or waiting for a retry").register(registry);
+
+        httpClient = HttpClient.newBuilder().connectTimeout(Duration.ofMillis(config.getWebhookTimeoutMs())).build();
+        queue = new ArrayBlockingQueue<>(config.getWebhookQueueCapacity());
+        senders = Executors.newVirtualThreadPerTaskExecutor();
+        retries = Executors.newSingleThreadScheduledExecutor(
+                r -> Thread.ofPlatform().daemon().name("webhook-retry").unstarted(r));
+        dispatcher = Thread.ofPlatform().daemon().name("webhook-dispatcher").start(this::dispatch);
+
+        resume();
+        long pollMs = config.getWebhookOutboxPollMs();
+        if (pollMs > 0) {
+            retries.scheduleWithFixedDelay(this::resume, pollMs, pollMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Queues the deliveries waiting in the outbox, e.g. left by a previous run or deferred by a full queue.
+     * The outbox also holds every delivery that is queued, being sent or waiting for a retry, so it is only
+     * read while none is pending.
+     */
+    private void resume() {
+        try {
+            synchronized (outbox) {
+                if (stopped || pending.get() > 0) {
+                    return;
+                }
+                List<WebhookDelivery> left = repository.findPendingWebhooks(config.getWebhookQueueCapacity());
+                if (!left.isEmpty()) {
+                    LOG.infof("Resuming %d webhook deliveries from the outbox", left.size());
+                }
+                left.forEach(this::schedule);
+            }
+        } catch (RuntimeException e) {
+            LOG.error("Failed to read the webhook outbox", e);
+        }
+    }
+
+    /**
+     * Takes deliveries from the queue, coalesces those for the same URL and hands them to the senders.
+     */
+    private void dispatch() {
+        while (!stopped) {
+            List<WebhookDelivery> ready = new ArrayList<>();
+            try {
+                ready.add(queue.take());
+                // give the rest of a burst of alerts the chance to join the same request
+                Thread.sleep(config.getWebhookLingerMs());
+            } catch (InterruptedException e) {
+                return;
+            }
+            queue.drainTo(ready);
+
+            Map<String, List<WebhookDelivery>> byUrl = new LinkedHashMap<>();
+            for (WebhookDelivery d : ready) {
+                byUrl.computeIfAbsent(d.url(), k -> new ArrayList<>()).add(d);
+            }
+            byUrl.forEach((url, deliveries) -> {
+                for (int from = 0; from < deliveries.size(); from += config.getWebhookBatchSize()) {
+                    List<WebhookDelivery> batch = deliveries.subList(from,
+                            Math.min(deliveries.size(), from + config.getWebhookBatchSize()));
+                    senders.execute(() -> send(url, batch));
+                }
+            });
+        }
+    }
+
+    /**
+     * Sends one batch of alerts to a webhook, waiting for a free slot of the URL first, and records the outcome.
+     *
+     * @param url   the webhook URL
+     * @param batch the deliveries
+     */
+    private void send(String url, List<WebhookDelivery> batch) {
+        Semaphore slots = endpoints.computeIfAbsent(url, k -> new Semaphore(config.getWebhookMaxConcurrency()));
+        try {
+            HttpRequest request;
+            try {
+                request = request(url, batch);
+            } catch (IllegalArgumentException e) {
+                // a malformed URL never succeeds, so there is no point in retrying
+                LOG.errorf("Dropping %d alerts for invalid webhook URL: %s", batch.size(), e.getMessage());
+                repository.deleteWebhooks(batch.stream().map(WebhookDelivery::id).toList());
+                dropped.increment(batch.size());
+                return;
+            }
+            String error;
+            slots.acquire();
+            long startNanos = System.nanoTime();
+            try {
+                HttpResponse<String> res = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+                error = res.statusCode() < 300 ? null : "HTTP " + res.statusCode() + ": " + truncate(res.body());
+            } catch (IOException e) {
+                error = e.toString();
+            } finally {
+                slots.release();
+            }
+            (error == null ? succeeded : failed).record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+
+            if (error == null) {
+                repository.deleteWebhooks(batch.stream().map(WebhookDelivery::id).toList());
+                delivered.increment(batch.size());
+            } else {
+                LOG.warnf("Failed to deliver %d alerts to webhook %s: %s", batch.size(), redact(url), error);
+                for (WebhookDelivery d : batch) {
+                    retry(d, error);
+                }
+            }
+        } catch (InterruptedException e) {
+            // shutting down: the deliveries stay in the outbox for the next run
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            LOG.errorf(e, "Failed to record webhook delivery to %s", redact(url));
+        } finally {
+            done(batch.size());
+        }
+    }
+
+    /**
+     * Schedules the next attempt of a failed delivery, or drops it after the last attempt.
+     *
+     * @param d     the delivery
+     * @param error the reason of the failure
+     */
+    private void retry(WebhookDelivery d, String error) {
+        int attempts = d.attempts() + 1;
+        if (attempts >= config.getWebhookMaxAttempts()) {
+            LOG.errorf("Dropping alert %s for webhook %s after %d attempts", d.id(), redact(d.url()), attempts);
+            repository.deleteWebhooks(List.of(d.id()));
+            dropped.increment();
+            return;
+        }
+        WebhookDelivery next = new WebhookDelivery(d.id(), d.url(), d.payloadJson(), attempts,
+                Instant.now().plusMillis(backoffMs(attempts)));
+        repository.retryWebhook(next, error);
+        schedule(next);
+    }
+
+    /**
+     * Computes the delay before an attempt of a delivery.
+     *
+     * @param attempts the number of failed attempts so far
+     * @return the delay in milliseconds
+     */
+    long backoffMs(int attempts) {
+        long initial = config.getWebhookBackoffInitialMs();
+        return Math.min(config.getWebhookBackoffMaxMs(), initial * (1L << Math.min(attempts - 1, 30)));
+    }
+
+    /**
+     * Queues a delivery at its next attempt time.
+     *
+     * @param d the delivery
+     */
+    private void schedule(WebhookDelivery d) {
+        long delay = Duration.between(Instant.now(), d.nextAttemptAt()).toMillis();
+        if (delay <= 0) {
+            offer(d);
+            return;
+        }
+        pending.incrementAndGet();
+        retries.schedule(() -> {
+            offer(d);
+            done(1);
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Adds a delivery to the in-memory queue, or leaves it in the outbox if the queue is full.
+     *
+     * @param d the delivery
+     */
+    private void offer(WebhookDelivery d) {
+        pending.incrementAndGet();
+        if (!queue.offer(d)) {
+            LOG.warnf("Webhook queue is full; alert %s stays in the outbox until it is polled again", d.id());
+            deferred.increment();
+            done(1);
+        }
+    }
+
+    /**
+     * Marks deliveries as no longer pending and wakes up a drain once nothing is pending.
+     *
+     * @param count the number of deliveries
+     */
+    private void done(int count) {
+        if (pending.addAndGet(-count) == 0) {
+            synchronized (idle) {
+                idle.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Builds the request for a batch. The body is always {@code {"alerts": [...]}}, even for a single alert,
+     * so receivers see one shape however the alerts were coalesced.
+     *
+     * @param url   the webhook URL
+     * @param batch the deliveries
+     * @return the request
+     */
+    private HttpRequest request(String url, List<WebhookDelivery> batch) {
+        String body = "{\"alerts\":[" + String.join(",", batch.stream().map(WebhookDelivery::payloadJson).toList()) + "]}";
+        return HttpRequest.newBuilder()
+                .uri(URI.create(url))
+                .timeout(Duration.ofMillis(config.getWebhookTimeoutMs()))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+    }
+
+    private static String truncate(String body) {
+        return body == null || body.length() <= MAX_ERROR_LENGTH ? body : body.substring(0, MAX_ERROR_LENGTH);
+    }
+
+    /**
+     * Strips the path and query of a webhook URL for logging, since they often carry a token.
+     *
+     * @param url the webhook URL
+     * @return the scheme and authority
+     */
+    private static String redact(String url) {
+        try {
+            URI uri = URI.create(url);
+            return uri.getScheme() + "://" + uri.getAuthority();
+        } catch (IllegalArgumentException e) {
+            return "<invalid URL>";
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package io.kubechargeback.collector;
+
+import io.fabric8.kubernetes.api.model.Secret;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.informers.ResourceEventHandler;
+import io.fabric8.kubernetes.client.informers.SharedIndexInformer;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.jboss.logging.Logger;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Resolves the webhook URLs of budgets from the {@code webhook.url} key of Kubernetes Secrets.
+ * All secrets needed by a budget check are resolved together: with {@code webhook.secret-selector} set, every
+ * labelled secret is read with one list call, otherwise each distinct secret name is read once. A secret without
+ * the label is still read by name, so its alerts are not lost. Results, including secrets without a URL, are cached
+ * for {@code webhook.secret-cache-ttl-seconds}, so alerts sharing a secret and later runs of a long-lived collector
+ * do not go back to the API server. In watch mode the labelled secrets are watched instead, and their cache entries
+ * never expire.
+ */
+@ApplicationScoped
+public class WebhookSecretResolver {
+
+    private static final Logger LOG = Logger.getLogger(WebhookSecretResolver.class);
+
+    static final String URL_KEY = "webhook.url";
+
+    @Inject
+    KubernetesClient k8s;
+
+    @Inject
+    CollectorConfig config;
+
+    private final Map<String, Cached> cache = new ConcurrentHashMap<>();
+    private volatile SharedIndexInformer<Secret> informer;
+
+    /**
+     * Resolves the webhook URLs of several secrets, reading the secrets that are not cached in one go.
+     *
+     * @param secretNames the secret names; blank names and duplicates are ignored
+     * @param now         the current time
+     * @return the webhook URL per secret name; secrets that do not exist or have no URL are absent
+     */
+    public Map<String, String> resolve(Collection<String> secretNames, Instant now) {
+        Set<String> wanted = new LinkedHashSet<>();
+        for (String name : secretNames) {
+            if (name != null && !name.isBlank()) {
+                wanted.add(name);
+            }
+        }
+        List<String> stale = wanted.stream().filter(name -> !fresh(cache.get(name), now)).toList();
+        if (!stale.isEmpty()) {
+            load(stale, now);
+        }
+
+        Map<String, String> urls = new HashMap<>();
+        for (String name : wanted) {
+            Cached c = cache.get(name);
+            if (c != null && c.url() != null) {
+                urls.put(name, c.url());
+            }
+        }
+        return urls;
+    }
+
+    /**
+     * Starts watching the labelled secrets, so that the cache follows every change without expiring.
+     * Does nothing without {@code webhook.secret-selector}, since watching all secrets would be too broad.
+     */
+    public synchronized void watch() {
+        if (informer != null || config.getWebhookSecretSelector().isEmpty()) {
+            return;
+        }
+        String selector = config.getWebhookSecretSelector().get();
+        informer = k8s.secrets().withLabelSelector(selector).inform(new ResourceEventHandler<>() {
+            @Override
+            public void onAdd(Secret s) {
+                cache.put(s.getMetadata().getName(), new Cached(urlOf(s), Instant.now(), true));
+            }
+
+            @Override
+            public void onUpdate(Secret oldSecret, Secret newSecret) {
+                onAdd(newSecret);
+            }
+
+            @Override
+            public void onDelete(Secret s, boolean deletedFinalStateUnknown) {
+                cache.remove(s.getMetadata().getName());
+            }
+        }, 0);
+        LOG.infof("Watching webhook secrets matching %s", selector);
+    }
+
+    /**
+     * Stops watching the labelled secrets.
+     */
+    public synchronized void stopWatch() {
+        if (informer != null) {
+            informer.stop();
+            informer = null;
+        }
+    }
+
+    /**
+     * Reads secrets that are not cached or have expired and caches their URLs.
+     * With a selector the labelled secrets are listed first and only the others are read by name.
+     * Secrets that could not be read are not cached, so the next check tries again.
+     *
+     * @param names the secret names
+     * @param now   the current time
+     */
+    private void load(List<String> names, Instant now) {
+        if (config.getWebhookSecretSelector().isPresent()) {
+            Map<String, String> listed;
+            try {
+                listed = listSelected(config.getWebhookSecretSelector().get());
+            } catch (RuntimeException e) {
+                LOG.errorf("Error listing webhook secrets: %s", e.getMessage());
+                return;
+            }
+            listed.forEach((name, url) -> cache.put(name, new Cached(url, now, false)));
+            names = names.stream().filter(name -> !listed.containsKey(name)).toList();
+            if (!names.isEmpty()) {
+                LOG.warnf("Webhook secrets %s do not match %s; reading them by name", names,
+                        config.getWebhookSecretSelector().get());
+            }
+        }
+        for (String name : names) {
+            try {
+                cache.put(name, new Cached(fetch(name), now, false));
+            } catch (RuntimeException e) {
+                LOG.errorf("Error fetching secret %s: %s", name, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Lists the secrets matching a label selector with a single call.
+     *
+     * @param selector the label selector
+     * @return the webhook URL per secret name; null for secrets without one
+     */
+    Map<String, String> listSelected(String selector) {
+        Map<String, String> urls = new HashMap<>();
+        for (Secret s : k8s.secrets().withLabelSelector(selector).list().getItems()) {
+            urls.put(s.getMetadata().getName(), urlOf(s));
+        }
+        return urls;
+    }
+
+    /**
+     * Reads a single secret.
+     *
+     * @param name the secret name
+     * @return the webhook URL, or null if the secret does not exist or has none
+     */
+    String fetch(String name) {
+        return urlOf(k8s.secrets().withName(name).get());
+    }
+
+    /**
+     * Checks if a cache entry can be used.
+     *
+     * @param c   the entry, or null
+     * @param now the current time
+     * @return true if present and watched or not yet expired
+     */
+    private boolean fresh(Cached c, Instant now) {
+        return c != null && ((c.watched() && informer != null)
+                || c.loadedAt().plusSeconds(config.getWebhookSecretCacheTtlSeconds()).isAfter(now));
+    }
+
+    /**
+     * Decodes the webhook URL of a secret.
+     *
+     * @param s the secret, or null
+     * @return the URL, or null if there is none
+     */
+    static String urlOf(Secret s) {
+        if (s != null && s.getData() != null && s.getData().containsKey(URL_KEY)) {
+            return new String(Base64.getDecoder().decode(s.getData().get(URL_KEY)), StandardCharsets.UTF_8).trim();
+        }
+        return null;
+    }
+
+    /**
+     * A cached lookup.
+     *
+     * @param url      the webhook URL, or null if the secret has none
+     * @param loadedAt the time of the lookup
+     * @param watched  whether the entry is kept up to date by the watch
+     */
+    private record Cached(String url, Instant loadedAt, boolean watched) {
+    }
+}
@@ -0,0 +1,205 @@
+package io.kubechargeback.collector;
+
+import io.fabric8.kubernetes.api.model.HasMetadata;
+import io.fabric8.kubernetes.api.model.KubernetesResourceList;
+import io.fabric8.kubernetes.api.model.ListOptionsBuilder;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.dsl.Listable;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.jboss.logging.Logger;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+@ApplicationScoped
+public class WorkloadFetcher {
+
+    private static final Logger LOG = Logger.getLogger(WorkloadFetcher.class);
+
+    @Inject
+    KubernetesClient k8s;
+
+    @Inject
+    CollectorConfig config;
+
+    @Inject
+    WorkloadParser parser;
+
+    /**
+     * Streams all allowed workloads of the cluster into a sink.
+     * Every workload kind is listed by its own task, and when the namespace scope is a finite set each
+     * namespace gets its own shard, so the API server only returns objects that are actually collected.
+     * Tasks run concurrently on virtual threads, bounded by the configured ingest concurrency.
+     * Each task lists page by page using limit/continue and hands every parsed page to the sink before
+     * requesting the next one, so only one page of Kubernetes objects per running task is held in memory.
+     * The sink is never invoked concurrently.
+     *
+     * @param windowStart the start of the collection window
+     * @param windowEnd   the end of the collection window
+     * @param sink        the consumer receiving each parsed workload
+     */
+    public void fetch(Instant windowStart, Instant windowEnd, Consumer<WorkloadData> sink) {
+        Set<String> namespaces = resolveNamespaces();
+        List<String> scopes = new ArrayList<>();
+        if (namespaces == null) {
+            scopes.add(null);
+        } else {
+            scopes.addAll(namespaces);
+        }
+        LOG.infof("Listing workloads in %s", namespaces == null ? "all namespaces" : "namespaces " + namespaces);
+
+        List<Callable<ListingStats>> tasks = new ArrayList<>(scopes.size() * 4);
+        for (String ns : scopes) {
+            tasks.add(() -> pageThrough("Deployment", ns,
+                    ns == null ? k8s.apps().deployments().inAnyNamespace() : k8s.apps().deployments().inNamespace(ns),
+                    parser::fromDeployment, sink));
+            tasks.add(() -> pageThrough("StatefulSet", ns,
+                    ns == null ? k8s.apps().statefulSets().inAnyNamespace() : k8s.apps().statefulSets().inNamespace(ns),
+                    parser::fromStatefulSet, sink));
+            tasks.add(() -> pageThrough("DaemonSet", ns,
+                    ns == null ? k8s.apps().daemonSets().inAnyNamespace() : k8s.apps().daemonSets().inNamespace(ns),
+                    parser::fromDaemonSet, sink));
+            tasks.add(() -> pageThrough("Job", ns,
+                    ns == null ? k8s.batch().v1().jobs().inAnyNamespace() : k8s.batch().v1().jobs().inNamespace(ns),
+                    j -> parser.fromJob(j, windowStart, windowEnd), sink));
+        }
+
+        long started = System.nanoTime();
+        List<ListingStats> stats = runBounded(tasks, Math.max(1, config.getIngestConcurrency()));
+        logSummary(stats, (System.nanoTime() - started) / 1_000_000);
+    }
+
+    /**
+     * Runs listing tasks on virtual threads, allowing at most {@code concurrency} of them to run at once.
+     * The first failing task fails the whole stage.
+     *
+     * @param tasks       the tasks to run
+     * @param concurrency the maximum number of concurrently running tasks
+     * @return the statistics of every task, in submission order
+     */
+    private List<ListingStats> runBounded(List<Callable<ListingStats>> tasks, int concurrency) {
+        Semaphore permits = new Semaphore(concurrency);
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<ListingStats>> futures = new ArrayList<>(tasks.size());
+            for (Callable<ListingStats> task : tasks) {
+                futures.add(executor.submit(() -> {
+                    permits.acquire();
+                    try {
+                        return task.call();
+                    } finally {
+                        permits.release();
+                    }
+                }));
+            }
+            List<ListingStats> results = new ArrayList<>(futures.size());
+            for (Future<ListingStats> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while listing workloads", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Failed to list workloads", e.getCause());
+        }
+    }
+
+    /**
+     * Logs per-kind totals of a finished ingestion stage.
+     *
+     * @param stats       the statistics of every listing task
+     * @param wallMillis  the wall-clock duration of the whole stage
+     */
+    private void logSummary(List<ListingStats> stats, long wallMillis) {
+        Map<String, long[]> perKind = new TreeMap<>();
+        for (ListingStats s : stats) {
+            long[] totals = perKind.computeIfAbsent(s.kind(), k -> new long[3]);
+            totals[0] += s.objects();
+            totals[1] += s.pages();
+            totals[2] += s.millis();
+        }
+        perKind.forEach((kind, totals) -> LOG.infof("%s: %d objects, %d page(s), %d ms listing time",
+                kind, totals[0], totals[1], totals[2]));
+        LOG.infof("Ingestion finished in %d ms (%d listing task(s))", wallMillis, stats.size());
+    }
+
+    /**
+     * Resolves the set of namespaces to collect from.
+     * An explicit allowlist wins; otherwise the client's current namespace is used.
+     *
+     * @return the namespaces to list, or null to list cluster-wide
+     */
+    Set<String> resolveNamespaces() {
+        Set<String> allowed = config.getAllowedNamespaces();
+        if (!allowed.isEmpty()) {
+            return allowed.contains("*") ? null : allowed;
+        }
+        String currentNamespace = k8s.getNamespace();
+        return currentNamespace == null ? null : Set.of(currentNamespace);
+    }
+
+    /**
+     * Lists a resource type page by page, parsing every item and forwarding each parsed page to the sink.
+     *
+     * @param kind      the workload kind, used for logging
+     * @param namespace the namespace being listed, or null for all namespaces (used for logging)
+     * @param op        the list operation to page through
+     * @param parse     the function converting a resource into WorkloadData
+     * @param sink      the consumer receiving each parsed workload
+     * @param <T>       the resource type
+     * @return the statistics of the listing
+     */
+    private <T extends HasMetadata> ListingStats pageThrough(String kind, String namespace,
+                                                             Listable<? extends KubernetesResourceList<T>> op,
+                                                             Function<T, WorkloadData> parse, Consumer<WorkloadData> sink) {
+        long started = System.nanoTime();
+        int pageSize = config.getPageSize();
+        String continueToken = null;
+        int pages = 0;
+        long listed = 0;
+        do {
+            KubernetesResourceList<T> page = op.list(new ListOptionsBuilder()
+                    .withLimit((long) pageSize)
+                    .withContinue(continueToken)
+                    .build());
+            List<WorkloadData> parsed = new ArrayList<>(page.getItems().size());
+            for (T item : page.getItems()) {
+                parsed.add(parse.apply(item));
+            }
+            synchronized (sink) {
+                parsed.forEach(sink);
+            }
+            listed += parsed.size();
+            continueToken = page.getMetadata() != null ? page.getMetadata().getContinue() : null;
+            pages++;
+        } while (continueToken != null && !continueToken.isEmpty());
+        long millis = (System.nanoTime() - started) / 1_000_000;
+        LOG.debugf("Listed %d %s objects in %s in %d page(s) (%d ms)", listed, kind,
+                namespace == null ? "all namespaces" : "namespace '" + namespace + "'", pages, millis);
+        return new ListingStats(kind, listed, pages, millis);
+    }
+
+    /**
+     * Statistics of a single listing task.
+     *
+     * @param kind    the workload kind
+     * @param objects the number of objects listed
+     * @param pages   the number of pages requested
+     * @param millis  the time spent listing and parsing
+     */
+    private record ListingStats(String kind, long objects, int pages, long millis) {
+    }
+}
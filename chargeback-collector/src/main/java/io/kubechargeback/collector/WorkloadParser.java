@@ -158,12 +158,15 @@ public class WorkloadParser {
 
     /**
      * Parses CPU quantity into millicores.
+     * Common forms are handled by {@link QuantityParser}; anything else goes through fabric8.
      *
      * @param q the CPU quantity
      * @return millicores
      */
     private long parseCpu(Quantity q) {
         if (q == null) return 0;
+        long fast = QuantityParser.milliCores(q.getAmount(), q.getFormat());
+        if (fast != QuantityParser.UNSUPPORTED) return fast;
         // getNumericalAmount() handles suffixes like 'm' (milli) correctly.
         // 100m -> 0.1, 1 -> 1.0
         return (long) (q.getNumericalAmount().doubleValue() * 1000);
@@ -171,12 +174,15 @@ public class WorkloadParser {
 
     /**
      * Parses memory quantity into MiB.
+     * Common forms are handled by {@link QuantityParser}; anything else goes through fabric8.
      *
      * @param q the memory quantity
      * @return MiB
      */
     private long parseMem(Quantity q) {
         if (q == null) return 0;
+        long fast = QuantityParser.mebibytes(q.getAmount(), q.getFormat());
+        if (fast != QuantityParser.UNSUPPORTED) return fast;
         // returns MiB. getAmountInBytes() correctly handles Gi, Mi, Ki etc.
         return Quantity.getAmountInBytes(q).longValue() / (1024 * 1024);
     }
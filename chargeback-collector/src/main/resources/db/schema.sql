@@ -18,7 +18,7 @@ CREATE TABLE IF NOT EXISTS budgets (
 -- 3.2 allocation_snapshots
 CREATE TABLE IF NOT EXISTS allocation_snapshots (
   id TEXT PRIMARY KEY, -- UUID
-  window_start TEXT NOT NULL, -- ISO-8601
+  window_start TEXT NOT NULL, -- ISO-8601 here, INTEGER epoch seconds after migration V4
   window_end TEXT NOT NULL,
   group_type TEXT NOT NULL, -- TEAM|NAMESPACE|APP
   group_key TEXT NOT NULL,
@@ -41,3 +41,13 @@ CREATE TABLE IF NOT EXISTS workload_inventory (
   mem_request_mib INTEGER NOT NULL,
   compliance_status TEXT NOT NULL
 );
+
+-- 3.4 alerts
+CREATE TABLE IF NOT EXISTS alerts (
+  id TEXT PRIMARY KEY,
+  timestamp TEXT NOT NULL,
+  severity TEXT NOT NULL,
+  budget_name TEXT NOT NULL,
+  message TEXT NOT NULL,
+  details_json TEXT
+);
@@ -0,0 +1,101 @@
+package io.kubechargeback.collector;
+
+import io.kubechargeback.common.model.AllocationSnapshot;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AllocationAggregatorTest {
+
+    private static final Instant START = Instant.parse("2026-02-01T10:00:00Z");
+    private static final Instant END = START.plus(1, ChronoUnit.HOURS);
+
+    private final AllocationAggregator aggregator = new AllocationAggregator(START, END, 1, 0.001, 0.0001, "team", "app");
+
+    /**
+     * Tests that workloads sharing groups are summed into one snapshot per group.
+     */
+    @Test
+    void testFlush_SumsPerGroup() {
+        aggregator.add(workload("ns-a", "team-a", "payments", 100, 128, 0));
+        aggregator.add(workload("ns-b", "team-a", "payments", 300, 256, 0));
+        aggregator.add(workload("ns-b", "team-b", "billing", 200, 512, 0.5));
+
+        List<AllocationSnapshot> snapshots = aggregator.flush();
+
+        assertEquals(6, snapshots.size());
+        AllocationSnapshot teamA = find(snapshots, "TEAM", "team-a");
+        assertEquals(400, teamA.getCpuMcpu());
+        assertEquals(384, teamA.getMemMib());
+        assertEquals(0.4, teamA.getCpuCostUnits(), 1e-9);
+        assertEquals(0.0384, teamA.getMemCostUnits(), 1e-9);
+        assertEquals(0.4384, teamA.getTotalCostUnits(), 1e-9);
+        assertEquals(500, find(snapshots, "NAMESPACE", "ns-b").getCpuMcpu());
+        // the Job ran for half an hour
+        assertEquals(0.1, find(snapshots, "APP", "billing").getCpuCostUnits(), 1e-9);
+        assertTrue(snapshots.stream().allMatch(s -> START.equals(s.getWindowStart()) && END.equals(s.getWindowEnd())));
+    }
+
+    /**
+     * Tests that every workload is linked to the ID of the APP snapshot that is actually flushed.
+     */
+    @Test
+    void testMapWorkloads_LinksToFlushedAppSnapshot() {
+        aggregator.add(workload("ns-a", "team-a", "payments", 100, 128, 0));
+        aggregator.add(workload("ns-a", "team-a", "payments", 100, 128, 0));
+        aggregator.add(workload("ns-a", "team-a", "billing", 100, 128, 0));
+
+        List<AllocationSnapshot> snapshots = aggregator.flush();
+        List<String> ids = aggregator.mapWorkloads((w, snapshotId) -> snapshotId);
+
+        String payments = find(snapshots, "APP", "payments").getId();
+        assertEquals(List.of(payments, payments, find(snapshots, "APP", "billing").getId()), ids);
+    }
+
+    /**
+     * Tests that workloads cannot be mapped before the snapshot IDs exist.
+     */
+    @Test
+    void testMapWorkloads_RequiresFlush() {
+        aggregator.add(workload("ns-a", "team-a", "payments", 100, 128, 0));
+        assertThrows(IllegalStateException.class, () -> aggregator.mapWorkloads((w, id) -> id));
+    }
+
+    /**
+     * Tests that group arrays grow past their initial capacity.
+     */
+    @Test
+    void testAdd_ManyGroups() {
+        for (int i = 0; i < 1000; i++) {
+            aggregator.add(workload("ns-" + (i % 10), "team-" + (i % 3), "app-" + i, 10, 1, 0));
+        }
+        List<AllocationSnapshot> snapshots = aggregator.flush();
+        assertEquals(3 + 10 + 1000, snapshots.size());
+        assertEquals(1000, aggregator.getWorkloadCount());
+        assertEquals(1000, find(snapshots, "NAMESPACE", "ns-0").getCpuMcpu());
+    }
+
+    private WorkloadData workload(String ns, String team, String app, long cpu, long mem, double durationHours) {
+        WorkloadData w = new WorkloadData();
+        w.namespace = ns;
+        w.kind = durationHours > 0 ? "Job" : "Deployment";
+        w.name = app;
+        w.labels = Map.of("team", team, "app", app);
+        w.cpuReq = cpu;
+        w.memReq = mem;
+        w.durationHours = durationHours;
+        w.complianceStatus = "OK";
+        return w;
+    }
+
+    private AllocationSnapshot find(List<AllocationSnapshot> snapshots, String type, String key) {
+        return snapshots.stream()
+                .filter(s -> type.equals(s.getGroupType()) && key.equals(s.getGroupKey()))
+                .findFirst().orElseThrow();
+    }
+}
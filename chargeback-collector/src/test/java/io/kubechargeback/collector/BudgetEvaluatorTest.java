@@ -0,0 +1,279 @@
+package io.kubechargeback.collector;
+
+import io.agroal.api.AgroalDataSource;
+import io.kubechargeback.common.model.AllocationSnapshot;
+import io.kubechargeback.common.model.Budget;
+import io.kubechargeback.common.model.WorkloadInventory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BudgetEvaluatorTest {
+
+    private static final Instant START = Instant.parse("2026-02-03T10:00:00Z");
+    private static final Instant END = Instant.parse("2026-02-03T11:00:00Z");
+
+    @TempDir
+    Path tempDir;
+
+    private AgroalDataSource dataSource;
+    private CollectorRepository repository;
+    private CollectorConfig config;
+    private BudgetEvaluator evaluator;
+
+    @BeforeEach
+    void setup() throws SQLException {
+        dataSource = TestFixtures.dataSource(tempDir.resolve("chargeback.db"), 2);
+        repository = TestFixtures.repository(dataSource);
+        config = new CollectorConfig();
+        config.alertHysteresisPercent = 5;
+        config.alertRenotifyWarnHours = 0;
+        config.alertRenotifyCriticalHours = 24;
+        evaluator = new BudgetEvaluator();
+        evaluator.repository = repository;
+        evaluator.config = config;
+    }
+
+    @AfterEach
+    void tearDown() {
+        dataSource.close();
+    }
+
+    /**
+     * Tests that budgets sharing a selector type and period are evaluated together, each against its own usage,
+     * and that only violated budgets are reported, with their own offenders.
+     */
+    @Test
+    void testEvaluate_GroupsBudgets() throws SQLException {
+        WorkloadInventory payments = inventory("payments", "team-a");
+        WorkloadInventory auth = inventory("auth", "team-b");
+        repository.saveRun(List.of(snapshot("TEAM", "team-a", 900), snapshot("TEAM", "team-b", 100),
+                        snapshot("TEAM", "team-c", 10), snapshot("APP", "payments", 900), snapshot("APP", "auth", 100)),
+                List.of(payments, auth));
+
+        insertBudget("a-daily", "TEAM", "team-a", "DAILY", 1000);
+        insertBudget("a-monthly", "TEAM", "team-a", "MONTHLY", 800);
+        insertBudget("b-daily", "TEAM", "team-b", "DAILY", 100);
+        insertBudget("c-daily", "TEAM", "team-c", "DAILY", 1000);
+        insertBudget("ns-daily", "NAMESPACE", "test-ns", "DAILY", 1000);
+
+        Map<String, BudgetEvaluator.Violation> violations = check(END).stream()
+                .collect(Collectors.toMap(v -> v.budget().getName(), Function.identity()));
+
+        assertEquals(3, violations.size());
+        assertEquals("WARN", violations.get("a-daily").severity());
+        assertEquals("CRITICAL", violations.get("a-monthly").severity());
+        assertEquals("CRITICAL", violations.get("b-daily").severity());
+        assertEquals(900, violations.get("a-daily").usage().getCpuMcpu());
+        assertEquals(Instant.parse("2026-02-01T00:00:00Z"), violations.get("a-monthly").start());
+        assertEquals(List.of("payments"), offenders(violations.get("a-daily")));
+        assertEquals(List.of("auth"), offenders(violations.get("b-daily")));
+    }
+
+    /**
+     * Tests that a budget without any snapshots has no usage and is not violated.
+     */
+    @Test
+    void testEvaluate_NoUsage() throws SQLException {
+        insertBudget("a-daily", "TEAM", "team-a", "DAILY", 1000);
+
+        assertEquals(List.of(), check(END));
+    }
+
+    /**
+     * Tests that a budget is only alerted again once it rises to a higher level, and that it recovers
+     * only after falling the hysteresis below the warning threshold.
+     */
+    @Test
+    void testEvaluate_AlertsOnTransitions() throws SQLException {
+        insertBudget("a-daily", "TEAM", "team-a", "DAILY", 1000);
+        repository.saveRun(List.of(snapshot("TEAM", "team-a", 820)), List.of());
+
+        assertEquals(List.of("WARN"), severities(check(END)));
+        assertEquals(List.of(), severities(check(END.plusSeconds(60))));
+
+        repository.saveRun(List.of(snapshot("TEAM", "team-a", 200, START.plusSeconds(3600))), List.of());
+        List<BudgetEvaluator.Violation> critical = check(END.plusSeconds(3600));
+        assertEquals(List.of("CRITICAL"), severities(critical));
+        assertEquals(1020, critical.get(0).usage().getCpuMcpu());
+        assertEquals(List.of(), severities(check(END.plusSeconds(3660))));
+
+        // re-running the window lowers usage to 960, below the limit but within the hysteresis
+        repository.saveRun(List.of(snapshot("TEAM", "team-a", 140, START.plusSeconds(3600))), List.of());
+        assertEquals(List.of(), severities(check(END.plusSeconds(3720))));
+        assertEquals("CRITICAL", repository.findAlertStates().get("a-daily").state());
+    }
+
+    /**
+     * Tests that a budget falling below the hysteresis of its warning threshold is alerted as recovered.
+     */
+    @Test
+    void testEvaluate_Recovers() throws SQLException {
+        insertBudget("a-daily", "TEAM", "team-a", "DAILY", 1000);
+        repository.saveRun(List.of(snapshot("TEAM", "team-a", 800)), List.of());
+        assertEquals(List.of("WARN"), severities(check(END)));
+
+        repository.saveRun(List.of(snapshot("TEAM", "team-a", 760)), List.of());
+        assertEquals(List.of(), severities(check(END.plusSeconds(60))));
+
+        repository.saveRun(List.of(snapshot("TEAM", "team-a", 740)), List.of());
+        List<BudgetEvaluator.Violation> recovered = check(END.plusSeconds(120));
+        assertEquals(List.of("RECOVERED"), severities(recovered));
+        assertEquals(List.of(), recovered.get(0).topOffenders());
+        assertEquals("OK", repository.findAlertStates().get("a-daily").state());
+    }
+
+    /**
+     * Tests that a budget staying CRITICAL is alerted again after the re-notify interval,
+     * and that a new period starts from OK.
+     */
+    @Test
+    void testEvaluate_RenotifiesAndResetsPerPeriod() throws SQLException {
+        insertBudget("a-daily", "TEAM", "team-a", "DAILY", 1000);
+        insertBudget("a-monthly", "TEAM", "team-a", "MONTHLY", 1000);
+        config.alertRenotifyCriticalHours = 2;
+        repository.saveRun(List.of(snapshot("TEAM", "team-a", 1200)), List.of());
+
+        assertEquals(List.of("CRITICAL", "CRITICAL"), severities(check(END)));
+        assertEquals(List.of(), severities(check(END.plusSeconds(3600))));
+        assertEquals(List.of("CRITICAL", "CRITICAL"), severities(check(END.plusSeconds(7200))));
+        assertEquals(List.of(), severities(check(END.plusSeconds(7260))));
+
+        // the next day has no usage yet: the daily budget starts from OK without a recovery alert
+        Instant nextDay = Instant.parse("2026-02-04T01:00:00Z");
+        assertEquals(List.of("a-monthly"), check(nextDay).stream().map(v -> v.budget().getName()).toList());
+        assertEquals("OK", repository.findAlertStates().get("a-daily").state());
+        assertEquals("CRITICAL", repository.findAlertStates().get("a-monthly").state());
+    }
+
+    /**
+     * Tests that a budget whose alert was not sent keeps its previous level and is alerted again by the next check.
+     */
+    @Test
+    void testEvaluate_KeepsLevelUntilAlerted() throws SQLException {
+        insertBudget("a-daily", "TEAM", "team-a", "DAILY", 1000);
+        repository.saveRun(List.of(snapshot("TEAM", "team-a", 1200)), List.of());
+
+        assertEquals(List.of("CRITICAL"), severities(evaluator.evaluate(END)));
+        assertFalse(repository.findAlertStates().containsKey("a-daily"));
+
+        assertEquals(List.of("CRITICAL"), severities(check(END.plusSeconds(60))));
+        assertEquals("CRITICAL", repository.findAlertStates().get("a-daily").state());
+        assertEquals(END.plusSeconds(60), repository.findAlertStates().get("a-daily").notifiedAt());
+        assertEquals(List.of(), severities(check(END.plusSeconds(120))));
+    }
+
+    /**
+     * Tests that disabled budgets lose their alert state.
+     */
+    @Test
+    void testEvaluate_ForgetsDisabledBudgets() throws SQLException {
+        insertBudget("a-daily", "TEAM", "team-a", "DAILY", 1000);
+        repository.saveRun(List.of(snapshot("TEAM", "team-a", 1200)), List.of());
+        check(END);
+        assertTrue(repository.findAlertStates().containsKey("a-daily"));
+
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement ps = conn.prepareStatement("UPDATE budgets SET enabled = 0")) {
+            ps.executeUpdate();
+        }
+        check(END.plusSeconds(60));
+        assertEquals(Map.of(), repository.findAlertStates());
+    }
+
+    /**
+     * Tests the alert levels and their hysteresis.
+     */
+    @Test
+    void testLevel() {
+        Budget b = new Budget();
+        b.setCpuMcpuLimit(1000);
+        b.setMemMibLimit(1000);
+        b.setWarnPercent(80);
+
+        assertEquals("OK", BudgetEvaluator.level(b, usage(790), "OK", 5));
+        assertEquals("WARN", BudgetEvaluator.level(b, usage(800), "OK", 5));
+        assertEquals("WARN", BudgetEvaluator.level(b, usage(760), "WARN", 5));
+        assertEquals("OK", BudgetEvaluator.level(b, usage(749), "WARN", 5));
+        assertEquals("WARN", BudgetEvaluator.level(b, usage(990), "WARN", 5));
+        assertEquals("CRITICAL", BudgetEvaluator.level(b, usage(1000), "WARN", 5));
+        assertEquals("CRITICAL", BudgetEvaluator.level(b, usage(950), "CRITICAL", 5));
+        assertEquals("WARN", BudgetEvaluator.level(b, usage(949), "CRITICAL", 5));
+        assertEquals("OK", BudgetEvaluator.level(b, usage(100), "CRITICAL", 5));
+        assertEquals("WARN", BudgetEvaluator.level(b, usage(800), "OK", 0));
+    }
+
+    /**
+     * Tests the period starts in UTC.
+     */
+    @Test
+    void testPeriodStart() {
+        Instant now = Instant.parse("2026-02-05T13:30:00Z"); // a Thursday
+        assertEquals(Instant.parse("2026-02-05T00:00:00Z"), BudgetEvaluator.periodStart("DAILY", now));
+        assertEquals(Instant.parse("2026-02-02T00:00:00Z"), BudgetEvaluator.periodStart("WEEKLY", now));
+        assertEquals(Instant.parse("2026-02-01T00:00:00Z"), BudgetEvaluator.periodStart("MONTHLY", now));
+        assertNull(BudgetEvaluator.periodStart("YEARLY", now));
+    }
+
+    private List<BudgetEvaluator.Violation> check(Instant now) {
+        List<BudgetEvaluator.Violation> violations = evaluator.evaluate(now);
+        evaluator.markAlerted(violations);
+        return violations;
+    }
+
+    private List<String> severities(List<BudgetEvaluator.Violation> violations) {
+        return violations.stream().map(BudgetEvaluator.Violation::severity).toList();
+    }
+
+    private AllocationSnapshot usage(long cpu) {
+        AllocationSnapshot s = new AllocationSnapshot();
+        s.setCpuMcpu(cpu);
+        return s;
+    }
+
+    private List<String> offenders(BudgetEvaluator.Violation v) {
+        return v.topOffenders().stream().map(AllocationSnapshot::getGroupKey).toList();
+    }
+
+    private void insertBudget(String name, String selectorType, String selectorValue, String period, long cpuLimit)
+            throws SQLException {
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement ps = conn.prepareStatement(
+                     "INSERT INTO budgets (id, name, selector_type, selector_value, period, cpu_mcpu_limit, mem_mib_limit, " +
+                             "warn_percent, enabled, created_at, updated_at) VALUES (?, ?, ?, ?, ?, ?, ?, 80, 1, '', '')")) {
+            ps.setString(1, name);
+            ps.setString(2, name);
+            ps.setString(3, selectorType);
+            ps.setString(4, selectorValue);
+            ps.setString(5, period);
+            ps.setLong(6, cpuLimit);
+            ps.setLong(7, 1_000_000);
+            ps.executeUpdate();
+        }
+    }
+
+    private AllocationSnapshot snapshot(String type, String key, long cpu) {
+        return snapshot(type, key, cpu, START);
+    }
+
+    private AllocationSnapshot snapshot(String type, String key, long cpu, Instant start) {
+        return TestFixtures.snapshot(type, key, cpu, start);
+    }
+
+    private WorkloadInventory inventory(String app, String team) {
+        return TestFixtures.inventory(app, team, START);
+    }
+}
@@ -0,0 +1,418 @@
+package io.kubechargeback.collector;
+
+import io.agroal.api.AgroalDataSource;
+import io.kubechargeback.common.db.PartitionStore;
+import io.kubechargeback.common.db.SchemaMigrator;
+import io.kubechargeback.common.model.AllocationSnapshot;
+import io.kubechargeback.common.model.WorkloadInventory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Instant;
+import java.time.YearMonth;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CollectorRepositoryTest {
+
+    private static final Instant START = Instant.parse("2026-02-01T10:00:00Z");
+    private static final Instant END = Instant.parse("2026-02-01T11:00:00Z");
+
+    @TempDir
+    Path tempDir;
+
+    private AgroalDataSource dataSource;
+    private CollectorRepository repository;
+
+    @BeforeEach
+    void setup() throws SQLException {
+        dataSource = TestFixtures.dataSource(tempDir.resolve("chargeback.db"), 2);
+        repository = TestFixtures.repository(dataSource);
+    }
+
+    @AfterEach
+    void tearDown() {
+        dataSource.close();
+    }
+
+    /**
+     * Tests that a run is persisted and that re-running the same window replaces its rows.
+     */
+    @Test
+    void testSaveRun_ReplacesWindow() throws SQLException {
+        repository.saveRun(List.of(snapshot("APP", "payments", 100)), List.of(inventory("payments")));
+        repository.saveRun(List.of(snapshot("APP", "payments", 300), snapshot("APP", "auth", 50)),
+                List.of(inventory("payments"), inventory("auth")));
+
+        assertEquals(2, count("SELECT COUNT(*) FROM allocation_snapshots"));
+        assertEquals(2, count("SELECT COUNT(*) FROM workload_inventory"));
+        assertEquals(350, count("SELECT SUM(cpu_mcpu) FROM allocation_snapshots"));
+        assertEquals(350, count("SELECT SUM(cpu_mcpu) FROM allocation_rollups_daily"));
+        assertEquals(2, count("SELECT SUM(snapshots) FROM allocation_rollups_monthly"));
+    }
+
+    /**
+     * Tests that a failing run is rolled back and leaves the previously persisted window intact.
+     */
+    @Test
+    void testSaveRun_RollsBackOnFailure() throws SQLException {
+        repository.saveRun(List.of(snapshot("APP", "payments", 100)), List.of(inventory("payments")));
+
+        List<WorkloadInventory> broken = new ArrayList<>();
+        for (int i = 0; i < 1200; i++) {
+            broken.add(inventory("app-" + i));
+        }
+        broken.get(1100).setNamespace(null); // violates NOT NULL after two full batches
+
+        assertThrows(RuntimeException.class,
+                () -> repository.saveRun(List.of(snapshot("APP", "payments", 999)), broken));
+
+        assertEquals(1, count("SELECT COUNT(*) FROM allocation_snapshots"));
+        assertEquals(1, count("SELECT COUNT(*) FROM workload_inventory"));
+        assertEquals(100, count("SELECT SUM(cpu_mcpu) FROM allocation_snapshots"));
+    }
+
+    /**
+     * Tests that initialization brings the schema to the latest version and is idempotent.
+     */
+    @Test
+    void testInitDb_AppliesMigrations() throws SQLException {
+        repository.initDb();
+        assertEquals(SchemaMigrator.latestVersion(), count("PRAGMA user_version"));
+    }
+
+    /**
+     * Tests that two processes migrating the same database at once both succeed and apply every migration once.
+     */
+    @Test
+    void testMigrate_Concurrently() throws Exception {
+        try (AgroalDataSource first = baselineDatabase("concurrent.db");
+             AgroalDataSource second = baselineDatabase("concurrent.db")) {
+            CyclicBarrier barrier = new CyclicBarrier(2);
+            Callable<Integer> migrate = () -> {
+                AgroalDataSource ds = barrier.await() == 0 ? first : second;
+                try (Connection conn = ds.getConnection()) {
+                    return SchemaMigrator.migrate(conn);
+                }
+            };
+            ExecutorService executor = Executors.newFixedThreadPool(2);
+            try {
+                List<Future<Integer>> results = executor.invokeAll(List.of(migrate, migrate));
+                assertEquals(SchemaMigrator.latestVersion(), results.get(0).get() + results.get(1).get());
+            } finally {
+                executor.shutdownNow();
+            }
+            try (Connection conn = first.getConnection();
+                 Statement stmt = conn.createStatement();
+                 ResultSet rs = stmt.executeQuery("PRAGMA user_version")) {
+                assertEquals(SchemaMigrator.latestVersion(), rs.getInt(1));
+            }
+        }
+    }
+
+    /**
+     * Tests that upgrading a database from the baseline schema backfills team and app from the labels.
+     */
+    @Test
+    void testInitDb_BackfillsTeamAndApp() throws Exception {
+        try (AgroalDataSource legacy = baselineDatabase("legacy.db")) {
+            try (Connection conn = legacy.getConnection();
+                 Statement stmt = conn.createStatement()) {
+                stmt.execute("INSERT INTO workload_inventory (snapshot_id, namespace, kind, name, labels_json, " +
+                        "cpu_request_mcpu, mem_request_mib, compliance_status) VALUES " +
+                        "('s1', 'ns', 'Deployment', 'a', '{\"team\":\"team-a\",\"app\":\"payments\"}', 1, 1, 'OK'), " +
+                        "('s2', 'ns', 'Deployment', 'b', '{}', 1, 1, 'OK')");
+            }
+
+            CollectorRepository upgraded = new CollectorRepository();
+            upgraded.dataSource = legacy;
+            upgraded.initDb();
+
+            try (Connection conn = legacy.getConnection();
+                 Statement stmt = conn.createStatement();
+                 ResultSet rs = stmt.executeQuery("SELECT team, app FROM workload_inventory ORDER BY snapshot_id")) {
+                assertTrue(rs.next());
+                assertEquals("team-a", rs.getString("team"));
+                assertEquals("payments", rs.getString("app"));
+                assertTrue(rs.next());
+                assertEquals("unknown", rs.getString("team"));
+                assertEquals("unknown", rs.getString("app"));
+            }
+        }
+    }
+
+    /**
+     * Tests that upgrading converts text windows in any format SQLite understands to epoch seconds,
+     * and rebuilds the rollups from them.
+     */
+    @Test
+    void testInitDb_ConvertsTextWindows() throws Exception {
+        try (AgroalDataSource legacy = baselineDatabase("text-windows.db")) {
+            try (Connection conn = legacy.getConnection();
+                 Statement stmt = conn.createStatement()) {
+                stmt.execute("INSERT INTO allocation_snapshots (id, window_start, window_end, group_type, group_key, " +
+                        "cpu_mcpu, mem_mib, cpu_cost_units, mem_cost_units, total_cost_units) VALUES " +
+                        "('s1', '2026-02-01T10:00:00Z', '2026-02-01T11:00:00Z', 'TEAM', 'team-a', 100, 1, 0, 0, 1), " +
+                        "('s2', '2026-02-01T11:00:00.000000001Z', '2026-02-01T12:00:00.5Z', 'TEAM', 'team-a', 50, 1, 0, 0, 1), " +
+                        "('s3', '2026-02-01 12:00:00', '2026-02-01 13:00:00', 'TEAM', 'team-a', 25, 1, 0, 0, 1)");
+            }
+
+            CollectorRepository upgraded = new CollectorRepository();
+            upgraded.dataSource = legacy;
+            upgraded.initDb();
+
+            try (Connection conn = legacy.getConnection();
+                 Statement stmt = conn.createStatement()) {
+                try (ResultSet rs = stmt.executeQuery("SELECT window_start, window_end FROM allocation_snapshots ORDER BY id")) {
+                    for (int h = 10; h <= 12; h++) {
+                        assertTrue(rs.next());
+                        assertEquals(START.plus(h - 10, ChronoUnit.HOURS).getEpochSecond(), rs.getLong("window_start"));
+                        assertEquals(START.plus(h - 9, ChronoUnit.HOURS).getEpochSecond(), rs.getLong("window_end"));
+                    }
+                }
+                try (ResultSet rs = stmt.executeQuery("SELECT bucket_start, cpu_mcpu, snapshots FROM allocation_rollups_daily")) {
+                    assertTrue(rs.next());
+                    assertEquals(START.truncatedTo(ChronoUnit.DAYS).getEpochSecond(), rs.getLong("bucket_start"));
+                    assertEquals(175, rs.getLong("cpu_mcpu"));
+                    assertEquals(3, rs.getLong("snapshots"));
+                }
+            }
+        }
+    }
+
+    /**
+     * Tests that TEAM budget offenders are matched by the persisted team column.
+     */
+    @Test
+    void testGetTopOffenders_ByTeam() {
+        WorkloadInventory payments = inventory("payments");
+        payments.setTeam("team-a");
+        WorkloadInventory auth = inventory("auth");
+        auth.setTeam("team-b");
+        repository.saveRun(List.of(snapshot("APP", "payments", 100), snapshot("APP", "auth", 50)), List.of(payments, auth));
+
+        Map<String, List<AllocationSnapshot>> offenders =
+                repository.getTopOffenders("TEAM", List.of("team-a", "team-b"), START, END, 5);
+
+        assertEquals(1, offenders.get("team-a").size());
+        assertEquals("payments", offenders.get("team-a").get(0).getGroupKey());
+        assertEquals("auth", offenders.get("team-b").get(0).getGroupKey());
+    }
+
+    /**
+     * Tests that an APP snapshot with several matching workloads is counted once, and that the limit
+     * applies to every selector value separately.
+     */
+    @Test
+    void testGetTopOffenders_ByNamespace() {
+        WorkloadInventory payments = inventory("payments");
+        WorkloadInventory worker = inventory("payments");
+        worker.setName("payments-worker");
+        WorkloadInventory auth = inventory("auth");
+        WorkloadInventory billing = inventory("billing");
+        billing.setNamespace("other-ns");
+        repository.saveRun(List.of(snapshot("APP", "payments", 100), snapshot("APP", "auth", 50),
+                snapshot("APP", "billing", 10)), List.of(payments, worker, auth, billing));
+
+        Map<String, List<AllocationSnapshot>> offenders =
+                repository.getTopOffenders("NAMESPACE", List.of("test-ns", "other-ns"), START, END, 1);
+
+        assertEquals(1, offenders.get("test-ns").size());
+        assertEquals(100, offenders.get("test-ns").get(0).getCpuMcpu());
+        assertEquals("billing", offenders.get("other-ns").get(0).getGroupKey());
+    }
+
+    /**
+     * Tests that the ledger keeps the running usage per group key of the requested group type, and that
+     * re-running a window replaces its share instead of adding it twice.
+     */
+    @Test
+    void testLedger_TracksRunningTotals() {
+        repository.saveRun(List.of(snapshot("TEAM", "team-a", 100), snapshot("TEAM", "team-b", 50),
+                snapshot("NAMESPACE", "test-ns", 150), snapshot("APP", "payments", 150)), List.of());
+        repository.saveRun(List.of(snapshot("TEAM", "team-a", 300), snapshot("TEAM", "team-b", 50),
+                snapshot("NAMESPACE", "test-ns", 350)), List.of());
+        repository.saveRun(List.of(snapshot("TEAM", "team-a", 10, END)), List.of());
+
+        Map<String, AllocationSnapshot> usage = repository.getLedgerUsage("TEAM", "DAILY", START.truncatedTo(ChronoUnit.DAYS));
+
+        assertEquals(2, usage.size());
+        assertEquals(310, usage.get("team-a").getCpuMcpu());
+        assertEquals(100, usage.get("team-b").getMemMib());
+        assertEquals(350, repository.getLedgerUsage("NAMESPACE", "MONTHLY", START.truncatedTo(ChronoUnit.DAYS))
+                .get("test-ns").getCpuMcpu());
+        assertEquals(Map.of(), repository.getLedgerUsage("APP", "DAILY", START.truncatedTo(ChronoUnit.DAYS)));
+    }
+
+    /**
+     * Tests that a window of a later period resets the running total of that period only, and that replacing
+     * a window of an earlier period leaves the reset total alone.
+     */
+    @Test
+    void testLedger_ResetsAtPeriodBoundary() {
+        Instant sunday = START;
+        Instant monday = Instant.parse("2026-02-02T10:00:00Z");
+        repository.saveRun(List.of(snapshot("TEAM", "team-a", 100, sunday)), List.of());
+        repository.saveRun(List.of(snapshot("TEAM", "team-a", 10, monday)), List.of());
+        repository.saveRun(List.of(snapshot("TEAM", "team-a", 200, sunday)), List.of());
+
+        assertEquals(10, repository.getLedgerUsage("TEAM", "DAILY", Instant.parse("2026-02-02T00:00:00Z"))
+                .get("team-a").getCpuMcpu());
+        assertEquals(10, repository.getLedgerUsage("TEAM", "WEEKLY", Instant.parse("2026-02-02T00:00:00Z"))
+                .get("team-a").getCpuMcpu());
+        assertEquals(Map.of(), repository.getLedgerUsage("TEAM", "DAILY", Instant.parse("2026-02-01T00:00:00Z")));
+        // the month had the Sunday window rewritten after the reset, which still counts towards it
+        assertEquals(210, repository.getLedgerUsage("TEAM", "MONTHLY", Instant.parse("2026-02-01T00:00:00Z"))
+                .get("team-a").getCpuMcpu());
+    }
+
+    /**
+     * Tests that rebuilding the ledger restores the running totals of the current periods from the rollups.
+     */
+    @Test
+    void testRebuildLedger() throws SQLException {
+        Instant monday = Instant.parse("2026-02-02T10:00:00Z");
+        repository.saveRun(List.of(snapshot("TEAM", "team-a", 100)), List.of());
+        repository.saveRun(List.of(snapshot("TEAM", "team-a", 10, monday), snapshot("NAMESPACE", "test-ns", 20, monday)),
+                List.of());
+        try (Connection conn = dataSource.getConnection();
+             Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("UPDATE budget_usage_ledger SET cpu_mcpu = 0");
+        }
+
+        assertEquals(6, repository.rebuildLedger(Instant.parse("2026-02-02T12:00:00Z")));
+
+        Instant day = Instant.parse("2026-02-02T00:00:00Z");
+        assertEquals(10, repository.getLedgerUsage("TEAM", "DAILY", day).get("team-a").getCpuMcpu());
+        assertEquals(10, repository.getLedgerUsage("TEAM", "WEEKLY", day).get("team-a").getCpuMcpu());
+        assertEquals(110, repository.getLedgerUsage("TEAM", "MONTHLY", Instant.parse("2026-02-01T00:00:00Z"))
+                .get("team-a").getCpuMcpu());
+        assertEquals(20, repository.getLedgerUsage("NAMESPACE", "WEEKLY", day).get("test-ns").getCpuMcpu());
+    }
+
+    /**
+     * Tests that in partitioned mode a run is written to the partition of its month, re-running the window
+     * replaces it, the rollups of the main database follow and budget queries read the partition.
+     */
+    @Test
+    void testSaveRun_Partitioned() throws SQLException {
+        Path dir = tempDir.resolve("partitions");
+        repository.partitionDir = Optional.of(dir.toString());
+        WorkloadInventory payments = inventory("payments");
+        payments.setTeam("team-a");
+
+        repository.saveRun(List.of(snapshot("APP", "payments", 100), snapshot("TEAM", "team-a", 100)), List.of(payments));
+        repository.saveRun(List.of(snapshot("APP", "payments", 300), snapshot("APP", "auth", 50),
+                snapshot("TEAM", "team-a", 300)), List.of(payments, inventory("auth")));
+
+        assertTrue(Files.exists(repository.partitions().file(YearMonth.of(2026, 2))));
+        assertEquals(0, count("SELECT COUNT(*) FROM allocation_snapshots"));
+        assertEquals(650, count("SELECT SUM(cpu_mcpu) FROM allocation_rollups_daily"));
+        assertEquals(3, count("SELECT SUM(snapshots) FROM allocation_rollups_monthly"));
+        assertEquals(300, repository.getLedgerUsage("TEAM", "WEEKLY", Instant.parse("2026-01-26T00:00:00Z"))
+                .get("team-a").getCpuMcpu());
+        assertEquals(3 * 300, count("SELECT SUM(cpu_mcpu) FROM budget_usage_ledger"));
+
+        List<AllocationSnapshot> offenders = repository.getTopOffenders("TEAM", List.of("team-a"), START, END, 5).get("team-a");
+        assertEquals(1, offenders.size());
+        assertEquals(300, offenders.get(0).getCpuMcpu());
+
+        assertEquals(0, repository.dropPartitions(Instant.parse("2026-02-28T00:00:00Z")));
+        assertEquals(1, repository.dropPartitions(Instant.parse("2026-03-01T00:00:00Z")));
+        assertFalse(Files.exists(repository.partitions().file(YearMonth.of(2026, 2))));
+        assertEquals(650, count("SELECT SUM(cpu_mcpu) FROM allocation_rollups_daily"));
+    }
+
+    /**
+     * Tests that none of the collector's queries on the growing tables scans a whole table.
+     */
+    @ParameterizedTest
+    @ValueSource(strings = { "TEAM", "NAMESPACE" })
+    void testQueryPlans_NoFullScans(String selectorType) throws SQLException {
+        for (String sql : List.of(
+                CollectorRepository.DELETE_WINDOW_INVENTORY_SQL.replace("{p}", PartitionStore.MAIN),
+                CollectorRepository.DELETE_WINDOW_SNAPSHOTS_SQL.replace("{p}", PartitionStore.MAIN),
+                CollectorRepository.LEDGER_USAGE_SQL,
+                CollectorRepository.topOffendersSql(selectorType, 3, List.of(PartitionStore.MAIN)))) {
+            assertEquals(List.of(), fullScans(sql), sql);
+        }
+    }
+
+    /**
+     * Creates a file database with only the baseline schema, as written before versioned migrations existed.
+     *
+     * @param file the database file name inside the temporary directory
+     * @return the data source; the caller closes it
+     */
+    private AgroalDataSource baselineDatabase(String file) throws Exception {
+        AgroalDataSource legacy = TestFixtures.dataSource(tempDir.resolve(file), 1);
+        try (InputStream is = getClass().getClassLoader().getResourceAsStream("db/schema.sql");
+             Connection conn = legacy.getConnection();
+             Statement stmt = conn.createStatement()) {
+            for (String sql : new String(is.readAllBytes(), StandardCharsets.UTF_8).split(";")) {
+                if (!sql.trim().isEmpty()) {
+                    stmt.execute(sql);
+                }
+            }
+        }
+        return legacy;
+    }
+
+    private AllocationSnapshot snapshot(String type, String key, long cpu) {
+        return snapshot(type, key, cpu, START);
+    }
+
+    private AllocationSnapshot snapshot(String type, String key, long cpu, Instant start) {
+        return TestFixtures.snapshot(type, key, cpu, start);
+    }
+
+    private WorkloadInventory inventory(String app) {
+        return TestFixtures.inventory(app, null, START);
+    }
+
+    private List<String> fullScans(String sql) throws SQLException {
+        List<String> scans = new ArrayList<>();
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement ps = conn.prepareStatement("EXPLAIN QUERY PLAN " + sql)) {
+            for (int i = 1; i <= ps.getParameterMetaData().getParameterCount(); i++) {
+                ps.setObject(i, null);
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    String detail = rs.getString("detail");
+                    if (detail.startsWith("SCAN ") && !detail.contains(" INDEX ") && !detail.startsWith("SCAN (subquery")) {
+                        scans.add(detail);
+                    }
+                }
+            }
+        }
+        return scans;
+    }
+
+    private long count(String sql) throws SQLException {
+        return TestFixtures.count(dataSource, sql);
+    }
+}
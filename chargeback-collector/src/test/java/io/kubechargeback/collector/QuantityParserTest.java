@@ -0,0 +1,73 @@
+package io.kubechargeback.collector;
+
+import io.fabric8.kubernetes.api.model.Quantity;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.math.BigDecimal;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class QuantityParserTest {
+
+    /**
+     * Tests that common CPU quantities match fabric8's exact result.
+     */
+    @ParameterizedTest
+    @ValueSource(strings = { "0", "1", "2", "100m", "250m", "1500m", "0.5", "1.5", "2.3", "0.001", "1k", "0.25k" })
+    void testMilliCores_MatchesFabric8(String value) {
+        Quantity q = new Quantity(value);
+        long expected = q.getNumericalAmount().multiply(BigDecimal.valueOf(1000)).longValue();
+        assertEquals(expected, QuantityParser.milliCores(q.getAmount(), q.getFormat()));
+    }
+
+    /**
+     * Tests that common memory quantities match fabric8's exact result.
+     */
+    @ParameterizedTest
+    @ValueSource(strings = { "0", "1048576", "64Mi", "128Mi", "512Mi", "1536Mi", "1Gi", "2Gi", "1.5Gi", "1Ti",
+            "1024Ki", "100M", "1G", "2.5G", "1500k", "1P", "1Pi" })
+    void testMebibytes_MatchesFabric8(String value) {
+        Quantity q = new Quantity(value);
+        long expected = Quantity.getAmountInBytes(q).longValue() / (1024 * 1024);
+        assertEquals(expected, QuantityParser.mebibytes(q.getAmount(), q.getFormat()));
+    }
+
+    /**
+     * Tests that a suffix left in the amount is honoured when no format is given.
+     */
+    @Test
+    void testSuffixInAmount() {
+        assertEquals(512, QuantityParser.mebibytes("512Mi", null));
+        assertEquals(250, QuantityParser.milliCores("250m", ""));
+    }
+
+    /**
+     * Tests that millibytes are left to fabric8.
+     */
+    @Test
+    void testMebibytes_Millibytes() {
+        assertEquals(QuantityParser.UNSUPPORTED, QuantityParser.mebibytes("100m", null));
+    }
+
+    /**
+     * Tests that exotic forms are left to fabric8.
+     */
+    @ParameterizedTest
+    @ValueSource(strings = { "", "-1", "1e3", "1E3", "100u", "100n", "1.2.3", "abc", "1Xi", "1234567890123456789",
+            "0.0000000000001" })
+    void testUnsupportedForms(String value) {
+        assertEquals(QuantityParser.UNSUPPORTED, QuantityParser.milliCores(value, null));
+        assertEquals(QuantityParser.UNSUPPORTED, QuantityParser.mebibytes(value, null));
+    }
+
+    /**
+     * Tests that suffixes that only make sense for one resource are left to fabric8 for the other.
+     */
+    @ParameterizedTest
+    @ValueSource(strings = { "1Gi", "1T" })
+    void testMilliCores_UnsupportedSuffix(String value) {
+        assertEquals(QuantityParser.UNSUPPORTED, QuantityParser.milliCores(value, null));
+    }
+}
@@ -0,0 +1,165 @@
+package io.kubechargeback.collector;
+
+import io.agroal.api.AgroalDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RetentionServiceTest {
+
+    private static final Instant NOW = Instant.parse("2026-03-20T05:00:00Z");
+
+    @TempDir
+    Path tempDir;
+
+    private AgroalDataSource dataSource;
+    private CollectorRepository repository;
+    private CollectorConfig config;
+    private RetentionService retention;
+
+    @BeforeEach
+    void setup() throws SQLException {
+        dataSource = TestFixtures.dataSource(tempDir.resolve("chargeback.db"), 2);
+        repository = TestFixtures.repository(dataSource);
+
+        config = new CollectorConfig();
+        config.retentionRawDays = 14;
+        config.retentionDailyMonths = 13;
+        config.retentionAlertDays = 90;
+        config.retentionBatchSize = 1;
+        retention = new RetentionService();
+        retention.config = config;
+        retention.repository = repository;
+    }
+
+    @AfterEach
+    void tearDown() {
+        dataSource.close();
+    }
+
+    /**
+     * Tests that raw snapshots and inventory past the raw retention are deleted in batches,
+     * while the rollups keep counting them.
+     */
+    @Test
+    void testRun_PrunesRawSnapshotsIntoRollups() throws SQLException {
+        save(Instant.parse("2026-02-01T10:00:00Z"), 100);
+        save(Instant.parse("2026-02-01T11:00:00Z"), 200);
+        save(Instant.parse("2026-03-19T10:00:00Z"), 50);
+
+        retention.run(NOW);
+
+        assertEquals(1, count("SELECT COUNT(*) FROM allocation_snapshots"));
+        assertEquals(1, count("SELECT COUNT(*) FROM workload_inventory"));
+        assertEquals(350, count("SELECT SUM(cpu_mcpu) FROM allocation_rollups_daily"));
+        assertEquals(350, count("SELECT SUM(cpu_mcpu) FROM allocation_rollups_monthly"));
+        assertEquals(Instant.parse("2026-03-06T00:00:00Z").getEpochSecond(),
+                count("SELECT raw_before FROM retention_horizon"));
+    }
+
+    /**
+     * Tests that re-running a window above the horizon still replaces its share of the rollups.
+     */
+    @Test
+    void testRun_WindowReplacementAfterPruning() throws SQLException {
+        save(Instant.parse("2026-02-01T10:00:00Z"), 100);
+        save(Instant.parse("2026-03-19T10:00:00Z"), 50);
+        retention.run(NOW);
+
+        save(Instant.parse("2026-03-19T10:00:00Z"), 70);
+
+        assertEquals(170, count("SELECT SUM(cpu_mcpu) FROM allocation_rollups_daily"));
+        assertEquals(70, count("SELECT cpu_mcpu FROM allocation_rollups_monthly WHERE bucket_start = "
+                + Instant.parse("2026-03-01T00:00:00Z").getEpochSecond()));
+    }
+
+    /**
+     * Tests that daily rollups, monthly rollups and alerts follow their own retention.
+     */
+    @Test
+    void testRun_PrunesRollupsAndAlerts() throws SQLException {
+        config.retentionDailyMonths = 1;
+        config.retentionMonthlyMonths = 2;
+        save(Instant.parse("2025-12-31T10:00:00Z"), 10);
+        save(Instant.parse("2026-01-31T10:00:00Z"), 20);
+        save(Instant.parse("2026-02-01T10:00:00Z"), 30);
+        Instant cutoff = NOW.minus(90, ChronoUnit.DAYS);
+        try (Connection conn = dataSource.getConnection();
+             Statement stmt = conn.createStatement()) {
+            stmt.execute("INSERT INTO alerts (id, timestamp, severity, budget_name, message) VALUES " +
+                    "('old', '" + NOW.minus(91, ChronoUnit.DAYS) + "', 'WARN', 'b', 'm'), " +
+                    "('old-fraction', '" + cutoff.minusMillis(500) + "', 'WARN', 'b', 'm'), " +
+                    "('old-seed', '2025-12-20 04:59:59', 'WARN', 'b', 'm'), " +
+                    "('new', '" + NOW.minus(1, ChronoUnit.DAYS) + "', 'WARN', 'b', 'm'), " +
+                    "('new-fraction', '" + cutoff.plusMillis(500) + "', 'WARN', 'b', 'm'), " +
+                    "('new-seed', '2025-12-20 05:00:01', 'WARN', 'b', 'm')");
+        }
+
+        retention.run(NOW);
+
+        // daily rollups from 2026-02-01, monthly rollups from 2026-01-01
+        assertEquals(30, count("SELECT SUM(cpu_mcpu) FROM allocation_rollups_daily"));
+        assertEquals(50, count("SELECT SUM(cpu_mcpu) FROM allocation_rollups_monthly"));
+        assertEquals(3, count("SELECT COUNT(*) FROM alerts WHERE id LIKE 'new%'"));
+        assertEquals(3, count("SELECT COUNT(*) FROM alerts"));
+    }
+
+    /**
+     * Tests that a new database uses incremental auto-vacuum and that retention returns freed pages.
+     */
+    @Test
+    void testRun_VacuumsIncrementally() throws SQLException {
+        assertEquals(2, count("PRAGMA auto_vacuum"));
+        for (int i = 0; i < 200; i++) {
+            save(Instant.parse("2026-02-01T10:00:00Z").plus(i, ChronoUnit.HOURS), 100);
+        }
+        long pages = count("PRAGMA page_count");
+
+        retention.run(NOW);
+
+        assertEquals(0, count("PRAGMA freelist_count"));
+        assertTrue(count("PRAGMA page_count") < pages);
+    }
+
+    /**
+     * Tests that retention never converts an existing database with a full VACUUM, and that the conversion
+     * runs once on request.
+     */
+    @Test
+    void testEnableIncrementalVacuum() throws SQLException {
+        try (Connection conn = dataSource.getConnection();
+             Statement stmt = conn.createStatement()) {
+            stmt.execute("PRAGMA auto_vacuum = NONE");
+            stmt.execute("VACUUM");
+        }
+        save(Instant.parse("2026-02-01T10:00:00Z"), 100);
+        retention.run(NOW);
+        assertEquals(0, count("PRAGMA auto_vacuum"));
+
+        assertTrue(repository.enableIncrementalVacuum());
+        assertEquals(2, count("PRAGMA auto_vacuum"));
+        assertFalse(repository.enableIncrementalVacuum());
+    }
+
+    private void save(Instant windowStart, long cpu) {
+        repository.saveRun(List.of(TestFixtures.snapshot("APP", "payments", cpu, windowStart)),
+                List.of(TestFixtures.inventory("payments", null, windowStart)));
+    }
+
+    private long count(String sql) throws SQLException {
+        return TestFixtures.count(dataSource, sql);
+    }
+}
@@ -0,0 +1,123 @@
+package io.kubechargeback.collector;
+
+import io.agroal.api.AgroalDataSource;
+import io.agroal.api.configuration.supplier.AgroalDataSourceConfigurationSupplier;
+import io.kubechargeback.common.model.AllocationSnapshot;
+import io.kubechargeback.common.model.WorkloadInventory;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Instant;
+
+/**
+ * Database, snapshot and inventory fixtures shared by the collector tests that run against SQLite.
+ */
+final class TestFixtures {
+
+    private TestFixtures() {
+    }
+
+    /**
+     * Creates a pooled data source for a SQLite file database.
+     *
+     * @param file    the database file
+     * @param maxSize the maximum number of pooled connections
+     * @return the data source; the caller closes it
+     */
+    static AgroalDataSource dataSource(Path file, int maxSize) throws SQLException {
+        return AgroalDataSource.from(new AgroalDataSourceConfigurationSupplier()
+                .connectionPoolConfiguration(pool -> pool
+                        .maxSize(maxSize)
+                        .connectionFactoryConfiguration(cf -> cf
+                                .jdbcUrl("jdbc:sqlite:" + file))));
+    }
+
+    /**
+     * Creates a repository on the given data source and migrates its schema.
+     *
+     * @param dataSource the data source
+     * @return the repository
+     */
+    static CollectorRepository repository(AgroalDataSource dataSource) {
+        CollectorRepository repository = new CollectorRepository();
+        repository.dataSource = dataSource;
+        repository.initDb();
+        return repository;
+    }
+
+    /**
+     * Runs a query that returns a single number.
+     *
+     * @param dataSource the data source
+     * @param sql        the query
+     * @return the first column of the first row
+     */
+    static long count(AgroalDataSource dataSource, String sql) throws SQLException {
+        try (Connection conn = dataSource.getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+
+    /**
+     * Creates the snapshot of a one-hour window, with memory and cost derived from the CPU.
+     *
+     * @param type  the group type
+     * @param key   the group key
+     * @param cpu   the CPU in millicores
+     * @param start the window start
+     * @return the snapshot
+     */
+    static AllocationSnapshot snapshot(String type, String key, long cpu, Instant start) {
+        AllocationSnapshot s = new AllocationSnapshot();
+        s.setId(snapshotId(type, key, start));
+        s.setWindowStart(start);
+        s.setWindowEnd(start.plusSeconds(3600));
+        s.setGroupType(type);
+        s.setGroupKey(key);
+        s.setCpuMcpu(cpu);
+        s.setMemMib(cpu * 2);
+        s.setTotalCostUnits(cpu * 0.001);
+        return s;
+    }
+
+    /**
+     * Builds the ID of a snapshot created by {@link #snapshot}.
+     *
+     * @param type  the group type
+     * @param key   the group key
+     * @param start the window start
+     * @return the snapshot ID
+     */
+    static String snapshotId(String type, String key, Instant start) {
+        return type + "_" + key + "_" + start.getEpochSecond();
+    }
+
+    /**
+     * Creates a Deployment in {@code test-ns} that belongs to the APP snapshot of its application.
+     *
+     * @param app   the application, also used as the workload name
+     * @param team  the team, or null if the workload has no team label
+     * @param start the window start of the APP snapshot
+     * @return the workload inventory
+     */
+    static WorkloadInventory inventory(String app, String team, Instant start) {
+        WorkloadInventory w = new WorkloadInventory();
+        w.setSnapshotId(snapshotId("APP", app, start));
+        w.setNamespace("test-ns");
+        w.setKind("Deployment");
+        w.setName(app);
+        w.setTeam(team);
+        w.setApp(app);
+        w.setLabelsJson(team == null
+                ? "{\"app\":\"" + app + "\"}"
+                : "{\"team\":\"" + team + "\",\"app\":\"" + app + "\"}");
+        w.setComplianceStatus("OK");
+        return w;
+    }
+}
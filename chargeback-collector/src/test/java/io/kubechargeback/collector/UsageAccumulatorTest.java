@@ -0,0 +1,86 @@
+package io.kubechargeback.collector;
+
+import io.kubechargeback.common.model.AllocationSnapshot;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UsageAccumulatorTest {
+
+    private static final Instant START = Instant.parse("2026-02-01T10:00:00Z");
+    private static final Instant END = START.plus(1, ChronoUnit.HOURS);
+
+    private final UsageAccumulator accumulator = new UsageAccumulator("team", "app");
+
+    /**
+     * Tests that a scale-up in the middle of a window is charged only for the time it lasted.
+     */
+    @Test
+    void testFlush_TimeWeightedScaleUp() {
+        WorkloadData one = workload(100, 128);
+        WorkloadData three = workload(300, 384);
+        accumulator.update(null, one, START);
+        accumulator.update(one, three, START.plus(30, ChronoUnit.MINUTES));
+
+        List<AllocationSnapshot> snapshots = accumulator.flush(START, END, 0.001, 0.0001);
+
+        assertEquals(3, snapshots.size());
+        AllocationSnapshot app = find(snapshots, "APP");
+        assertEquals("payments", app.getGroupKey());
+        assertEquals(200, app.getCpuMcpu()); // 100m for 30 min, 300m for 30 min
+        assertEquals(256, app.getMemMib());
+        assertEquals(0.2, app.getCpuCostUnits(), 1e-9);
+        assertEquals(0.0256, app.getMemCostUnits(), 1e-9);
+        assertEquals("team-a", find(snapshots, "TEAM").getGroupKey());
+        assertEquals("test-ns", find(snapshots, "NAMESPACE").getGroupKey());
+    }
+
+    /**
+     * Tests that integrals are reset on flush while live workloads keep being charged in the next window.
+     */
+    @Test
+    void testFlush_CarriesLiveWorkloadsIntoNextWindow() {
+        WorkloadData w = workload(100, 128);
+        accumulator.update(null, w, START);
+        accumulator.flush(START, END, 0.001, 0.0001);
+
+        List<AllocationSnapshot> next = accumulator.flush(END, END.plus(1, ChronoUnit.HOURS), 0.001, 0.0001);
+        assertEquals(100, find(next, "APP").getCpuMcpu());
+        assertEquals(0.1, find(next, "APP").getCpuCostUnits(), 1e-9);
+    }
+
+    /**
+     * Tests that a deleted workload is charged until deletion and its groups are dropped after the flush.
+     */
+    @Test
+    void testFlush_DropsDeletedGroups() {
+        WorkloadData w = workload(100, 128);
+        accumulator.update(null, w, START);
+        accumulator.update(w, null, START.plus(15, ChronoUnit.MINUTES));
+
+        List<AllocationSnapshot> snapshots = accumulator.flush(START, END, 0.001, 0.0001);
+        assertEquals(25, find(snapshots, "APP").getCpuMcpu());
+        assertTrue(accumulator.flush(END, END.plus(1, ChronoUnit.HOURS), 0.001, 0.0001).isEmpty());
+    }
+
+    private WorkloadData workload(long cpu, long mem) {
+        WorkloadData w = new WorkloadData();
+        w.namespace = "test-ns";
+        w.kind = "Deployment";
+        w.name = "payments";
+        w.labels = Map.of("team", "team-a", "app", "payments");
+        w.cpuReq = cpu;
+        w.memReq = mem;
+        w.complianceStatus = "OK";
+        return w;
+    }
+
+    private AllocationSnapshot find(List<AllocationSnapshot> snapshots, String type) {
+        return snapshots.stream().filter(s -> type.equals(s.getGroupType())).findFirst().orElseThrow();
+    }
+}
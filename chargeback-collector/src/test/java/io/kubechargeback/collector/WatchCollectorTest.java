@@ -0,0 +1,266 @@
+package io.kubechargeback.collector;
+
+import io.fabric8.kubernetes.api.model.Quantity;
+import io.fabric8.kubernetes.api.model.apps.Deployment;
+import io.fabric8.kubernetes.api.model.apps.DeploymentBuilder;
+import io.fabric8.kubernetes.api.model.batch.v1.Job;
+import io.fabric8.kubernetes.api.model.batch.v1.JobBuilder;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.server.mock.EnableKubernetesMockClient;
+import io.kubechargeback.common.model.AllocationSnapshot;
+import io.kubechargeback.common.model.WorkloadInventory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@EnableKubernetesMockClient(crud = true)
+class WatchCollectorTest {
+
+    KubernetesClient client;
+
+    private CollectorConfig config;
+    private WatchCollector collector;
+    private final List<String> changes = new ArrayList<>();
+    private final List<List<AllocationSnapshot>> flushedSnapshots = new ArrayList<>();
+    private final List<List<WorkloadInventory>> flushedInventory = new ArrayList<>();
+
+    @BeforeEach
+    void setup() {
+        config = new CollectorConfig();
+        config.allowlist = Optional.of("team-a");
+        config.labelTeam = "team";
+        config.labelApp = "app";
+        config.windowHours = 1;
+        config.rateCpu = 0.001;
+        config.rateMem = 0.0001;
+        config.webhookSecretSelector = Optional.empty();
+
+        WorkloadFetcher fetcher = new WorkloadFetcher();
+        fetcher.k8s = client;
+        fetcher.config = config;
+        WebhookSecretResolver secretResolver = new WebhookSecretResolver();
+        secretResolver.config = config;
+        CollectorService collectorService = new CollectorService() {
+            @Override
+            public void completeWindow(List<AllocationSnapshot> snapshots, List<WorkloadInventory> inventory, Instant now) {
+                flushedSnapshots.add(snapshots);
+                flushedInventory.add(inventory);
+            }
+        };
+        collectorService.config = config;
+
+        collector = new WatchCollector() {
+            @Override
+            synchronized void onChange(String key, WorkloadData current, boolean chargeable) {
+                super.onChange(key, current, chargeable);
+                changes.add(key + (current == null ? " deleted" : chargeable ? " charged" : " idle"));
+            }
+        };
+        collector.k8s = client;
+        collector.config = config;
+        collector.repository = new CollectorRepository() {
+            @Override
+            public void initDb() {
+            }
+        };
+        collector.collectorService = collectorService;
+        collector.fetcher = fetcher;
+        collector.parser = new WorkloadParser();
+        collector.secretResolver = secretResolver;
+        collector.webhookDispatcher = new WebhookDispatcher() {
+            @Override
+            synchronized void start() {
+            }
+        };
+    }
+
+    @AfterEach
+    void tearDown() {
+        collector.stop();
+    }
+
+    /**
+     * Tests that existing workloads are indexed when the informers start, that only running Jobs are charged,
+     * and that a flushed window carries the usage and inventory of the charged workloads.
+     */
+    @Test
+    void testStart_IndexesExistingWorkloads() {
+        client.apps().deployments().inNamespace("team-a").resource(deployment("api", 2)).create();
+        client.apps().deployments().inNamespace("team-b").resource(deployment("other", 1)).create();
+        client.batch().v1().jobs().inNamespace("team-a").resource(job("runner", 1)).create();
+        client.batch().v1().jobs().inNamespace("team-a").resource(job("done", 0)).create();
+
+        collector.start();
+        await(() -> changes.size() == 3);
+
+        assertEquals(List.of("Deployment/team-a/api charged", "Job/team-a/done idle", "Job/team-a/runner charged"),
+                sorted(changes));
+        Instant windowStart = Instant.now();
+        collector.flush(windowStart, windowStart.plus(Duration.ofHours(1)));
+
+        assertEquals(1, flushedSnapshots.size());
+        assertEquals(300, usage("TEAM", "team-a").getCpuMcpu());
+        assertEquals(200, usage("APP", "api").getCpuMcpu());
+        assertEquals(100, usage("APP", "runner").getCpuMcpu());
+        assertEquals(List.of("api", "runner"),
+                sorted(flushedInventory.get(0).stream().map(WorkloadInventory::getName).toList()));
+    }
+
+    /**
+     * Tests that scaling and deleting a workload are picked up from watch events.
+     */
+    @Test
+    void testStart_FollowsChanges() {
+        client.apps().deployments().inNamespace("team-a").resource(deployment("api", 2)).create();
+        collector.start();
+        await(() -> changes.size() == 1);
+
+        client.apps().deployments().inNamespace("team-a").resource(deployment("api", 4)).update();
+        await(() -> changes.size() == 2);
+        Instant windowStart = Instant.now();
+        collector.flush(windowStart, windowStart.plus(Duration.ofHours(1)));
+        assertEquals(400, usage("TEAM", "team-a").getCpuMcpu());
+
+        client.apps().deployments().inNamespace("team-a").withName("api").delete();
+        await(() -> changes.size() == 3);
+        assertEquals("Deployment/team-a/api deleted", changes.get(2));
+        Instant next = windowStart.plus(Duration.ofHours(2));
+        collector.flush(next, next.plus(Duration.ofHours(1)));
+        collector.flush(next.plus(Duration.ofHours(1)), next.plus(Duration.ofHours(2)));
+        assertEquals(List.of(), flushedSnapshots.get(2));
+        assertEquals(List.of(), flushedInventory.get(2));
+    }
+
+    /**
+     * Tests that a window that began before tracking started is not persisted.
+     */
+    @Test
+    void testFlush_SkipsPartialWindow() {
+        collector.start();
+        Instant end = Instant.now().plus(Duration.ofMinutes(30));
+
+        collector.flush(end.minus(Duration.ofHours(1)), end);
+
+        assertEquals(List.of(), flushedSnapshots);
+    }
+
+    /**
+     * Tests that an event arriving after a window ended but before its flush ran is charged to the next window.
+     */
+    @Test
+    void testOnChange_SplitsAtWindowBoundary() {
+        collector.start();
+        Instant boundary = collector.nextBoundary(Instant.now());
+
+        collector.onChange("Deployment/team-a/api", workload("api", 2), true, boundary.plus(Duration.ofMinutes(10)));
+        collector.onChange("Deployment/team-a/api", workload("api", 4), true, boundary.plus(Duration.ofMinutes(90)));
+        collector.flushDue(boundary.plus(Duration.ofMinutes(90)));
+
+        assertEquals(1, flushedSnapshots.size());
+        assertEquals(167, usage("APP", "api").getCpuMcpu());
+        assertEquals(List.of("api"), flushedInventory.get(0).stream().map(WorkloadInventory::getName).toList());
+
+        collector.flushDue(boundary.plus(Duration.ofHours(2)));
+        assertEquals(2, flushedSnapshots.size());
+        assertEquals(300, usage("APP", "api").getCpuMcpu());
+    }
+
+    /**
+     * Tests that window boundaries are aligned to multiples of the window length.
+     */
+    @Test
+    void testNextBoundary() {
+        assertEquals(Instant.parse("2026-02-03T11:00:00Z"), collector.nextBoundary(Instant.parse("2026-02-03T10:00:00Z")));
+        assertEquals(Instant.parse("2026-02-03T11:00:00Z"), collector.nextBoundary(Instant.parse("2026-02-03T10:59:59Z")));
+        config.windowHours = 6;
+        assertEquals(Instant.parse("2026-02-03T12:00:00Z"), collector.nextBoundary(Instant.parse("2026-02-03T10:00:00Z")));
+        assertEquals(Instant.parse("2026-02-03T18:00:00Z"), collector.nextBoundary(Instant.parse("2026-02-03T12:00:00Z")));
+    }
+
+    private AllocationSnapshot usage(String type, String key) {
+        return flushedSnapshots.get(flushedSnapshots.size() - 1).stream()
+                .filter(s -> type.equals(s.getGroupType()) && key.equals(s.getGroupKey()))
+                .findFirst()
+                .orElseThrow();
+    }
+
+    private void await(BooleanSupplier condition) {
+        long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        while (!check(condition)) {
+            assertTrue(System.nanoTime() < deadline, "timed out, changes: " + changes);
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                fail(e);
+            }
+        }
+    }
+
+    private boolean check(BooleanSupplier condition) {
+        synchronized (collector) {
+            return condition.getAsBoolean();
+        }
+    }
+
+    private List<String> sorted(List<String> values) {
+        synchronized (collector) {
+            return values.stream().sorted().toList();
+        }
+    }
+
+    private Deployment deployment(String name, int replicas) {
+        return new DeploymentBuilder()
+                .withNewMetadata().withName(name).addToLabels("team", "team-a").addToLabels("app", name).endMetadata()
+                .withNewSpec()
+                .withReplicas(replicas)
+                .withNewTemplate()
+                .withNewSpec()
+                .addNewContainer()
+                .withName("main")
+                .withNewResources()
+                .addToRequests("cpu", new Quantity("100m"))
+                .addToRequests("memory", new Quantity("128Mi"))
+                .endResources()
+                .endContainer()
+                .endSpec()
+                .endTemplate()
+                .endSpec()
+                .build();
+    }
+
+    private WorkloadData workload(String name, int replicas) {
+        Deployment d = deployment(name, replicas);
+        d.getMetadata().setNamespace("team-a");
+        return new WorkloadParser().fromDeployment(d);
+    }
+
+    private Job job(String name, int active) {
+        return new JobBuilder()
+                .withNewMetadata().withName(name).addToLabels("team", "team-a").addToLabels("app", name).endMetadata()
+                .withNewSpec()
+                .withNewTemplate()
+                .withNewSpec()
+                .addNewContainer()
+                .withName("main")
+                .withNewResources()
+                .addToRequests("cpu", new Quantity("100m"))
+                .addToRequests("memory", new Quantity("64Mi"))
+                .endResources()
+                .endContainer()
+                .endSpec()
+                .endTemplate()
+                .endSpec()
+                .withNewStatus().withActive(active).withStartTime("2026-02-03T09:00:00Z").endStatus()
+                .build();
+    }
+}
@@ -0,0 +1,222 @@
+package io.kubechargeback.collector;
+
+import com.sun.net.httpserver.HttpServer;
+import io.agroal.api.AgroalDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WebhookDispatcherTest {
+
+    private static final Duration DRAIN = Duration.ofSeconds(10);
+
+    @TempDir
+    Path tempDir;
+
+    private AgroalDataSource dataSource;
+    private CollectorRepository repository;
+    private CollectorConfig config;
+    private MeterRegistry registry;
+    private WebhookDispatcher dispatcher;
+
+    private HttpServer server;
+    private ExecutorService handlers;
+    private final Queue<String> received = new ConcurrentLinkedQueue<>();
+    private final Queue<Integer> statuses = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicInteger maxActive = new AtomicInteger();
+    private volatile long delayMs;
+
+    @BeforeEach
+    void setup() throws IOException, SQLException {
+        dataSource = TestFixtures.dataSource(tempDir.resolve("chargeback.db"), 4);
+        repository = TestFixtures.repository(dataSource);
+
+        config = new CollectorConfig();
+        config.webhookQueueCapacity = 100;
+        config.webhookMaxConcurrency = 2;
+        config.webhookTimeoutMs = 2000;
+        config.webhookMaxAttempts = 3;
+        config.webhookBackoffInitialMs = 10;
+        config.webhookBackoffMaxMs = 100;
+        config.webhookBatchSize = 20;
+        config.webhookLingerMs = 100;
+        config.webhookDrainTimeoutMs = 10_000;
+        config.webhookOutboxPollMs = 50;
+        registry = new SimpleMeterRegistry();
+        dispatcher = newDispatcher();
+
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        handlers = Executors.newCachedThreadPool();
+        server.setExecutor(handlers);
+        server.createContext("/hook", exchange -> {
+            maxActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+            try {
+                received.add(new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8));
+                Thread.sleep(delayMs);
+                Integer status = statuses.poll();
+                exchange.sendResponseHeaders(status == null ? 200 : status, -1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                active.decrementAndGet();
+                exchange.close();
+            }
+        });
+        server.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        dispatcher.stop();
+        server.stop(0);
+        handlers.shutdownNow();
+        dataSource.close();
+    }
+
+    /**
+     * Tests that alerts queued together for the same webhook are sent as one batched request
+     * and removed from the outbox once delivered.
+     */
+    @Test
+    void testEnqueue_CoalescesAlerts() throws Exception {
+        dispatcher.enqueue(url(), "{\"budgetName\":\"a\"}");
+        dispatcher.enqueue(url(), "{\"budgetName\":\"b\"}");
+        dispatcher.enqueue(url(), "{\"budgetName\":\"c\"}");
+
+        assertTrue(dispatcher.drain(DRAIN));
+        assertEquals(List.of("{\"alerts\":[{\"budgetName\":\"a\"},{\"budgetName\":\"b\"},{\"budgetName\":\"c\"}]}"),
+                List.copyOf(received));
+        assertEquals(List.of(), repository.findPendingWebhooks(10));
+        assertEquals(3, registry.get("webhook.alerts").tag("result", "delivered").counter().count());
+        assertEquals(1, registry.get("webhook.requests").tag("outcome", "success").timer().count());
+    }
+
+    /**
+     * Tests that a failed request is retried with backoff and that the alert is dropped after the last attempt,
+     * and that a lone alert is sent in the same envelope as a batch.
+     */
+    @Test
+    void testEnqueue_RetriesThenDrops() throws Exception {
+        statuses.addAll(List.of(500, 200));
+        dispatcher.enqueue(url(), "{\"budgetName\":\"a\"}");
+        assertTrue(dispatcher.drain(DRAIN));
+        assertEquals(List.of("{\"alerts\":[{\"budgetName\":\"a\"}]}", "{\"alerts\":[{\"budgetName\":\"a\"}]}"),
+                List.copyOf(received));
+        assertEquals(1, registry.get("webhook.alerts").tag("result", "delivered").counter().count());
+
+        statuses.addAll(List.of(503, 503, 503));
+        dispatcher.enqueue(url(), "{\"budgetName\":\"b\"}");
+        assertTrue(dispatcher.drain(DRAIN));
+        assertEquals(5, received.size());
+        assertEquals(1, registry.get("webhook.alerts").tag("result", "dropped").counter().count());
+        assertEquals(4, registry.get("webhook.requests").tag("outcome", "failure").timer().count());
+        assertEquals(List.of(), repository.findPendingWebhooks(10));
+    }
+
+    /**
+     * Tests that no more requests than the per-endpoint limit reach a webhook at the same time.
+     */
+    @Test
+    void testEnqueue_LimitsConcurrencyPerEndpoint() throws Exception {
+        config.webhookBatchSize = 1;
+        delayMs = 100;
+        for (int i = 0; i < 6; i++) {
+            dispatcher.enqueue(url(), "{\"budgetName\":\"" + i + "\"}");
+        }
+
+        assertTrue(dispatcher.drain(DRAIN));
+        assertEquals(6, received.size());
+        assertEquals(2, maxActive.get());
+    }
+
+    /**
+     * Tests that deliveries still pending when the drain deadline passes stay in the outbox
+     * and are sent by the next dispatcher.
+     */
+    @Test
+    void testDrain_LeavesPendingInOutbox() throws Exception {
+        config.webhookBackoffInitialMs = 60_000;
+        config.webhookBackoffMaxMs = 60_000;
+        statuses.add(500);
+        dispatcher.enqueue(url(), "{\"budgetName\":\"a\"}");
+
+        assertFalse(dispatcher.drain(Duration.ofMillis(500)));
+        List<WebhookDelivery> left = repository.findPendingWebhooks(10);
+        assertEquals(1, left.size());
+        assertEquals(1, left.get(0).attempts());
+
+        config.webhookDrainTimeoutMs = 0;
+        dispatcher.stop();
+        // the backoff has passed by the next run
+        WebhookDelivery a = left.get(0);
+        repository.retryWebhook(new WebhookDelivery(a.id(), a.url(), a.payloadJson(), 1, Instant.now()), "HTTP 500");
+        dispatcher = newDispatcher();
+        dispatcher.enqueue(url(), "{\"budgetName\":\"b\"}");
+
+        assertTrue(dispatcher.drain(DRAIN));
+        assertEquals(List.of(), repository.findPendingWebhooks(10));
+        assertTrue(received.contains("{\"alerts\":[{\"budgetName\":\"a\"},{\"budgetName\":\"b\"}]}"), received.toString());
+    }
+
+    /**
+     * Tests that a started dispatcher picks up alerts that wait in the outbox without a new alert being queued,
+     * e.g. those deferred while the queue was full.
+     */
+    @Test
+    void testStart_PollsOutbox() throws Exception {
+        dispatcher.start();
+        Instant now = Instant.now();
+        repository.saveWebhook(new WebhookDelivery("deferred", url(), "{\"budgetName\":\"a\"}", 0, now), now);
+
+        long deadline = System.nanoTime() + DRAIN.toNanos();
+        while (!repository.findPendingWebhooks(10).isEmpty()) {
+            assertTrue(System.nanoTime() < deadline, "outbox was not polled");
+            Thread.sleep(20);
+        }
+        assertEquals(List.of("{\"alerts\":[{\"budgetName\":\"a\"}]}"), List.copyOf(received));
+    }
+
+    /**
+     * Tests the exponential backoff and its cap.
+     */
+    @Test
+    void testBackoff() {
+        assertEquals(10, dispatcher.backoffMs(1));
+        assertEquals(20, dispatcher.backoffMs(2));
+        assertEquals(80, dispatcher.backoffMs(4));
+        assertEquals(100, dispatcher.backoffMs(5));
+        assertEquals(100, dispatcher.backoffMs(100));
+    }
+
+    private WebhookDispatcher newDispatcher() {
+        WebhookDispatcher d = new WebhookDispatcher();
+        d.config = config;
+        d.repository = repository;
+        d.registry = registry;
+        return d;
+    }
+
+    private String url() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/hook";
+    }
+}
@@ -0,0 +1,136 @@
+package io.kubechargeback.collector;
+
+import io.fabric8.kubernetes.api.model.Secret;
+import io.fabric8.kubernetes.api.model.SecretBuilder;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WebhookSecretResolverTest {
+
+    private static final Instant NOW = Instant.parse("2026-02-01T10:00:00Z");
+
+    private final Map<String, String> secrets = new HashMap<>();
+    private final Set<String> unlabelled = new HashSet<>();
+    private final List<String> calls = new ArrayList<>();
+    private CollectorConfig config;
+    private WebhookSecretResolver resolver;
+
+    @BeforeEach
+    void setup() {
+        secrets.put("team-a-hook", "http://hooks.local/a");
+        secrets.put("team-b-hook", "http://hooks.local/b");
+        secrets.put("no-url", null);
+
+        config = new CollectorConfig();
+        config.webhookSecretSelector = Optional.empty();
+        config.webhookSecretCacheTtlSeconds = 300;
+        resolver = new WebhookSecretResolver() {
+            @Override
+            Map<String, String> listSelected(String selector) {
+                calls.add("list " + selector);
+                Map<String, String> listed = new HashMap<>(secrets);
+                listed.keySet().removeAll(unlabelled);
+                return listed;
+            }
+
+            @Override
+            String fetch(String name) {
+                calls.add("get " + name);
+                return secrets.get(name);
+            }
+        };
+        resolver.config = config;
+    }
+
+    /**
+     * Tests that a label selector resolves all secrets with one list call and that the result is cached.
+     */
+    @Test
+    void testResolve_ListsOnceBySelector() {
+        config.webhookSecretSelector = Optional.of("kubechargeback.io/webhook=true");
+
+        Map<String, String> urls = resolver.resolve(List.of("team-a-hook", "team-b-hook", "team-a-hook"), NOW);
+        resolver.resolve(List.of("team-b-hook"), NOW.plusSeconds(60));
+
+        assertEquals(Map.of("team-a-hook", "http://hooks.local/a", "team-b-hook", "http://hooks.local/b"), urls);
+        assertEquals(List.of("list kubechargeback.io/webhook=true"), calls);
+    }
+
+    /**
+     * Tests that with a label selector, secrets without the label are still read by name and cached.
+     */
+    @Test
+    void testResolve_FetchesSecretsOutsideSelector() {
+        config.webhookSecretSelector = Optional.of("kubechargeback.io/webhook=true");
+        unlabelled.add("team-b-hook");
+
+        Map<String, String> urls = resolver.resolve(List.of("team-a-hook", "team-b-hook", "missing"), NOW);
+        resolver.resolve(List.of("team-b-hook", "missing"), NOW.plusSeconds(60));
+
+        assertEquals(Map.of("team-a-hook", "http://hooks.local/a", "team-b-hook", "http://hooks.local/b"), urls);
+        assertEquals(List.of("list kubechargeback.io/webhook=true", "get team-b-hook", "get missing"), calls);
+    }
+
+    /**
+     * Tests that without a selector every distinct secret is read once, including secrets without a URL,
+     * and read again after the TTL.
+     */
+    @Test
+    void testResolve_FetchesDistinctNamesUntilExpired() {
+        resolver.resolve(List.of("team-a-hook", "team-a-hook", "no-url", ""), NOW);
+        secrets.put("team-a-hook", "http://hooks.local/a2");
+        Map<String, String> cached = resolver.resolve(List.of("team-a-hook", "no-url"), NOW.plusSeconds(299));
+        Map<String, String> refreshed = resolver.resolve(List.of("team-a-hook"), NOW.plusSeconds(300));
+
+        assertEquals(Map.of("team-a-hook", "http://hooks.local/a"), cached);
+        assertEquals(Map.of("team-a-hook", "http://hooks.local/a2"), refreshed);
+        assertEquals(List.of("get team-a-hook", "get no-url", "get team-a-hook"), calls);
+    }
+
+    /**
+     * Tests that a failed lookup is not cached.
+     */
+    @Test
+    void testResolve_RetriesFailedLookup() {
+        WebhookSecretResolver failing = new WebhookSecretResolver() {
+            @Override
+            String fetch(String name) {
+                calls.add("get " + name);
+                throw new IllegalStateException("API server unavailable");
+            }
+        };
+        failing.config = config;
+
+        assertEquals(Map.of(), failing.resolve(List.of("team-a-hook"), NOW));
+        assertEquals(Map.of(), failing.resolve(List.of("team-a-hook"), NOW));
+        assertEquals(List.of("get team-a-hook", "get team-a-hook"), calls);
+    }
+
+    /**
+     * Tests that the URL is decoded from the secret data.
+     */
+    @Test
+    void testUrlOf() {
+        Secret s = new SecretBuilder().withNewMetadata().withName("hook").endMetadata()
+                .addToData(WebhookSecretResolver.URL_KEY,
+                        Base64.getEncoder().encodeToString("http://hooks.local/a\n".getBytes(StandardCharsets.UTF_8)))
+                .build();
+
+        assertEquals("http://hooks.local/a", WebhookSecretResolver.urlOf(s));
+        assertNull(WebhookSecretResolver.urlOf(new SecretBuilder().build()));
+        assertNull(WebhookSecretResolver.urlOf(null));
+    }
+}
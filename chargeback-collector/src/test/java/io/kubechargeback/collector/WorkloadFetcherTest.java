@@ -0,0 +1,214 @@
+package io.kubechargeback.collector;
+
+import io.fabric8.kubernetes.api.model.ListMetaBuilder;
+import io.fabric8.kubernetes.api.model.Quantity;
+import io.fabric8.kubernetes.api.model.apps.DaemonSetListBuilder;
+import io.fabric8.kubernetes.api.model.apps.Deployment;
+import io.fabric8.kubernetes.api.model.apps.DeploymentBuilder;
+import io.fabric8.kubernetes.api.model.apps.DeploymentList;
+import io.fabric8.kubernetes.api.model.apps.DeploymentListBuilder;
+import io.fabric8.kubernetes.api.model.apps.StatefulSetListBuilder;
+import io.fabric8.kubernetes.api.model.batch.v1.JobListBuilder;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.server.mock.EnableKubernetesMockClient;
+import io.fabric8.kubernetes.client.server.mock.KubernetesMockServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@EnableKubernetesMockClient
+class WorkloadFetcherTest {
+
+    private static final Instant START = Instant.parse("2026-02-03T10:00:00Z");
+    private static final Instant END = Instant.parse("2026-02-03T11:00:00Z");
+
+    KubernetesMockServer server;
+    KubernetesClient client;
+
+    private CollectorConfig config;
+    private WorkloadFetcher fetcher;
+    private final List<WorkloadData> fetched = new ArrayList<>();
+
+    @BeforeEach
+    void setup() {
+        config = new CollectorConfig();
+        config.allowlist = Optional.of("team-a");
+        config.pageSize = 2;
+        config.ingestConcurrency = 4;
+        fetcher = new WorkloadFetcher();
+        fetcher.k8s = client;
+        fetcher.config = config;
+        fetcher.parser = new WorkloadParser();
+    }
+
+    /**
+     * Tests that a listing follows the continue tokens until the last page and forwards every item.
+     */
+    @Test
+    void testFetch_FollowsContinueTokens() throws InterruptedException {
+        expectDeployments("/apis/apps/v1/namespaces/team-a/deployments?limit=2",
+                page("c1", deployment("team-a", "a1"), deployment("team-a", "a2")));
+        expectDeployments("/apis/apps/v1/namespaces/team-a/deployments?continue=c1&limit=2",
+                page("c2", deployment("team-a", "a3"), deployment("team-a", "a4")));
+        expectDeployments("/apis/apps/v1/namespaces/team-a/deployments?continue=c2&limit=2",
+                page(null, deployment("team-a", "a5")));
+        expectOtherKindsEmpty("team-a");
+
+        fetcher.fetch(START, END, fetched::add);
+
+        assertEquals(List.of("a1", "a2", "a3", "a4", "a5"), names());
+        assertEquals(200, fetched.get(0).cpuReq);
+        assertEquals(6, server.getRequestCount());
+    }
+
+    /**
+     * Tests that every allowed namespace is listed on its own and that nothing is listed cluster-wide.
+     */
+    @Test
+    void testFetch_ShardsByNamespace() throws InterruptedException {
+        config.allowlist = Optional.of("team-a,team-b");
+        expectDeployments("/apis/apps/v1/namespaces/team-a/deployments?limit=2", page(null, deployment("team-a", "a1")));
+        expectDeployments("/apis/apps/v1/namespaces/team-b/deployments?limit=2", page(null, deployment("team-b", "b1")));
+        expectOtherKindsEmpty("team-a");
+        expectOtherKindsEmpty("team-b");
+
+        fetcher.fetch(START, END, fetched::add);
+
+        assertEquals(List.of("a1", "b1"), names());
+        assertEquals(8, server.getRequestCount());
+        for (int i = 0; i < 8; i++) {
+            String path = server.takeRequest().getPath();
+            assertTrue(path.contains("/namespaces/team-a/") || path.contains("/namespaces/team-b/"), path);
+        }
+    }
+
+    /**
+     * Tests that a wildcard allowlist lists every kind once across all namespaces.
+     */
+    @Test
+    void testFetch_ListsClusterWide() {
+        config.allowlist = Optional.of("*");
+        expectDeployments("/apis/apps/v1/deployments?limit=2",
+                page(null, deployment("team-a", "a1"), deployment("team-b", "b1")));
+        server.expect().get().withPath("/apis/apps/v1/statefulsets?limit=2")
+                .andReturn(200, new StatefulSetListBuilder().build()).once();
+        server.expect().get().withPath("/apis/apps/v1/daemonsets?limit=2")
+                .andReturn(200, new DaemonSetListBuilder().build()).once();
+        server.expect().get().withPath("/apis/batch/v1/jobs?limit=2")
+                .andReturn(200, new JobListBuilder().build()).once();
+
+        fetcher.fetch(START, END, fetched::add);
+
+        assertEquals(List.of("a1", "b1"), names());
+        assertEquals(4, server.getRequestCount());
+    }
+
+    /**
+     * Tests that no more list requests than the ingest concurrency are in flight at the same time.
+     */
+    @Test
+    void testFetch_LimitsConcurrency() {
+        config.allowlist = Optional.of("ns-1,ns-2,ns-3");
+        config.ingestConcurrency = 2;
+        AtomicInteger active = new AtomicInteger();
+        AtomicInteger maxActive = new AtomicInteger();
+        for (String ns : List.of("ns-1", "ns-2", "ns-3")) {
+            for (String path : List.of("/apis/apps/v1/namespaces/" + ns + "/deployments?limit=2",
+                    "/apis/apps/v1/namespaces/" + ns + "/statefulsets?limit=2",
+                    "/apis/apps/v1/namespaces/" + ns + "/daemonsets?limit=2",
+                    "/apis/batch/v1/namespaces/" + ns + "/jobs?limit=2")) {
+                server.expect().get().withPath(path).andReply(200, request -> {
+                    maxActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+                    try {
+                        Thread.sleep(50);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        active.decrementAndGet();
+                    }
+                    return emptyList(request);
+                }).once();
+            }
+        }
+
+        fetcher.fetch(START, END, fetched::add);
+
+        assertEquals(12, server.getRequestCount());
+        assertEquals(2, maxActive.get());
+    }
+
+    /**
+     * Tests that a failing listing fails the whole fetch.
+     */
+    @Test
+    void testFetch_FailsOnListError() {
+        expectOtherKindsEmpty("team-a");
+        server.expect().get().withPath("/apis/apps/v1/namespaces/team-a/deployments?limit=2")
+                .andReturn(403, "forbidden").once();
+
+        assertThrows(IllegalStateException.class, () -> fetcher.fetch(START, END, fetched::add));
+    }
+
+    private void expectDeployments(String path, DeploymentList page) {
+        server.expect().get().withPath(path).andReturn(200, page).once();
+    }
+
+    private void expectOtherKindsEmpty(String ns) {
+        server.expect().get().withPath("/apis/apps/v1/namespaces/" + ns + "/statefulsets?limit=2")
+                .andReturn(200, new StatefulSetListBuilder().build()).once();
+        server.expect().get().withPath("/apis/apps/v1/namespaces/" + ns + "/daemonsets?limit=2")
+                .andReturn(200, new DaemonSetListBuilder().build()).once();
+        server.expect().get().withPath("/apis/batch/v1/namespaces/" + ns + "/jobs?limit=2")
+                .andReturn(200, new JobListBuilder().build()).once();
+    }
+
+    private Object emptyList(RecordedRequest request) {
+        String path = request.getPath();
+        if (path.contains("/deployments")) {
+            return new DeploymentListBuilder().build();
+        } else if (path.contains("/statefulsets")) {
+            return new StatefulSetListBuilder().build();
+        } else if (path.contains("/daemonsets")) {
+            return new DaemonSetListBuilder().build();
+        }
+        return new JobListBuilder().build();
+    }
+
+    private DeploymentList page(String continueToken, Deployment... items) {
+        return new DeploymentListBuilder()
+                .withMetadata(new ListMetaBuilder().withContinue(continueToken).build())
+                .withItems(items)
+                .build();
+    }
+
+    private Deployment deployment(String namespace, String name) {
+        return new DeploymentBuilder()
+                .withNewMetadata().withName(name).withNamespace(namespace).addToLabels("team", namespace).endMetadata()
+                .withNewSpec()
+                .withReplicas(2)
+                .withNewTemplate()
+                .withNewSpec()
+                .addNewContainer()
+                .withNewResources()
+                .addToRequests("cpu", new Quantity("100m"))
+                .addToRequests("memory", new Quantity("128Mi"))
+                .endResources()
+                .endContainer()
+                .endSpec()
+                .endTemplate()
+                .endSpec()
+                .build();
+    }
+
+    private List<String> names() {
+        return fetched.stream().map(w -> w.name).sorted().toList();
+    }
+}
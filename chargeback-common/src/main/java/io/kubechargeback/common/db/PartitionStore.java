@@ -0,0 +1,298 @@
+package io.kubechargeback.common.db;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Instant;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+/**
+ * Monthly partition files for raw snapshots and their inventory.
+ * In partitioned mode the collector writes the windows of each UTC month into {@code snapshots-YYYY-MM.db} in the
+ * partition directory, and readers ATTACH only the months overlapping the range they query. Rollups, budgets,
+ * alerts and any snapshots written before partitioning was enabled stay in the main database, which is why every
+ * attachment also lists the {@code main} schema. Closed months are only read, with {@code mode=ro}, and can be
+ * archived or dropped as whole files.
+ */
+public final class PartitionStore {
+
+    /**
+     * The schema name of the main database.
+     */
+    public static final String MAIN = "main";
+
+    /**
+     * Maximum number of partitions attached to one connection; SQLite allows 10 attached databases.
+     */
+    public static final int MAX_ATTACHED = 8;
+
+    private static final String PREFIX = "snapshots-";
+    private static final String SUFFIX = ".db";
+
+    private final Path dir;
+
+    /**
+     * Creates a store for a partition directory.
+     *
+     * @param dir the directory holding the partition files, or null if snapshots are kept in the main database
+     */
+    public PartitionStore(Path dir) {
+        this.dir = dir;
+    }
+
+    /**
+     * Creates a store for the configured partition directory.
+     *
+     * @param dir the configured directory; partitioning is disabled if it is null, empty or blank
+     * @return the store
+     */
+    public static PartitionStore of(Optional<String> dir) {
+        return new PartitionStore(dir == null ? null
+                : dir.map(String::trim).filter(d -> !d.isEmpty()).map(Path::of).orElse(null));
+    }
+
+    /**
+     * Checks if snapshots are written to monthly partitions.
+     * @return true if a partition directory is configured
+     */
+    public boolean isEnabled() { return dir != null; }
+
+    /**
+     * Gets the UTC month an instant falls in.
+     *
+     * @param t the instant
+     * @return the month
+     */
+    public static YearMonth monthOf(Instant t) {
+        return YearMonth.from(t.atZone(ZoneOffset.UTC));
+    }
+
+    /**
+     * Gets the file of a month's partition.
+     *
+     * @param month the month
+     * @return the partition file
+     */
+    public Path file(YearMonth month) {
+        return dir.resolve(PREFIX + month + SUFFIX);
+    }
+
+    /**
+     * Lists the existing partitions holding windows that start in a range.
+     *
+     * @param from the earliest window start
+     * @param to   the end of the range, exclusive
+     * @return the months with a partition file, in ascending order; empty if partitioning is disabled
+     */
+    public List<YearMonth> months(Instant from, Instant to) {
+        List<YearMonth> months = new ArrayList<>();
+        if (dir == null || !from.isBefore(to)) {
+            return months;
+        }
+        YearMonth last = monthOf(to.minusNanos(1));
+        for (YearMonth m = monthOf(from); !m.isAfter(last); m = m.plusMonths(1)) {
+            if (Files.exists(file(m))) {
+                months.add(m);
+            }
+        }
+        return months;
+    }
+
+    /**
+     * Lists all existing partitions.
+     *
+     * @return the months with a partition file, in ascending order; empty if partitioning is disabled
+     */
+    public List<YearMonth> months() {
+        List<YearMonth> months = new ArrayList<>();
+        if (dir == null || !Files.isDirectory(dir)) {
+            return months;
+        }
+        try (var files = Files.list(dir)) {
+            for (Path file : files.collect(Collectors.toList())) {
+                String name = file.getFileName().toString();
+                if (name.startsWith(PREFIX) && name.endsWith(SUFFIX)) {
+                    months.add(YearMonth.parse(name.substring(PREFIX.length(), name.length() - SUFFIX.length())));
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to list partitions in " + dir, e);
+        }
+        months.sort(null);
+        return months;
+    }
+
+    /**
+     * Splits months into groups that can be attached to one connection.
+     * Always returns at least one group, so callers still query the main database when no partition exists.
+     *
+     * @param months the months
+     * @return the groups of at most {@link #MAX_ATTACHED} months
+     */
+    public static List<List<YearMonth>> chunks(List<YearMonth> months) {
+        List<List<YearMonth>> chunks = new ArrayList<>();
+        for (int i = 0; i < months.size(); i += MAX_ATTACHED) {
+            chunks.add(months.subList(i, Math.min(months.size(), i + MAX_ATTACHED)));
+        }
+        if (chunks.isEmpty()) {
+            chunks.add(List.of());
+        }
+        return chunks;
+    }
+
+    /**
+     * Attaches partitions to a connection. Must be called outside a transaction.
+     * A writable partition is created with its tables if it does not exist yet.
+     *
+     * @param conn     the connection
+     * @param months   the months to attach, at most {@link #MAX_ATTACHED}
+     * @param readOnly whether the partitions are attached read-only
+     * @return the attachment, which detaches the partitions when closed
+     * @throws SQLException if a partition cannot be attached
+     */
+    public Attachment attach(Connection conn, List<YearMonth> months, boolean readOnly) throws SQLException {
+        if (months.size() > MAX_ATTACHED) {
+            throw new IllegalArgumentException("Cannot attach more than " + MAX_ATTACHED + " partitions, got " + months.size());
+        }
+        Attachment attachment = new Attachment(conn);
+        try {
+            for (YearMonth month : months) {
+                String schema = "p_" + month.toString().replace("-", "_");
+                Path file = file(month);
+                if (!readOnly) {
+                    Files.createDirectories(dir);
+                }
+                try (PreparedStatement ps = conn.prepareStatement("ATTACH DATABASE ? AS " + schema)) {
+                    ps.setString(1, readOnly ? "file:" + file.toAbsolutePath() + "?mode=ro" : file.toString());
+                    ps.execute();
+                }
+                attachment.partitions.add(schema);
+                if (!readOnly) {
+                    createTables(conn, schema);
+                }
+            }
+        } catch (SQLException | RuntimeException e) {
+            attachment.close();
+            throw e;
+        } catch (IOException e) {
+            attachment.close();
+            throw new UncheckedIOException(e);
+        }
+        return attachment;
+    }
+
+    /**
+     * Deletes the partitions of all months before a month.
+     *
+     * @param month the first month to keep
+     * @return the number of partitions deleted
+     */
+    public int dropBefore(YearMonth month) {
+        int dropped = 0;
+        try {
+            for (YearMonth m : months()) {
+                if (m.isBefore(month)) {
+                    Path file = file(m);
+                    Files.deleteIfExists(file);
+                    Files.deleteIfExists(file.resolveSibling(file.getFileName() + "-journal"));
+                    dropped++;
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to drop partitions in " + dir, e);
+        }
+        return dropped;
+    }
+
+    /**
+     * Joins one SELECT per schema with UNION ALL.
+     *
+     * @param schemas  the schemas
+     * @param template the SELECT, with {@code {p}} standing for the schema name
+     * @return the compound SELECT
+     */
+    public static String unionAll(List<String> schemas, String template) {
+        return schemas.stream().map(s -> template.replace("{p}", s)).collect(Collectors.joining(" UNION ALL "));
+    }
+
+    /**
+     * Creates the partition tables in an attached schema.
+     *
+     * @param conn   the connection
+     * @param schema the schema name
+     * @throws SQLException if a statement fails
+     */
+    private static void createTables(Connection conn, String schema) throws SQLException {
+        String script;
+        try (InputStream is = PartitionStore.class.getClassLoader().getResourceAsStream("db/partition.sql")) {
+            if (is == null) {
+                throw new IllegalStateException("Partition schema not found: db/partition.sql");
+            }
+            script = new String(is.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        try (Statement stmt = conn.createStatement()) {
+            for (String sql : SchemaMigrator.statements(script.replace("{p}", schema))) {
+                stmt.execute(sql);
+            }
+        }
+    }
+
+    /**
+     * Partitions attached to a connection.
+     */
+    public static final class Attachment implements AutoCloseable {
+
+        private final Connection conn;
+        private final List<String> partitions = new ArrayList<>();
+
+        private Attachment(Connection conn) {
+            this.conn = conn;
+        }
+
+        /**
+         * Gets the schemas to query: the main database followed by the attached partitions.
+         * @return the schema names
+         */
+        public List<String> schemas() {
+            List<String> schemas = new ArrayList<>(partitions.size() + 1);
+            schemas.add(MAIN);
+            schemas.addAll(partitions);
+            return schemas;
+        }
+
+        /**
+         * Gets the attached partitions.
+         * @return the schema names of the partitions
+         */
+        public List<String> partitions() { return partitions; }
+
+        /**
+         * Detaches the partitions.
+         *
+         * @throws SQLException if a partition cannot be detached
+         */
+        @Override
+        public void close() throws SQLException {
+            try (Statement stmt = conn.createStatement()) {
+                for (String schema : partitions) {
+                    stmt.execute("DETACH DATABASE " + schema);
+                }
+            }
+            partitions.clear();
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package io.kubechargeback.common.db;
+
+import org.jboss.logging.Logger;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Applies versioned schema migrations on top of the baseline {@code db/schema.sql}.
+ * The applied version is tracked in SQLite's {@code PRAGMA user_version}. Every migration runs in its own
+ * {@code BEGIN IMMEDIATE} transaction together with the version bump, and the version is read only once that
+ * transaction holds the write lock, so the API and the collector can both migrate the same database on startup.
+ */
+public final class SchemaMigrator {
+
+    private static final Logger LOG = Logger.getLogger(SchemaMigrator.class);
+
+    /**
+     * Migration scripts under {@code db/migration/}, in order. Script {@code i} brings the schema to version {@code i + 1}.
+     */
+    private static final String[] MIGRATIONS = {
+            "V1__report_indexes.sql",
+            "V2__inventory_team_app.sql",
+            "V3__allocation_rollups.sql",
+            "V4__epoch_windows.sql",
+            "V5__retention_horizon.sql",
+            "V6__report_version.sql",
+            "V7__budget_usage_ledger.sql",
+            "V8__webhook_outbox.sql",
+            "V9__budget_alert_state.sql"
+    };
+
+    private SchemaMigrator() {
+    }
+
+    /**
+     * Gets the schema version the migrations lead to.
+     * @return the latest version
+     */
+    public static int latestVersion() { return MIGRATIONS.length; }
+
+    /**
+     * Applies all pending migrations.
+     *
+     * @param conn a connection to the database, in auto-commit mode
+     * @return the number of migrations applied
+     * @throws SQLException if a migration fails; the failed migration is rolled back
+     */
+    public static int migrate(Connection conn) throws SQLException {
+        int applied = 0;
+        for (int i = 0; i < MIGRATIONS.length; i++) {
+            if (apply(conn, i + 1, MIGRATIONS[i])) {
+                applied++;
+            }
+        }
+        return applied;
+    }
+
+    /**
+     * Applies a single migration unless the schema is already at or beyond its version.
+     *
+     * @param conn    the connection
+     * @param version the version the migration leads to
+     * @param script  the script name
+     * @return true if the migration was applied
+     * @throws SQLException if the migration fails
+     */
+    private static boolean apply(Connection conn, int version, String script) throws SQLException {
+        String sql = load(script);
+        try (Statement stmt = conn.createStatement()) {
+            // take the write lock before reading the version, so a concurrent starter waits and then skips
+            stmt.execute("BEGIN IMMEDIATE");
+            try {
+                if (currentVersion(stmt) >= version) {
+                    stmt.execute("ROLLBACK");
+                    return false;
+                }
+                for (String command : statements(sql)) {
+                    stmt.execute(command);
+                }
+                stmt.execute("PRAGMA user_version = " + version);
+                stmt.execute("COMMIT");
+            } catch (SQLException | RuntimeException e) {
+                try {
+                    stmt.execute("ROLLBACK");
+                } catch (SQLException rollback) {
+                    e.addSuppressed(rollback);
+                }
+                throw e;
+            }
+            LOG.infof("Applied schema migration %s", script);
+            return true;
+        }
+    }
+
+    /**
+     * Reads the applied schema version.
+     *
+     * @param stmt a statement of the migrating connection
+     * @return the version
+     * @throws SQLException if a database access error occurs
+     */
+    private static int currentVersion(Statement stmt) throws SQLException {
+        try (ResultSet rs = stmt.executeQuery("PRAGMA user_version")) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    /**
+     * Splits a script into statements.
+     * Line comments are dropped, and a {@code CREATE TRIGGER} statement extends up to its closing {@code END;}.
+     *
+     * @param script the script
+     * @return the statements, without their terminating semicolons
+     */
+    static List<String> statements(String script) {
+        StringBuilder uncommented = new StringBuilder();
+        for (String line : script.split("\n")) {
+            int comment = line.indexOf("--");
+            uncommented.append(comment >= 0 ? line.substring(0, comment) : line).append('\n');
+        }
+        List<String> statements = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        for (String part : uncommented.toString().split(";")) {
+            current.append(part);
+            String statement = current.toString().trim();
+            String upper = statement.toUpperCase(Locale.ROOT);
+            if (upper.startsWith("CREATE TRIGGER") && !upper.endsWith("END")) {
+                current.append(';');
+                continue;
+            }
+            if (!statement.isEmpty()) {
+                statements.add(statement);
+            }
+            current.setLength(0);
+        }
+        return statements;
+    }
+
+    /**
+     * Loads a migration script from the classpath.
+     *
+     * @param script the script name
+     * @return the script content
+     */
+    private static String load(String script) {
+        try (InputStream is = SchemaMigrator.class.getClassLoader().getResourceAsStream("db/migration/" + script)) {
+            if (is == null) {
+                throw new IllegalStateException("Migration script not found: db/migration/" + script);
+            }
+            return new String(is.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to read migration script " + script, e);
+        }
+    }
+}
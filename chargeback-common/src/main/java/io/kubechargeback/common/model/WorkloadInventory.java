@@ -6,6 +6,8 @@ public class WorkloadInventory {
     private String kind;
     private String name;
     private String labelsJson;
+    private String team;
+    private String app;
     private long cpuRequestMcpu;
     private long memRequestMib;
     private String complianceStatus;
@@ -65,6 +67,28 @@ public class WorkloadInventory {
      */
     public void setLabelsJson(String labelsJson) { this.labelsJson = labelsJson; }
 
+    /**
+     * Gets the team resolved from the workload's team label.
+     * @return the team
+     */
+    public String getTeam() { return team; }
+    /**
+     * Sets the team resolved from the workload's team label.
+     * @param team the team to set
+     */
+    public void setTeam(String team) { this.team = team; }
+
+    /**
+     * Gets the application resolved from the workload's app label.
+     * @return the application
+     */
+    public String getApp() { return app; }
+    /**
+     * Sets the application resolved from the workload's app label.
+     * @param app the application to set
+     */
+    public void setApp(String app) { this.app = app; }
+
     /**
      * Gets the CPU request in millicores.
      * @return the CPU request
@@ -0,0 +1,13 @@
+-- Report queries filter snapshots by group type and window range and sum the metrics,
+-- so this index covers them without touching the table.
+CREATE INDEX IF NOT EXISTS idx_snapshots_type_window
+  ON allocation_snapshots (group_type, window_start, window_end, group_key,
+                           cpu_mcpu, mem_mib, cpu_cost_units, mem_cost_units, total_cost_units);
+
+-- Inventory is joined to its APP snapshot and filtered by namespace or team label.
+CREATE INDEX IF NOT EXISTS idx_inventory_snapshot ON workload_inventory (snapshot_id);
+CREATE INDEX IF NOT EXISTS idx_inventory_namespace ON workload_inventory (namespace, kind, name, compliance_status);
+CREATE INDEX IF NOT EXISTS idx_inventory_team ON workload_inventory (json_extract(labels_json, '$.team'));
+
+-- Alerts are listed newest first.
+CREATE INDEX IF NOT EXISTS idx_alerts_timestamp ON alerts (timestamp);
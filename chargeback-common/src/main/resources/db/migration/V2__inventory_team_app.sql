@@ -0,0 +1,13 @@
+-- The collector resolves the team and app of every workload from its configured labels and
+-- writes them into dedicated columns, so reports no longer parse labels_json per row.
+ALTER TABLE workload_inventory ADD COLUMN team TEXT;
+ALTER TABLE workload_inventory ADD COLUMN app TEXT;
+
+-- Existing rows are backfilled from the default label keys, with the collector's fallback value.
+UPDATE workload_inventory
+   SET team = COALESCE(json_extract(labels_json, '$.team'), 'unknown'),
+       app = COALESCE(json_extract(labels_json, '$.app'), 'unknown');
+
+DROP INDEX IF EXISTS idx_inventory_team;
+CREATE INDEX IF NOT EXISTS idx_inventory_team ON workload_inventory (team, snapshot_id);
+CREATE INDEX IF NOT EXISTS idx_inventory_app ON workload_inventory (app, snapshot_id);
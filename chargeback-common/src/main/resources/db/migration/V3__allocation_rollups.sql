@@ -0,0 +1,93 @@
+-- Daily and monthly (UTC) rollups of allocation_snapshots, keyed by the bucket the window starts in.
+-- Reports over long ranges read whole buckets from here and only touch raw snapshots at the edges.
+CREATE TABLE IF NOT EXISTS allocation_rollups_daily (
+  group_type TEXT NOT NULL,
+  bucket_start TEXT NOT NULL, -- ISO-8601 start of the UTC day
+  group_key TEXT NOT NULL,
+  cpu_mcpu INTEGER NOT NULL,
+  mem_mib INTEGER NOT NULL,
+  cpu_cost_units REAL NOT NULL,
+  mem_cost_units REAL NOT NULL,
+  total_cost_units REAL NOT NULL,
+  snapshots INTEGER NOT NULL, -- number of raw snapshots folded into the row
+  PRIMARY KEY (group_type, bucket_start, group_key)
+) WITHOUT ROWID;
+
+CREATE TABLE IF NOT EXISTS allocation_rollups_monthly (
+  group_type TEXT NOT NULL,
+  bucket_start TEXT NOT NULL, -- ISO-8601 start of the UTC month
+  group_key TEXT NOT NULL,
+  cpu_mcpu INTEGER NOT NULL,
+  mem_mib INTEGER NOT NULL,
+  cpu_cost_units REAL NOT NULL,
+  mem_cost_units REAL NOT NULL,
+  total_cost_units REAL NOT NULL,
+  snapshots INTEGER NOT NULL,
+  PRIMARY KEY (group_type, bucket_start, group_key)
+) WITHOUT ROWID;
+
+INSERT INTO allocation_rollups_daily
+SELECT group_type, substr(window_start, 1, 10) || 'T00:00:00Z', group_key,
+       SUM(cpu_mcpu), SUM(mem_mib), SUM(cpu_cost_units), SUM(mem_cost_units), SUM(total_cost_units), COUNT(*)
+  FROM allocation_snapshots
+ GROUP BY 1, 2, 3;
+
+INSERT INTO allocation_rollups_monthly
+SELECT group_type, substr(window_start, 1, 7) || '-01T00:00:00Z', group_key,
+       SUM(cpu_mcpu), SUM(mem_mib), SUM(cpu_cost_units), SUM(mem_cost_units), SUM(total_cost_units), COUNT(*)
+  FROM allocation_snapshots
+ GROUP BY 1, 2, 3;
+
+-- Every snapshot written or removed (including window replacement by the collector) is folded into
+-- its buckets within the same transaction. Buckets left without snapshots are removed.
+CREATE TRIGGER IF NOT EXISTS trg_snapshots_rollup_insert AFTER INSERT ON allocation_snapshots
+BEGIN
+  INSERT INTO allocation_rollups_daily
+  VALUES (NEW.group_type, substr(NEW.window_start, 1, 10) || 'T00:00:00Z', NEW.group_key,
+          NEW.cpu_mcpu, NEW.mem_mib, NEW.cpu_cost_units, NEW.mem_cost_units, NEW.total_cost_units, 1)
+  ON CONFLICT (group_type, bucket_start, group_key) DO UPDATE SET
+    cpu_mcpu = cpu_mcpu + excluded.cpu_mcpu,
+    mem_mib = mem_mib + excluded.mem_mib,
+    cpu_cost_units = cpu_cost_units + excluded.cpu_cost_units,
+    mem_cost_units = mem_cost_units + excluded.mem_cost_units,
+    total_cost_units = total_cost_units + excluded.total_cost_units,
+    snapshots = snapshots + 1;
+  INSERT INTO allocation_rollups_monthly
+  VALUES (NEW.group_type, substr(NEW.window_start, 1, 7) || '-01T00:00:00Z', NEW.group_key,
+          NEW.cpu_mcpu, NEW.mem_mib, NEW.cpu_cost_units, NEW.mem_cost_units, NEW.total_cost_units, 1)
+  ON CONFLICT (group_type, bucket_start, group_key) DO UPDATE SET
+    cpu_mcpu = cpu_mcpu + excluded.cpu_mcpu,
+    mem_mib = mem_mib + excluded.mem_mib,
+    cpu_cost_units = cpu_cost_units + excluded.cpu_cost_units,
+    mem_cost_units = mem_cost_units + excluded.mem_cost_units,
+    total_cost_units = total_cost_units + excluded.total_cost_units,
+    snapshots = snapshots + 1;
+END;
+
+CREATE TRIGGER IF NOT EXISTS trg_snapshots_rollup_delete AFTER DELETE ON allocation_snapshots
+BEGIN
+  UPDATE allocation_rollups_daily SET
+    cpu_mcpu = cpu_mcpu - OLD.cpu_mcpu,
+    mem_mib = mem_mib - OLD.mem_mib,
+    cpu_cost_units = cpu_cost_units - OLD.cpu_cost_units,
+    mem_cost_units = mem_cost_units - OLD.mem_cost_units,
+    total_cost_units = total_cost_units - OLD.total_cost_units,
+    snapshots = snapshots - 1
+  WHERE group_type = OLD.group_type AND bucket_start = substr(OLD.window_start, 1, 10) || 'T00:00:00Z'
+    AND group_key = OLD.group_key;
+  DELETE FROM allocation_rollups_daily
+  WHERE group_type = OLD.group_type AND bucket_start = substr(OLD.window_start, 1, 10) || 'T00:00:00Z'
+    AND group_key = OLD.group_key AND snapshots <= 0;
+  UPDATE allocation_rollups_monthly SET
+    cpu_mcpu = cpu_mcpu - OLD.cpu_mcpu,
+    mem_mib = mem_mib - OLD.mem_mib,
+    cpu_cost_units = cpu_cost_units - OLD.cpu_cost_units,
+    mem_cost_units = mem_cost_units - OLD.mem_cost_units,
+    total_cost_units = total_cost_units - OLD.total_cost_units,
+    snapshots = snapshots - 1
+  WHERE group_type = OLD.group_type AND bucket_start = substr(OLD.window_start, 1, 7) || '-01T00:00:00Z'
+    AND group_key = OLD.group_key;
+  DELETE FROM allocation_rollups_monthly
+  WHERE group_type = OLD.group_type AND bucket_start = substr(OLD.window_start, 1, 7) || '-01T00:00:00Z'
+    AND group_key = OLD.group_key AND snapshots <= 0;
+END;
@@ -0,0 +1,128 @@
+-- Snapshot windows are stored as INTEGER epoch seconds (UTC) instead of ISO-8601 TEXT.
+-- Text comparisons broke as soon as two writers formatted instants differently (fractional seconds,
+-- or the 'YYYY-MM-DD HH:MM:SS' form of datetime()), and integer keys keep the indexes small.
+-- SQLite cannot change a column type in place, so the table is rebuilt and the rollups recreated.
+DROP TRIGGER IF EXISTS trg_snapshots_rollup_insert;
+DROP TRIGGER IF EXISTS trg_snapshots_rollup_delete;
+
+CREATE TABLE allocation_snapshots_v4 (
+  id TEXT PRIMARY KEY, -- UUID
+  window_start INTEGER NOT NULL, -- epoch seconds
+  window_end INTEGER NOT NULL,
+  group_type TEXT NOT NULL, -- TEAM|NAMESPACE|APP
+  group_key TEXT NOT NULL,
+  cpu_mcpu INTEGER NOT NULL,
+  mem_mib INTEGER NOT NULL,
+  cpu_cost_units REAL NOT NULL,
+  mem_cost_units REAL NOT NULL,
+  total_cost_units REAL NOT NULL,
+  UNIQUE(window_start, window_end, group_type, group_key)
+);
+
+INSERT INTO allocation_snapshots_v4
+SELECT id, CAST(strftime('%s', window_start) AS INTEGER), CAST(strftime('%s', window_end) AS INTEGER),
+       group_type, group_key, cpu_mcpu, mem_mib, cpu_cost_units, mem_cost_units, total_cost_units
+  FROM allocation_snapshots;
+
+DROP TABLE allocation_snapshots;
+ALTER TABLE allocation_snapshots_v4 RENAME TO allocation_snapshots;
+
+CREATE INDEX IF NOT EXISTS idx_snapshots_type_window
+  ON allocation_snapshots (group_type, window_start, window_end, group_key,
+                           cpu_mcpu, mem_mib, cpu_cost_units, mem_cost_units, total_cost_units);
+
+-- Rollup buckets become the epoch second of the UTC day or month start.
+DROP TABLE allocation_rollups_daily;
+DROP TABLE allocation_rollups_monthly;
+
+CREATE TABLE allocation_rollups_daily (
+  group_type TEXT NOT NULL,
+  bucket_start INTEGER NOT NULL, -- epoch seconds of the UTC day start
+  group_key TEXT NOT NULL,
+  cpu_mcpu INTEGER NOT NULL,
+  mem_mib INTEGER NOT NULL,
+  cpu_cost_units REAL NOT NULL,
+  mem_cost_units REAL NOT NULL,
+  total_cost_units REAL NOT NULL,
+  snapshots INTEGER NOT NULL, -- number of raw snapshots folded into the row
+  PRIMARY KEY (group_type, bucket_start, group_key)
+) WITHOUT ROWID;
+
+CREATE TABLE allocation_rollups_monthly (
+  group_type TEXT NOT NULL,
+  bucket_start INTEGER NOT NULL, -- epoch seconds of the UTC month start
+  group_key TEXT NOT NULL,
+  cpu_mcpu INTEGER NOT NULL,
+  mem_mib INTEGER NOT NULL,
+  cpu_cost_units REAL NOT NULL,
+  mem_cost_units REAL NOT NULL,
+  total_cost_units REAL NOT NULL,
+  snapshots INTEGER NOT NULL,
+  PRIMARY KEY (group_type, bucket_start, group_key)
+) WITHOUT ROWID;
+
+INSERT INTO allocation_rollups_daily
+SELECT group_type, window_start - window_start % 86400, group_key,
+       SUM(cpu_mcpu), SUM(mem_mib), SUM(cpu_cost_units), SUM(mem_cost_units), SUM(total_cost_units), COUNT(*)
+  FROM allocation_snapshots
+ GROUP BY 1, 2, 3;
+
+INSERT INTO allocation_rollups_monthly
+SELECT group_type, CAST(strftime('%s', window_start, 'unixepoch', 'start of month') AS INTEGER), group_key,
+       SUM(cpu_mcpu), SUM(mem_mib), SUM(cpu_cost_units), SUM(mem_cost_units), SUM(total_cost_units), COUNT(*)
+  FROM allocation_snapshots
+ GROUP BY 1, 2, 3;
+
+CREATE TRIGGER IF NOT EXISTS trg_snapshots_rollup_insert AFTER INSERT ON allocation_snapshots
+BEGIN
+  INSERT INTO allocation_rollups_daily
+  VALUES (NEW.group_type, NEW.window_start - NEW.window_start % 86400, NEW.group_key,
+          NEW.cpu_mcpu, NEW.mem_mib, NEW.cpu_cost_units, NEW.mem_cost_units, NEW.total_cost_units, 1)
+  ON CONFLICT (group_type, bucket_start, group_key) DO UPDATE SET
+    cpu_mcpu = cpu_mcpu + excluded.cpu_mcpu,
+    mem_mib = mem_mib + excluded.mem_mib,
+    cpu_cost_units = cpu_cost_units + excluded.cpu_cost_units,
+    mem_cost_units = mem_cost_units + excluded.mem_cost_units,
+    total_cost_units = total_cost_units + excluded.total_cost_units,
+    snapshots = snapshots + 1;
+  INSERT INTO allocation_rollups_monthly
+  VALUES (NEW.group_type, CAST(strftime('%s', NEW.window_start, 'unixepoch', 'start of month') AS INTEGER), NEW.group_key,
+          NEW.cpu_mcpu, NEW.mem_mib, NEW.cpu_cost_units, NEW.mem_cost_units, NEW.total_cost_units, 1)
+  ON CONFLICT (group_type, bucket_start, group_key) DO UPDATE SET
+    cpu_mcpu = cpu_mcpu + excluded.cpu_mcpu,
+    mem_mib = mem_mib + excluded.mem_mib,
+    cpu_cost_units = cpu_cost_units + excluded.cpu_cost_units,
+    mem_cost_units = mem_cost_units + excluded.mem_cost_units,
+    total_cost_units = total_cost_units + excluded.total_cost_units,
+    snapshots = snapshots + 1;
+END;
+
+CREATE TRIGGER IF NOT EXISTS trg_snapshots_rollup_delete AFTER DELETE ON allocation_snapshots
+BEGIN
+  UPDATE allocation_rollups_daily SET
+    cpu_mcpu = cpu_mcpu - OLD.cpu_mcpu,
+    mem_mib = mem_mib - OLD.mem_mib,
+    cpu_cost_units = cpu_cost_units - OLD.cpu_cost_units,
+    mem_cost_units = mem_cost_units - OLD.mem_cost_units,
+    total_cost_units = total_cost_units - OLD.total_cost_units,
+    snapshots = snapshots - 1
+  WHERE group_type = OLD.group_type AND bucket_start = OLD.window_start - OLD.window_start % 86400
+    AND group_key = OLD.group_key;
+  DELETE FROM allocation_rollups_daily
+  WHERE group_type = OLD.group_type AND bucket_start = OLD.window_start - OLD.window_start % 86400
+    AND group_key = OLD.group_key AND snapshots <= 0;
+  UPDATE allocation_rollups_monthly SET
+    cpu_mcpu = cpu_mcpu - OLD.cpu_mcpu,
+    mem_mib = mem_mib - OLD.mem_mib,
+    cpu_cost_units = cpu_cost_units - OLD.cpu_cost_units,
+    mem_cost_units = mem_cost_units - OLD.mem_cost_units,
+    total_cost_units = total_cost_units - OLD.total_cost_units,
+    snapshots = snapshots - 1
+  WHERE group_type = OLD.group_type
+    AND bucket_start = CAST(strftime('%s', OLD.window_start, 'unixepoch', 'start of month') AS INTEGER)
+    AND group_key = OLD.group_key;
+  DELETE FROM allocation_rollups_monthly
+  WHERE group_type = OLD.group_type
+    AND bucket_start = CAST(strftime('%s', OLD.window_start, 'unixepoch', 'start of month') AS INTEGER)
+    AND group_key = OLD.group_key AND snapshots <= 0;
+END;
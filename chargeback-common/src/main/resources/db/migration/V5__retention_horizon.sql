@@ -0,0 +1,42 @@
+-- Raw snapshots starting before raw_before have been downsampled into the rollups and may be pruned.
+-- Pruning them must not subtract from the rollups, so the delete trigger only fires above the horizon,
+-- where deletes are window replacements by the collector.
+CREATE TABLE IF NOT EXISTS retention_horizon (
+  id INTEGER PRIMARY KEY CHECK (id = 1),
+  raw_before INTEGER NOT NULL -- epoch seconds
+);
+
+INSERT OR IGNORE INTO retention_horizon (id, raw_before) VALUES (1, 0);
+
+DROP TRIGGER IF EXISTS trg_snapshots_rollup_delete;
+
+CREATE TRIGGER IF NOT EXISTS trg_snapshots_rollup_delete AFTER DELETE ON allocation_snapshots
+WHEN OLD.window_start >= (SELECT raw_before FROM retention_horizon WHERE id = 1)
+BEGIN
+  UPDATE allocation_rollups_daily SET
+    cpu_mcpu = cpu_mcpu - OLD.cpu_mcpu,
+    mem_mib = mem_mib - OLD.mem_mib,
+    cpu_cost_units = cpu_cost_units - OLD.cpu_cost_units,
+    mem_cost_units = mem_cost_units - OLD.mem_cost_units,
+    total_cost_units = total_cost_units - OLD.total_cost_units,
+    snapshots = snapshots - 1
+  WHERE group_type = OLD.group_type AND bucket_start = OLD.window_start - OLD.window_start % 86400
+    AND group_key = OLD.group_key;
+  DELETE FROM allocation_rollups_daily
+  WHERE group_type = OLD.group_type AND bucket_start = OLD.window_start - OLD.window_start % 86400
+    AND group_key = OLD.group_key AND snapshots <= 0;
+  UPDATE allocation_rollups_monthly SET
+    cpu_mcpu = cpu_mcpu - OLD.cpu_mcpu,
+    mem_mib = mem_mib - OLD.mem_mib,
+    cpu_cost_units = cpu_cost_units - OLD.cpu_cost_units,
+    mem_cost_units = mem_cost_units - OLD.mem_cost_units,
+    total_cost_units = total_cost_units - OLD.total_cost_units,
+    snapshots = snapshots - 1
+  WHERE group_type = OLD.group_type
+    AND bucket_start = CAST(strftime('%s', OLD.window_start, 'unixepoch', 'start of month') AS INTEGER)
+    AND group_key = OLD.group_key;
+  DELETE FROM allocation_rollups_monthly
+  WHERE group_type = OLD.group_type
+    AND bucket_start = CAST(strftime('%s', OLD.window_start, 'unixepoch', 'start of month') AS INTEGER)
+    AND group_key = OLD.group_key AND snapshots <= 0;
+END;
@@ -0,0 +1,20 @@
+-- A counter of changes to the report data. The API caches report results per version and drops them
+-- as soon as the version moves. Writes to allocation_snapshots bump it through triggers; the collector
+-- also bumps it for writes the triggers cannot see (monthly partitions, rollup retention).
+CREATE TABLE IF NOT EXISTS report_version (
+  id INTEGER PRIMARY KEY CHECK (id = 1),
+  version INTEGER NOT NULL,
+  window_end INTEGER -- end of the latest window written by the collector, epoch seconds
+);
+
+INSERT OR IGNORE INTO report_version (id, version, window_end) VALUES (1, 0, NULL);
+
+CREATE TRIGGER IF NOT EXISTS trg_snapshots_version_insert AFTER INSERT ON allocation_snapshots
+BEGIN
+  UPDATE report_version SET version = version + 1 WHERE id = 1;
+END;
+
+CREATE TRIGGER IF NOT EXISTS trg_snapshots_version_delete AFTER DELETE ON allocation_snapshots
+BEGIN
+  UPDATE report_version SET version = version + 1 WHERE id = 1;
+END;
@@ -0,0 +1,111 @@
+-- Running totals of TEAM and NAMESPACE usage for the current budget period, so a budget check reads one row
+-- instead of summing every window since the period started. Each row holds the period its window started in;
+-- a window of a later period replaces the totals, so rows reset at period boundaries without a cleanup job.
+-- Readers only use a row whose period_start is the start of the period being checked.
+CREATE TABLE IF NOT EXISTS budget_usage_ledger (
+  group_type TEXT NOT NULL,
+  period TEXT NOT NULL, -- DAILY|WEEKLY|MONTHLY
+  group_key TEXT NOT NULL,
+  period_start INTEGER NOT NULL, -- epoch seconds of the UTC period start
+  cpu_mcpu INTEGER NOT NULL,
+  mem_mib INTEGER NOT NULL,
+  total_cost_units REAL NOT NULL,
+  PRIMARY KEY (group_type, period, group_key)
+) WITHOUT ROWID;
+
+-- Current periods are backfilled from the rollups, which also hold windows already pruned from raw snapshots.
+INSERT OR REPLACE INTO budget_usage_ledger
+SELECT group_type, 'DAILY', group_key, bucket_start, cpu_mcpu, mem_mib, total_cost_units
+  FROM allocation_rollups_daily
+ WHERE group_type IN ('TEAM', 'NAMESPACE')
+   AND bucket_start = CAST(strftime('%s', 'now', 'start of day') AS INTEGER);
+
+INSERT OR REPLACE INTO budget_usage_ledger
+SELECT group_type, 'WEEKLY', group_key,
+       CAST(strftime('%s', 'now', 'start of day') AS INTEGER)
+         - ((CAST(strftime('%w', 'now') AS INTEGER) + 6) % 7) * 86400,
+       SUM(cpu_mcpu), SUM(mem_mib), SUM(total_cost_units)
+  FROM allocation_rollups_daily
+ WHERE group_type IN ('TEAM', 'NAMESPACE')
+   AND bucket_start >= CAST(strftime('%s', 'now', 'start of day') AS INTEGER)
+         - ((CAST(strftime('%w', 'now') AS INTEGER) + 6) % 7) * 86400
+ GROUP BY group_type, group_key;
+
+INSERT OR REPLACE INTO budget_usage_ledger
+SELECT group_type, 'MONTHLY', group_key, bucket_start, cpu_mcpu, mem_mib, total_cost_units
+  FROM allocation_rollups_monthly
+ WHERE group_type IN ('TEAM', 'NAMESPACE')
+   AND bucket_start = CAST(strftime('%s', 'now', 'start of month') AS INTEGER);
+
+-- Every snapshot written to the main database is added to the periods it starts in. Snapshots written to
+-- monthly partitions are added by the collector, since triggers cannot reach into another database file.
+CREATE TRIGGER IF NOT EXISTS trg_snapshots_ledger_insert AFTER INSERT ON allocation_snapshots
+WHEN NEW.group_type IN ('TEAM', 'NAMESPACE')
+BEGIN
+  INSERT INTO budget_usage_ledger
+  VALUES (NEW.group_type, 'DAILY', NEW.group_key, NEW.window_start - NEW.window_start % 86400,
+          NEW.cpu_mcpu, NEW.mem_mib, NEW.total_cost_units)
+  ON CONFLICT (group_type, period, group_key) DO UPDATE SET
+    cpu_mcpu = CASE WHEN excluded.period_start > period_start THEN excluded.cpu_mcpu
+                    WHEN excluded.period_start = period_start THEN cpu_mcpu + excluded.cpu_mcpu ELSE cpu_mcpu END,
+    mem_mib = CASE WHEN excluded.period_start > period_start THEN excluded.mem_mib
+                   WHEN excluded.period_start = period_start THEN mem_mib + excluded.mem_mib ELSE mem_mib END,
+    total_cost_units = CASE WHEN excluded.period_start > period_start THEN excluded.total_cost_units
+                            WHEN excluded.period_start = period_start THEN total_cost_units + excluded.total_cost_units
+                            ELSE total_cost_units END,
+    period_start = MAX(period_start, excluded.period_start);
+  INSERT INTO budget_usage_ledger
+  VALUES (NEW.group_type, 'WEEKLY', NEW.group_key,
+          NEW.window_start - NEW.window_start % 86400
+            - ((CAST(strftime('%w', NEW.window_start, 'unixepoch') AS INTEGER) + 6) % 7) * 86400,
+          NEW.cpu_mcpu, NEW.mem_mib, NEW.total_cost_units)
+  ON CONFLICT (group_type, period, group_key) DO UPDATE SET
+    cpu_mcpu = CASE WHEN excluded.period_start > period_start THEN excluded.cpu_mcpu
+                    WHEN excluded.period_start = period_start THEN cpu_mcpu + excluded.cpu_mcpu ELSE cpu_mcpu END,
+    mem_mib = CASE WHEN excluded.period_start > period_start THEN excluded.mem_mib
+                   WHEN excluded.period_start = period_start THEN mem_mib + excluded.mem_mib ELSE mem_mib END,
+    total_cost_units = CASE WHEN excluded.period_start > period_start THEN excluded.total_cost_units
+                            WHEN excluded.period_start = period_start THEN total_cost_units + excluded.total_cost_units
+                            ELSE total_cost_units END,
+    period_start = MAX(period_start, excluded.period_start);
+  INSERT INTO budget_usage_ledger
+  VALUES (NEW.group_type, 'MONTHLY', NEW.group_key,
+          CAST(strftime('%s', NEW.window_start, 'unixepoch', 'start of month') AS INTEGER),
+          NEW.cpu_mcpu, NEW.mem_mib, NEW.total_cost_units)
+  ON CONFLICT (group_type, period, group_key) DO UPDATE SET
+    cpu_mcpu = CASE WHEN excluded.period_start > period_start THEN excluded.cpu_mcpu
+                    WHEN excluded.period_start = period_start THEN cpu_mcpu + excluded.cpu_mcpu ELSE cpu_mcpu END,
+    mem_mib = CASE WHEN excluded.period_start > period_start THEN excluded.mem_mib
+                   WHEN excluded.period_start = period_start THEN mem_mib + excluded.mem_mib ELSE mem_mib END,
+    total_cost_units = CASE WHEN excluded.period_start > period_start THEN excluded.total_cost_units
+                            WHEN excluded.period_start = period_start THEN total_cost_units + excluded.total_cost_units
+                            ELSE total_cost_units END,
+    period_start = MAX(period_start, excluded.period_start);
+END;
+
+-- Window replacements subtract the old snapshots from the period they were counted in. Like the rollups,
+-- snapshots pruned below the retention horizon stay counted.
+CREATE TRIGGER IF NOT EXISTS trg_snapshots_ledger_delete AFTER DELETE ON allocation_snapshots
+WHEN OLD.group_type IN ('TEAM', 'NAMESPACE')
+ AND OLD.window_start >= (SELECT raw_before FROM retention_horizon WHERE id = 1)
+BEGIN
+  UPDATE budget_usage_ledger SET
+    cpu_mcpu = cpu_mcpu - OLD.cpu_mcpu,
+    mem_mib = mem_mib - OLD.mem_mib,
+    total_cost_units = total_cost_units - OLD.total_cost_units
+  WHERE group_type = OLD.group_type AND period = 'DAILY' AND group_key = OLD.group_key
+    AND period_start = OLD.window_start - OLD.window_start % 86400;
+  UPDATE budget_usage_ledger SET
+    cpu_mcpu = cpu_mcpu - OLD.cpu_mcpu,
+    mem_mib = mem_mib - OLD.mem_mib,
+    total_cost_units = total_cost_units - OLD.total_cost_units
+  WHERE group_type = OLD.group_type AND period = 'WEEKLY' AND group_key = OLD.group_key
+    AND period_start = OLD.window_start - OLD.window_start % 86400
+          - ((CAST(strftime('%w', OLD.window_start, 'unixepoch') AS INTEGER) + 6) % 7) * 86400;
+  UPDATE budget_usage_ledger SET
+    cpu_mcpu = cpu_mcpu - OLD.cpu_mcpu,
+    mem_mib = mem_mib - OLD.mem_mib,
+    total_cost_units = total_cost_units - OLD.total_cost_units
+  WHERE group_type = OLD.group_type AND period = 'MONTHLY' AND group_key = OLD.group_key
+    AND period_start = CAST(strftime('%s', OLD.window_start, 'unixepoch', 'start of month') AS INTEGER);
+END;
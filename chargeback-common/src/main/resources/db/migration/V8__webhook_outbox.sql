@@ -0,0 +1,14 @@
+-- Alert webhooks waiting for delivery. The collector writes a row before it queues the request in memory and
+-- deletes it once the webhook accepted it or retries are exhausted, so alerts survive the end of a run and
+-- are retried by the next one.
+CREATE TABLE IF NOT EXISTS webhook_outbox (
+  id TEXT PRIMARY KEY,
+  url TEXT NOT NULL,
+  payload_json TEXT NOT NULL,
+  created_at INTEGER NOT NULL, -- epoch milliseconds
+  attempts INTEGER NOT NULL DEFAULT 0,
+  next_attempt_at INTEGER NOT NULL, -- epoch milliseconds
+  last_error TEXT
+);
+
+CREATE INDEX IF NOT EXISTS idx_webhook_outbox_next_attempt ON webhook_outbox(next_attempt_at);
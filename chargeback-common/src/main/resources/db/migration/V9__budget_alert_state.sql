@@ -0,0 +1,10 @@
+-- The alert level each budget was last evaluated at within its current period. Budget checks read all rows
+-- with one primary-key scan and only alert when a budget moves to a higher level, recovers, or stays above
+-- its limit longer than the re-notify interval. A row of an earlier period counts as OK.
+CREATE TABLE IF NOT EXISTS budget_alert_state (
+  budget_id TEXT PRIMARY KEY,
+  state TEXT NOT NULL, -- OK|WARN|CRITICAL
+  period_start INTEGER NOT NULL, -- epoch seconds of the period the state belongs to
+  changed_at INTEGER NOT NULL, -- epoch seconds of the last change of state
+  notified_at INTEGER -- epoch seconds of the last alert sent, NULL if none in this period
+) WITHOUT ROWID;
@@ -0,0 +1,37 @@
+-- Schema of a monthly partition file holding the raw snapshots and inventory of one UTC month.
+-- {p} is replaced by the name the partition is attached under. Rollups, budgets and alerts stay in the main database.
+CREATE TABLE IF NOT EXISTS {p}.allocation_snapshots (
+  id TEXT PRIMARY KEY, -- UUID
+  window_start INTEGER NOT NULL, -- epoch seconds
+  window_end INTEGER NOT NULL,
+  group_type TEXT NOT NULL, -- TEAM|NAMESPACE|APP
+  group_key TEXT NOT NULL,
+  cpu_mcpu INTEGER NOT NULL,
+  mem_mib INTEGER NOT NULL,
+  cpu_cost_units REAL NOT NULL,
+  mem_cost_units REAL NOT NULL,
+  total_cost_units REAL NOT NULL,
+  UNIQUE(window_start, window_end, group_type, group_key)
+);
+
+CREATE TABLE IF NOT EXISTS {p}.workload_inventory (
+  snapshot_id TEXT NOT NULL,
+  namespace TEXT NOT NULL,
+  kind TEXT NOT NULL,
+  name TEXT NOT NULL,
+  labels_json TEXT NOT NULL,
+  cpu_request_mcpu INTEGER NOT NULL,
+  mem_request_mib INTEGER NOT NULL,
+  compliance_status TEXT NOT NULL,
+  team TEXT,
+  app TEXT
+);
+
+-- The same indexes as the main database (migrations V1, V2 and V4).
+CREATE INDEX IF NOT EXISTS {p}.idx_snapshots_type_window
+  ON allocation_snapshots (group_type, window_start, window_end, group_key,
+                           cpu_mcpu, mem_mib, cpu_cost_units, mem_cost_units, total_cost_units);
+CREATE INDEX IF NOT EXISTS {p}.idx_inventory_snapshot ON workload_inventory (snapshot_id);
+CREATE INDEX IF NOT EXISTS {p}.idx_inventory_namespace ON workload_inventory (namespace, kind, name, compliance_status);
+CREATE INDEX IF NOT EXISTS {p}.idx_inventory_team ON workload_inventory (team, snapshot_id);
+CREATE INDEX IF NOT EXISTS {p}.idx_inventory_app ON workload_inventory (app, snapshot_id);